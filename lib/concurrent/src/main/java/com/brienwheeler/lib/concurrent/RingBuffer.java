@@ -0,0 +1,297 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Bounded lock-free queue backed by a power-of-two ring of slots, each guarded by
+ * a sequence number (after Dmitry Vyukov's bounded MPMC queue).  Producers and
+ * consumers claim positions with a single CAS and never take a lock, so offer()
+ * never blocks and poll() never blocks.  Any thread may poll, which lets
+ * producers evict the oldest element when the ring is full; only one thread at a
+ * time may wait in awaitNotEmpty().
+ * 
+ * @author bwheeler
+ */
+public class RingBuffer<E>
+{
+	public static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * How a consumer waits in awaitNotEmpty() when the ring is empty.
+	 */
+	public static enum WaitStrategy {
+		/** spin on the ring: lowest latency, burns a core */
+		BUSY_SPIN,
+		/** spin but yield the processor between checks */
+		YIELD,
+		/** park until a producer signals (bounded by a short timeout) */
+		PARK
+	};
+
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+	// a producer waiting for space yields a few times before backing off to short parks
+	private static final int FULL_YIELDS = 64;
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private volatile Thread waiter;
+
+	public RingBuffer(int capacity)
+	{
+		ValidationUtils.assertTrue(capacity > 0, "capacity must be greater than zero");
+		ValidationUtils.assertTrue(capacity <= MAX_CAPACITY, "capacity must not be greater than " + MAX_CAPACITY);
+		
+		int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+		this.capacity = capacity;
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i=0; i<size; i++)
+			sequences.set(i, i);
+	}
+
+	public int capacity()
+	{
+		return capacity;
+	}
+	
+	/**
+	 * Add an element to the tail of the ring.
+	 * 
+	 * @param element the element to add
+	 * @return false if the ring is full
+	 */
+	public boolean offer(E element)
+	{
+		ValidationUtils.assertNotNull(element, "element cannot be null");
+		
+		long pos = tail.get();
+		while (true)
+		{
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - pos;
+			if (diff == 0L)
+			{
+				if (pos - head.get() >= capacity)
+					return false;
+				if (tail.compareAndSet(pos, pos + 1))
+				{
+					slots.lazySet(index, element);
+					sequences.set(index, pos + 1);
+					break;
+				}
+				pos = tail.get();
+			}
+			else if (diff < 0L)
+				return false;
+			else
+				pos = tail.get();
+		}
+		
+		Thread waiting = waiter;
+		if (waiting != null)
+			LockSupport.unpark(waiting);
+		return true;
+	}
+	
+	/**
+	 * Add an element to the tail of the ring, waiting up to the given time for space
+	 * to become available.  Waiting producers poll for space rather than being
+	 * signalled by consumers, so this is meant for backpressure, not steady state.
+	 * 
+	 * @param element the element to add
+	 * @param timeout how long to wait
+	 * @param unit the unit of timeout
+	 * @return false if the ring was still full when the time elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		if (offer(element))
+			return true;
+		
+		long start = System.nanoTime();
+		long nanos = unit.toNanos(timeout);
+		int yields = 0;
+		while (true)
+		{
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			long remaining = nanos - (System.nanoTime() - start);
+			if (remaining <= 0L)
+				return false;
+			
+			if (yields < FULL_YIELDS)
+			{
+				yields++;
+				Thread.yield();
+			}
+			else
+				LockSupport.parkNanos(this, Math.min(remaining, FULL_PARK_NANOS));
+			
+			if (offer(element))
+				return true;
+		}
+	}
+	
+	/**
+	 * Remove and return the element at the head of the ring.
+	 * 
+	 * @return the element, or null if the ring is empty
+	 */
+	public E poll()
+	{
+		long pos = head.get();
+		while (true)
+		{
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0L)
+			{
+				if (head.compareAndSet(pos, pos + 1))
+				{
+					E element = slots.get(index);
+					slots.lazySet(index, null);
+					sequences.set(index, pos + mask + 1);
+					return element;
+				}
+				pos = head.get();
+			}
+			else if (diff < 0L)
+				return null;
+			else
+				pos = head.get();
+		}
+	}
+	
+	/**
+	 * Return the element at the head of the ring without removing it.  When other
+	 * threads are polling concurrently the result is only a hint.
+	 * 
+	 * @return the element, or null if the ring is empty
+	 */
+	public E peek()
+	{
+		long pos = head.get();
+		int index = (int) pos & mask;
+		if (sequences.get(index) != pos + 1)
+			return null;
+		return slots.get(index);
+	}
+	
+	/**
+	 * Remove up to batch.length elements from the head of the ring into batch,
+	 * starting at index 0.
+	 * 
+	 * @param batch the array to fill
+	 * @return the number of elements removed
+	 */
+	public int drainTo(E batch[])
+	{
+		int count = 0;
+		while (count < batch.length)
+		{
+			E element = poll();
+			if (element == null)
+				break;
+			batch[count++] = element;
+		}
+		return count;
+	}
+	
+	public boolean isEmpty()
+	{
+		long pos = head.get();
+		return sequences.get((int) pos & mask) != pos + 1;
+	}
+	
+	public int size()
+	{
+		long first = head.get();
+		long size = tail.get() - first;
+		return (int) Math.max(0L, Math.min(capacity, size));
+	}
+	
+	public int remainingCapacity()
+	{
+		return capacity - size();
+	}
+	
+	public void clear()
+	{
+		while (poll() != null)
+			;
+	}
+	
+	/**
+	 * Wait until the ring holds at least one element, using the given strategy.
+	 * Only one thread at a time may wait.  Like BlockingQueue.take(), an interrupt
+	 * already pending on entry is honored even if the ring is not empty.
+	 * 
+	 * @param waitStrategy how to wait
+	 * @return true if the ring is not empty, false if the calling thread was interrupted
+	 */
+	public boolean awaitNotEmpty(WaitStrategy waitStrategy)
+	{
+		ValidationUtils.assertNotNull(waitStrategy, "waitStrategy cannot be null");
+		
+		Thread current = Thread.currentThread();
+		while (true)
+		{
+			if (current.isInterrupted())
+				return false;
+			if (!isEmpty())
+				return true;
+			
+			switch (waitStrategy)
+			{
+				case BUSY_SPIN:
+					break;
+				case YIELD:
+					Thread.yield();
+					break;
+				case PARK:
+					waiter = current;
+					// re-check after announcing ourselves so a concurrent offer cannot be missed
+					if (isEmpty() && !current.isInterrupted())
+						LockSupport.parkNanos(this, PARK_NANOS);
+					waiter = null;
+					break;
+			}
+		}
+	}
+}
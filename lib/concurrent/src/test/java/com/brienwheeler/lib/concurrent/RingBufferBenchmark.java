@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Hand-rolled throughput comparison of RingBuffer against the LinkedBlockingQueue that
+ * AsynchronousTelemetryInfoProcessor used before it, with several producers and one
+ * consumer draining in batches as a shard thread does.  Not run by the build; run
+ * main() from the test classpath, optionally passing the number of elements each
+ * case transfers.
+ */
+public class RingBufferBenchmark
+{
+	private static final int DEFAULT_ELEMENTS = 10000000;
+	private static final int CAPACITY = 65536;
+	private static final int BATCH_SIZE = 256;
+	private static final Object ELEMENT = new Object();
+
+	public static void main(String args[]) throws InterruptedException
+	{
+		int elements = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ELEMENTS;
+		int maxProducers = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		Transfer transfers[] = new Transfer[] {
+			new RingTransfer(RingBuffer.WaitStrategy.PARK),
+			new RingTransfer(RingBuffer.WaitStrategy.YIELD),
+			new QueueTransfer(),
+		};
+
+		// warm up every path before measuring
+		for (Transfer transfer : transfers)
+			measure(transfer, maxProducers, elements);
+
+		for (int producers=1; producers<=maxProducers; producers*=2) {
+			for (Transfer transfer : transfers)
+				System.out.println(String.format("%d producers, %s: %.0f elements/s", producers, transfer.name,
+						measure(transfer, producers, elements)));
+		}
+	}
+
+	// elements per second moved from the producers to the consumer
+	private static double measure(final Transfer transfer, int producerCount, int elements) throws InterruptedException
+	{
+		transfer.reset();
+		final CountDownLatch start = new CountDownLatch(1);
+		final int perProducer = elements / producerCount;
+		final int total = perProducer * producerCount;
+		Thread producers[] = new Thread[producerCount];
+		for (int i=0; i<producers.length; i++) {
+			producers[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+						for (int j=0; j<perProducer; j++)
+							transfer.put();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			producers[i].start();
+		}
+		
+		long startNanos = System.nanoTime();
+		start.countDown();
+		int received = 0;
+		while (received < total)
+			received += transfer.takeBatch();
+		long elapsedNanos = System.nanoTime() - startNanos;
+		for (Thread producer : producers)
+			producer.join();
+		return total * 1e9 / elapsedNanos;
+	}
+
+	private static abstract class Transfer
+	{
+		private final String name;
+
+		Transfer(String name)
+		{
+			this.name = name;
+		}
+
+		abstract void reset();
+
+		// waits for space when full
+		abstract void put() throws InterruptedException;
+
+		// waits for at least one element, then removes up to BATCH_SIZE
+		abstract int takeBatch() throws InterruptedException;
+	}
+
+	private static class RingTransfer extends Transfer
+	{
+		private final RingBuffer.WaitStrategy waitStrategy;
+		private final Object batch[] = new Object[BATCH_SIZE];
+		private RingBuffer<Object> ring;
+
+		RingTransfer(RingBuffer.WaitStrategy waitStrategy)
+		{
+			super("RingBuffer " + waitStrategy);
+			this.waitStrategy = waitStrategy;
+		}
+
+		@Override
+		void reset()
+		{
+			ring = new RingBuffer<Object>(CAPACITY);
+		}
+
+		@Override
+		void put() throws InterruptedException
+		{
+			while (!ring.offer(ELEMENT))
+				Thread.yield();
+		}
+
+		@Override
+		int takeBatch() throws InterruptedException
+		{
+			if (!ring.awaitNotEmpty(waitStrategy))
+				throw new InterruptedException();
+			return ring.drainTo(batch);
+		}
+	}
+
+	private static class QueueTransfer extends Transfer
+	{
+		private final List<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+		private LinkedBlockingQueue<Object> queue;
+
+		QueueTransfer()
+		{
+			super("LinkedBlockingQueue");
+		}
+
+		@Override
+		void reset()
+		{
+			queue = new LinkedBlockingQueue<Object>(CAPACITY);
+		}
+
+		@Override
+		void put() throws InterruptedException
+		{
+			queue.put(ELEMENT);
+		}
+
+		@Override
+		int takeBatch() throws InterruptedException
+		{
+			batch.clear();
+			batch.add(queue.take());
+			return 1 + queue.drainTo(batch, BATCH_SIZE - 1);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.util.ValidationException;
+
+public class RingBufferTest
+{
+	@Test(expected = ValidationException.class)
+	public void testConstructZeroCapacity()
+	{
+		new RingBuffer<Integer>(0);
+	}
+	
+	@Test(expected = ValidationException.class)
+	public void testConstructCapacityTooLarge()
+	{
+		new RingBuffer<Integer>(RingBuffer.MAX_CAPACITY + 1);
+	}
+	
+	@Test(expected = ValidationException.class)
+	public void testOfferNull()
+	{
+		new RingBuffer<Integer>(2).offer(null);
+	}
+	
+	@Test
+	public void testOfferPollFifo()
+	{
+		RingBuffer<Integer> ring = new RingBuffer<Integer>(3);
+		Assert.assertEquals(3, ring.capacity());
+		Assert.assertTrue(ring.isEmpty());
+		Assert.assertNull(ring.poll());
+		Assert.assertNull(ring.peek());
+		
+		// wrap around several times, never exceeding the non power-of-two capacity
+		int next = 0;
+		for (int round=0; round<5; round++)
+		{
+			for (int i=0; i<3; i++)
+				Assert.assertTrue(ring.offer(next + i));
+			Assert.assertFalse(ring.offer(-1));
+			Assert.assertEquals(3, ring.size());
+			Assert.assertEquals(0, ring.remainingCapacity());
+			Assert.assertEquals(Integer.valueOf(next), ring.peek());
+			for (int i=0; i<3; i++)
+				Assert.assertEquals(Integer.valueOf(next + i), ring.poll());
+			Assert.assertTrue(ring.isEmpty());
+			next += 3;
+		}
+	}
+	
+	@Test
+	public void testTimedOffer() throws InterruptedException
+	{
+		final RingBuffer<Integer> ring = new RingBuffer<Integer>(1);
+		Assert.assertTrue(ring.offer(1, 10L, TimeUnit.MILLISECONDS));
+		
+		long start = System.currentTimeMillis();
+		Assert.assertFalse(ring.offer(2, 20L, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(System.currentTimeMillis() - start >= 20L);
+		
+		Thread consumer = new Thread() {
+			@Override
+			public void run()
+			{
+				try {
+					Thread.sleep(20L);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				ring.poll();
+			}
+		};
+		consumer.start();
+		Assert.assertTrue(ring.offer(3, 5L, TimeUnit.SECONDS));
+		consumer.join();
+		Assert.assertEquals(Integer.valueOf(3), ring.poll());
+	}
+	
+	@Test(expected = InterruptedException.class)
+	public void testTimedOfferInterrupted() throws InterruptedException
+	{
+		RingBuffer<Integer> ring = new RingBuffer<Integer>(1);
+		ring.offer(1);
+		Thread.currentThread().interrupt();
+		ring.offer(2, 5L, TimeUnit.SECONDS);
+	}
+	
+	@Test
+	public void testCapacityOne()
+	{
+		RingBuffer<Integer> ring = new RingBuffer<Integer>(1);
+		Assert.assertTrue(ring.offer(1));
+		Assert.assertFalse(ring.offer(2));
+		Assert.assertEquals(Integer.valueOf(1), ring.poll());
+		Assert.assertTrue(ring.offer(3));
+		Assert.assertEquals(Integer.valueOf(3), ring.poll());
+	}
+	
+	@Test
+	public void testDrainToAndClear()
+	{
+		RingBuffer<Integer> ring = new RingBuffer<Integer>(8);
+		for (int i=0; i<5; i++)
+			ring.offer(i);
+		
+		Integer batch[] = new Integer[3];
+		Assert.assertEquals(3, ring.drainTo(batch));
+		Assert.assertArrayEquals(new Integer[] { 0, 1, 2 }, batch);
+		Assert.assertEquals(2, ring.size());
+		
+		ring.clear();
+		Assert.assertTrue(ring.isEmpty());
+		Assert.assertEquals(0, ring.drainTo(batch));
+	}
+	
+	@Test
+	public void testAwaitNotEmpty() throws InterruptedException
+	{
+		for (RingBuffer.WaitStrategy waitStrategy : RingBuffer.WaitStrategy.values())
+		{
+			final RingBuffer<Integer> ring = new RingBuffer<Integer>(4);
+			Thread producer = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						Thread.sleep(20L);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					ring.offer(1);
+				}
+			};
+			producer.start();
+			Assert.assertTrue(ring.awaitNotEmpty(waitStrategy));
+			Assert.assertEquals(Integer.valueOf(1), ring.poll());
+			producer.join();
+		}
+	}
+	
+	@Test
+	public void testAwaitNotEmptyInterrupted()
+	{
+		RingBuffer<Integer> ring = new RingBuffer<Integer>(4);
+		Thread.currentThread().interrupt();
+		try {
+			Assert.assertFalse(ring.awaitNotEmpty(RingBuffer.WaitStrategy.PARK));
+		}
+		finally {
+			Assert.assertTrue(Thread.interrupted());
+		}
+	}
+	
+	@Test
+	public void testConcurrentProducers() throws InterruptedException
+	{
+		final int producers = 4;
+		final int perProducer = 50000;
+		final RingBuffer<Long> ring = new RingBuffer<Long>(64);
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		Thread threads[] = new Thread[producers];
+		for (int p=0; p<producers; p++)
+		{
+			final long base = (long) p * perProducer;
+			threads[p] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					for (long i=0; i<perProducer; i++)
+						while (!ring.offer(base + i))
+							Thread.yield();
+				}
+			};
+			threads[p].start();
+		}
+		
+		AtomicLong sum = new AtomicLong();
+		long lastSeen[] = new long[producers];
+		java.util.Arrays.fill(lastSeen, -1L);
+		start.countDown();
+		
+		Long batch[] = new Long[16];
+		int received = 0;
+		while (received < producers * perProducer)
+		{
+			Assert.assertTrue(ring.awaitNotEmpty(RingBuffer.WaitStrategy.PARK));
+			int count = ring.drainTo(batch);
+			for (int i=0; i<count; i++)
+			{
+				long value = batch[i];
+				int producer = (int) (value / perProducer);
+				// each producer's elements must arrive in the order offered
+				Assert.assertTrue(value > lastSeen[producer]);
+				lastSeen[producer] = value;
+				sum.addAndGet(value);
+			}
+			received += count;
+		}
+		
+		for (Thread thread : threads)
+			thread.join();
+		long n = (long) producers * perProducer;
+		Assert.assertEquals(n * (n - 1) / 2, sum.get());
+		Assert.assertTrue(ring.isEmpty());
+	}
+}
@@ -76,6 +76,12 @@ public class ReconnectingSocket
 	{
 		tryToWrite(data.getBytes(charset));
 	}
+
+	// data is written whole or (if not connected or the write fails) not at all
+	public void write(byte data[])
+	{
+		tryToWrite(data);
+	}
 	
 	public void stop()
 	{
@@ -23,7 +23,18 @@
  */
 package com.brienwheeler.lib.monitor.telemetry;
 
+import java.util.List;
+
 public interface ITelemetryInfoProcessor
 {
 	void process(TelemetryInfo telemetryInfo);
+
+	/**
+	 * Process several TelemetryInfo in order, with the same result as calling process() on
+	 * each, letting implementations amortize per-call costs such as socket writes.  The list
+	 * may be a view over a reused buffer: it must not be modified or retained after returning.
+	 * 
+	 * @param telemetryInfos the published TelemetryInfo to process, in order
+	 */
+	void processBatch(List<TelemetryInfo> telemetryInfos);
 }
@@ -23,9 +23,18 @@
  */
 package com.brienwheeler.lib.monitor.telemetry;
 
+import java.util.List;
+
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 
 public interface ITelemetryPublishService
 {
 	void publish(TelemetryInfo telemetryInfo);
+
+	/**
+	 * Publish several TelemetryInfo in order, handing them to processors as one batch.
+	 * 
+	 * @param telemetryInfos the TelemetryInfo to publish, in order
+	 */
+	void publishBatch(List<TelemetryInfo> telemetryInfos);
 }
@@ -23,22 +23,58 @@
  */
 package com.brienwheeler.lib.monitor.telemetry;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 
+import com.brienwheeler.lib.util.ValidationException;
 import com.brienwheeler.lib.util.ValidationUtils;
 
+/**
+ * A named, timestamped set of attributes published to telemetry processors.  Attributes
+ * are kept in insertion order in small parallel arrays rather than a map: an instance is
+ * created for every work name in every publish interval and typically holds a dozen or
+ * two attributes, for which a linear scan (comparing names by identity first, as they
+ * are normally constants) is cheaper than hashing and far smaller than map entries.
+ * <p>
+ * Values set with setLong() and setDouble() are stored unboxed and can be read back
+ * the same way, after checking getType(), so numeric telemetry need not allocate
+ * between publisher and processor.  get() boxes them as Long and Double.
+ * <p>
+ * Subclasses that used the former protected attributes and processedVersions maps
+ * read the same contents through getAttributes() and getProcessedVersions(), which
+ * return snapshots; changes go through set() and setProcessedVersion().
+ */
 public class TelemetryInfo
 {
 	public static final String ATTR_NAME = "name";
 	public static final String ATTR_CREATED_AT = "createdAt";
 	
 	protected static enum State { UNPUBLISHED, PUBLISHED };
+	public static enum AttributeType { OBJECT, LONG, DOUBLE };
 	
-	protected final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
-	protected final ConcurrentHashMap<String, Object> processedVersions = new ConcurrentHashMap<String, Object>();
+	private static final int INITIAL_CAPACITY = 8;
+	private static final String NO_NAMES[] = new String[0];
+	private static final Object NO_VALUES[] = new Object[0];
+	private static final AttributeType NO_TYPES[] = new AttributeType[0];
+	private static final long NO_BITS[] = new long[0];
+
+	private final String name;
+	private final long createdAt;
+	// attributes and processed versions are guarded by this, arrays allocated on first use
+	private String attrNames[] = NO_NAMES;
+	private Object attrValues[] = NO_VALUES;
+	private AttributeType attrTypes[] = NO_TYPES;
+	// LONG values, or raw bits of DOUBLE values
+	private long attrBits[] = NO_BITS;
+	private int attrCount;
+	private String versionNames[] = NO_NAMES;
+	private Object versionValues[] = NO_VALUES;
+	private int versionCount;
 	protected final Log log;
 	protected State state = State.UNPUBLISHED;
 	protected long lastTimestamp;
@@ -50,28 +86,27 @@ public class TelemetryInfo
 	
 	public TelemetryInfo(String name, Log log)
 	{
-		ValidationUtils.assertNotNull(name,  "name cannot be null");
-		
-		attributes.put(ATTR_NAME, name);
-		this.log = log;
-		this.lastTimestamp = System.currentTimeMillis();
-		attributes.put(ATTR_CREATED_AT, lastTimestamp);
+		this(name, log, System.currentTimeMillis());
 	}
 	
 	public TelemetryInfo(String name, Log log, long createdAt)
 	{
-		this(name, log);
-		attributes.put(ATTR_CREATED_AT, createdAt);
+		ValidationUtils.assertNotNull(name,  "name cannot be null");
+		
+		this.name = name;
+		this.log = log;
+		this.createdAt = createdAt;
+		this.lastTimestamp = System.currentTimeMillis();
 	}
 	
 	public String getName()
 	{
-		return (String) attributes.get(ATTR_NAME);
+		return name;
 	}
 	
 	public long getCreatedAt()
 	{
-		return ((Long) attributes.get(ATTR_CREATED_AT)).longValue();
+		return createdAt;
 	}
 	
 	public Log getLog()
@@ -79,9 +114,18 @@ public class TelemetryInfo
 		return log;
 	}
 	
-	public Collection<String> getAttributeNames()
+	/**
+	 * @return a snapshot of the attribute names, ATTR_NAME and ATTR_CREATED_AT first and
+	 * then in insertion order.  Unlike the live key set this used to return, it does not
+	 * reflect attributes set or cleared afterwards.
+	 */
+	public synchronized Collection<String> getAttributeNames()
 	{
-		return attributes.keySet();
+		String names[] = new String[attrCount + 2];
+		names[0] = ATTR_NAME;
+		names[1] = ATTR_CREATED_AT;
+		System.arraycopy(attrNames, 0, names, 2, attrCount);
+		return Collections.unmodifiableList(Arrays.asList(names));
 	}
 	
 	public void set(String attrName, Object attrValue)
@@ -89,21 +133,116 @@ public class TelemetryInfo
 		validateModify(attrName);
 		ValidationUtils.assertNotNull(attrValue,  "attrValue cannot be null");
 		
-		attributes.put(attrName, attrValue);
+		synchronized (this) {
+			put(attrName, AttributeType.OBJECT, 0L, attrValue);
+		}
+	}
+	
+	public void setLong(String attrName, long attrValue)
+	{
+		validateModify(attrName);
+		
+		synchronized (this) {
+			put(attrName, AttributeType.LONG, attrValue, null);
+		}
+	}
+	
+	public void setDouble(String attrName, double attrValue)
+	{
+		validateModify(attrName);
+		
+		synchronized (this) {
+			put(attrName, AttributeType.DOUBLE, Double.doubleToRawLongBits(attrValue), null);
+		}
 	}
 	
 	public Object get(String attrName)
 	{
 		ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
 		
-		return attributes.get(attrName);
+		if (attrName.equals(ATTR_NAME))
+			return name;
+		if (attrName.equals(ATTR_CREATED_AT))
+			return createdAt;
+		synchronized (this) {
+			int index = indexOf(attrNames, attrCount, attrName);
+			return index < 0 ? null : getValue(index);
+		}
+	}
+	
+	// null if the attribute is not set
+	public AttributeType getType(String attrName)
+	{
+		ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
+		
+		if (attrName.equals(ATTR_NAME))
+			return AttributeType.OBJECT;
+		if (attrName.equals(ATTR_CREATED_AT))
+			return AttributeType.LONG;
+		synchronized (this) {
+			int index = indexOf(attrNames, attrCount, attrName);
+			return index < 0 ? null : attrTypes[index];
+		}
+	}
+	
+	// the value of a numeric attribute, converted as a Java cast would
+	public long getLong(String attrName)
+	{
+		ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
+		
+		if (attrName.equals(ATTR_CREATED_AT))
+			return createdAt;
+		synchronized (this) {
+			int index = indexOfNumeric(attrName);
+			switch (attrTypes[index]) {
+				case LONG :
+					return attrBits[index];
+				case DOUBLE :
+					return (long) Double.longBitsToDouble(attrBits[index]);
+				default :
+					return ((Number) attrValues[index]).longValue();
+			}
+		}
+	}
+	
+	// the value of a numeric attribute, converted as a Java cast would
+	public double getDouble(String attrName)
+	{
+		ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
+		
+		if (attrName.equals(ATTR_CREATED_AT))
+			return createdAt;
+		synchronized (this) {
+			int index = indexOfNumeric(attrName);
+			switch (attrTypes[index]) {
+				case LONG :
+					return attrBits[index];
+				case DOUBLE :
+					return Double.longBitsToDouble(attrBits[index]);
+				default :
+					return ((Number) attrValues[index]).doubleValue();
+			}
+		}
 	}
 	
 	public void clear(String attrName)
 	{
 		validateModify(attrName);
 		
-		attributes.remove(attrName);
+		synchronized (this) {
+			int index = indexOf(attrNames, attrCount, attrName);
+			if (index < 0)
+				return;
+			// keep insertion order
+			int moved = attrCount - index - 1;
+			System.arraycopy(attrNames, index + 1, attrNames, index, moved);
+			System.arraycopy(attrValues, index + 1, attrValues, index, moved);
+			System.arraycopy(attrTypes, index + 1, attrTypes, index, moved);
+			System.arraycopy(attrBits, index + 1, attrBits, index, moved);
+			attrCount--;
+			attrNames[attrCount] = null;
+			attrValues[attrCount] = null;
+		}
 	}
 
 	public synchronized void markDelta(String attrName)
@@ -111,7 +250,7 @@ public class TelemetryInfo
 		validateModify(attrName);
 		
 		long newTimestamp = System.currentTimeMillis();
-		attributes.put(attrName, newTimestamp - lastTimestamp);
+		put(attrName, AttributeType.LONG, newTimestamp - lastTimestamp, null);
 		lastTimestamp = newTimestamp;
 	}
 	
@@ -128,14 +267,54 @@ public class TelemetryInfo
 	public Object getProcessedVersion(String versionName)
 	{
 		ValidationUtils.assertNotNull(versionName,  "versionName cannot be null");
-		return processedVersions.get(versionName);
+		synchronized (this) {
+			int index = indexOf(versionNames, versionCount, versionName);
+			return index < 0 ? null : versionValues[index];
+		}
 	}
 
 	public void setProcessedVersion(String versionName, Object versionValue)
 	{
 		ValidationUtils.assertNotNull(versionName,  "versionName cannot be null");
 		ValidationUtils.assertNotNull(versionValue,  "versionValue cannot be null");
-		processedVersions.put(versionName, versionValue);
+		synchronized (this) {
+			int index = indexOf(versionNames, versionCount, versionName);
+			if (index < 0) {
+				// rarely more than one or two processed versions
+				if (versionCount == versionNames.length) {
+					versionNames = Arrays.copyOf(versionNames, versionCount + 2);
+					versionValues = Arrays.copyOf(versionValues, versionCount + 2);
+				}
+				index = versionCount++;
+				versionNames[index] = versionName;
+			}
+			versionValues[index] = versionValue;
+		}
+	}
+
+	/**
+	 * @return a snapshot of all attributes in getAttributeNames() order, numeric values
+	 * boxed as get() would return them
+	 */
+	protected synchronized Map<String, Object> getAttributes()
+	{
+		Map<String, Object> attributes = new LinkedHashMap<String, Object>(attrCount * 2 + 4);
+		attributes.put(ATTR_NAME, name);
+		attributes.put(ATTR_CREATED_AT, createdAt);
+		for (int i=0; i<attrCount; i++)
+			attributes.put(attrNames[i], getValue(i));
+		return Collections.unmodifiableMap(attributes);
+	}
+
+	/**
+	 * @return a snapshot of the processed versions, in the order they were first set
+	 */
+	protected synchronized Map<String, Object> getProcessedVersions()
+	{
+		Map<String, Object> processedVersions = new LinkedHashMap<String, Object>(versionCount * 2 + 1);
+		for (int i=0; i<versionCount; i++)
+			processedVersions.put(versionNames[i], versionValues[i]);
+		return Collections.unmodifiableMap(processedVersions);
 	}
 
 	@Override
@@ -143,21 +322,89 @@ public class TelemetryInfo
 	{
 		StringBuffer buf = new StringBuffer(1024);
 		buf.append(getClass().getSimpleName()).append(":[");
-		buf.append(ATTR_NAME).append("=").append(getName());
-		buf.append(",").append(ATTR_CREATED_AT).append("=").append(get(ATTR_CREATED_AT));
-		for (String attrName : attributes.keySet()) {
-			if (attrName.equals(ATTR_NAME) || attrName.equals(ATTR_CREATED_AT))
-				continue;
-			buf.append(",").append(attrName).append("=").append(get(attrName));
+		buf.append(ATTR_NAME).append("=").append(name);
+		buf.append(",").append(ATTR_CREATED_AT).append("=").append(createdAt);
+		synchronized (this) {
+			for (int i=0; i<attrCount; i++) {
+				buf.append(",").append(attrNames[i]).append("=");
+				switch (attrTypes[i]) {
+					case LONG :
+						buf.append(attrBits[i]);
+						break;
+					case DOUBLE :
+						buf.append(Double.longBitsToDouble(attrBits[i]));
+						break;
+					default :
+						buf.append(attrValues[i]);
+				}
+			}
 		}
 		buf.append("]");
 		return buf.toString();
 	}
 
+	// caller holds this
+	private void put(String attrName, AttributeType attrType, long bits, Object attrValue)
+	{
+		int index = indexOf(attrNames, attrCount, attrName);
+		if (index < 0) {
+			if (attrCount == attrNames.length) {
+				int capacity = Math.max(INITIAL_CAPACITY, attrCount * 2);
+				attrNames = Arrays.copyOf(attrNames, capacity);
+				attrValues = Arrays.copyOf(attrValues, capacity);
+				attrTypes = Arrays.copyOf(attrTypes, capacity);
+				attrBits = Arrays.copyOf(attrBits, capacity);
+			}
+			index = attrCount++;
+			attrNames[index] = attrName;
+		}
+		attrTypes[index] = attrType;
+		attrBits[index] = bits;
+		attrValues[index] = attrValue;
+	}
+
+	// caller holds this
+	private Object getValue(int index)
+	{
+		switch (attrTypes[index]) {
+			case LONG :
+				return attrBits[index];
+			case DOUBLE :
+				return Double.longBitsToDouble(attrBits[index]);
+			default :
+				return attrValues[index];
+		}
+	}
+
+	// caller holds this
+	private int indexOfNumeric(String attrName)
+	{
+		// build the messages only on failure, this is on every numeric read
+		int index = indexOf(attrNames, attrCount, attrName);
+		if (index < 0)
+			throw new ValidationException("attr '" + attrName + "' not set");
+		if (attrTypes[index] == AttributeType.OBJECT && !(attrValues[index] instanceof Number))
+			throw new ValidationException("attr '" + attrName + "' is not numeric");
+		return index;
+	}
+
+	private static int indexOf(String names[], int count, String name)
+	{
+		// names are normally constants, so try identity before equality
+		for (int i=0; i<count; i++)
+			if (names[i] == name)
+				return i;
+		for (int i=0; i<count; i++)
+			if (names[i].equals(name))
+				return i;
+		return -1;
+	}
+
 	private void validateModify(String attrName)
 	{
 		synchronized (this) {
-			ValidationUtils.assertTrue(state != State.PUBLISHED, "can't modify a published " + getClass().getSimpleName());
+			if (state == State.PUBLISHED)
+				throw new ValidationException("can't modify a published " + getClass().getSimpleName());
 		}
 		ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
 		ValidationUtils.assertFalse(attrName.equals(ATTR_NAME), "can't modify attr '" + ATTR_NAME + "'");
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.telemetry.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+
+/**
+ * Compact binary encoding of a TelemetryInfo's name, creation time and attributes, for
+ * holding TelemetryInfo outside the heap.  LONG and DOUBLE attributes are written as
+ * 8 bytes each; OBJECT attributes holding a Number come back as LONG or DOUBLE and any
+ * other OBJECT comes back as its toString().  The Log and processed versions are not
+ * encoded, so a decoded TelemetryInfo has a null Log and no processed versions.
+ */
+public class TelemetryInfoCodec
+{
+	private static final byte TYPE_LONG = 0;
+	private static final byte TYPE_DOUBLE = 1;
+	private static final byte TYPE_STRING = 2;
+	
+	private TelemetryInfoCodec() {}
+	
+	/**
+	 * @param telemetryInfo the TelemetryInfo to encode
+	 * @return the encoded name, creation time and attributes
+	 * @throws IOException if a name or String value is too long to encode (64K of UTF-8)
+	 */
+	public static byte[] encode(TelemetryInfo telemetryInfo) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(telemetryInfo.getName());
+		out.writeLong(telemetryInfo.getCreatedAt());
+		
+		// snapshot, the first two are ATTR_NAME and ATTR_CREATED_AT
+		String attrNames[] = telemetryInfo.getAttributeNames().toArray(new String[0]);
+		out.writeInt(attrNames.length - 2);
+		for (int i=2; i<attrNames.length; i++)
+		{
+			String attrName = attrNames[i];
+			out.writeUTF(attrName);
+			switch (telemetryInfo.getType(attrName))
+			{
+				case LONG :
+					out.writeByte(TYPE_LONG);
+					out.writeLong(telemetryInfo.getLong(attrName));
+					break;
+				case DOUBLE :
+					out.writeByte(TYPE_DOUBLE);
+					out.writeDouble(telemetryInfo.getDouble(attrName));
+					break;
+				default :
+					Object attrValue = telemetryInfo.get(attrName);
+					if (attrValue instanceof Double || attrValue instanceof Float) {
+						out.writeByte(TYPE_DOUBLE);
+						out.writeDouble(((Number) attrValue).doubleValue());
+					}
+					else if (attrValue instanceof Number) {
+						out.writeByte(TYPE_LONG);
+						out.writeLong(((Number) attrValue).longValue());
+					}
+					else {
+						out.writeByte(TYPE_STRING);
+						out.writeUTF(String.valueOf(attrValue));
+					}
+					break;
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param encoded bytes produced by encode()
+	 * @return an unpublished TelemetryInfo
+	 * @throws IOException if the bytes are not an encoded TelemetryInfo
+	 */
+	public static TelemetryInfo decode(byte encoded[]) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+		String name = in.readUTF();
+		long createdAt = in.readLong();
+		TelemetryInfo telemetryInfo = new TelemetryInfo(name, null, createdAt);
+		
+		int attrCount = in.readInt();
+		if (attrCount < 0)
+			throw new IOException("bad attribute count " + attrCount);
+		for (int i=0; i<attrCount; i++)
+		{
+			String attrName = in.readUTF();
+			byte type = in.readByte();
+			switch (type)
+			{
+				case TYPE_LONG :
+					telemetryInfo.setLong(attrName, in.readLong());
+					break;
+				case TYPE_DOUBLE :
+					telemetryInfo.setDouble(attrName, in.readDouble());
+					break;
+				case TYPE_STRING :
+					telemetryInfo.set(attrName, in.readUTF());
+					break;
+				default :
+					throw new IOException("bad attribute type " + type);
+			}
+		}
+		return telemetryInfo;
+	}
+}
@@ -37,6 +37,13 @@ public class TelemetryInfoJsonLogger extends TelemetryInfoProcessorBase
 	@Override
 	protected void onProcess(TelemetryInfo telemetryInfo)
 	{
+		Log logToUse = telemetryInfo.getLog();
+		if (logToUse == null)
+			logToUse = log;
+		if (!logToUse.isInfoEnabled())
+			return;
+
+		// the serialized String goes to the log as is, no further copies are made
 		Object jsonString = telemetryInfo.getProcessedVersion(TelemetryInfoJsonSerializer.VERSION_NAME);
 		if (jsonString == null)
 		{
@@ -44,15 +51,6 @@ public class TelemetryInfoJsonLogger extends TelemetryInfoProcessorBase
 			jsonString = telemetryInfo.getProcessedVersion(TelemetryInfoJsonSerializer.VERSION_NAME);
 		}
 		
-		if (jsonString == null) {
-			// serializer should have already logged an exception
-			return;
-		}
-		
-		Log logToUse = telemetryInfo.getLog();
-		if (logToUse == null)
-			logToUse = log;
-		
 		logToUse.info(jsonString);
 	}
 
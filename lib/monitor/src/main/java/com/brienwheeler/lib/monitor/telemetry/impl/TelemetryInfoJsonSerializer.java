@@ -25,16 +25,31 @@ package com.brienwheeler.lib.monitor.telemetry.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 
+/**
+ * Stores the JSON encoding of each TelemetryInfo (see {@link TelemetryInfoJsonWriter})
+ * as its processed version VERSION_NAME.  Encoding is done into a buffer reused by
+ * each thread, leaving the resulting String as the main allocation per TelemetryInfo.
+ */
 public class TelemetryInfoJsonSerializer extends TelemetryInfoProcessorBase
 {
 	public static final String VERSION_NAME = "json";
 	
 	public static final Log log = LogFactory.getLog(TelemetryInfoJsonSerializer.class);
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+	// larger buffers left by an unusually big TelemetryInfo are not kept
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue()
+		{
+			return new StringBuilder(INITIAL_BUFFER_SIZE);
+		}
+	};
 	
 	@Override
 	protected void onProcess(TelemetryInfo telemetryInfo)
@@ -43,38 +58,16 @@ public class TelemetryInfoJsonSerializer extends TelemetryInfoProcessorBase
 		if (telemetryInfo.getProcessedVersion(VERSION_NAME) != null)
 			return;
 
-		try {
-			JSONObject object = new JSONObject();
-			// first do well-known attributes
-			object.put(TelemetryInfo.ATTR_NAME, telemetryInfo.get(TelemetryInfo.ATTR_NAME));
-			object.put(TelemetryInfo.ATTR_CREATED_AT, telemetryInfo.get(TelemetryInfo.ATTR_CREATED_AT));
-			
-			for (String attrName : telemetryInfo.getAttributeNames()) {
-				// skip well-known attributes, already done
-				if (attrName.equals(TelemetryInfo.ATTR_NAME) ||
-						attrName.equals(TelemetryInfo.ATTR_CREATED_AT))
-					continue;
-				
-				// BDFIL
-				Object value = telemetryInfo.get(attrName);
-				if (value instanceof Boolean)
-					object.put(attrName, ((Boolean) value).booleanValue());
-				else if (value instanceof Double)
-					object.put(attrName, ((Double) value).doubleValue());
-				else if (value instanceof Float)
-					object.put(attrName, ((Float) value).floatValue());
-				else if (value instanceof Integer)
-					object.put(attrName, ((Integer) value).intValue());
-				else if (value instanceof Long)
-					object.put(attrName, ((Long) value).longValue());
-				else
-					object.put(attrName, telemetryInfo.get(attrName).toString());
-			}
-			
-			telemetryInfo.setProcessedVersion(VERSION_NAME, object.toString());
-		}
-		catch (JSONException e) {
-			log.error(e);
-		}
+		telemetryInfo.setProcessedVersion(VERSION_NAME, toJson(telemetryInfo));
+	}
+
+	public static String toJson(TelemetryInfo telemetryInfo)
+	{
+		StringBuilder out = buffer.get();
+		out.setLength(0);
+		String json = TelemetryInfoJsonWriter.write(telemetryInfo, out).toString();
+		if (out.capacity() > MAX_RETAINED_BUFFER_SIZE)
+			buffer.remove();
+		return json;
 	}
 }
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.telemetry.impl;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+
+/**
+ * Streaming JSON encoding of TelemetryInfo, appending directly to a caller's
+ * StringBuilder.  Attributes are written as name, createdAt and then the remaining
+ * attributes in insertion order.  Numbers and booleans are written as JSON literals
+ * (non-finite doubles as null) and every other value as its escaped toString().
+ */
+public class TelemetryInfoJsonWriter
+{
+	private static final char HEX_DIGITS[] = "0123456789abcdef".toCharArray();
+
+	private TelemetryInfoJsonWriter() {}
+
+	public static StringBuilder write(TelemetryInfo telemetryInfo, StringBuilder out)
+	{
+		out.append('{');
+		appendString(out, TelemetryInfo.ATTR_NAME).append(':');
+		appendString(out, telemetryInfo.getName());
+		out.append(',');
+		appendString(out, TelemetryInfo.ATTR_CREATED_AT).append(':').append(telemetryInfo.getCreatedAt());
+
+		for (String attrName : telemetryInfo.getAttributeNames()) {
+			// skip well-known attributes, already done
+			if (attrName.equals(TelemetryInfo.ATTR_NAME) || attrName.equals(TelemetryInfo.ATTR_CREATED_AT))
+				continue;
+
+			TelemetryInfo.AttributeType type = telemetryInfo.getType(attrName);
+			if (type == null)
+				continue; // cleared since getAttributeNames()
+
+			out.append(',');
+			appendString(out, attrName).append(':');
+			switch (type) {
+				case LONG :
+					out.append(telemetryInfo.getLong(attrName));
+					break;
+				case DOUBLE :
+					appendDouble(out, telemetryInfo.getDouble(attrName));
+					break;
+				default :
+					appendValue(out, telemetryInfo.get(attrName));
+			}
+		}
+
+		return out.append('}');
+	}
+
+	private static void appendValue(StringBuilder out, Object value)
+	{
+		// BDFIL
+		if (value instanceof Boolean)
+			out.append(((Boolean) value).booleanValue());
+		else if (value instanceof Double || value instanceof Float)
+			appendDouble(out, ((Number) value).doubleValue());
+		else if (value instanceof Integer || value instanceof Long)
+			out.append(((Number) value).longValue());
+		else
+			appendString(out, String.valueOf(value));
+	}
+
+	private static void appendDouble(StringBuilder out, double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			out.append("null");
+		else
+			out.append(value);
+	}
+
+	// append value as a quoted JSON string, escaping as required by RFC 7159
+	public static StringBuilder appendString(StringBuilder out, CharSequence value)
+	{
+		out.append('"');
+		int length = value.length();
+		int start = 0;
+		for (int i=0; i<length; i++) {
+			char c = value.charAt(i);
+			// U+2028 and U+2029 are valid JSON but not valid JavaScript
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029')
+				continue;
+
+			// copy the run of characters that needed no escaping in one go
+			out.append(value, start, i);
+			start = i + 1;
+			switch (c) {
+				case '"' :
+					out.append("\\\"");
+					break;
+				case '\\' :
+					out.append("\\\\");
+					break;
+				case '\b' :
+					out.append("\\b");
+					break;
+				case '\f' :
+					out.append("\\f");
+					break;
+				case '\n' :
+					out.append("\\n");
+					break;
+				case '\r' :
+					out.append("\\r");
+					break;
+				case '\t' :
+					out.append("\\t");
+					break;
+				default :
+					out.append("\\u").append(HEX_DIGITS[c >> 12]).append(HEX_DIGITS[(c >> 8) & 0xF])
+						.append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+			}
+		}
+		out.append(value, start, length);
+		return out.append('"');
+	}
+}
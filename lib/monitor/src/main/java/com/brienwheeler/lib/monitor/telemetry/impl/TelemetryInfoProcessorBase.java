@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.lib.monitor.telemetry.impl;
 
+import java.util.List;
+
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 
@@ -37,4 +39,24 @@ public abstract class TelemetryInfoProcessorBase implements ITelemetryInfoProces
 		onProcess(telemetryInfo);
 	}
 
+	@Override
+	public final void processBatch(List<TelemetryInfo> telemetryInfos)
+	{
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			telemetryInfo.checkPublished();
+		onProcessBatch(telemetryInfos);
+	}
+
+	/**
+	 * Process a batch of already checked TelemetryInfo.  Calls onProcess() for each, override
+	 * to handle the batch as a whole.
+	 * 
+	 * @param telemetryInfos the checked TelemetryInfo, which must not be retained
+	 */
+	protected void onProcessBatch(List<TelemetryInfo> telemetryInfos)
+	{
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			onProcess(telemetryInfo);
+	}
+
 }
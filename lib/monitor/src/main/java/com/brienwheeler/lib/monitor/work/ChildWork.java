@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls made from one unit of monitored work into another (an edge of the
+ * monitored work call graph) during an interval.
+ */
+public class ChildWork
+{
+	private final String sourceName;
+	private final String workName;
+	private final long count;
+	private final long duration;
+	private final TimeUnit durationUnit;
+
+	public ChildWork(String sourceName, String workName, long count, long duration, TimeUnit durationUnit)
+	{
+		this.sourceName = sourceName;
+		this.workName = workName;
+		this.count = count;
+		this.duration = duration;
+		this.durationUnit = durationUnit;
+	}
+
+	// source name of the child's WorkMonitor
+	public String getSourceName()
+	{
+		return sourceName;
+	}
+
+	public String getWorkName()
+	{
+		return workName;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	// total duration of the child calls
+	public long getDuration()
+	{
+		return duration;
+	}
+
+	// the child monitor's duration unit
+	public TimeUnit getDurationUnit()
+	{
+		return durationUnit;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+/**
+ * Failed calls of one unit of monitored work that threw a given exception class during
+ * an interval.  Classes beyond the monitor's error type capacity (see
+ * {@link WorkMonitor#setErrorTypeCapacity(int)}) are counted under OTHER_ERRORS.
+ */
+public class ErrorWork
+{
+	public static final String OTHER_ERRORS = "other";
+
+	private final String errorType;
+	private final long count;
+	private final long duration;
+
+	public ErrorWork(String errorType, long count, long duration)
+	{
+		this.errorType = errorType;
+		this.count = count;
+		this.duration = duration;
+	}
+
+	// fully qualified exception class name, or OTHER_ERRORS
+	public String getErrorType()
+	{
+		return errorType;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	// total duration of the failed calls
+	public long getDuration()
+	{
+		return duration;
+	}
+}
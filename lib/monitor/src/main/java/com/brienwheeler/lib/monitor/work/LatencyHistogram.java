@@ -0,0 +1,188 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Fixed-memory, lock-free histogram of non-negative duration values.  Values are
+ * counted in log-linear buckets (in the style of HdrHistogram): values below
+ * SUB_BUCKET_COUNT are counted exactly, and each larger power-of-two range is
+ * split into SUB_BUCKET_COUNT / 2 linear buckets, giving a worst-case relative
+ * error of 2 / SUB_BUCKET_COUNT.  Values above 2^(MAX_EXPONENT+1) are counted
+ * in the highest bucket, although the exact maximum is always retained.
+ * <p>
+ * Like {@link StripedCounter}, counts are striped by thread so that concurrent
+ * writers do not contend: each stripe holds a full set of buckets and its own
+ * maximum, and snapshots sum across stripes.  A stripe (BUCKET_COUNT + 1 longs) is
+ * only allocated once a thread hashing to it records a value.  Recording a value is
+ * an uncontended atomic increment (plus a CAS when it raises the stripe's maximum)
+ * and, once the stripe exists, never allocates.
+ */
+public class LatencyHistogram
+{
+	public static final int SUB_BUCKET_BITS = 5;
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	public static final int MAX_EXPONENT = 40;
+	public static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * (SUB_BUCKET_COUNT / 2);
+	// stripes are much larger than StripedCounter cells, so fewer are used
+	public static final int MAX_STRIPES = 16;
+
+	// each stripe's maximum is kept after its buckets
+	private static final int MAX_VALUE = BUCKET_COUNT;
+	private static final int DEFAULT_STRIPES =
+			Math.min(MAX_STRIPES, StripedCounter.stripesFor(Runtime.getRuntime().availableProcessors()));
+
+	private final int stripeMask;
+	private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+	public LatencyHistogram()
+	{
+		this(DEFAULT_STRIPES);
+	}
+
+	public LatencyHistogram(int stripes)
+	{
+		ValidationUtils.assertTrue(stripes > 0, "stripes must be greater than 0");
+		ValidationUtils.assertTrue(stripes <= MAX_STRIPES, "stripes must be no greater than " + MAX_STRIPES);
+		ValidationUtils.assertTrue(Integer.bitCount(stripes) == 1, "stripes must be a power of two");
+
+		this.stripeMask = stripes - 1;
+		this.stripes = new AtomicReferenceArray<AtomicLongArray>(stripes);
+	}
+
+	public void recordValue(long value)
+	{
+		recordValue(value, 1L);
+	}
+
+	// record count occurrences of value, e.g. one sampled value standing for count values
+	public void recordValue(long value, long count)
+	{
+		recordValue(StripedCounter.threadHash(), value, count);
+	}
+
+	// as recordValue(long, long) for callers updating several structures with one threadHash()
+	void recordValue(int threadHash, long value, long count)
+	{
+		if (value < 0)
+			value = 0;
+		AtomicLongArray stripe = getStripe(threadHash);
+		stripe.addAndGet(bucketIndex(value), count);
+		setMax(stripe, value);
+	}
+
+	void recordCounts(long valueCounts[], long valueMax)
+	{
+		AtomicLongArray stripe = getStripe(StripedCounter.threadHash());
+		for (int i=0; i<BUCKET_COUNT; i++) {
+			if (valueCounts[i] != 0)
+				stripe.addAndGet(i, valueCounts[i]);
+		}
+		setMax(stripe, valueMax);
+	}
+
+	// sparse form of recordCounts: bucketCounts[i] values in bucket buckets[i], zero counts skipped
+	void recordCounts(int buckets[], long bucketCounts[], long valueMax)
+	{
+		AtomicLongArray stripe = getStripe(StripedCounter.threadHash());
+		for (int i=0; i<buckets.length; i++) {
+			if (bucketCounts[i] != 0)
+				stripe.addAndGet(buckets[i], bucketCounts[i]);
+		}
+		setMax(stripe, valueMax);
+	}
+
+	public int getStripes()
+	{
+		return stripeMask + 1;
+	}
+
+	public LatencyHistogramSnapshot getSnapshot()
+	{
+		long snapshotCounts[] = new long[BUCKET_COUNT];
+		long snapshotMax = 0L;
+		for (int i=0; i<stripes.length(); i++) {
+			AtomicLongArray stripe = stripes.get(i);
+			if (stripe == null)
+				continue;
+			for (int j=0; j<BUCKET_COUNT; j++)
+				snapshotCounts[j] += stripe.get(j);
+			snapshotMax = Math.max(snapshotMax, stripe.get(MAX_VALUE));
+		}
+		return new LatencyHistogramSnapshot(snapshotCounts, snapshotMax);
+	}
+
+	private AtomicLongArray getStripe(int threadHash)
+	{
+		int index = threadHash & stripeMask;
+		AtomicLongArray stripe = stripes.get(index);
+		if (stripe == null) {
+			stripe = new AtomicLongArray(BUCKET_COUNT + 1);
+			if (!stripes.compareAndSet(index, null, stripe))
+				stripe = stripes.get(index);
+		}
+		return stripe;
+	}
+
+	private static void setMax(AtomicLongArray stripe, long value)
+	{
+		// the plain read keeps the common case (no new maximum) free of writes
+		long currentMax = stripe.get(MAX_VALUE);
+		while (value > currentMax) {
+			if (stripe.compareAndSet(MAX_VALUE, currentMax, value))
+				break;
+			currentMax = stripe.get(MAX_VALUE);
+		}
+	}
+
+	static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT)
+			return BUCKET_COUNT - 1;
+
+		int shift = exponent - SUB_BUCKET_BITS + 1;
+		int halfCount = SUB_BUCKET_COUNT / 2;
+		return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * halfCount + (int) ((value >>> shift) - halfCount);
+	}
+
+	static long bucketHighestValue(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+
+		int halfCount = SUB_BUCKET_COUNT / 2;
+		int offset = index - SUB_BUCKET_COUNT;
+		int shift = offset / halfCount + 1;
+		long lowestValue = ((long) (offset % halfCount + halfCount)) << shift;
+		return lowestValue + (1L << shift) - 1;
+	}
+}
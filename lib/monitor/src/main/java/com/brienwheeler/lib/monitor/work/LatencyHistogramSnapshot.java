@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Immutable point-in-time copy of a {@link LatencyHistogram}.
+ */
+public class LatencyHistogramSnapshot
+{
+	private final long counts[];
+	private final long totalCount;
+	private final long maxValue;
+
+	LatencyHistogramSnapshot(long counts[], long maxValue)
+	{
+		this.counts = counts;
+		long totalCount = 0;
+		for (long count : counts)
+			totalCount += count;
+		this.totalCount = totalCount;
+		this.maxValue = maxValue;
+	}
+
+	// not copied, callers must not modify
+	long[] getCounts()
+	{
+		return counts;
+	}
+
+	public long getTotalCount()
+	{
+		return totalCount;
+	}
+
+	public long getMaxValue()
+	{
+		return maxValue;
+	}
+
+	/**
+	 * Get the value at or below which the given percentage of recorded values fall, reported
+	 * as the highest value equivalent to the containing bucket (but never more than the
+	 * recorded maximum).
+	 * 
+	 * @param percentile percentile in the range [0, 100]
+	 * @return value at percentile, or 0 if no values were recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		ValidationUtils.assertTrue(percentile >= 0.0 && percentile <= 100.0, "percentile must be between 0 and 100");
+		if (totalCount == 0)
+			return 0L;
+
+		// round to nearest count so that (for example) 99.9% of 1000 is exactly 999
+		long targetCount = Math.max(1L, (long) (percentile / 100.0 * totalCount + 0.5));
+		long cumulativeCount = 0;
+		for (int i=0; i<counts.length; i++) {
+			cumulativeCount += counts[i];
+			if (cumulativeCount >= targetCount)
+				return Math.min(LatencyHistogram.bucketHighestValue(i), maxValue);
+		}
+		return maxValue;
+	}
+}
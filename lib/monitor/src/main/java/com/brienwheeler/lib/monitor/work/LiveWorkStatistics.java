@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.TimeUnit;
+
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Immutable result of a sliding-window query on a {@link WorkRecorder}: the activity
+ * of one work name from the start time to the time of the query.  Durations are
+ * counted in the buckets of {@link LatencyHistogram}, so percentiles have the same
+ * precision as those of the rolled {@link WorkRecord}s.
+ */
+public class LiveWorkStatistics
+{
+	private final String workName;
+	private final long startTime;
+	private final long endTime;
+	private final long okCount;
+	private final long errorCount;
+	private final long duration;
+	private final LatencyHistogramSnapshot durationHistogram;
+	private final TimeUnit durationUnit;
+
+	LiveWorkStatistics(String workName, long activity[], long endTime, TimeUnit durationUnit)
+	{
+		this.workName = workName;
+		this.startTime = activity[activity.length - 1];
+		this.endTime = endTime;
+		this.okCount = activity[LiveWorkWindow.OK_COUNT];
+		this.errorCount = activity[LiveWorkWindow.ERROR_COUNT];
+		this.duration = activity[LiveWorkWindow.DURATION];
+		long durationCounts[] = new long[LiveWorkWindow.BUCKET_COUNT];
+		System.arraycopy(activity, LiveWorkWindow.FIELD_COUNT, durationCounts, 0, LiveWorkWindow.BUCKET_COUNT);
+		this.durationHistogram = createHistogram(durationCounts);
+		this.durationUnit = durationUnit;
+	}
+
+	private LiveWorkStatistics(String workName, long startTime, long endTime, long okCount, long errorCount,
+			long duration, long durationCounts[], TimeUnit durationUnit)
+	{
+		this.workName = workName;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.okCount = okCount;
+		this.errorCount = errorCount;
+		this.duration = duration;
+		this.durationHistogram = createHistogram(durationCounts);
+		this.durationUnit = durationUnit;
+	}
+
+	/**
+	 * Combine with the statistics of the same work recorded elsewhere (e.g. by another
+	 * instance of the same service), which must use the same duration unit.  The
+	 * combined window covers both windows.
+	 * 
+	 * @param other the statistics to combine with these
+	 * @return new statistics covering both, neither input is modified
+	 */
+	public LiveWorkStatistics add(LiveWorkStatistics other)
+	{
+		ValidationUtils.assertNotNull(other, "other cannot be null");
+		ValidationUtils.assertTrue(durationUnit == other.durationUnit, "durationUnit must match");
+		long durationCounts[] = durationHistogram.getCounts();
+		long otherCounts[] = other.durationHistogram.getCounts();
+		long combinedCounts[] = new long[durationCounts.length];
+		for (int i=0; i<combinedCounts.length; i++)
+			combinedCounts[i] = durationCounts[i] + otherCounts[i];
+		return new LiveWorkStatistics(workName, Math.min(startTime, other.startTime), Math.max(endTime, other.endTime),
+				okCount + other.okCount, errorCount + other.errorCount, duration + other.duration, combinedCounts,
+				durationUnit);
+	}
+
+	public String getWorkName()
+	{
+		return workName;
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	// actual length of the window, which is at least the length requested
+	public long getWindowMillis()
+	{
+		return Math.max(1L, endTime - startTime);
+	}
+
+	public long getOkCount()
+	{
+		return okCount;
+	}
+
+	public long getErrorCount()
+	{
+		return errorCount;
+	}
+
+	public long getCount()
+	{
+		return okCount + errorCount;
+	}
+
+	// calls per second
+	public double getRate()
+	{
+		return getCount() * 1000.0 / getWindowMillis();
+	}
+
+	public double getErrorRatio()
+	{
+		long count = getCount();
+		return count == 0 ? 0.0 : (double) errorCount / count;
+	}
+
+	public long getDuration()
+	{
+		return duration;
+	}
+
+	public long getAvgDuration()
+	{
+		long count = getCount();
+		return count == 0 ? 0L : duration / count;
+	}
+
+	/**
+	 * Get the duration at or below which the given percentage of calls in the window
+	 * fall, as {@link LatencyHistogramSnapshot#getValueAtPercentile(double)}.
+	 * 
+	 * @param percentile percentile in the range [0, 100]
+	 * @return duration at percentile, or 0 if there were no calls
+	 */
+	public long getDurationAtPercentile(double percentile)
+	{
+		return durationHistogram.getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * Get the durations of the calls in the window.  The maximum of a window is not
+	 * tracked, so it is reported as the upper bound of the highest bucket in use.
+	 * 
+	 * @return the duration histogram of the window
+	 */
+	public LatencyHistogramSnapshot getDurationHistogram()
+	{
+		return durationHistogram;
+	}
+
+	public TimeUnit getDurationUnit()
+	{
+		return durationUnit;
+	}
+
+	private static LatencyHistogramSnapshot createHistogram(long durationCounts[])
+	{
+		int highest = durationCounts.length - 1;
+		while (highest >= 0 && durationCounts[highest] == 0)
+			highest--;
+		return new LatencyHistogramSnapshot(durationCounts,
+				highest < 0 ? 0L : LatencyHistogram.bucketHighestValue(highest));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Single daemon timer that advances the {@link LiveWorkWindow}s of every registered
+ * {@link WorkMonitor} once a second.  Monitors are held weakly and dropped once
+ * they have been garbage collected or unregistered; the timer thread exits when the
+ * last one is unregistered and is started again by the next registration.
+ */
+class LiveWorkTicker
+{
+	private static final Log log = LogFactory.getLog(LiveWorkTicker.class);
+
+	static final long TICK_MILLIS = 1000L;
+
+	private static final ConcurrentLinkedQueue<WeakReference<WorkMonitor>> workMonitors =
+			new ConcurrentLinkedQueue<WeakReference<WorkMonitor>>();
+	private static Timer timer;
+
+	private LiveWorkTicker()
+	{
+	}
+
+	static synchronized void register(WorkMonitor workMonitor)
+	{
+		workMonitors.add(new WeakReference<WorkMonitor>(workMonitor));
+		if (timer == null) {
+			timer = new Timer(LiveWorkTicker.class.getSimpleName(), true);
+			timer.scheduleAtFixedRate(new TimerTask() {
+				@Override
+				public void run()
+				{
+					tick(System.currentTimeMillis());
+				}
+			}, TICK_MILLIS, TICK_MILLIS);
+		}
+	}
+
+	static synchronized void unregister(WorkMonitor workMonitor)
+	{
+		Iterator<WeakReference<WorkMonitor>> iterator = workMonitors.iterator();
+		while (iterator.hasNext()) {
+			WorkMonitor registered = iterator.next().get();
+			if (registered == null || registered == workMonitor)
+				iterator.remove();
+		}
+		if (workMonitors.isEmpty() && timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+	// testability
+	static boolean isRegistered(WorkMonitor workMonitor)
+	{
+		for (WeakReference<WorkMonitor> reference : workMonitors) {
+			if (reference.get() == workMonitor)
+				return true;
+		}
+		return false;
+	}
+
+	static void tick(long now)
+	{
+		Iterator<WeakReference<WorkMonitor>> iterator = workMonitors.iterator();
+		while (iterator.hasNext()) {
+			WorkMonitor workMonitor = iterator.next().get();
+			if (workMonitor == null) {
+				iterator.remove();
+				continue;
+			}
+			// an exception escaping a TimerTask would cancel the timer
+			try {
+				workMonitor.tickLiveStatistics(now);
+			}
+			catch (RuntimeException e) {
+				log.error("error advancing live statistics of " + workMonitor.getSourceName(), e);
+			}
+		}
+	}
+}
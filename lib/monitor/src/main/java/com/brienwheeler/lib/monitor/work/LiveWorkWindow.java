@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sliding-window view of one work name's recent activity, independent of when the
+ * monitor's records are rolled.  The window adds nothing to the record path: it reads
+ * the recorder's cumulative activity, i.e. the totals of the records already detached
+ * plus the current record.  Once a second {@link LiveWorkTicker} copies the cumulative
+ * activity into a ring of snapshots, and a window query subtracts the snapshot taken
+ * the requested number of seconds ago from the current activity.
+ * <p>
+ * One-second snapshots are kept for the last FINE_SECONDS seconds and COARSE_SECONDS
+ * snapshots back to MAX_WINDOW_SECONDS, so longer windows are extended to the
+ * preceding coarse snapshot.  Durations are counted in {@link LatencyHistogram}
+ * buckets, so window percentiles have the precision of the rolled records; snapshots
+ * keep only the range of buckets in use.
+ * <p>
+ * A resettable baseline snapshot also allows queries of all activity since the last
+ * reset (or since creation).  Ticks, queries and detaching the current record are
+ * serialized on the window; recording threads never take its lock.
+ */
+class LiveWorkWindow
+{
+	static final int FINE_SECONDS = 10;
+	static final int COARSE_SECONDS = 10;
+	static final int MAX_WINDOW_SECONDS = 60;
+	static final int BUCKET_COUNT = LatencyHistogram.BUCKET_COUNT;
+
+	static final int OK_COUNT = 0;
+	static final int ERROR_COUNT = 1;
+	static final int DURATION = 2;
+	static final int FIELD_COUNT = 3;
+
+	private final AtomicReference<MutableWorkRecord> current;
+	// cumulative activity of the records already detached
+	private final long detached[] = new long[FIELD_COUNT + BUCKET_COUNT];
+	// each ring has a slot beyond its longest lookback, so the slot a tick replaces is never one a query reads
+	private final Snapshot fine[] = new Snapshot[FINE_SECONDS + 2];
+	private final Snapshot coarse[] = new Snapshot[MAX_WINDOW_SECONDS / COARSE_SECONDS + 2];
+	private long ticks;
+	private Snapshot baseline;
+
+	LiveWorkWindow(long now, AtomicReference<MutableWorkRecord> current)
+	{
+		this.current = current;
+		Snapshot initial = new Snapshot(now, new long[FIELD_COUNT + BUCKET_COUNT]);
+		fine[0] = initial;
+		coarse[0] = initial;
+		baseline = initial;
+	}
+
+	// detach the recorder's current record in favor of next, keeping its activity in the window
+	synchronized MutableWorkRecord detach(MutableWorkRecord next)
+	{
+		MutableWorkRecord mutableWorkRecord = current.getAndSet(next);
+		if (mutableWorkRecord != null)
+			add(mutableWorkRecord, detached);
+		return mutableWorkRecord;
+	}
+
+	// called once a second, from a single thread
+	synchronized void tick(long now)
+	{
+		long next = ticks + 1;
+		Snapshot latest = fine[(int) (ticks % fine.length)];
+		long values[] = capture();
+		// idle work shares the previous snapshot's values
+		Snapshot snapshot = latest.matches(values) ? new Snapshot(now, latest) : new Snapshot(now, values);
+		fine[(int) (next % fine.length)] = snapshot;
+		if (next % COARSE_SECONDS == 0)
+			coarse[(int) ((next / COARSE_SECONDS) % coarse.length)] = snapshot;
+		ticks = next;
+	}
+
+	/**
+	 * Get the activity since the snapshot at least seconds old (or since this window
+	 * was created, if younger).  The returned values are differences of cumulative
+	 * counters: OK_COUNT, ERROR_COUNT and DURATION followed by BUCKET_COUNT duration
+	 * bucket counts, and the start time of the window in the last element.
+	 */
+	synchronized long[] getActivity(int seconds)
+	{
+		Snapshot start;
+		if (seconds <= FINE_SECONDS)
+			start = fine[(int) (Math.max(0L, ticks - seconds) % fine.length)];
+		else
+			start = coarse[(int) ((Math.max(0L, ticks - seconds) / COARSE_SECONDS) % coarse.length)];
+		return getActivitySince(start);
+	}
+
+	// as getActivity(int), since the last reset
+	synchronized long[] getActivity()
+	{
+		return getActivitySince(baseline);
+	}
+
+	synchronized void reset(long now)
+	{
+		baseline = new Snapshot(now, capture());
+	}
+
+	private long[] getActivitySince(Snapshot start)
+	{
+		long values[] = capture();
+		long activity[] = new long[FIELD_COUNT + BUCKET_COUNT + 1];
+		for (int i=0; i<values.length; i++)
+			activity[i] = values[i] - start.get(i);
+		activity[activity.length - 1] = start.time;
+		return activity;
+	}
+
+	private long[] capture()
+	{
+		long values[] = detached.clone();
+		MutableWorkRecord mutableWorkRecord = current.get();
+		if (mutableWorkRecord != null)
+			add(mutableWorkRecord, values);
+		return values;
+	}
+
+	private static void add(MutableWorkRecord mutableWorkRecord, long values[])
+	{
+		// histogram first so that counts never trail a concurrently recorded bucket
+		long counts[] = mutableWorkRecord.getDurationHistogram().getSnapshot().getCounts();
+		for (int i=0; i<BUCKET_COUNT; i++)
+			values[FIELD_COUNT + i] += counts[i];
+		values[OK_COUNT] += mutableWorkRecord.getWorkOkCount();
+		values[ERROR_COUNT] += mutableWorkRecord.getWorkErrorCount();
+		values[DURATION] += mutableWorkRecord.getWorkOkDuration() + mutableWorkRecord.getWorkErrorDuration();
+	}
+
+	private static class Snapshot
+	{
+		private final long time;
+		private final long fields[];
+		// duration bucket counts from bucket firstBucket on, zero outside that range
+		private final int firstBucket;
+		private final long buckets[];
+
+		private Snapshot(long time, long values[])
+		{
+			this.time = time;
+			this.fields = Arrays.copyOf(values, FIELD_COUNT);
+			int first = FIELD_COUNT;
+			while (first < values.length && values[first] == 0)
+				first++;
+			int last = values.length;
+			while (last > first && values[last - 1] == 0)
+				last--;
+			this.firstBucket = first - FIELD_COUNT;
+			this.buckets = Arrays.copyOfRange(values, first, last);
+		}
+
+		private Snapshot(long time, Snapshot same)
+		{
+			this.time = time;
+			this.fields = same.fields;
+			this.firstBucket = same.firstBucket;
+			this.buckets = same.buckets;
+		}
+
+		long get(int index)
+		{
+			if (index < FIELD_COUNT)
+				return fields[index];
+			int bucket = index - FIELD_COUNT - firstBucket;
+			return bucket >= 0 && bucket < buckets.length ? buckets[bucket] : 0L;
+		}
+
+		boolean matches(long values[])
+		{
+			for (int i=0; i<values.length; i++) {
+				if (values[i] != get(i))
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -35,4 +35,21 @@ public @interface MonitoredWork
 	public static final String NO_NAME = ".";
 	
 	String value() default "";
+
+	/**
+	 * Record only 1 in sampleRate calls, chosen at random, scaling the recorded counts
+	 * and durations by sampleRate.  Each sampled call also counts as sampleRate calls in
+	 * the in-flight and peak gauges, which are then estimates of the same scale.
+	 * 
+	 * @return how many calls each recorded call stands for, 1 to record every call
+	 */
+	int sampleRate() default 1;
+
+	/**
+	 * Keep a short summary of the call's arguments with the slowest invocations of each
+	 * interval.  The summary is only built for calls slow enough to be kept.
+	 * 
+	 * @return whether to summarize the arguments of the slowest calls
+	 */
+	boolean summarizeArguments() default false;
 }
@@ -23,6 +23,11 @@
  */
 package com.brienwheeler.lib.monitor.work;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -30,11 +35,28 @@ import com.brienwheeler.lib.util.ValidationUtils;
 
 public class MutableWorkRecord
 {
+	private static final int OK_COUNT = 0;
+	private static final int OK_DURATION = 1;
+	private static final int ERROR_COUNT = 2;
+	private static final int ERROR_DURATION = 3;
+	private static final int SELF_DURATION = 4;
+	private static final int RESOURCE_COUNT = 5;
+	private static final int CPU_TIME = 6;
+	private static final int ALLOCATED_BYTES = 7;
+	private static final int FIELD_COUNT = 8;
+
 	private final String workName;
-	private final AtomicInteger workOkCount = new AtomicInteger(0);
-	private final AtomicLong workOkDuration = new AtomicLong(0);
-	private final AtomicInteger workErrorCount = new AtomicInteger(0);
-	private final AtomicLong workErrorDuration = new AtomicLong(0);
+	private final StripedCounter counters = new StripedCounter(FIELD_COUNT);
+	private final LatencyHistogram durationHistogram = new LatencyHistogram();
+	private volatile int inFlight;
+	private volatile int peakInFlight;
+	private volatile SlowestWorkTracker slowestWork;
+	private final ConcurrentHashMap<WorkRecorder, WeightedWorkCounter> childWork =
+			new ConcurrentHashMap<WorkRecorder, WeightedWorkCounter>();
+	private final ConcurrentHashMap<String, WeightedWorkCounter> errorWork =
+			new ConcurrentHashMap<String, WeightedWorkCounter>();
+	private final AtomicInteger errorTypes = new AtomicInteger();
+	private final WeightedWorkCounter otherErrors = new WeightedWorkCounter();
 
 	public MutableWorkRecord(String workName) {
 		workName = ValidationUtils.assertNotEmpty(workName, "workName cannot be empty");
@@ -43,33 +65,264 @@ public class MutableWorkRecord
 	
 	public void recordWorkOk(long duration)
 	{
-		workOkCount.incrementAndGet();
-		workOkDuration.addAndGet(duration);
+		recordWorkOk(duration, 1);
 	}
 
 	public void recordWorkError(long duration)
 	{
-		workErrorCount.incrementAndGet();
-		workErrorDuration.addAndGet(duration);
+		recordWorkError(duration, 1);
+	}
+
+	// weight > 1 when one sampled call stands for several calls
+	public void recordWorkOk(long duration, int weight)
+	{
+		recordWorkOk(duration, duration, weight);
+	}
+
+	public void recordWorkError(long duration, int weight)
+	{
+		recordWorkError(duration, duration, weight);
+	}
+
+	// selfDuration excludes time spent in nested monitored work
+	public void recordWorkOk(long duration, long selfDuration, int weight)
+	{
+		int threadHash = StripedCounter.threadHash();
+		counters.add(threadHash, OK_COUNT, weight);
+		counters.add(threadHash, OK_DURATION, duration * weight);
+		counters.add(threadHash, SELF_DURATION, selfDuration * weight);
+		durationHistogram.recordValue(threadHash, duration, weight);
+	}
+
+	public void recordWorkError(long duration, long selfDuration, int weight)
+	{
+		int threadHash = StripedCounter.threadHash();
+		counters.add(threadHash, ERROR_COUNT, weight);
+		counters.add(threadHash, ERROR_DURATION, duration * weight);
+		counters.add(threadHash, SELF_DURATION, selfDuration * weight);
+		durationHistogram.recordValue(threadHash, duration, weight);
+	}
+
+	// resource usage of weight calls; either measure may be -1 if unavailable
+	public void recordResourceUsage(long cpuTime, long allocatedBytes, int weight)
+	{
+		counters.add(RESOURCE_COUNT, weight);
+		if (cpuTime > 0)
+			counters.add(CPU_TIME, cpuTime * weight);
+		if (allocatedBytes > 0)
+			counters.add(ALLOCATED_BYTES, allocatedBytes * weight);
+	}
+
+	// record a call from this work into nested monitored work
+	void recordChildWork(WorkRecorder child, long duration, int weight)
+	{
+		addChildWork(child, weight, duration * weight);
+	}
+
+	// add count calls into the child's work taking duration in total
+	void addChildWork(WorkRecorder child, long count, long duration)
+	{
+		WeightedWorkCounter counter = childWork.get(child);
+		if (counter == null) {
+			counter = new WeightedWorkCounter();
+			WeightedWorkCounter existing = childWork.putIfAbsent(child, counter);
+			if (existing != null)
+				counter = existing;
+		}
+		counter.count.addAndGet(count);
+		counter.duration.addAndGet(duration);
+	}
+
+	/**
+	 * Record failed calls that threw errorType, counted under {@link ErrorWork#OTHER_ERRORS}
+	 * once capacity distinct types have been recorded.
+	 */
+	void recordErrorType(Class<?> errorType, long duration, int weight, int capacity)
+	{
+		addErrorType(errorType.getName(), weight, duration * weight, capacity);
+	}
+
+	// add count failed calls of the named exception class (or OTHER_ERRORS) taking duration in total
+	void addErrorType(String errorType, long count, long duration, int capacity)
+	{
+		WeightedWorkCounter counter = ErrorWork.OTHER_ERRORS.equals(errorType) ? otherErrors : errorWork.get(errorType);
+		if (counter == null) {
+			// reserve a place before adding so that concurrent new types never exceed capacity
+			if (errorTypes.incrementAndGet() > capacity) {
+				errorTypes.decrementAndGet();
+				counter = otherErrors;
+			}
+			else {
+				counter = new WeightedWorkCounter();
+				WeightedWorkCounter existing = errorWork.putIfAbsent(errorType, counter);
+				if (existing != null) {
+					errorTypes.decrementAndGet();
+					counter = existing;
+				}
+			}
+		}
+		counter.count.addAndGet(count);
+		counter.duration.addAndGet(duration);
+	}
+
+	// add totals recorded elsewhere, e.g. decoded from another process
+	void addTotals(long okCount, long okDuration, long errorCount, long errorDuration, long selfDuration,
+			long resourceCount, long cpuTime, long allocatedBytes)
+	{
+		counters.add(OK_COUNT, okCount);
+		counters.add(OK_DURATION, okDuration);
+		counters.add(ERROR_COUNT, errorCount);
+		counters.add(ERROR_DURATION, errorDuration);
+		counters.add(SELF_DURATION, selfDuration);
+		counters.add(RESOURCE_COUNT, resourceCount);
+		counters.add(CPU_TIME, cpuTime);
+		counters.add(ALLOCATED_BYTES, allocatedBytes);
+	}
+
+	/**
+	 * Merge all of other's totals, duration histogram and error types into this record.
+	 * Concurrency gauges are summed, so the merged peak is an upper bound.  Call graph
+	 * edges and slowest work are not merged.
+	 */
+	void merge(MutableWorkRecord other, int errorTypeCapacity)
+	{
+		addTotals(other.getWorkOkCount(), other.getWorkOkDuration(), other.getWorkErrorCount(),
+				other.getWorkErrorDuration(), other.getWorkSelfDuration(), other.getResourceCount(),
+				other.getCpuTime(), other.getAllocatedBytes());
+		LatencyHistogramSnapshot histogram = other.durationHistogram.getSnapshot();
+		durationHistogram.recordCounts(histogram.getCounts(), histogram.getMaxValue());
+		for (ErrorWork error : other.getErrorWork())
+			addErrorType(error.getErrorType(), error.getCount(), error.getDuration(), errorTypeCapacity);
+		setConcurrency(inFlight + other.inFlight, peakInFlight + other.peakInFlight);
+	}
+
+	// merge a thread's buffered work, including its call graph edges and error types
+	void merge(ThreadWorkBuffer.LocalWorkRecord localWorkRecord, int errorTypeCapacity)
+	{
+		counters.add(OK_COUNT, localWorkRecord.okCount);
+		counters.add(OK_DURATION, localWorkRecord.okDuration);
+		counters.add(ERROR_COUNT, localWorkRecord.errorCount);
+		counters.add(ERROR_DURATION, localWorkRecord.errorDuration);
+		counters.add(SELF_DURATION, localWorkRecord.selfDuration);
+		counters.add(RESOURCE_COUNT, localWorkRecord.resourceCount);
+		counters.add(CPU_TIME, localWorkRecord.cpuTime);
+		counters.add(ALLOCATED_BYTES, localWorkRecord.allocatedBytes);
+		ThreadWorkBuffer.SparseHistogram histogram = localWorkRecord.histogram;
+		if (histogram.size() > 0)
+			durationHistogram.recordCounts(histogram.getBuckets(), histogram.getCounts(), localWorkRecord.maxDuration);
+		if (localWorkRecord.childWork != null) {
+			for (Map.Entry<WorkRecorder, long[]> entry : localWorkRecord.childWork.entrySet())
+				addChildWork(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+		}
+		if (localWorkRecord.errorTypes != null) {
+			for (Map.Entry<Class<?>, long[]> entry : localWorkRecord.errorTypes.entrySet())
+				addErrorType(entry.getKey().getName(), entry.getValue()[0], entry.getValue()[1], errorTypeCapacity);
+		}
+	}
+
+	void setConcurrency(int inFlight, int peakInFlight)
+	{
+		this.inFlight = inFlight;
+		this.peakInFlight = peakInFlight;
+	}
+
+	void setSlowestWork(SlowestWorkTracker slowestWork)
+	{
+		this.slowestWork = slowestWork;
 	}
 
 	public String getWorkName() {
 		return workName;
 	}
 
+	// nothing has been recorded into this record yet
+	boolean isUnused() {
+		return counters.sum(OK_COUNT) == 0L && counters.sum(ERROR_COUNT) == 0L && counters.sum(RESOURCE_COUNT) == 0L &&
+				childWork.isEmpty() && errorWork.isEmpty() && otherErrors.count.get() == 0L;
+	}
+
 	public int getWorkOkCount() {
-		return workOkCount.get();
+		return (int) counters.sum(OK_COUNT);
 	}
 
 	public long getWorkOkDuration() {
-		return workOkDuration.get();
+		return counters.sum(OK_DURATION);
 	}
 
 	public int getWorkErrorCount() {
-		return workErrorCount.get();
+		return (int) counters.sum(ERROR_COUNT);
 	}
 
 	public long getWorkErrorDuration() {
-		return workErrorDuration.get();
+		return counters.sum(ERROR_DURATION);
+	}
+
+	// ok and error duration, less time spent in nested monitored work
+	public long getWorkSelfDuration() {
+		return counters.sum(SELF_DURATION);
+	}
+
+	// number of calls with resource usage recorded
+	public long getResourceCount() {
+		return counters.sum(RESOURCE_COUNT);
+	}
+
+	// thread CPU time, in the same unit as durations
+	public long getCpuTime() {
+		return counters.sum(CPU_TIME);
+	}
+
+	public long getAllocatedBytes() {
+		return counters.sum(ALLOCATED_BYTES);
+	}
+
+	public List<ChildWork> getChildWork() {
+		List<ChildWork> children = new ArrayList<ChildWork>(childWork.size());
+		for (Map.Entry<WorkRecorder, WeightedWorkCounter> entry : childWork.entrySet()) {
+			WorkRecorder child = entry.getKey();
+			children.add(new ChildWork(child.getWorkMonitor().getSourceName(), child.getWorkName(),
+					entry.getValue().count.get(), entry.getValue().duration.get(), child.getWorkMonitor().getDurationUnit()));
+		}
+		return children;
+	}
+
+	// failed calls by exception class, with OTHER_ERRORS last if present
+	public List<ErrorWork> getErrorWork() {
+		List<ErrorWork> errors = new ArrayList<ErrorWork>(errorWork.size() + 1);
+		for (Map.Entry<String, WeightedWorkCounter> entry : errorWork.entrySet()) {
+			errors.add(new ErrorWork(entry.getKey(), entry.getValue().count.get(),
+					entry.getValue().duration.get()));
+		}
+		if (otherErrors.count.get() > 0)
+			errors.add(new ErrorWork(ErrorWork.OTHER_ERRORS, otherErrors.count.get(), otherErrors.duration.get()));
+		return errors;
+	}
+
+	// work in progress when the record was rolled
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	// most work concurrently in progress during the record's interval
+	public int getPeakInFlight() {
+		return peakInFlight;
+	}
+
+	// slowest first, empty until the record is rolled
+	public List<SlowWork> getSlowestWork() {
+		SlowestWorkTracker tracker = slowestWork;
+		return tracker == null ? Collections.<SlowWork>emptyList() : tracker.getSlowestWork();
+	}
+
+	// covers both ok and error work
+	public LatencyHistogram getDurationHistogram() {
+		return durationHistogram;
+	}
+
+	// number and total duration of weighted calls, into child work or failing with an error type
+	private static class WeightedWorkCounter
+	{
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong duration = new AtomicLong();
 	}
 }
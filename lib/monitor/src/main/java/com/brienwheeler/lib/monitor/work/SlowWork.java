@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+/**
+ * One of the slowest invocations of a unit of work within a publish interval.
+ */
+public class SlowWork
+{
+	private final long duration;
+	private final long timestamp;
+	private final String threadName;
+	private final String argumentSummary;
+	private final boolean ok;
+
+	public SlowWork(long duration, long timestamp, String threadName, String argumentSummary, boolean ok)
+	{
+		this.duration = duration;
+		this.timestamp = timestamp;
+		this.threadName = threadName;
+		this.argumentSummary = argumentSummary;
+		this.ok = ok;
+	}
+
+	// in the duration unit of the owning WorkRecord
+	public long getDuration()
+	{
+		return duration;
+	}
+
+	// completion time, in milliseconds since epoch
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public String getThreadName()
+	{
+		return threadName;
+	}
+
+	// may be null
+	public String getArgumentSummary()
+	{
+		return argumentSummary;
+	}
+
+	public boolean isOk()
+	{
+		return ok;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bounded tracker of the slowest invocations of one unit of work.  Callers check
+ * {@link #qualifies(long)} first, which is a single volatile read and compare; only
+ * qualifying durations take the lock in {@link #offer(SlowWork)}.
+ */
+class SlowestWorkTracker
+{
+	private static final Comparator<SlowWork> SLOWEST_FIRST = new Comparator<SlowWork>() {
+		@Override
+		public int compare(SlowWork o1, SlowWork o2)
+		{
+			return o1.getDuration() > o2.getDuration() ? -1 : o1.getDuration() < o2.getDuration() ? 1 : 0;
+		}
+	};
+
+	private final SlowWork entries[];
+	private int size;
+	// durations must exceed this to be tracked: -1 until full, then the fastest tracked duration
+	private volatile long threshold;
+
+	SlowestWorkTracker(int capacity)
+	{
+		entries = new SlowWork[capacity];
+		threshold = capacity == 0 ? Long.MAX_VALUE : -1L;
+	}
+
+	boolean qualifies(long duration)
+	{
+		return duration > threshold;
+	}
+
+	synchronized void offer(SlowWork slowWork)
+	{
+		if (slowWork.getDuration() <= threshold)
+			return;
+
+		if (size < entries.length) {
+			entries[size++] = slowWork;
+			if (size < entries.length)
+				return;
+		}
+		else {
+			entries[fastestIndex()] = slowWork;
+		}
+		threshold = entries[fastestIndex()].getDuration();
+	}
+
+	int getCapacity()
+	{
+		return entries.length;
+	}
+
+	synchronized boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	synchronized List<SlowWork> getSlowestWork()
+	{
+		if (size == 0)
+			return Collections.emptyList();
+		List<SlowWork> slowestWork = new ArrayList<SlowWork>(Arrays.asList(entries).subList(0, size));
+		Collections.sort(slowestWork, SLOWEST_FIRST);
+		return slowestWork;
+	}
+
+	private int fastestIndex()
+	{
+		int fastest = 0;
+		for (int i=1; i<size; i++) {
+			if (entries[i].getDuration() < entries[fastest].getDuration())
+				fastest = i;
+		}
+		return fastest;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Set of long counters striped across per-thread cells so that concurrent writers
+ * do not contend on a single cache line.  Each cell holds one slot per field and is
+ * padded out to CELL_STRIDE longs (128 bytes, covering adjacent-line prefetch), so
+ * all fields a thread updates together live on that thread's own cell.  Reads sum
+ * across all cells and are intended for infrequent use (e.g. when records are rolled).
+ */
+public class StripedCounter
+{
+	public static final int CELL_STRIDE = 16;
+	public static final int MAX_STRIPES = 64;
+
+	private static final int DEFAULT_STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+	private final int fieldCount;
+	private final int stripeMask;
+	private final AtomicLongArray cells;
+
+	public StripedCounter(int fieldCount)
+	{
+		this(fieldCount, DEFAULT_STRIPES);
+	}
+
+	public StripedCounter(int fieldCount, int stripes)
+	{
+		ValidationUtils.assertTrue(fieldCount > 0, "fieldCount must be greater than 0");
+		ValidationUtils.assertTrue(fieldCount <= CELL_STRIDE, "fieldCount must be no greater than " + CELL_STRIDE);
+		ValidationUtils.assertTrue(stripes > 0, "stripes must be greater than 0");
+		ValidationUtils.assertTrue(Integer.bitCount(stripes) == 1, "stripes must be a power of two");
+
+		this.fieldCount = fieldCount;
+		this.stripeMask = stripes - 1;
+		// one extra leading stride keeps the first cell off the array header's cache line
+		this.cells = new AtomicLongArray((stripes + 1) * CELL_STRIDE);
+	}
+
+	public void add(int field, long delta)
+	{
+		cells.getAndAdd(cellBase() + field, delta);
+	}
+
+	public void increment(int field)
+	{
+		cells.getAndIncrement(cellBase() + field);
+	}
+
+	// as add(int, long) for callers updating several structures with one threadHash()
+	void add(int threadHash, int field, long delta)
+	{
+		cells.getAndAdd(((threadHash & stripeMask) + 1) * CELL_STRIDE + field, delta);
+	}
+
+	public long sum(int field)
+	{
+		ValidationUtils.assertTrue(field >= 0 && field < fieldCount, "field out of range");
+		long sum = 0;
+		for (int i=CELL_STRIDE + field; i<cells.length(); i+=CELL_STRIDE)
+			sum += cells.get(i);
+		return sum;
+	}
+
+	public int getStripes()
+	{
+		return stripeMask + 1;
+	}
+
+	private int cellBase()
+	{
+		return ((threadHash() & stripeMask) + 1) * CELL_STRIDE;
+	}
+
+	// stable per-thread hash for choosing a stripe
+	static int threadHash()
+	{
+		// thread ids are small sequential integers; spread them with a multiplicative hash
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+	static int stripesFor(int processors)
+	{
+		int stripes = Integer.highestOneBit(Math.max(1, processors * 2) - 1) << 1;
+		return Math.max(1, Math.min(MAX_STRIPES, stripes));
+	}
+}
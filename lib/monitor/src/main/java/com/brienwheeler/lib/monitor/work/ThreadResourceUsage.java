@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Current thread CPU time and allocated bytes from the platform ThreadMXBean.  Each
+ * measure is -1 where the JVM does not support (or has not enabled) it; allocated bytes
+ * need the com.sun.management extension of ThreadMXBean, which is only touched once it
+ * is known to be present so this class still loads on JVMs without it.
+ */
+public class ThreadResourceUsage
+{
+	private static final String ALLOCATION_MXBEAN_CLASS = "com.sun.management.ThreadMXBean";
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported = threadMXBean.isCurrentThreadCpuTimeSupported();
+	private static final boolean allocatedBytesSupported = isAllocatedBytesSupported();
+
+	private ThreadResourceUsage()
+	{
+	}
+
+	// turn on measurement where it is supported but disabled
+	static void enable()
+	{
+		try {
+			if (cpuTimeSupported && !threadMXBean.isThreadCpuTimeEnabled())
+				threadMXBean.setThreadCpuTimeEnabled(true);
+			if (allocatedBytesSupported)
+				AllocationAccess.enable();
+		}
+		catch (SecurityException e) {
+			// not permitted, measures stay unavailable
+		}
+	}
+
+	// nanoseconds
+	public static long getCpuTime()
+	{
+		return cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : -1L;
+	}
+
+	public static long getAllocatedBytes()
+	{
+		return allocatedBytesSupported ? AllocationAccess.getAllocatedBytes() : -1L;
+	}
+
+	private static boolean isAllocatedBytesSupported()
+	{
+		try {
+			return Class.forName(ALLOCATION_MXBEAN_CLASS).isInstance(threadMXBean) && AllocationAccess.isSupported();
+		}
+		catch (ClassNotFoundException e) {
+			return false;
+		}
+		catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	// the only references to the com.sun.management extension; not loaded unless it exists
+	private static class AllocationAccess
+	{
+		private static final com.sun.management.ThreadMXBean allocationMXBean =
+				(com.sun.management.ThreadMXBean) threadMXBean;
+
+		static boolean isSupported()
+		{
+			return allocationMXBean.isThreadAllocatedMemorySupported();
+		}
+
+		static void enable()
+		{
+			if (!allocationMXBean.isThreadAllocatedMemoryEnabled())
+				allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+		}
+
+		static long getAllocatedBytes()
+		{
+			return allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Per-thread work accumulation buffer used by {@link WorkMonitor} in
+ * THREAD_LOCAL recording mode.  The owning thread records into the active
+ * slab with plain (unsynchronized) writes; the rolling thread swaps in a
+ * spare slab and waits for any record in progress to finish before reading
+ * the retired one.  The only memory the owning thread writes is its own.
+ * <p>
+ * Durations are kept in a small sparse histogram that grows with the number of
+ * distinct buckets actually hit, and work names idle for a whole interval are
+ * dropped at harvest, so a thread's footprint follows what it recently recorded.
+ */
+class ThreadWorkBuffer
+{
+	private final WeakReference<Thread> owner;
+	private volatile Slab active = new Slab();
+	private volatile boolean recording = false;
+	private Slab spare = new Slab(); // only touched by harvest()
+
+	ThreadWorkBuffer(Thread owner)
+	{
+		this.owner = new WeakReference<Thread>(owner);
+	}
+
+	// the record methods below are called only from the owning thread.
+	// Dekker-style handshake with harvest(): set recording before reading active,
+	// harvest() replaces active before checking recording
+
+	void recordWork(WorkRecorder workRecorder, long duration, long selfDuration, boolean ok, int weight)
+	{
+		recording = true;
+		try {
+			active.getRecord(workRecorder).recordWork(duration, selfDuration, ok, weight);
+		}
+		finally {
+			recording = false;
+		}
+	}
+
+	void recordResourceUsage(WorkRecorder workRecorder, long cpuTime, long allocatedBytes, int weight)
+	{
+		recording = true;
+		try {
+			active.getRecord(workRecorder).recordResourceUsage(cpuTime, allocatedBytes, weight);
+		}
+		finally {
+			recording = false;
+		}
+	}
+
+	void recordChildWork(WorkRecorder workRecorder, WorkRecorder child, long duration, int weight)
+	{
+		recording = true;
+		try {
+			active.getRecord(workRecorder).recordChildWork(child, duration, weight);
+		}
+		finally {
+			recording = false;
+		}
+	}
+
+	void recordErrorType(WorkRecorder workRecorder, Class<?> errorType, long duration, int weight)
+	{
+		recording = true;
+		try {
+			active.getRecord(workRecorder).recordErrorType(errorType, duration, weight);
+		}
+		finally {
+			recording = false;
+		}
+	}
+
+	/**
+	 * Retire the active slab and merge its contents into the current records of the
+	 * recorders it was recorded for.
+	 * 
+	 * @return true if the owning thread is still alive and the buffer should be kept
+	 */
+	synchronized boolean harvest(int errorTypeCapacity)
+	{
+		Slab retired = active;
+		active = spare;
+		while (recording)
+			Thread.yield();
+
+		retired.mergeInto(errorTypeCapacity);
+		spare = retired;
+
+		Thread thread = owner.get();
+		return thread != null && thread.isAlive();
+	}
+
+	// number of work names currently buffered, for tests
+	synchronized int size()
+	{
+		return active.records.size() + spare.records.size();
+	}
+
+	static class LocalWorkRecord
+	{
+		long okCount;
+		long okDuration;
+		long errorCount;
+		long errorDuration;
+		long selfDuration;
+		long maxDuration;
+		long resourceCount;
+		long cpuTime;
+		long allocatedBytes;
+		final SparseHistogram histogram = new SparseHistogram();
+		// {count, duration} per child work and per exception class, created on first use
+		Map<WorkRecorder, long[]> childWork;
+		Map<Class<?>, long[]> errorTypes;
+
+		void recordWork(long duration, long selfDuration, boolean ok, int weight)
+		{
+			if (ok) {
+				okCount += weight;
+				okDuration += duration * weight;
+			}
+			else {
+				errorCount += weight;
+				errorDuration += duration * weight;
+			}
+			this.selfDuration += selfDuration * weight;
+
+			if (duration < 0)
+				duration = 0;
+			histogram.add(LatencyHistogram.bucketIndex(duration), weight);
+			if (duration > maxDuration)
+				maxDuration = duration;
+		}
+
+		void recordResourceUsage(long cpuTime, long allocatedBytes, int weight)
+		{
+			resourceCount += weight;
+			if (cpuTime > 0)
+				this.cpuTime += cpuTime * weight;
+			if (allocatedBytes > 0)
+				this.allocatedBytes += allocatedBytes * weight;
+		}
+
+		void recordChildWork(WorkRecorder child, long duration, int weight)
+		{
+			if (childWork == null)
+				childWork = new HashMap<WorkRecorder, long[]>();
+			add(childWork, child, duration, weight);
+		}
+
+		void recordErrorType(Class<?> errorType, long duration, int weight)
+		{
+			if (errorTypes == null)
+				errorTypes = new HashMap<Class<?>, long[]>();
+			add(errorTypes, errorType, duration, weight);
+		}
+
+		boolean isIdle()
+		{
+			return okCount == 0 && errorCount == 0 && resourceCount == 0 && isEmpty(childWork)
+					&& isEmpty(errorTypes);
+		}
+
+		void reset()
+		{
+			okCount = okDuration = errorCount = errorDuration = selfDuration = maxDuration = 0L;
+			resourceCount = cpuTime = allocatedBytes = 0L;
+			histogram.reset();
+			if (childWork != null)
+				childWork.clear();
+			if (errorTypes != null)
+				errorTypes.clear();
+		}
+
+		private static <K> void add(Map<K, long[]> counters, K key, long duration, int weight)
+		{
+			long counter[] = counters.get(key);
+			if (counter == null) {
+				counter = new long[2];
+				counters.put(key, counter);
+			}
+			counter[0] += weight;
+			counter[1] += duration * weight;
+		}
+
+		private static boolean isEmpty(Map<?, long[]> counters)
+		{
+			return counters == null || counters.isEmpty();
+		}
+	}
+
+	/**
+	 * Open-addressing map from {@link LatencyHistogram} bucket index to count.  Recorded
+	 * durations usually fall in a few dozen adjacent buckets, so the table starts small
+	 * and only grows when a thread actually spreads over more of them.
+	 */
+	static class SparseHistogram
+	{
+		private static final int INITIAL_CAPACITY = 16;
+
+		// a slot is in use when its count is non-zero
+		private int buckets[] = new int[INITIAL_CAPACITY];
+		private long counts[] = new long[INITIAL_CAPACITY];
+		private int size;
+
+		void add(int bucket, long count)
+		{
+			if (size * 4 >= buckets.length * 3)
+				resize(buckets.length * 2);
+
+			// adjacent buckets map to adjacent slots, so linear probing rarely collides
+			int mask = buckets.length - 1;
+			int slot = bucket & mask;
+			while (counts[slot] != 0 && buckets[slot] != bucket)
+				slot = (slot + 1) & mask;
+			if (counts[slot] == 0) {
+				buckets[slot] = bucket;
+				size++;
+			}
+			counts[slot] += count;
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		int[] getBuckets()
+		{
+			return buckets;
+		}
+
+		long[] getCounts()
+		{
+			return counts;
+		}
+
+		// keeps the current capacity, since the next interval is likely to need it again
+		void reset()
+		{
+			Arrays.fill(counts, 0L);
+			size = 0;
+		}
+
+		private void resize(int capacity)
+		{
+			int oldBuckets[] = buckets;
+			long oldCounts[] = counts;
+			buckets = new int[capacity];
+			counts = new long[capacity];
+			size = 0;
+			for (int i=0; i<oldBuckets.length; i++) {
+				if (oldCounts[i] != 0)
+					add(oldBuckets[i], oldCounts[i]);
+			}
+		}
+	}
+
+	private static class Slab
+	{
+		// entries active in the last interval are retained (zeroed) so steady-state recording does not allocate
+		private final Map<WorkRecorder, LocalWorkRecord> records = new HashMap<WorkRecorder, LocalWorkRecord>();
+
+		LocalWorkRecord getRecord(WorkRecorder workRecorder)
+		{
+			LocalWorkRecord record = records.get(workRecorder);
+			if (record == null) {
+				record = new LocalWorkRecord();
+				records.put(workRecorder, record);
+			}
+			return record;
+		}
+
+		void mergeInto(int errorTypeCapacity)
+		{
+			Iterator<Map.Entry<WorkRecorder, LocalWorkRecord>> iterator = records.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<WorkRecorder, LocalWorkRecord> entry = iterator.next();
+				LocalWorkRecord record = entry.getValue();
+				if (record.isIdle()) {
+					iterator.remove();
+					continue;
+				}
+				entry.getKey().merge(record, errorTypeCapacity);
+				record.reset();
+			}
+		}
+	}
+}
@@ -23,13 +23,50 @@
  */
 package com.brienwheeler.lib.monitor.work;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.brienwheeler.lib.util.ValidationUtils;
 
 public class WorkMonitor
 {
-	private final AtomicReference<WorkRecordCollection> workRecords;
+	public static final int DEFAULT_SLOWEST_WORK_CAPACITY = 5;
+	public static final int DEFAULT_ERROR_TYPE_CAPACITY = 10;
+	public static final int MAX_LIVE_WINDOW_SECONDS = LiveWorkWindow.MAX_WINDOW_SECONDS;
+
+	public static enum RecordingMode {
+		// all threads record into the shared WorkRecordCollection
+		SHARED,
+		// each thread records into its own buffer, merged when records are rolled
+		THREAD_LOCAL,
+	}
+
+	private final ConcurrentHashMap<String, WorkRecorder> workRecorders = new ConcurrentHashMap<String, WorkRecorder>();
+	// registered with LiveWorkTicker once there is work to tick, never from the constructor
+	private final AtomicBoolean liveTicking = new AtomicBoolean();
+	private long intervalStartTime;
+	private final ConcurrentLinkedQueue<ThreadWorkBuffer> threadBuffers = new ConcurrentLinkedQueue<ThreadWorkBuffer>();
+	private final ThreadLocal<ThreadWorkBuffer> threadBuffer = new ThreadLocal<ThreadWorkBuffer>() {
+		@Override
+		protected ThreadWorkBuffer initialValue()
+		{
+			ThreadWorkBuffer buffer = new ThreadWorkBuffer(Thread.currentThread());
+			threadBuffers.add(buffer);
+			return buffer;
+		}
+	};
+	private volatile RecordingMode recordingMode = RecordingMode.SHARED;
+	private volatile TimeUnit durationUnit = TimeUnit.MILLISECONDS;
+	private volatile int slowestWorkCapacity = DEFAULT_SLOWEST_WORK_CAPACITY;
+	private volatile boolean resourceAccounting = false;
+	private volatile int errorTypeCapacity = DEFAULT_ERROR_TYPE_CAPACITY;
 			
 	private final String sourceName;
 	
@@ -38,33 +75,239 @@ public class WorkMonitor
 		ValidationUtils.assertNotNull(sourceName, "sourceName cannot be null");
 		
 		this.sourceName = sourceName;
-		this.workRecords = new AtomicReference<WorkRecordCollection>(new WorkRecordCollection(sourceName,
-				System.currentTimeMillis()));
+		this.intervalStartTime = System.currentTimeMillis();
 	}
 	
 	public void recordWorkOk(String workName, long duration)
 	{
-		workName = ValidationUtils.assertNotEmpty(workName, "workName cannot be empty");
-		workRecords.get().recordWorkOk(workName, duration);
+		getWorkRecorder(workName).recordWorkOk(duration);
 	}
 	
 	public void recordWorkError(String workName, long duration)
+	{
+		getWorkRecorder(workName).recordWorkError(duration);
+	}
+
+	public WorkRecorder getWorkRecorder(String workName)
 	{
 		workName = ValidationUtils.assertNotEmpty(workName, "workName cannot be empty");
-		workRecords.get().recordWorkError(workName, duration);
+		WorkRecorder workRecorder = workRecorders.get(workName);
+		if (workRecorder == null) {
+			workRecorder = new WorkRecorder(this, workName);
+			WorkRecorder existing = workRecorders.putIfAbsent(workName, workRecorder);
+			if (existing != null)
+				workRecorder = existing;
+			else
+				startLiveTicking();
+		}
+		return workRecorder;
+	}
+
+	// the recorder of work already recorded (or looked up) under workName, or null; never creates one
+	public WorkRecorder findWorkRecorder(String workName)
+	{
+		return workName == null ? null : workRecorders.get(workName);
 	}
 	
-	public WorkRecordCollection rollRecords()
+	public Collection<WorkRecorder> getWorkRecorders()
+	{
+		return Collections.unmodifiableCollection(workRecorders.values());
+	}
+
+	/**
+	 * Get the activity of the given work over the last seconds seconds, or null if no
+	 * such work has been recorded.  See {@link WorkRecorder#getLiveStatistics(int)}.
+	 * 
+	 * @param workName the name the work is recorded under
+	 * @param seconds how many of the most recent seconds to cover
+	 * @return the work's live statistics, or null if the work is unknown
+	 */
+	public LiveWorkStatistics getLiveStatistics(String workName, int seconds)
+	{
+		startLiveTicking();
+		WorkRecorder workRecorder = findWorkRecorder(workName);
+		return workRecorder == null ? null : workRecorder.getLiveStatistics(seconds);
+	}
+
+	public List<LiveWorkStatistics> getLiveStatistics(int seconds)
+	{
+		startLiveTicking();
+		List<LiveWorkStatistics> liveStatistics = new ArrayList<LiveWorkStatistics>(workRecorders.size());
+		for (WorkRecorder workRecorder : workRecorders.values())
+			liveStatistics.add(workRecorder.getLiveStatistics(seconds));
+		return liveStatistics;
+	}
+
+	public void resetLiveStatistics()
+	{
+		startLiveTicking();
+		for (WorkRecorder workRecorder : workRecorders.values())
+			workRecorder.resetLiveStatistics();
+	}
+
+	/**
+	 * Stop advancing this monitor's live statistics, for a monitor being discarded.
+	 * Monitors that are simply dropped stop once garbage collected.  Recording under a
+	 * new work name or querying this monitor's live statistics starts them again.
+	 */
+	public void stopLiveStatistics()
+	{
+		if (liveTicking.compareAndSet(true, false))
+			LiveWorkTicker.unregister(this);
+	}
+
+	public synchronized WorkRecordCollection rollRecords()
 	{
 		long now = System.currentTimeMillis();
-		WorkRecordCollection existing = workRecords.getAndSet(new WorkRecordCollection(sourceName, now));
+		WorkRecordCollection existing = new WorkRecordCollection(sourceName, intervalStartTime, durationUnit);
+		intervalStartTime = now;
+
+		harvestThreadBuffers();
+		for (WorkRecorder workRecorder : workRecorders.values()) {
+			MutableWorkRecord mutableWorkRecord = workRecorder.roll();
+			if (mutableWorkRecord != null)
+				existing.addWorkRecord(mutableWorkRecord);
+		}
+		
 		existing.setEndTime(now);
 		return existing;
 	}
 
+	public RecordingMode getRecordingMode()
+	{
+		return recordingMode;
+	}
+
+	/**
+	 * Select how work is recorded.  THREAD_LOCAL mode records calls, resource usage,
+	 * call graph edges and error types into a per-thread buffer (a few small tables per
+	 * work name per recording thread) and performs no shared writes to the interval's
+	 * records per recorded call.  In either mode the in-flight and peak gauges of
+	 * {@link WorkRecorder#beginWork()} are shared counters, since the peak needs a
+	 * count across threads, and a call slow enough to be one of the interval's slowest
+	 * is offered to a shared tracker.  Buffers are harvested into the recorders' records
+	 * once a second for live statistics, and when records are rolled.  Mode may be
+	 * changed at any time.
+	 * 
+	 * @param recordingMode the mode for calls recorded from now on
+	 */
+	public void setRecordingMode(RecordingMode recordingMode)
+	{
+		ValidationUtils.assertNotNull(recordingMode, "recordingMode cannot be null");
+		this.recordingMode = recordingMode;
+	}
+
+	public TimeUnit getDurationUnit()
+	{
+		return durationUnit;
+	}
+
+	/**
+	 * Select the unit of recorded durations: MILLISECONDS (the default), MICROSECONDS
+	 * or NANOSECONDS.  Durations passed to recordWorkOk/recordWorkError are taken to be
+	 * in this unit, and rolled collections are labeled with it.  This should be set
+	 * before work is recorded; durations already recorded in the current interval
+	 * are not converted.
+	 * 
+	 * @param durationUnit MILLISECONDS, MICROSECONDS or NANOSECONDS
+	 */
+	public void setDurationUnit(TimeUnit durationUnit)
+	{
+		ValidationUtils.assertTrue(durationUnit == TimeUnit.MILLISECONDS || durationUnit == TimeUnit.MICROSECONDS ||
+				durationUnit == TimeUnit.NANOSECONDS, "durationUnit must be MILLISECONDS, MICROSECONDS or NANOSECONDS");
+		this.durationUnit = durationUnit;
+	}
+
+	public int getSlowestWorkCapacity()
+	{
+		return slowestWorkCapacity;
+	}
+
+	/**
+	 * Set how many of the slowest invocations of each work name are kept per interval,
+	 * 0 to keep none.  Takes effect when records are next rolled.
+	 * 
+	 * @param slowestWorkCapacity invocations kept per work name, 0 or more
+	 */
+	public void setSlowestWorkCapacity(int slowestWorkCapacity)
+	{
+		ValidationUtils.assertTrue(slowestWorkCapacity >= 0, "slowestWorkCapacity cannot be negative");
+		this.slowestWorkCapacity = slowestWorkCapacity;
+	}
+
+	public boolean isResourceAccounting()
+	{
+		return resourceAccounting;
+	}
+
+	/**
+	 * Turn on recording of thread CPU time and allocated bytes for instrumented work
+	 * (see {@link ThreadResourceUsage}).  Off by default: each measure costs a
+	 * ThreadMXBean call at the start and end of every recorded call.
+	 * 
+	 * @param resourceAccounting whether to record CPU time and allocated bytes
+	 */
+	public void setResourceAccounting(boolean resourceAccounting)
+	{
+		if (resourceAccounting)
+			ThreadResourceUsage.enable();
+		this.resourceAccounting = resourceAccounting;
+	}
+
+	public int getErrorTypeCapacity()
+	{
+		return errorTypeCapacity;
+	}
+
+	/**
+	 * Set how many distinct exception classes are counted per work name per interval;
+	 * further classes are counted together as {@link ErrorWork#OTHER_ERRORS}.
+	 * 
+	 * @param errorTypeCapacity distinct exception classes counted per work name
+	 */
+	public void setErrorTypeCapacity(int errorTypeCapacity)
+	{
+		ValidationUtils.assertTrue(errorTypeCapacity >= 0, "errorTypeCapacity cannot be negative");
+		this.errorTypeCapacity = errorTypeCapacity;
+	}
+
 	public String getSourceName()
 	{
 		return sourceName;
 	}
+
+	synchronized void tickLiveStatistics(long now)
+	{
+		harvestThreadBuffers();
+		for (WorkRecorder workRecorder : workRecorders.values())
+			workRecorder.tickLiveWindow(now);
+	}
+
+	private void startLiveTicking()
+	{
+		if (!liveTicking.get() && liveTicking.compareAndSet(false, true))
+			LiveWorkTicker.register(this);
+	}
+
+	boolean isThreadLocalRecording()
+	{
+		return recordingMode == RecordingMode.THREAD_LOCAL;
+	}
+
+	ThreadWorkBuffer getThreadWorkBuffer()
+	{
+		return threadBuffer.get();
+	}
+
+	// buffers are harvested regardless of current mode so that switching modes never
+	// loses work recorded under the previous mode
+	private void harvestThreadBuffers()
+	{
+		Iterator<ThreadWorkBuffer> iterator = threadBuffers.iterator();
+		while (iterator.hasNext()) {
+			if (!iterator.next().harvest(errorTypeCapacity))
+				iterator.remove();
+		}
+	}
 	
 }
@@ -23,6 +23,10 @@
  */
 package com.brienwheeler.lib.monitor.work;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class WorkRecord
 {
 	private final String workName;
@@ -30,19 +34,57 @@ public class WorkRecord
 	private final long workOkDuration;
 	private final int workErrorCount;
 	private final long workErrorDuration;
+	private final long workSelfDuration;
+	private final long resourceCount;
+	private final long cpuTime;
+	private final long allocatedBytes;
+	private final LatencyHistogramSnapshot durationHistogram;
+	private final long durationP50;
+	private final long durationP90;
+	private final long durationP99;
+	private final long durationP999;
+	private final TimeUnit durationUnit;
+	private final int inFlight;
+	private final int peakInFlight;
+	private final List<SlowWork> slowestWork;
+	private final List<ChildWork> childWork;
+	private final List<ErrorWork> errorWork;
 
 	public WorkRecord(MutableWorkRecord workRecord) {
+		this(workRecord, TimeUnit.MILLISECONDS);
+	}
+
+	public WorkRecord(MutableWorkRecord workRecord, TimeUnit durationUnit) {
 		this.workName = workRecord.getWorkName();
 		this.workOkCount = workRecord.getWorkOkCount();
 		this.workOkDuration = workRecord.getWorkOkDuration();
 		this.workErrorCount = workRecord.getWorkErrorCount();
 		this.workErrorDuration = workRecord.getWorkErrorDuration();
+		this.workSelfDuration = workRecord.getWorkSelfDuration();
+		this.resourceCount = workRecord.getResourceCount();
+		this.cpuTime = workRecord.getCpuTime();
+		this.allocatedBytes = workRecord.getAllocatedBytes();
+		this.durationHistogram = workRecord.getDurationHistogram().getSnapshot();
+		this.durationP50 = durationHistogram.getValueAtPercentile(50.0);
+		this.durationP90 = durationHistogram.getValueAtPercentile(90.0);
+		this.durationP99 = durationHistogram.getValueAtPercentile(99.0);
+		this.durationP999 = durationHistogram.getValueAtPercentile(99.9);
+		this.durationUnit = durationUnit;
+		this.inFlight = workRecord.getInFlight();
+		this.peakInFlight = workRecord.getPeakInFlight();
+		this.slowestWork = Collections.unmodifiableList(workRecord.getSlowestWork());
+		this.childWork = Collections.unmodifiableList(workRecord.getChildWork());
+		this.errorWork = Collections.unmodifiableList(workRecord.getErrorWork());
 	}
 	
 	public String getWorkName() {
 		return workName;
 	}
 
+	public TimeUnit getDurationUnit() {
+		return durationUnit;
+	}
+
 	public int getWorkOkCount() {
 		return workOkCount;
 	}
@@ -68,4 +110,85 @@ public class WorkRecord
 	{
 		return workErrorCount == 0 ? 0f : (float) workErrorDuration / (float) workErrorCount; 
 	}
+
+	// ok and error duration, less time spent in nested monitored work
+	public long getWorkSelfDuration()
+	{
+		return workSelfDuration;
+	}
+
+	// number of calls with resource usage recorded, 0 unless resource accounting is on
+	public long getResourceCount()
+	{
+		return resourceCount;
+	}
+
+	// thread CPU time, in the same unit as durations
+	public long getCpuTime()
+	{
+		return cpuTime;
+	}
+
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	// nested monitored work called from this work
+	public List<ChildWork> getChildWork()
+	{
+		return childWork;
+	}
+
+	// failed calls by exception class, where the class is known
+	public List<ErrorWork> getErrorWork()
+	{
+		return errorWork;
+	}
+
+	public int getInFlight()
+	{
+		return inFlight;
+	}
+
+	public int getPeakInFlight()
+	{
+		return peakInFlight;
+	}
+
+	// slowest first
+	public List<SlowWork> getSlowestWork()
+	{
+		return slowestWork;
+	}
+
+	public LatencyHistogramSnapshot getDurationHistogram()
+	{
+		return durationHistogram;
+	}
+
+	public long getDurationP50()
+	{
+		return durationP50;
+	}
+
+	public long getDurationP90()
+	{
+		return durationP90;
+	}
+
+	public long getDurationP99()
+	{
+		return durationP99;
+	}
+
+	public long getDurationP999()
+	{
+		return durationP999;
+	}
+
+	public long getDurationMax()
+	{
+		return durationHistogram.getMaxValue();
+	}
 }
@@ -25,6 +25,7 @@ package com.brienwheeler.lib.monitor.work;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import com.brienwheeler.lib.util.ValidationUtils;
 
@@ -34,18 +35,25 @@ public class WorkRecordCollection
 	private long endTime;
 	private final ConcurrentHashMap<String, MutableWorkRecord> workRecords = new ConcurrentHashMap<String, MutableWorkRecord>();
 	private final String sourceName;
+	private final TimeUnit durationUnit;
 	
 	public WorkRecordCollection(String sourceName, long startTime)
+	{
+		this(sourceName, startTime, TimeUnit.MILLISECONDS);
+	}
+	
+	public WorkRecordCollection(String sourceName, long startTime, TimeUnit durationUnit)
 	{
 		ValidationUtils.assertNotNull(sourceName,  "sourceName cannot be null");
+		ValidationUtils.assertNotNull(durationUnit,  "durationUnit cannot be null");
 		
 		this.sourceName = sourceName;
 		this.startTime = startTime;
+		this.durationUnit = durationUnit;
 	}
 	
-	private void recordWork(String workName, long duration, boolean ok)
+	MutableWorkRecord getOrCreateWorkRecord(String workName)
 	{
-		workName = ValidationUtils.assertNotEmpty(workName, "workName cannot be empty");
 		MutableWorkRecord mutableWorkRecord = workRecords.get(workName);
 		if (mutableWorkRecord == null)
 		{
@@ -54,6 +62,35 @@ public class WorkRecordCollection
 			if (existing != null)
 				mutableWorkRecord = existing;
 		}
+		return mutableWorkRecord;
+	}
+
+	void addWorkRecord(MutableWorkRecord mutableWorkRecord)
+	{
+		workRecords.put(mutableWorkRecord.getWorkName(), mutableWorkRecord);
+	}
+
+	/**
+	 * Merge the records of another collection with the same duration unit into this one,
+	 * e.g. to aggregate the same source's work across processes (see
+	 * {@link MutableWorkRecord#merge(MutableWorkRecord, int)} for what is merged).  Each
+	 * merged record keeps up to errorTypeCapacity error types.
+	 * 
+	 * @param other the collection to merge, which is not modified
+	 * @param errorTypeCapacity error types kept per merged record
+	 */
+	public void merge(WorkRecordCollection other, int errorTypeCapacity)
+	{
+		ValidationUtils.assertNotNull(other, "other cannot be null");
+		ValidationUtils.assertTrue(other.durationUnit == durationUnit, "durationUnit must match");
+		for (MutableWorkRecord otherRecord : other.workRecords.values())
+			getOrCreateWorkRecord(otherRecord.getWorkName()).merge(otherRecord, errorTypeCapacity);
+	}
+
+	private void recordWork(String workName, long duration, boolean ok)
+	{
+		workName = ValidationUtils.assertNotEmpty(workName, "workName cannot be empty");
+		MutableWorkRecord mutableWorkRecord = getOrCreateWorkRecord(workName);
 		if (ok)
 			mutableWorkRecord.recordWorkOk(duration);
 		else
@@ -95,6 +132,11 @@ public class WorkRecordCollection
 		return endTime;
 	}
 
+	public TimeUnit getDurationUnit()
+	{
+		return durationUnit;
+	}
+
 	public Set<String> getWorkRecordNames()
 	{
 		return workRecords.keySet();
@@ -105,7 +147,7 @@ public class WorkRecordCollection
 		MutableWorkRecord mutableWorkRecord = workRecords.get(name);
 		if (mutableWorkRecord == null)
 			return null;
-		return new WorkRecord(mutableWorkRecord);
+		return new WorkRecord(mutableWorkRecord, durationUnit);
 	}
 	
 }
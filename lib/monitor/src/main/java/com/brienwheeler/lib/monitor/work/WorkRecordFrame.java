@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact binary encoding of a {@link WorkRecordCollection} published at a given time,
+ * for shipping work records to another process and merging them there.  Counts,
+ * durations and error types are carried with the full duration histogram, so merged
+ * percentiles are as accurate as local ones; call graph edges and slowest work are not.
+ * <p>
+ * Numbers are written as unsigned variable-length integers (7 bits per byte) and
+ * histograms sparsely as (bucket index delta, count) pairs, so an idle or lightly used
+ * work name costs a few dozen bytes.
+ */
+public class WorkRecordFrame
+{
+	public static final int MAGIC = 0x574b5246; // "WKRF"
+	public static final int VERSION = 1;
+
+	private final long timestamp;
+	private final WorkRecordCollection workRecordCollection;
+
+	public WorkRecordFrame(long timestamp, WorkRecordCollection workRecordCollection)
+	{
+		this.timestamp = timestamp;
+		this.workRecordCollection = workRecordCollection;
+	}
+
+	// publish time of the collection, the same across processes for the same interval
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public WorkRecordCollection getWorkRecordCollection()
+	{
+		return workRecordCollection;
+	}
+
+	public byte[] encode()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try {
+			write(new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static WorkRecordFrame decode(byte data[]) throws IOException
+	{
+		return read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	private void write(DataOutput out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		writeVarLong(out, timestamp);
+		out.writeUTF(workRecordCollection.getSourceName());
+		writeVarLong(out, workRecordCollection.getStartTime());
+		writeVarLong(out, workRecordCollection.getEndTime());
+		out.writeByte(workRecordCollection.getDurationUnit().ordinal());
+		writeVarLong(out, workRecordCollection.size());
+		for (String workName : workRecordCollection.getWorkRecordNames()) {
+			WorkRecord workRecord = workRecordCollection.getWorkRecord(workName);
+			out.writeUTF(workName);
+			writeVarLong(out, workRecord.getWorkOkCount());
+			writeVarLong(out, workRecord.getWorkOkDuration());
+			writeVarLong(out, workRecord.getWorkErrorCount());
+			writeVarLong(out, workRecord.getWorkErrorDuration());
+			writeVarLong(out, workRecord.getWorkSelfDuration());
+			writeVarLong(out, workRecord.getResourceCount());
+			writeVarLong(out, workRecord.getCpuTime());
+			writeVarLong(out, workRecord.getAllocatedBytes());
+			writeVarLong(out, workRecord.getInFlight());
+			writeVarLong(out, workRecord.getPeakInFlight());
+
+			LatencyHistogramSnapshot histogram = workRecord.getDurationHistogram();
+			long counts[] = histogram.getCounts();
+			int nonZero = 0;
+			for (long count : counts)
+				if (count != 0)
+					nonZero++;
+			writeVarLong(out, histogram.getMaxValue());
+			writeVarLong(out, nonZero);
+			int lastIndex = 0;
+			for (int i=0; i<counts.length; i++) {
+				if (counts[i] == 0)
+					continue;
+				writeVarLong(out, i - lastIndex);
+				writeVarLong(out, counts[i]);
+				lastIndex = i;
+			}
+
+			List<ErrorWork> errorWork = workRecord.getErrorWork();
+			writeVarLong(out, errorWork.size());
+			for (ErrorWork error : errorWork) {
+				out.writeUTF(error.getErrorType());
+				writeVarLong(out, error.getCount());
+				writeVarLong(out, error.getDuration());
+			}
+		}
+	}
+
+	private static WorkRecordFrame read(DataInput in) throws IOException
+	{
+		if (in.readInt() != MAGIC)
+			throw new IOException("not a work record frame");
+		int version = in.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("unsupported work record frame version " + version);
+
+		long timestamp = readVarLong(in);
+		String sourceName = in.readUTF();
+		long startTime = readVarLong(in);
+		long endTime = readVarLong(in);
+		int unitOrdinal = in.readUnsignedByte();
+		if (unitOrdinal >= TimeUnit.values().length)
+			throw new IOException("unknown duration unit " + unitOrdinal);
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(sourceName, startTime,
+				TimeUnit.values()[unitOrdinal]);
+		workRecordCollection.setEndTime(endTime);
+
+		long recordCount = readVarLong(in);
+		for (long r=0; r<recordCount; r++) {
+			String workName = in.readUTF();
+			if (workName.isEmpty())
+				throw new IOException("empty work name");
+			MutableWorkRecord mutableWorkRecord = new MutableWorkRecord(workName);
+			mutableWorkRecord.addTotals(readVarLong(in), readVarLong(in), readVarLong(in), readVarLong(in),
+					readVarLong(in), readVarLong(in), readVarLong(in), readVarLong(in));
+			int inFlight = (int) readVarLong(in);
+			int peakInFlight = (int) readVarLong(in);
+			mutableWorkRecord.setConcurrency(inFlight, peakInFlight);
+
+			long maxValue = readVarLong(in);
+			long nonZero = readVarLong(in);
+			long counts[] = new long[LatencyHistogram.BUCKET_COUNT];
+			int index = 0;
+			for (long i=0; i<nonZero; i++) {
+				index += (int) readVarLong(in);
+				if (index < 0 || index >= counts.length)
+					throw new IOException("histogram bucket out of range");
+				counts[index] = readVarLong(in);
+			}
+			mutableWorkRecord.getDurationHistogram().recordCounts(counts, maxValue);
+
+			long errorTypes = readVarLong(in);
+			for (long i=0; i<errorTypes; i++)
+				mutableWorkRecord.addErrorType(in.readUTF(), readVarLong(in), readVarLong(in), Integer.MAX_VALUE);
+
+			workRecordCollection.addWorkRecord(mutableWorkRecord);
+		}
+		return new WorkRecordFrame(timestamp, workRecordCollection);
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException
+	{
+		long value = 0L;
+		for (int shift=0; shift<64; shift+=7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("malformed variable-length integer");
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Stable recording slot for a single work name within a {@link WorkMonitor}.  Callers
+ * that record the same work repeatedly can hold on to a WorkRecorder to skip the
+ * name lookup and validation done by {@link WorkMonitor#recordWorkOk(String, long)}.
+ * The record for the current interval is created on first use.  When the monitor rolls
+ * its records, an active record is detached and replaced on the rolling thread, and an
+ * unused one is left in place, so recording threads never allocate a record after the
+ * first.  Callers that bracket their work with {@link #beginWork()}
+ * and {@link #endWork()} also get in-flight and peak concurrency gauges, which are
+ * shared counters in every {@link WorkMonitor.RecordingMode}.
+ * <p>
+ * A WorkRecorder can be disabled at runtime.  Instrumentation such as
+ * MonitoredWorkAspect checks {@link #isEnabled()} and skips all timing and recording
+ * for disabled work; direct record calls are not affected.
+ * <p>
+ * The slowest invocations of each interval (see
+ * {@link WorkMonitor#setSlowestWorkCapacity(int)}) are kept with the rolled record.
+ * <p>
+ * Rates, error ratio and latency over the last few seconds are available at any time
+ * from {@link #getLiveStatistics(int)}, regardless of when records are rolled.  They
+ * are read from the interval's records, so work buffered in THREAD_LOCAL mode shows up
+ * once the buffers are harvested, at most a second later.
+ */
+public class WorkRecorder
+{
+	private final WorkMonitor workMonitor;
+	private final String workName;
+	private final AtomicReference<MutableWorkRecord> current = new AtomicReference<MutableWorkRecord>();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+	private final AtomicReference<SlowestWorkTracker> slowestWork;
+	private final LiveWorkWindow liveWindow = new LiveWorkWindow(System.currentTimeMillis(), current);
+	private volatile boolean enabled = true;
+
+	WorkRecorder(WorkMonitor workMonitor, String workName)
+	{
+		this.workMonitor = workMonitor;
+		this.workName = workName;
+		this.slowestWork = new AtomicReference<SlowestWorkTracker>(
+				new SlowestWorkTracker(workMonitor.getSlowestWorkCapacity()));
+	}
+
+	public String getWorkName()
+	{
+		return workName;
+	}
+
+	public WorkMonitor getWorkMonitor()
+	{
+		return workMonitor;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	public void beginWork()
+	{
+		beginWork(1);
+	}
+
+	public void endWork()
+	{
+		endWork(1);
+	}
+
+	/**
+	 * Count work in progress with the given weight, i.e. as if weight calls began.  Used
+	 * so that the gauges keep their scale when only 1 in weight calls is sampled; must be
+	 * matched by {@link #endWork(int)} with the same weight.
+	 * 
+	 * @param weight how many calls this one stands for
+	 */
+	public void beginWork(int weight)
+	{
+		int now = inFlight.addAndGet(weight);
+		int peak = peakInFlight.get();
+		while (now > peak && !peakInFlight.compareAndSet(peak, now))
+			peak = peakInFlight.get();
+	}
+
+	public void endWork(int weight)
+	{
+		inFlight.addAndGet(-weight);
+	}
+
+	public int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the successful calls recorded so far in the current interval.  In
+	 * THREAD_LOCAL mode this excludes calls still buffered by their threads.
+	 */
+	public int getWorkOkCount()
+	{
+		MutableWorkRecord mutableWorkRecord = current.get();
+		return mutableWorkRecord == null ? 0 : mutableWorkRecord.getWorkOkCount();
+	}
+
+	/**
+	 * @return the failed calls recorded so far in the current interval.  In THREAD_LOCAL
+	 * mode this excludes calls still buffered by their threads.
+	 */
+	public int getWorkErrorCount()
+	{
+		MutableWorkRecord mutableWorkRecord = current.get();
+		return mutableWorkRecord == null ? 0 : mutableWorkRecord.getWorkErrorCount();
+	}
+
+	public void recordWorkOk(long duration)
+	{
+		recordWorkOk(duration, 1);
+	}
+
+	public void recordWorkError(long duration)
+	{
+		recordWorkError(duration, 1);
+	}
+
+	/**
+	 * Record successful work with the given weight, i.e. as if weight calls of the same
+	 * duration completed.  Used to scale counts when only 1 in weight calls is sampled.
+	 * 
+	 * @param duration duration of the call, in the monitor's duration unit
+	 * @param weight how many calls this one stands for
+	 */
+	public void recordWorkOk(long duration, int weight)
+	{
+		recordWork(duration, duration, weight, true, null);
+	}
+
+	public void recordWorkError(long duration, int weight)
+	{
+		recordWork(duration, duration, weight, false, null);
+	}
+
+	/**
+	 * As {@link #recordWorkOk(long, int)}, with a short description of the call's
+	 * arguments kept if this turns out to be one of the interval's slowest invocations.
+	 * Callers can use {@link #isSlowWork(long)} to only build the summary when needed.
+	 * 
+	 * @param duration duration of the call, in the monitor's duration unit
+	 * @param weight how many calls this one stands for
+	 * @param argumentSummary description of the arguments, may be null
+	 */
+	public void recordWorkOk(long duration, int weight, String argumentSummary)
+	{
+		recordWork(duration, duration, weight, true, argumentSummary);
+	}
+
+	public void recordWorkError(long duration, int weight, String argumentSummary)
+	{
+		recordWork(duration, duration, weight, false, argumentSummary);
+	}
+
+	/**
+	 * As {@link #recordWorkOk(long, int, String)}, for work that called into other
+	 * monitored work: selfDuration excludes the time spent in those calls.
+	 * 
+	 * @param duration duration of the call, in the monitor's duration unit
+	 * @param selfDuration duration less the time spent in monitored child work
+	 * @param weight how many calls this one stands for
+	 * @param argumentSummary description of the arguments, may be null
+	 */
+	public void recordWorkOk(long duration, long selfDuration, int weight, String argumentSummary)
+	{
+		recordWork(duration, selfDuration, weight, true, argumentSummary);
+	}
+
+	public void recordWorkError(long duration, long selfDuration, int weight, String argumentSummary)
+	{
+		recordWork(duration, selfDuration, weight, false, argumentSummary);
+	}
+
+	/**
+	 * Record the thread CPU time (nanoseconds, converted to the monitor's duration unit)
+	 * and allocated bytes of weight calls; -1 for either measure if unavailable.
+	 * 
+	 * @param cpuNanos thread CPU time in nanoseconds, or -1
+	 * @param allocatedBytes bytes allocated by the thread, or -1
+	 * @param weight how many calls this one stands for
+	 */
+	public void recordResourceUsage(long cpuNanos, long allocatedBytes, int weight)
+	{
+		long cpuTime = cpuNanos < 0 ? -1L : toDuration(cpuNanos);
+		if (workMonitor.isThreadLocalRecording())
+			workMonitor.getThreadWorkBuffer().recordResourceUsage(this, cpuTime, allocatedBytes, weight);
+		else
+			getCurrent().recordResourceUsage(cpuTime, allocatedBytes, weight);
+	}
+
+	/**
+	 * Record a call from this work into the child's work, which took duration in the
+	 * child monitor's duration unit.
+	 * 
+	 * @param child the recorder of the work called
+	 * @param duration duration of the child call, in the child monitor's duration unit
+	 * @param weight how many calls this one stands for
+	 */
+	public void recordChildWork(WorkRecorder child, long duration, int weight)
+	{
+		if (workMonitor.isThreadLocalRecording())
+			workMonitor.getThreadWorkBuffer().recordChildWork(this, child, duration, weight);
+		else
+			getCurrent().recordChildWork(child, duration, weight);
+	}
+
+	/**
+	 * Get the activity of the last seconds seconds (up to
+	 * {@link WorkMonitor#MAX_LIVE_WINDOW_SECONDS}).  The window is at least that long
+	 * and extends back to the most recent once-a-second snapshot, or for windows over
+	 * 10 seconds the most recent 10-second snapshot.
+	 * 
+	 * @param seconds how many of the most recent seconds to cover
+	 * @return the activity of the window
+	 */
+	public LiveWorkStatistics getLiveStatistics(int seconds)
+	{
+		ValidationUtils.assertTrue(seconds > 0 && seconds <= WorkMonitor.MAX_LIVE_WINDOW_SECONDS,
+				"seconds must be between 1 and " + WorkMonitor.MAX_LIVE_WINDOW_SECONDS);
+		return new LiveWorkStatistics(workName, liveWindow.getActivity(seconds), System.currentTimeMillis(),
+				workMonitor.getDurationUnit());
+	}
+
+	// activity since the last call to resetLiveStatistics(), or since this recorder was created
+	public LiveWorkStatistics getLiveStatistics()
+	{
+		return new LiveWorkStatistics(workName, liveWindow.getActivity(), System.currentTimeMillis(),
+				workMonitor.getDurationUnit());
+	}
+
+	// does not affect sliding-window queries or the interval's records
+	public void resetLiveStatistics()
+	{
+		liveWindow.reset(System.currentTimeMillis());
+	}
+
+	/**
+	 * Record the exception class thrown by failed work, in addition to recording the
+	 * failure itself with recordWorkError.
+	 * 
+	 * @param errorType class of the exception thrown
+	 * @param duration duration of the call, in the monitor's duration unit
+	 * @param weight how many calls this one stands for
+	 */
+	public void recordErrorType(Class<?> errorType, long duration, int weight)
+	{
+		ValidationUtils.assertNotNull(errorType, "errorType cannot be null");
+		if (workMonitor.isThreadLocalRecording())
+			workMonitor.getThreadWorkBuffer().recordErrorType(this, errorType, duration, weight);
+		else
+			getCurrent().recordErrorType(errorType, duration, weight, workMonitor.getErrorTypeCapacity());
+	}
+
+	public boolean isSlowWork(long duration)
+	{
+		return slowestWork.get().qualifies(duration);
+	}
+
+	// elapsed time since startNanos (a System.nanoTime() value) in the monitor's duration unit
+	public long getElapsed(long startNanos)
+	{
+		return toDuration(System.nanoTime() - startNanos);
+	}
+
+	// convert nanoseconds to the monitor's duration unit
+	public long toDuration(long nanos)
+	{
+		return workMonitor.getDurationUnit().convert(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Record successful work that began at startNanos (a {@link System#nanoTime()} value),
+	 * converting the elapsed time to the monitor's duration unit.
+	 * 
+	 * @param startNanos System.nanoTime() when the work began
+	 */
+	public void recordWorkOkSince(long startNanos)
+	{
+		recordWorkOk(getElapsed(startNanos), 1);
+	}
+
+	public void recordWorkErrorSince(long startNanos)
+	{
+		recordWorkError(getElapsed(startNanos), 1);
+	}
+
+	public void recordWorkOkSince(long startNanos, int weight)
+	{
+		recordWorkOk(getElapsed(startNanos), weight);
+	}
+
+	public void recordWorkErrorSince(long startNanos, int weight)
+	{
+		recordWorkError(getElapsed(startNanos), weight);
+	}
+
+	// detach the current interval's record, if there was any activity
+	MutableWorkRecord roll()
+	{
+		// only rolling replaces a record that is in place, so this is the one detached
+		MutableWorkRecord mutableWorkRecord = current.get();
+		if (mutableWorkRecord == null || mutableWorkRecord.isUnused())
+			mutableWorkRecord = null;
+		else
+			mutableWorkRecord = liveWindow.detach(new MutableWorkRecord(workName));
+		// work still in flight carries over as the starting peak of the next interval
+		int inFlightNow = inFlight.get();
+		int peak = peakInFlight.getAndSet(inFlightNow);
+		// idle trackers are reused unless the capacity has changed
+		SlowestWorkTracker tracker = slowestWork.get();
+		int slowestWorkCapacity = workMonitor.getSlowestWorkCapacity();
+		if (!tracker.isEmpty() || tracker.getCapacity() != slowestWorkCapacity)
+			slowestWork.set(new SlowestWorkTracker(slowestWorkCapacity));
+		else
+			tracker = null;
+
+		if (mutableWorkRecord == null && (peak > 0 || tracker != null))
+			mutableWorkRecord = new MutableWorkRecord(workName);
+		if (mutableWorkRecord != null) {
+			mutableWorkRecord.setConcurrency(inFlightNow, peak);
+			mutableWorkRecord.setSlowestWork(tracker);
+		}
+		return mutableWorkRecord;
+	}
+
+	// merge work buffered by a thread into the current interval's record
+	void merge(ThreadWorkBuffer.LocalWorkRecord localWorkRecord, int errorTypeCapacity)
+	{
+		getCurrent().merge(localWorkRecord, errorTypeCapacity);
+	}
+
+	void tickLiveWindow(long now)
+	{
+		liveWindow.tick(now);
+	}
+
+	private void recordWork(long duration, long selfDuration, int weight, boolean ok, String argumentSummary)
+	{
+		if (workMonitor.isThreadLocalRecording())
+			workMonitor.getThreadWorkBuffer().recordWork(this, duration, selfDuration, ok, weight);
+		else if (ok)
+			getCurrent().recordWorkOk(duration, selfDuration, weight);
+		else
+			getCurrent().recordWorkError(duration, selfDuration, weight);
+
+		SlowestWorkTracker tracker = slowestWork.get();
+		if (tracker.qualifies(duration))
+			tracker.offer(new SlowWork(duration, System.currentTimeMillis(), Thread.currentThread().getName(),
+					argumentSummary, ok));
+	}
+
+	private MutableWorkRecord getCurrent()
+	{
+		MutableWorkRecord mutableWorkRecord = current.get();
+		if (mutableWorkRecord == null) {
+			mutableWorkRecord = new MutableWorkRecord(workName);
+			if (!current.compareAndSet(null, mutableWorkRecord))
+				mutableWorkRecord = current.get();
+		}
+		return mutableWorkRecord;
+	}
+}
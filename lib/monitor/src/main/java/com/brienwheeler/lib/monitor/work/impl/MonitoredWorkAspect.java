@@ -23,10 +23,19 @@
  */
 package com.brienwheeler.lib.monitor.work.impl;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
 import com.brienwheeler.lib.monitor.work.IWorkMonitorProvider;
 import com.brienwheeler.lib.monitor.work.MonitoredWork;
+import com.brienwheeler.lib.monitor.work.ThreadResourceUsage;
 import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
 import com.brienwheeler.lib.util.ValidationUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -36,46 +45,254 @@ import org.aspectj.lang.reflect.MethodSignature;
 @Aspect
 public class MonitoredWorkAspect
 {
+	private static final Log log = LogFactory.getLog(MonitoredWorkAspect.class);
+	
+	static final int MAX_ARGUMENT_SUMMARY = 100;
+
+	// one handle per advised method, so annotation lookup and work name resolution happen once
+	private final ConcurrentHashMap<JoinPoint.StaticPart, WorkHandle> workHandles =
+			new ConcurrentHashMap<JoinPoint.StaticPart, WorkHandle>();
+	// recorded monitored work in progress on each thread, for self time and call graph edges
+	private final ThreadLocal<SpanStack> spanStack = new ThreadLocal<SpanStack>() {
+		@Override
+		protected SpanStack initialValue()
+		{
+			return new SpanStack();
+		}
+	};
+	
 	@Pointcut("execution(@com.brienwheeler.lib.monitor.work.MonitoredWork * *(..))")
 	public void monitoredWorkPointcut() {}
 	
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Around("monitoredWorkPointcut()")
 	public Object aroundMonitoredWork(final ProceedingJoinPoint joinPoint) throws InterruptedException
 	{
 		ValidationUtils.assertTrue(joinPoint.getTarget() instanceof IWorkMonitorProvider,
 				"@MonitoredWork target must be subclass of IWorkMonitorProvider");
-		ValidationUtils.assertTrue(joinPoint.getSignature() instanceof MethodSignature,
-				"@MonitoredWork signature must be a method");
 		
-        final WorkMonitor workMonitor = ((IWorkMonitorProvider) joinPoint.getTarget()).getWorkMonitor();
-		MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-		MonitoredWork annotation = signature.getMethod().getAnnotation(MonitoredWork.class);
-		
-		final String workName = annotation != null && !annotation.value().isEmpty() ? annotation.value() : signature.getName();
-
-        long start = System.currentTimeMillis();
-        try {
-            Object ret = joinPoint.proceed();
-            workMonitor.recordWorkOk(workName, System.currentTimeMillis() - start);
-            return ret;
-        }
-        catch (InterruptedException e) {
-            workMonitor.recordWorkError(workName, System.currentTimeMillis() - start);
-            Thread.currentThread().interrupt();
-            throw e;
-        }
-        catch (RuntimeException e) {
-            workMonitor.recordWorkError(workName, System.currentTimeMillis() - start);
-            throw e;
-        }
-        catch (Error e) {
-            workMonitor.recordWorkError(workName, System.currentTimeMillis() - start);
-            throw e;
-        }
-        catch (Throwable e) {
-            workMonitor.recordWorkError(workName, System.currentTimeMillis() - start);
-            throw new RuntimeException(e);
-        }
-    }
+		WorkHandle workHandle = getWorkHandle(joinPoint.getStaticPart());
+		WorkRecorder workRecorder = workHandle.getWorkRecorder(((IWorkMonitorProvider) joinPoint.getTarget()).getWorkMonitor());
+		if (!workRecorder.isEnabled() || !workHandle.sample())
+			return proceed(joinPoint);
+
+		SpanStack spans = spanStack.get();
+		// sampled calls stand for sampleRate calls in the gauges as well as the counts
+		workRecorder.beginWork(workHandle.sampleRate);
+		boolean resourceAccounting = workRecorder.getWorkMonitor().isResourceAccounting();
+		long cpuStart = resourceAccounting ? ThreadResourceUsage.getCpuTime() : -1L;
+		long allocatedStart = resourceAccounting ? ThreadResourceUsage.getAllocatedBytes() : -1L;
+		Span span = spans.push(workRecorder, System.nanoTime());
+		Class<?> errorType = null;
+		try {
+			return joinPoint.proceed();
+		}
+		catch (Throwable e) {
+			errorType = e.getClass();
+			throw rethrow(e);
+		}
+		finally {
+			long elapsedNanos = System.nanoTime() - span.startNanos;
+			long childNanos = span.childNanos;
+			spans.pop();
+			// a recording failure must neither replace the call's outcome nor leave the
+			// in-flight gauge raised
+			try {
+				if (resourceAccounting) {
+					long cpuNanos = cpuStart < 0 ? -1L : ThreadResourceUsage.getCpuTime() - cpuStart;
+					long allocatedBytes = allocatedStart < 0 ? -1L : ThreadResourceUsage.getAllocatedBytes() - allocatedStart;
+					workRecorder.recordResourceUsage(cpuNanos, allocatedBytes, workHandle.sampleRate);
+				}
+				recordWork(joinPoint, workHandle, workRecorder, spans.peek(), elapsedNanos, childNanos, errorType);
+			}
+			catch (RuntimeException e) {
+				log.error("failed to record " + workHandle.workName, e);
+			}
+			finally {
+				workRecorder.endWork(workHandle.sampleRate);
+			}
+		}
+	}
+
+	private void recordWork(JoinPoint joinPoint, WorkHandle workHandle, WorkRecorder workRecorder, Span parent,
+			long elapsedNanos, long childNanos, Class<?> errorType)
+	{
+		long duration = workRecorder.toDuration(elapsedNanos);
+		long selfDuration = workRecorder.toDuration(elapsedNanos - childNanos);
+		String argumentSummary = workHandle.summarizeArguments && workRecorder.isSlowWork(duration) ?
+				summarizeArguments(joinPoint.getArgs()) : null;
+		if (errorType == null) {
+			workRecorder.recordWorkOk(duration, selfDuration, workHandle.sampleRate, argumentSummary);
+		}
+		else {
+			workRecorder.recordWorkError(duration, selfDuration, workHandle.sampleRate, argumentSummary);
+			workRecorder.recordErrorType(errorType, duration, workHandle.sampleRate);
+		}
+
+		if (parent != null) {
+			parent.childNanos += elapsedNanos;
+			parent.workRecorder.recordChildWork(workRecorder, duration, workHandle.sampleRate);
+		}
+	}
+
+	static String summarizeArguments(Object args[])
+	{
+		StringBuilder summary = new StringBuilder();
+		for (Object arg : args) {
+			if (summary.length() > 0)
+				summary.append(", ");
+			String text;
+			try {
+				text = String.valueOf(arg);
+			}
+			catch (RuntimeException e) {
+				text = "<" + arg.getClass().getName() + ": " + e.getClass().getSimpleName() + ">";
+			}
+			// one character past the cap is enough to know the summary was truncated
+			int remaining = MAX_ARGUMENT_SUMMARY + 1 - summary.length();
+			if (text.length() > remaining)
+				summary.append(text, 0, remaining);
+			else
+				summary.append(text);
+			if (summary.length() >= MAX_ARGUMENT_SUMMARY)
+				break;
+		}
+		if (summary.length() > MAX_ARGUMENT_SUMMARY) {
+			summary.setLength(MAX_ARGUMENT_SUMMARY - 3);
+			summary.append("...");
+		}
+		return summary.toString();
+	}
+
+	private Object proceed(ProceedingJoinPoint joinPoint) throws InterruptedException
+	{
+		try {
+			return joinPoint.proceed();
+		}
+		catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	// same exception handling for recorded and unrecorded calls: checked exceptions other
+	// than InterruptedException are wrapped in RuntimeException, anything else is rethrown
+	private static RuntimeException rethrow(Throwable e) throws InterruptedException
+	{
+		if (e instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			throw (InterruptedException) e;
+		}
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return new RuntimeException(e);
+	}
+
+	private WorkHandle getWorkHandle(JoinPoint.StaticPart staticPart)
+	{
+		WorkHandle workHandle = workHandles.get(staticPart);
+		if (workHandle == null) {
+			ValidationUtils.assertTrue(staticPart.getSignature() instanceof MethodSignature,
+					"@MonitoredWork signature must be a method");
+			MethodSignature signature = (MethodSignature) staticPart.getSignature();
+			MonitoredWork annotation = signature.getMethod().getAnnotation(MonitoredWork.class);
+			String workName = annotation != null && !annotation.value().isEmpty() ? annotation.value() : signature.getName();
+			int sampleRate = annotation != null ? annotation.sampleRate() : 1;
+			ValidationUtils.assertTrue(sampleRate > 0, "@MonitoredWork sampleRate must be greater than 0");
+
+			workHandle = new WorkHandle(workName, sampleRate, annotation != null && annotation.summarizeArguments());
+			WorkHandle existing = workHandles.putIfAbsent(staticPart, workHandle);
+			if (existing != null)
+				workHandle = existing;
+		}
+		return workHandle;
+	}
+
+	private static class Span
+	{
+		private WorkRecorder workRecorder;
+		private long startNanos;
+		private long childNanos;
+	}
+
+	// Span objects are reused so that nested recording does not allocate
+	private static class SpanStack
+	{
+		private Span spans[] = new Span[8];
+		private int depth;
+
+		Span push(WorkRecorder workRecorder, long startNanos)
+		{
+			if (depth == spans.length)
+				spans = Arrays.copyOf(spans, depth * 2);
+			Span span = spans[depth];
+			if (span == null)
+				span = spans[depth] = new Span();
+			depth++;
+			span.workRecorder = workRecorder;
+			span.startNanos = startNanos;
+			span.childNanos = 0L;
+			return span;
+		}
+
+		void pop()
+		{
+			spans[--depth].workRecorder = null;
+		}
+
+		Span peek()
+		{
+			return depth == 0 ? null : spans[depth - 1];
+		}
+	}
+
+	/**
+	 * Caches a method's WorkRecorder for each WorkMonitor it has been called with.  The
+	 * cache is a small copy-on-write array that is only written when a monitor is first
+	 * seen, so targets with different monitors calling alternately read it without
+	 * contention.  Methods called with more than MAX_CACHED_RECORDERS monitors look the
+	 * extra ones up in their monitor each time.
+	 */
+	private static class WorkHandle
+	{
+		static final int MAX_CACHED_RECORDERS = 8;
+
+		private final String workName;
+		private final int sampleRate;
+		private final boolean summarizeArguments;
+		private volatile WorkRecorder workRecorders[] = new WorkRecorder[0];
+
+		WorkHandle(String workName, int sampleRate, boolean summarizeArguments)
+		{
+			this.workName = workName;
+			this.sampleRate = sampleRate;
+			this.summarizeArguments = summarizeArguments;
+		}
+
+		boolean sample()
+		{
+			return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+		}
+
+		WorkRecorder getWorkRecorder(WorkMonitor workMonitor)
+		{
+			for (WorkRecorder cached : workRecorders) {
+				if (cached.getWorkMonitor() == workMonitor)
+					return cached;
+			}
+			WorkRecorder workRecorder = workMonitor.getWorkRecorder(workName);
+			cache(workRecorder);
+			return workRecorder;
+		}
+
+		private synchronized void cache(WorkRecorder workRecorder)
+		{
+			WorkRecorder cached[] = workRecorders;
+			if (cached.length == MAX_CACHED_RECORDERS || Arrays.asList(cached).contains(workRecorder))
+				return;
+			cached = Arrays.copyOf(cached, cached.length + 1);
+			cached[cached.length - 1] = workRecorder;
+			workRecorders = cached;
+		}
+	}
 }
@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.telemetry;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.brienwheeler.lib.monitor.work.ThreadResourceUsage;
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Hand-rolled comparison of building and reading a TelemetryInfo against the pair of
+ * ConcurrentHashMaps each instance used to allocate, reporting time and (where the JVM
+ * measures it) bytes allocated per instance.  Not run by the build; run main() from
+ * the test classpath, optionally passing the measurement time per case in milliseconds.
+ */
+public class TelemetryInfoBenchmark
+{
+	private static final long DEFAULT_RUN_MILLIS = 1000L;
+	private static final int ATTRIBUTE_COUNT = 16;
+	private static final String ATTR_NAMES[] = new String[ATTRIBUTE_COUNT];
+
+	static {
+		for (int i=0; i<ATTRIBUTE_COUNT; i++)
+			ATTR_NAMES[i] = "attr" + i;
+	}
+
+	// keeps the JIT from discarding the measured work
+	private static long sink;
+
+	public static void main(String args[])
+	{
+		long runMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_RUN_MILLIS;
+
+		Operation operations[] = new Operation[] {
+			new Operation("TelemetryInfo") {
+				@Override
+				long run(long iteration)
+				{
+					TelemetryInfo telemetryInfo = new TelemetryInfo("work");
+					for (int i=0; i<ATTRIBUTE_COUNT; i++)
+						telemetryInfo.setLong(ATTR_NAMES[i], iteration + i);
+					telemetryInfo.publish();
+					long sum = 0L;
+					for (int i=0; i<ATTRIBUTE_COUNT; i++)
+						sum += telemetryInfo.getLong(ATTR_NAMES[i]);
+					return sum;
+				}
+			},
+			new Operation("ConcurrentHashMap storage") {
+				@Override
+				long run(long iteration)
+				{
+					MapTelemetryInfo telemetryInfo = new MapTelemetryInfo("work");
+					for (int i=0; i<ATTRIBUTE_COUNT; i++)
+						telemetryInfo.set(ATTR_NAMES[i], iteration + i);
+					telemetryInfo.publish();
+					long sum = 0L;
+					for (int i=0; i<ATTRIBUTE_COUNT; i++)
+						sum += ((Long) telemetryInfo.get(ATTR_NAMES[i])).longValue();
+					return sum;
+				}
+			},
+		};
+
+		// warm up every path before measuring
+		for (Operation operation : operations)
+			measure(operation, runMillis);
+
+		for (Operation operation : operations)
+			System.out.println(operation.name + ": " + measure(operation, runMillis));
+	}
+
+	private static String measure(Operation operation, long runMillis)
+	{
+		long instances = 0;
+		long allocatedStart = ThreadResourceUsage.getAllocatedBytes();
+		long startNanos = System.nanoTime();
+		long end = startNanos + runMillis * 1000000L;
+		long now;
+		// check the clock every 1024 instances to keep it out of the measurement
+		do {
+			for (int j=0; j<1024; j++)
+				sink += operation.run(instances++);
+		} while ((now = System.nanoTime()) < end);
+		long allocatedBytes = allocatedStart < 0 ? -1L : ThreadResourceUsage.getAllocatedBytes() - allocatedStart;
+		return String.format("%.1f ns/instance", (double) (now - startNanos) / instances)
+				+ (allocatedBytes < 0 ? "" : String.format(", %.0f bytes/instance", (double) allocatedBytes / instances));
+	}
+
+	private static abstract class Operation
+	{
+		private final String name;
+
+		Operation(String name)
+		{
+			this.name = name;
+		}
+
+		abstract long run(long iteration);
+	}
+
+	// the storage and checks TelemetryInfo had before its attributes moved to parallel arrays
+	private static class MapTelemetryInfo
+	{
+		private final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		@SuppressWarnings("unused")
+		private final ConcurrentHashMap<String, Object> processedVersions = new ConcurrentHashMap<String, Object>();
+		private boolean published;
+
+		MapTelemetryInfo(String name)
+		{
+			ValidationUtils.assertNotNull(name,  "name cannot be null");
+			attributes.put(TelemetryInfo.ATTR_NAME, name);
+			attributes.put(TelemetryInfo.ATTR_CREATED_AT, System.currentTimeMillis());
+		}
+
+		void set(String attrName, Object attrValue)
+		{
+			synchronized (this) {
+				ValidationUtils.assertFalse(published, "can't modify a published " + getClass().getSimpleName());
+			}
+			ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
+			ValidationUtils.assertFalse(attrName.equals(TelemetryInfo.ATTR_NAME), "can't modify attr 'name'");
+			ValidationUtils.assertFalse(attrName.equals(TelemetryInfo.ATTR_CREATED_AT), "can't modify attr 'createdAt'");
+			ValidationUtils.assertNotNull(attrValue,  "attrValue cannot be null");
+			attributes.put(attrName, attrValue);
+		}
+
+		Object get(String attrName)
+		{
+			ValidationUtils.assertNotNull(attrName,  "attrName cannot be null");
+			return attributes.get(attrName);
+		}
+
+		synchronized void publish()
+		{
+			published = true;
+		}
+	}
+}
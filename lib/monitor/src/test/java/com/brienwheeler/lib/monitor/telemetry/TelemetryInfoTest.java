@@ -24,6 +24,8 @@
 package com.brienwheeler.lib.monitor.telemetry;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -139,6 +141,80 @@ public class TelemetryInfoTest
 		Assert.assertTrue(CollectionUtils.containsInstance(attrNames, ATTR));
 	}
 	
+	@Test
+	public void testSetAndGetPrimitive()
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, log, 5L);
+		telemetryInfo.setLong(ATTR, 42L);
+		telemetryInfo.setDouble(VALUE, 1.5d);
+		telemetryInfo.set(NAME + ATTR, 7);
+
+		Assert.assertEquals(TelemetryInfo.AttributeType.LONG, telemetryInfo.getType(ATTR));
+		Assert.assertEquals(TelemetryInfo.AttributeType.DOUBLE, telemetryInfo.getType(VALUE));
+		Assert.assertEquals(TelemetryInfo.AttributeType.OBJECT, telemetryInfo.getType(NAME + ATTR));
+		Assert.assertEquals(TelemetryInfo.AttributeType.LONG, telemetryInfo.getType(TelemetryInfo.ATTR_CREATED_AT));
+		Assert.assertNull(telemetryInfo.getType(VERSION_NAME));
+
+		Assert.assertEquals(42L, telemetryInfo.getLong(ATTR));
+		Assert.assertEquals(42d, telemetryInfo.getDouble(ATTR), 0d);
+		Assert.assertEquals(1L, telemetryInfo.getLong(VALUE));
+		Assert.assertEquals(1.5d, telemetryInfo.getDouble(VALUE), 0d);
+		Assert.assertEquals(7L, telemetryInfo.getLong(NAME + ATTR));
+		Assert.assertEquals(5L, telemetryInfo.getLong(TelemetryInfo.ATTR_CREATED_AT));
+		// boxed for get()
+		Assert.assertEquals(42L, telemetryInfo.get(ATTR));
+		Assert.assertEquals(1.5d, telemetryInfo.get(VALUE));
+
+		// replacing changes the type
+		telemetryInfo.set(ATTR, VALUE);
+		Assert.assertEquals(TelemetryInfo.AttributeType.OBJECT, telemetryInfo.getType(ATTR));
+		Assert.assertEquals(VALUE, telemetryInfo.get(ATTR));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testGetLongMissing()
+	{
+		new TelemetryInfo(NAME, log).getLong(ATTR);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testGetDoubleNotNumeric()
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, log);
+		telemetryInfo.set(ATTR, VALUE);
+		telemetryInfo.getDouble(ATTR);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetLongPublished()
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, log);
+		telemetryInfo.publish();
+		telemetryInfo.setLong(ATTR, 1L);
+	}
+
+	@Test
+	public void testManyAttributes()
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, log);
+		for (int i=0; i<50; i++)
+			telemetryInfo.set(ATTR + i, i);
+		// not the same String instance as the one set
+		telemetryInfo.set(new StringBuilder(ATTR).append(7).toString(), VALUE);
+		telemetryInfo.clear(ATTR + 3);
+
+		Assert.assertEquals(VALUE, telemetryInfo.get(ATTR + 7));
+		Assert.assertNull(telemetryInfo.get(ATTR + 3));
+		Assert.assertEquals(49, telemetryInfo.get(ATTR + 49));
+		Iterator<String> attrNames = telemetryInfo.getAttributeNames().iterator();
+		Assert.assertEquals(TelemetryInfo.ATTR_NAME, attrNames.next());
+		Assert.assertEquals(TelemetryInfo.ATTR_CREATED_AT, attrNames.next());
+		for (int i=0; i<50; i++)
+			if (i != 3)
+				Assert.assertEquals(ATTR + i, attrNames.next());
+		Assert.assertFalse(attrNames.hasNext());
+	}
+	
 	@Test(expected = ValidationException.class)
 	public void testSetPublished()
 	{
@@ -237,6 +313,30 @@ public class TelemetryInfoTest
 		Assert.assertSame(processedVersion, telemetryInfo.getProcessedVersion(VERSION_NAME));		
 	}
 	
+	@Test
+	public void testGetAttributesAndProcessedVersions()
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, log);
+		telemetryInfo.set(ATTR, VALUE);
+		telemetryInfo.setLong(ATTR + "Long", 42L);
+		Object processedVersion = new Object();
+		telemetryInfo.setProcessedVersion(VERSION_NAME, processedVersion);
+		
+		Map<String, Object> attributes = telemetryInfo.getAttributes();
+		Assert.assertEquals(4, attributes.size());
+		Assert.assertEquals(NAME, attributes.get(TelemetryInfo.ATTR_NAME));
+		Assert.assertEquals(telemetryInfo.getCreatedAt(), attributes.get(TelemetryInfo.ATTR_CREATED_AT));
+		Assert.assertEquals(VALUE, attributes.get(ATTR));
+		Assert.assertEquals(42L, attributes.get(ATTR + "Long"));
+		Assert.assertEquals(1, telemetryInfo.getProcessedVersions().size());
+		Assert.assertSame(processedVersion, telemetryInfo.getProcessedVersions().get(VERSION_NAME));
+		
+		// snapshots
+		telemetryInfo.clear(ATTR);
+		Assert.assertEquals(VALUE, attributes.get(ATTR));
+		Assert.assertEquals(3, telemetryInfo.getAttributes().size());
+	}
+	
 	@Test
 	public void testToString()
 	{
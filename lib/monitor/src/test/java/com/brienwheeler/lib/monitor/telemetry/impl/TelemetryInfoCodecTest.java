@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.telemetry.impl;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo.AttributeType;
+
+public class TelemetryInfoCodecTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo("name", null, 1234L);
+		telemetryInfo.setLong("long", -5L);
+		telemetryInfo.setDouble("double", 0.25d);
+		telemetryInfo.set("Integer", 7);
+		telemetryInfo.set("Float", 1.5f);
+		telemetryInfo.set("Boolean", true);
+		telemetryInfo.set("String", "line\u2028 \u00e9");
+		telemetryInfo.publish();
+		
+		TelemetryInfo decoded = TelemetryInfoCodec.decode(TelemetryInfoCodec.encode(telemetryInfo));
+		Assert.assertEquals("name", decoded.getName());
+		Assert.assertEquals(1234L, decoded.getCreatedAt());
+		Assert.assertNull(decoded.getLog());
+		Assert.assertEquals(telemetryInfo.getAttributeNames(), decoded.getAttributeNames());
+		
+		Assert.assertEquals(AttributeType.LONG, decoded.getType("long"));
+		Assert.assertEquals(-5L, decoded.getLong("long"));
+		Assert.assertEquals(AttributeType.DOUBLE, decoded.getType("double"));
+		Assert.assertEquals(0.25d, decoded.getDouble("double"), 0.0d);
+		Assert.assertEquals(AttributeType.LONG, decoded.getType("Integer"));
+		Assert.assertEquals(7L, decoded.getLong("Integer"));
+		Assert.assertEquals(AttributeType.DOUBLE, decoded.getType("Float"));
+		Assert.assertEquals(1.5d, decoded.getDouble("Float"), 0.0d);
+		Assert.assertEquals("true", decoded.get("Boolean"));
+		Assert.assertEquals("line\u2028 \u00e9", decoded.get("String"));
+		
+		// decoded TelemetryInfo can be modified and published again
+		decoded.setLong("extra", 1L);
+		decoded.publish();
+	}
+	
+	@Test
+	public void testNoAttributes() throws IOException
+	{
+		TelemetryInfo decoded = TelemetryInfoCodec.decode(TelemetryInfoCodec.encode(new TelemetryInfo("empty", null, 5L)));
+		Assert.assertEquals("empty", decoded.getName());
+		Assert.assertEquals(2, decoded.getAttributeNames().size());
+	}
+	
+	@Test(expected = IOException.class)
+	public void testDecodeTruncated() throws IOException
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo("name", null, 1234L);
+		telemetryInfo.setLong("long", -5L);
+		byte encoded[] = TelemetryInfoCodec.encode(telemetryInfo);
+		byte truncated[] = new byte[encoded.length - 3];
+		System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+		TelemetryInfoCodec.decode(truncated);
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.telemetry.impl;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.work.ThreadResourceUsage;
+
+/**
+ * Hand-rolled comparison of TelemetryInfoJsonSerializer's streaming encoding against
+ * the org.json JSONObject encoding it replaced, reporting time and (where the JVM
+ * measures it) bytes allocated per TelemetryInfo.  Not run by the build; run main()
+ * from the test classpath, optionally passing the measurement time per case in
+ * milliseconds.
+ */
+public class TelemetryInfoJsonSerializerBenchmark
+{
+	private static final long DEFAULT_RUN_MILLIS = 1000L;
+
+	// keeps the JIT from discarding the measured work
+	private static long sink;
+
+	public static void main(String args[]) throws JSONException
+	{
+		long runMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_RUN_MILLIS;
+
+		// shaped like a published work record
+		final TelemetryInfo telemetryInfo = new TelemetryInfo("com.example.SomeService.someMethod");
+		telemetryInfo.set("source", "com.example.SomeService");
+		for (String attrName : new String[] { "okCount", "okDuration", "errorCount", "errorDuration",
+				"peakInFlight", "maxDuration", "cpuTime", "allocatedBytes" })
+			telemetryInfo.setLong(attrName, 123456789L);
+		for (String attrName : new String[] { "p50", "p90", "p99", "p999", "okRate" })
+			telemetryInfo.setDouble(attrName, 1234.5678);
+		telemetryInfo.set("slowestWork", "[12ms: id=42, \"quoted\"]");
+		telemetryInfo.publish();
+
+		// both encode every attribute
+		if (new JSONObject(TelemetryInfoJsonSerializer.toJson(telemetryInfo)).length() != new JSONObject(toJsonObject(telemetryInfo)).length())
+			throw new IllegalStateException("encodings differ");
+
+		Operation operations[] = new Operation[] {
+			new Operation("TelemetryInfoJsonSerializer") {
+				@Override
+				String run()
+				{
+					return TelemetryInfoJsonSerializer.toJson(telemetryInfo);
+				}
+			},
+			new Operation("org.json JSONObject") {
+				@Override
+				String run()
+				{
+					return toJsonObject(telemetryInfo);
+				}
+			},
+		};
+
+		// warm up every path before measuring
+		for (Operation operation : operations)
+			measure(operation, runMillis);
+
+		for (Operation operation : operations)
+			System.out.println(operation.name + ": " + measure(operation, runMillis));
+	}
+
+	private static String measure(Operation operation, long runMillis)
+	{
+		long calls = 0;
+		long allocatedStart = ThreadResourceUsage.getAllocatedBytes();
+		long startNanos = System.nanoTime();
+		long end = startNanos + runMillis * 1000000L;
+		long now;
+		// check the clock every 256 calls to keep it out of the measurement
+		do {
+			for (int j=0; j<256; j++)
+				sink += operation.run().length();
+			calls += 256;
+		} while ((now = System.nanoTime()) < end);
+		long allocatedBytes = allocatedStart < 0 ? -1L : ThreadResourceUsage.getAllocatedBytes() - allocatedStart;
+		return String.format("%.1f ns/call", (double) (now - startNanos) / calls)
+				+ (allocatedBytes < 0 ? "" : String.format(", %.0f bytes/call", (double) allocatedBytes / calls));
+	}
+
+	private static abstract class Operation
+	{
+		private final String name;
+
+		Operation(String name)
+		{
+			this.name = name;
+		}
+
+		abstract String run();
+	}
+
+	// the encoding TelemetryInfoJsonSerializer did before TelemetryInfoJsonWriter
+	private static String toJsonObject(TelemetryInfo telemetryInfo)
+	{
+		try {
+			JSONObject object = new JSONObject();
+			object.put(TelemetryInfo.ATTR_NAME, telemetryInfo.get(TelemetryInfo.ATTR_NAME));
+			object.put(TelemetryInfo.ATTR_CREATED_AT, telemetryInfo.get(TelemetryInfo.ATTR_CREATED_AT));
+			
+			for (String attrName : telemetryInfo.getAttributeNames()) {
+				if (attrName.equals(TelemetryInfo.ATTR_NAME) ||
+						attrName.equals(TelemetryInfo.ATTR_CREATED_AT))
+					continue;
+				
+				TelemetryInfo.AttributeType type = telemetryInfo.getType(attrName);
+				if (type == TelemetryInfo.AttributeType.LONG) {
+					object.put(attrName, telemetryInfo.getLong(attrName));
+					continue;
+				}
+				if (type == TelemetryInfo.AttributeType.DOUBLE) {
+					object.put(attrName, telemetryInfo.getDouble(attrName));
+					continue;
+				}
+
+				Object value = telemetryInfo.get(attrName);
+				if (value == null)
+					continue;
+				if (value instanceof Boolean)
+					object.put(attrName, ((Boolean) value).booleanValue());
+				else if (value instanceof Double)
+					object.put(attrName, ((Double) value).doubleValue());
+				else if (value instanceof Float)
+					object.put(attrName, ((Float) value).floatValue());
+				else if (value instanceof Integer)
+					object.put(attrName, ((Integer) value).intValue());
+				else if (value instanceof Long)
+					object.put(attrName, ((Long) value).longValue());
+				else
+					object.put(attrName, value.toString());
+			}
+			return object.toString();
+		}
+		catch (JSONException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -55,10 +55,15 @@ public class TelemetryInfoJsonSerializerTest
 		telemetryInfo.set("Integer", 1);
 		telemetryInfo.set("Long", 1L);
 		telemetryInfo.set("Object", new Object());
+		telemetryInfo.setLong("long", 2L);
+		telemetryInfo.setDouble("double", 2.5d);
 		telemetryInfo.publish();
 		Assert.assertNull(telemetryInfo.getProcessedVersion(TelemetryInfoJsonSerializer.VERSION_NAME));
 		TelemetryInfoJsonSerializer telemetryInfoJsonSerializer = new TelemetryInfoJsonSerializer();
 		telemetryInfoJsonSerializer.process(telemetryInfo);
-		Assert.assertNotNull(telemetryInfo.getProcessedVersion(TelemetryInfoJsonSerializer.VERSION_NAME));
+		String json = (String) telemetryInfo.getProcessedVersion(TelemetryInfoJsonSerializer.VERSION_NAME);
+		Assert.assertNotNull(json);
+		Assert.assertTrue(json.contains("\"long\":2"));
+		Assert.assertTrue(json.contains("\"double\":2.5"));
 	}
 }
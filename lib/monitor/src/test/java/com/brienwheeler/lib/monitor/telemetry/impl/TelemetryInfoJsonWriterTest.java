@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.telemetry.impl;
+
+import java.util.Iterator;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+
+public class TelemetryInfoJsonWriterTest
+{
+	private static final String NAME = "name";
+	private static final String ESCAPED = "quote\" backslash\\ slash/ newline\n tab\t bell\u0007 line\u2028 \u00e9";
+
+	@Test
+	public void testWrite() throws Exception
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, null, 1234L);
+		telemetryInfo.setLong("long", -5L);
+		telemetryInfo.setDouble("double", 0.25d);
+		telemetryInfo.set("Boolean", true);
+		telemetryInfo.set("Integer", 7);
+		telemetryInfo.set("Float", 1.5f);
+		telemetryInfo.set("String", ESCAPED);
+		telemetryInfo.set(ESCAPED, "escaped name");
+
+		String json = TelemetryInfoJsonWriter.write(telemetryInfo, new StringBuilder()).toString();
+		Assert.assertTrue(json.startsWith("{\"name\":\"name\",\"createdAt\":1234,\"long\":-5,\"double\":0.25,"));
+		Assert.assertTrue(json.contains("\\u2028"));
+		Assert.assertTrue(json.contains("\\u0007"));
+
+		// round trips through a conforming parser
+		JSONObject object = new JSONObject(json);
+		Assert.assertEquals(NAME, object.getString(TelemetryInfo.ATTR_NAME));
+		Assert.assertEquals(1234L, object.getLong(TelemetryInfo.ATTR_CREATED_AT));
+		Assert.assertEquals(-5L, object.getLong("long"));
+		Assert.assertEquals(0.25d, object.getDouble("double"), 0d);
+		Assert.assertTrue(object.getBoolean("Boolean"));
+		Assert.assertEquals(7, object.getInt("Integer"));
+		Assert.assertEquals(1.5d, object.getDouble("Float"), 0d);
+		Assert.assertEquals(ESCAPED, object.getString("String"));
+		Assert.assertEquals("escaped name", object.getString(ESCAPED));
+		int count = 0;
+		for (Iterator<?> keys = object.keys(); keys.hasNext(); keys.next())
+			count++;
+		Assert.assertEquals(9, count);
+	}
+
+	@Test
+	public void testNonFinite() throws Exception
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo(NAME, null, 0L);
+		telemetryInfo.setDouble("nan", Double.NaN);
+		telemetryInfo.set("infinity", Float.POSITIVE_INFINITY);
+
+		String json = TelemetryInfoJsonWriter.write(telemetryInfo, new StringBuilder()).toString();
+		JSONObject object = new JSONObject(json);
+		Assert.assertTrue(object.isNull("nan"));
+		Assert.assertTrue(object.isNull("infinity"));
+	}
+
+	@Test
+	public void testAppendString()
+	{
+		Assert.assertEquals("\"plain\"", TelemetryInfoJsonWriter.appendString(new StringBuilder(), "plain").toString());
+		Assert.assertEquals("\"\"", TelemetryInfoJsonWriter.appendString(new StringBuilder(), "").toString());
+		Assert.assertEquals("\"a\\\"b\\\\c\\r\\n\\u001f\"",
+				TelemetryInfoJsonWriter.appendString(new StringBuilder(), "a\"b\\c\r\n\u001f").toString());
+	}
+
+	@Test
+	public void testSerializerReusesBuffer()
+	{
+		TelemetryInfo first = new TelemetryInfo(NAME, null, 1L);
+		first.setLong("value", 1L);
+		TelemetryInfo second = new TelemetryInfo(NAME, null, 2L);
+		Assert.assertEquals("{\"name\":\"name\",\"createdAt\":1,\"value\":1}", TelemetryInfoJsonSerializer.toJson(first));
+		Assert.assertEquals("{\"name\":\"name\",\"createdAt\":2}", TelemetryInfoJsonSerializer.toJson(second));
+	}
+}
@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.lib.monitor.telemetry.impl;
 
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -51,6 +53,34 @@ public class TelemetryInfoProcessorBaseTest
 		Assert.assertEquals(1, telemetryInfoProcessor.getCount());
 	}
 	
+	@Test
+	public void testBatchUnpublished()
+	{
+		TelemetryInfo published = new TelemetryInfo(NAME);
+		published.publish();
+		TelemetryInfoProcessor telemetryInfoProcessor = new TelemetryInfoProcessor();
+		try {
+			telemetryInfoProcessor.processBatch(Arrays.asList(published, new TelemetryInfo(NAME)));
+			Assert.fail();
+		}
+		catch (ValidationException e) {
+			// nothing processed when any of the batch is unpublished
+			Assert.assertEquals(0, telemetryInfoProcessor.getCount());
+		}
+	}
+	
+	@Test
+	public void testBatchPublished()
+	{
+		TelemetryInfo telemetryInfo1 = new TelemetryInfo(NAME);
+		telemetryInfo1.publish();
+		TelemetryInfo telemetryInfo2 = new TelemetryInfo(NAME);
+		telemetryInfo2.publish();
+		TelemetryInfoProcessor telemetryInfoProcessor = new TelemetryInfoProcessor();
+		telemetryInfoProcessor.processBatch(Arrays.asList(telemetryInfo1, telemetryInfo2));
+		Assert.assertEquals(2, telemetryInfoProcessor.getCount());
+	}
+	
 	private static class TelemetryInfoProcessor extends TelemetryInfoProcessorBase
 	{
 		private int count = 0;
@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.lib.monitor.telemetry.mocks;
 
+import java.util.List;
+
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryPublishService;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 
@@ -32,4 +34,9 @@ public class MockTelemetryPublishService2 implements ITelemetryPublishService
 	public void publish(TelemetryInfo telemetryInfo)
 	{
 	}
+
+	@Override
+	public void publishBatch(List<TelemetryInfo> telemetryInfos)
+	{
+	}
 }
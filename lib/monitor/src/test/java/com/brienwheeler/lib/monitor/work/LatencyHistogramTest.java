@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.util.ValidationException;
+
+public class LatencyHistogramTest
+{
+	@Test
+	public void testEmpty()
+	{
+		LatencyHistogramSnapshot snapshot = new LatencyHistogram().getSnapshot();
+		Assert.assertEquals(0, snapshot.getTotalCount());
+		Assert.assertEquals(0, snapshot.getMaxValue());
+		Assert.assertEquals(0, snapshot.getValueAtPercentile(50.0));
+	}
+
+	@Test
+	public void testBucketIndexContinuous()
+	{
+		int lastIndex = 0;
+		for (long value=0; value<100000; value++) {
+			int index = LatencyHistogram.bucketIndex(value);
+			Assert.assertTrue(index == lastIndex || index == lastIndex + 1);
+			Assert.assertTrue(LatencyHistogram.bucketHighestValue(index) >= value);
+			lastIndex = index;
+		}
+	}
+
+	@Test
+	public void testBucketIndexBounds()
+	{
+		Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+		Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+				LatencyHistogram.bucketIndex((1L << (LatencyHistogram.MAX_EXPONENT + 1)) - 1));
+		Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 2,
+				LatencyHistogram.bucketIndex((1L << (LatencyHistogram.MAX_EXPONENT + 1)) - 1 - 
+						(1L << (LatencyHistogram.MAX_EXPONENT - LatencyHistogram.SUB_BUCKET_BITS + 1))));
+	}
+
+	@Test
+	public void testPercentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value=1; value<=1000; value++)
+			histogram.recordValue(value);
+		
+		LatencyHistogramSnapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(1000, snapshot.getTotalCount());
+		Assert.assertEquals(1000, snapshot.getMaxValue());
+		assertWithinPrecision(500, snapshot.getValueAtPercentile(50.0));
+		assertWithinPrecision(900, snapshot.getValueAtPercentile(90.0));
+		assertWithinPrecision(990, snapshot.getValueAtPercentile(99.0));
+		assertWithinPrecision(999, snapshot.getValueAtPercentile(99.9));
+		Assert.assertEquals(1000, snapshot.getValueAtPercentile(100.0));
+		Assert.assertEquals(1, snapshot.getValueAtPercentile(0.0));
+	}
+
+	@Test
+	public void testTail()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i=0; i<999; i++)
+			histogram.recordValue(2);
+		histogram.recordValue(60000);
+		
+		LatencyHistogramSnapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(2, snapshot.getValueAtPercentile(99.0));
+		Assert.assertEquals(2, snapshot.getValueAtPercentile(99.9));
+		Assert.assertEquals(60000, snapshot.getValueAtPercentile(99.95));
+		Assert.assertEquals(60000, snapshot.getMaxValue());
+	}
+
+	@Test
+	public void testNegativeValue()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordValue(-5);
+		LatencyHistogramSnapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(1, snapshot.getTotalCount());
+		Assert.assertEquals(0, snapshot.getMaxValue());
+	}
+
+	@Test
+	public void testConcurrentRecord() throws InterruptedException
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread threads[] = new Thread[4];
+		for (int i=0; i<threads.length; i++) {
+			final int base = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int j=0; j<10000; j++)
+						histogram.recordValue(base * 10000 + j);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		LatencyHistogramSnapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(40000, snapshot.getTotalCount());
+		Assert.assertEquals(39999, snapshot.getMaxValue());
+	}
+
+	@Test
+	public void testStripedRecord() throws InterruptedException
+	{
+		final LatencyHistogram histogram = new LatencyHistogram(4);
+		Assert.assertEquals(4, histogram.getStripes());
+		Thread threads[] = new Thread[8];
+		for (int i=0; i<threads.length; i++) {
+			final int base = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int j=0; j<1000; j++)
+						histogram.recordValue(base * 1000 + j, 2L);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		// counts and maxima of every stripe are combined
+		LatencyHistogramSnapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(16000, snapshot.getTotalCount());
+		Assert.assertEquals(7999, snapshot.getMaxValue());
+		assertWithinPrecision(4000, snapshot.getValueAtPercentile(50.0));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testConstructFailStripesNotPowerOfTwo()
+	{
+		new LatencyHistogram(3);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testConstructFailTooManyStripes()
+	{
+		new LatencyHistogram(LatencyHistogram.MAX_STRIPES * 2);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testPercentileOutOfRange()
+	{
+		new LatencyHistogram().getSnapshot().getValueAtPercentile(100.1);
+	}
+
+	private static void assertWithinPrecision(long expected, long actual)
+	{
+		Assert.assertTrue("expected " + expected + " but was " + actual,
+				Math.abs(expected - actual) <= expected * 2 / LatencyHistogram.SUB_BUCKET_COUNT);
+	}
+}
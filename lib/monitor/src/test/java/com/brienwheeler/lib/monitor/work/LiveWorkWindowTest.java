@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.util.ValidationException;
+
+public class LiveWorkWindowTest
+{
+	private static final String WORK_NAME = "testWork";
+
+	@Test
+	public void testFineWindow()
+	{
+		AtomicReference<MutableWorkRecord> current = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window = new LiveWorkWindow(0L, current);
+		record(current, 10L, 1, true);
+		record(current, 20L, 1, false);
+		window.tick(1000L);
+		record(current, 30L, 2, true);
+
+		// the newest snapshot is less than a second old, so the window starts at creation
+		LiveWorkStatistics statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(1), 1500L, null);
+		Assert.assertEquals(0L, statistics.getStartTime());
+		Assert.assertEquals(4L, statistics.getCount());
+		Assert.assertEquals(0.25, statistics.getErrorRatio(), 0.001);
+		Assert.assertEquals(90L, statistics.getDuration());
+		Assert.assertEquals(10L, statistics.getDurationAtPercentile(25.0));
+
+		window.tick(2000L);
+		record(current, 30L, 1, true);
+		statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(1), 2500L, null);
+		Assert.assertEquals(1000L, statistics.getStartTime());
+		Assert.assertEquals(1500L, statistics.getWindowMillis());
+		Assert.assertEquals(3L, statistics.getOkCount());
+		Assert.assertEquals(0L, statistics.getErrorCount());
+		Assert.assertEquals(2.0, statistics.getRate(), 0.001);
+		Assert.assertEquals(30L, statistics.getAvgDuration());
+		Assert.assertEquals(30L, statistics.getDurationAtPercentile(50.0));
+	}
+
+	@Test
+	public void testCoarseWindow()
+	{
+		AtomicReference<MutableWorkRecord> current = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window = new LiveWorkWindow(0L, current);
+		for (int i=1; i<=100; i++) {
+			record(current, 1L, 1, true);
+			window.tick(i * 1000L);
+		}
+
+		LiveWorkStatistics statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(10), 100000L, null);
+		Assert.assertEquals(10L, statistics.getCount());
+		Assert.assertEquals(10000L, statistics.getWindowMillis());
+
+		// 15 seconds extends back to the snapshot at 80 seconds
+		statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(15), 100000L, null);
+		Assert.assertEquals(20L, statistics.getCount());
+		Assert.assertEquals(20000L, statistics.getWindowMillis());
+
+		statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(LiveWorkWindow.MAX_WINDOW_SECONDS), 100000L, null);
+		Assert.assertEquals(60L, statistics.getCount());
+	}
+
+	@Test
+	public void testDetach()
+	{
+		AtomicReference<MutableWorkRecord> current = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window = new LiveWorkWindow(0L, current);
+		record(current, 10L, 1, true);
+		window.tick(1000L);
+		record(current, 20L, 1, false);
+		
+		// detached records stay in the window's activity
+		MutableWorkRecord detached = window.detach(null);
+		Assert.assertEquals(1, detached.getWorkOkCount());
+		Assert.assertNull(current.get());
+		record(current, 30L, 1, true);
+		LiveWorkStatistics statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(), 1500L, null);
+		Assert.assertEquals(3L, statistics.getCount());
+		Assert.assertEquals(60L, statistics.getDuration());
+		window.tick(2000L);
+		record(current, 40L, 1, true);
+		statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(1), 2500L, null);
+		Assert.assertEquals(3L, statistics.getCount());
+		Assert.assertEquals(30L, statistics.getDurationAtPercentile(50.0));
+	}
+
+	@Test
+	public void testReset()
+	{
+		AtomicReference<MutableWorkRecord> current = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window = new LiveWorkWindow(0L, current);
+		record(current, 10L, 1, true);
+		Assert.assertEquals(1L, new LiveWorkStatistics(WORK_NAME, window.getActivity(), 500L, null).getCount());
+
+		window.reset(1000L);
+		record(current, 10L, 2, false);
+		LiveWorkStatistics statistics = new LiveWorkStatistics(WORK_NAME, window.getActivity(), 1500L, null);
+		Assert.assertEquals(1000L, statistics.getStartTime());
+		Assert.assertEquals(2L, statistics.getErrorCount());
+		Assert.assertEquals(0L, statistics.getOkCount());
+		// sliding windows are unaffected
+		Assert.assertEquals(3L, new LiveWorkStatistics(WORK_NAME, window.getActivity(1), 1500L, null).getCount());
+	}
+
+	@Test
+	public void testAdd()
+	{
+		AtomicReference<MutableWorkRecord> current1 = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window1 = new LiveWorkWindow(0L, current1);
+		record(current1, 2L, 1, true);
+		AtomicReference<MutableWorkRecord> current2 = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window2 = new LiveWorkWindow(500L, current2);
+		record(current2, 100L, 1, false);
+
+		LiveWorkStatistics statistics = new LiveWorkStatistics(WORK_NAME, window1.getActivity(), 1000L, TimeUnit.MILLISECONDS)
+				.add(new LiveWorkStatistics(WORK_NAME, window2.getActivity(), 1000L, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(0L, statistics.getStartTime());
+		Assert.assertEquals(2L, statistics.getCount());
+		Assert.assertEquals(0.5, statistics.getErrorRatio(), 0.001);
+		Assert.assertEquals(51L, statistics.getAvgDuration());
+		Assert.assertEquals(LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(100L)),
+				statistics.getDurationAtPercentile(100.0));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testAddFailDurationUnit()
+	{
+		AtomicReference<MutableWorkRecord> current = new AtomicReference<MutableWorkRecord>();
+		LiveWorkWindow window = new LiveWorkWindow(0L, current);
+		new LiveWorkStatistics(WORK_NAME, window.getActivity(), 0L, TimeUnit.MILLISECONDS)
+				.add(new LiveWorkStatistics(WORK_NAME, window.getActivity(), 0L, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testEmptyWindow()
+	{
+		LiveWorkStatistics statistics = new LiveWorkStatistics(WORK_NAME, new LiveWorkWindow(0L, new AtomicReference<MutableWorkRecord>()).getActivity(1), 0L, null);
+		Assert.assertEquals(0L, statistics.getCount());
+		Assert.assertEquals(0.0, statistics.getRate(), 0.001);
+		Assert.assertEquals(0.0, statistics.getErrorRatio(), 0.001);
+		Assert.assertEquals(0L, statistics.getAvgDuration());
+		Assert.assertEquals(0L, statistics.getDurationAtPercentile(99.0));
+	}
+
+	@Test
+	public void testWorkMonitorLiveStatistics()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(WORK_NAME);
+		Assert.assertNull(workMonitor.getLiveStatistics(WORK_NAME, 1));
+
+		workMonitor.recordWorkOk(WORK_NAME, 5L);
+		workMonitor.recordWorkError(WORK_NAME, 5L);
+		// rolling records does not affect live statistics
+		workMonitor.rollRecords();
+
+		LiveWorkStatistics statistics = workMonitor.getLiveStatistics(WORK_NAME, WorkMonitor.MAX_LIVE_WINDOW_SECONDS);
+		Assert.assertEquals(WORK_NAME, statistics.getWorkName());
+		Assert.assertEquals(2L, statistics.getCount());
+		Assert.assertEquals(workMonitor.getDurationUnit(), statistics.getDurationUnit());
+
+		List<LiveWorkStatistics> allStatistics = workMonitor.getLiveStatistics(1);
+		Assert.assertEquals(1, allStatistics.size());
+	}
+
+	@Test
+	public void testWorkMonitorLiveStatisticsThreadLocal()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(WORK_NAME);
+		workMonitor.setRecordingMode(WorkMonitor.RecordingMode.THREAD_LOCAL);
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder(WORK_NAME);
+		workRecorder.recordWorkOk(5L);
+		workRecorder.recordWorkError(7L);
+
+		// buffered work is harvested for live statistics once a second
+		workMonitor.tickLiveStatistics(System.currentTimeMillis());
+		LiveWorkStatistics statistics = workRecorder.getLiveStatistics();
+		Assert.assertEquals(1L, statistics.getOkCount());
+		Assert.assertEquals(1L, statistics.getErrorCount());
+		Assert.assertEquals(7L, statistics.getDurationAtPercentile(100.0));
+
+		workMonitor.rollRecords();
+		Assert.assertEquals(2L, workRecorder.getLiveStatistics().getCount());
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testLiveStatisticsFailWindowTooLong()
+	{
+		new WorkMonitor(WORK_NAME).getWorkRecorder(WORK_NAME).getLiveStatistics(WorkMonitor.MAX_LIVE_WINDOW_SECONDS + 1);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testLiveStatisticsFailWindowZero()
+	{
+		new WorkMonitor(WORK_NAME).getWorkRecorder(WORK_NAME).getLiveStatistics(0);
+	}
+
+	private static void record(AtomicReference<MutableWorkRecord> current, long duration, int weight, boolean ok)
+	{
+		if (current.get() == null)
+			current.set(new MutableWorkRecord(WORK_NAME));
+		if (ok)
+			current.get().recordWorkOk(duration, weight);
+		else
+			current.get().recordWorkError(duration, weight);
+	}
+}
@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.lib.monitor.work;
 
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -47,6 +49,7 @@ public class MutableWorkRecordTest
 		mutableWorkRecord.recordWorkOk(150);
 		Assert.assertEquals(2, mutableWorkRecord.getWorkOkCount());
 		Assert.assertEquals(250, mutableWorkRecord.getWorkOkDuration());
+		Assert.assertEquals(2, mutableWorkRecord.getDurationHistogram().getSnapshot().getTotalCount());
 	}
 
 	@Test
@@ -58,4 +61,33 @@ public class MutableWorkRecordTest
 		Assert.assertEquals(2, mutableWorkRecord.getWorkErrorCount());
 		Assert.assertEquals(2500, mutableWorkRecord.getWorkErrorDuration());
 	}
+
+	@Test
+	public void testRecordErrorType()
+	{
+		MutableWorkRecord mutableWorkRecord = new MutableWorkRecord("workName");
+		mutableWorkRecord.recordErrorType(IllegalStateException.class, 10, 1, 2);
+		mutableWorkRecord.recordErrorType(IllegalStateException.class, 20, 2, 2);
+		mutableWorkRecord.recordErrorType(IllegalArgumentException.class, 5, 1, 2);
+		// beyond capacity
+		mutableWorkRecord.recordErrorType(NullPointerException.class, 1, 1, 2);
+		mutableWorkRecord.recordErrorType(UnsupportedOperationException.class, 2, 1, 2);
+
+		List<ErrorWork> errorWork = mutableWorkRecord.getErrorWork();
+		Assert.assertEquals(3, errorWork.size());
+		ErrorWork other = errorWork.get(2);
+		Assert.assertEquals(ErrorWork.OTHER_ERRORS, other.getErrorType());
+		Assert.assertEquals(2L, other.getCount());
+		Assert.assertEquals(3L, other.getDuration());
+		for (ErrorWork error : errorWork.subList(0, 2)) {
+			if (error.getErrorType().equals(IllegalStateException.class.getName())) {
+				Assert.assertEquals(3L, error.getCount());
+				Assert.assertEquals(50L, error.getDuration());
+			}
+			else {
+				Assert.assertEquals(IllegalArgumentException.class.getName(), error.getErrorType());
+				Assert.assertEquals(1L, error.getCount());
+			}
+		}
+	}
 }
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlowestWorkTrackerTest
+{
+	@Test
+	public void testOffer()
+	{
+		SlowestWorkTracker tracker = new SlowestWorkTracker(3);
+		Assert.assertTrue(tracker.isEmpty());
+		Assert.assertTrue(tracker.qualifies(0L));
+
+		long durations[] = { 5L, 1L, 9L, 3L, 7L, 2L, 8L };
+		for (long duration : durations) {
+			if (tracker.qualifies(duration))
+				tracker.offer(new SlowWork(duration, 0L, "thread", null, true));
+		}
+
+		Assert.assertFalse(tracker.qualifies(7L));
+		Assert.assertTrue(tracker.qualifies(8L));
+		List<SlowWork> slowestWork = tracker.getSlowestWork();
+		Assert.assertEquals(3, slowestWork.size());
+		Assert.assertEquals(9L, slowestWork.get(0).getDuration());
+		Assert.assertEquals(8L, slowestWork.get(1).getDuration());
+		Assert.assertEquals(7L, slowestWork.get(2).getDuration());
+	}
+
+	@Test
+	public void testZeroCapacity()
+	{
+		SlowestWorkTracker tracker = new SlowestWorkTracker(0);
+		Assert.assertFalse(tracker.qualifies(Long.MAX_VALUE - 1));
+		tracker.offer(new SlowWork(1L, 0L, "thread", null, true));
+		Assert.assertTrue(tracker.isEmpty());
+		Assert.assertTrue(tracker.getSlowestWork().isEmpty());
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.util.ValidationException;
+
+public class StripedCounterTest
+{
+	@Test
+	public void testConstruct()
+	{
+		StripedCounter counter = new StripedCounter(2, 4);
+		Assert.assertEquals(4, counter.getStripes());
+		Assert.assertEquals(0L, counter.sum(0));
+		Assert.assertEquals(0L, counter.sum(1));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testConstructFailStripesNotPowerOfTwo()
+	{
+		new StripedCounter(1, 3);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testConstructFailTooManyFields()
+	{
+		new StripedCounter(StripedCounter.CELL_STRIDE + 1);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSumFailFieldOutOfRange()
+	{
+		new StripedCounter(2).sum(2);
+	}
+
+	@Test
+	public void testStripesFor()
+	{
+		Assert.assertEquals(2, StripedCounter.stripesFor(1));
+		Assert.assertEquals(8, StripedCounter.stripesFor(3));
+		Assert.assertEquals(8, StripedCounter.stripesFor(4));
+		Assert.assertEquals(StripedCounter.MAX_STRIPES, StripedCounter.stripesFor(1024));
+	}
+
+	@Test
+	public void testAddIndependentFields()
+	{
+		StripedCounter counter = new StripedCounter(2);
+		counter.increment(0);
+		counter.increment(0);
+		counter.add(1, 100L);
+		Assert.assertEquals(2L, counter.sum(0));
+		Assert.assertEquals(100L, counter.sum(1));
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException
+	{
+		final StripedCounter counter = new StripedCounter(2);
+		Thread threads[] = new Thread[16];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int j=0; j<10000; j++) {
+						counter.increment(0);
+						counter.add(1, 3L);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertEquals(160000L, counter.sum(0));
+		Assert.assertEquals(480000L, counter.sum(1));
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThreadWorkBufferTest
+{
+	@Test
+	public void testSparseHistogram()
+	{
+		ThreadWorkBuffer.SparseHistogram histogram = new ThreadWorkBuffer.SparseHistogram();
+		int initialCapacity = histogram.getBuckets().length;
+		
+		// enough distinct buckets, some colliding modulo the capacity, to force a resize
+		for (int i=0; i<initialCapacity; i++) {
+			histogram.add(i * 3, 1);
+			histogram.add(i * 3, 2);
+		}
+		Assert.assertEquals(initialCapacity, histogram.size());
+		Assert.assertTrue(histogram.getBuckets().length > initialCapacity);
+		
+		long expected[] = new long[LatencyHistogram.BUCKET_COUNT];
+		for (int i=0; i<initialCapacity; i++)
+			expected[i * 3] = 3;
+		long actual[] = new long[LatencyHistogram.BUCKET_COUNT];
+		for (int i=0; i<histogram.getBuckets().length; i++) {
+			if (histogram.getCounts()[i] != 0)
+				actual[histogram.getBuckets()[i]] += histogram.getCounts()[i];
+		}
+		Assert.assertArrayEquals(expected, actual);
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.size());
+		histogram.add(5, 1);
+		Assert.assertEquals(1, histogram.size());
+	}
+
+	@Test
+	public void testIdleRecordsDropped()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(WorkMonitorTest.TEST_NAME);
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder("workName");
+		WorkRecorder workRecorder2 = workMonitor.getWorkRecorder("workName2");
+		ThreadWorkBuffer buffer = new ThreadWorkBuffer(Thread.currentThread());
+		buffer.recordWork(workRecorder, 10, 10, true, 1);
+		buffer.recordWork(workRecorder2, 10, 10, true, 1);
+		Assert.assertEquals(2, buffer.size());
+
+		// harvested into the recorders' current records
+		Assert.assertTrue(buffer.harvest(WorkMonitor.DEFAULT_ERROR_TYPE_CAPACITY));
+		WorkRecordCollection workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(2, workRecordCollection.size());
+		Assert.assertEquals(10, workRecordCollection.getWorkRecord("workName").getDurationMax());
+		
+		// records are kept (zeroed) for the next interval, then dropped after an interval without use
+		buffer.recordWork(workRecorder, 20, 20, true, 1);
+		Assert.assertTrue(buffer.harvest(WorkMonitor.DEFAULT_ERROR_TYPE_CAPACITY));
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertTrue(buffer.harvest(WorkMonitor.DEFAULT_ERROR_TYPE_CAPACITY));
+		Assert.assertEquals(1, buffer.size());
+		workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(1, workRecordCollection.size());
+		Assert.assertEquals(20, workRecordCollection.getWorkRecord("workName").getDurationMax());
+	}
+}
@@ -23,10 +23,16 @@
  */
 package com.brienwheeler.lib.monitor.work;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.WorkMonitor.RecordingMode;
 import com.brienwheeler.lib.util.ValidationException;
 
 public class WorkMonitorTest
@@ -67,4 +73,243 @@ public class WorkMonitorTest
 		WorkRecordCollection workRecordCollection = workMonitor.rollRecords();
 		Assert.assertEquals(1, workRecordCollection.size());
 	}
+
+	@Test
+	public void testWorkRecorder()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder("workName");
+		Assert.assertSame(workRecorder, workMonitor.getWorkRecorder("workName"));
+		Assert.assertSame(workMonitor, workRecorder.getWorkMonitor());
+		Assert.assertEquals("workName", workRecorder.getWorkName());
+
+		workRecorder.recordWorkOk(100);
+		workMonitor.recordWorkError("workName", 50);
+		WorkRecordCollection workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(1, workRecordCollection.size());
+		WorkRecord workRecord = workRecordCollection.getWorkRecord("workName");
+		Assert.assertEquals(1, workRecord.getWorkOkCount());
+		Assert.assertEquals(1, workRecord.getWorkErrorCount());
+
+		// idle recorders contribute nothing to the next interval, but stay bound
+		Assert.assertEquals(0, workMonitor.rollRecords().size());
+		workRecorder.recordWorkOk(100);
+		workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(1, workRecordCollection.getWorkRecord("workName").getWorkOkCount());
+	}
+
+	@Test
+	public void testPeakInFlight()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder("workName");
+		workRecorder.beginWork();
+		workRecorder.beginWork();
+		workRecorder.beginWork();
+		workRecorder.endWork();
+		workRecorder.recordWorkOk(10);
+		workRecorder.endWork();
+		Assert.assertEquals(1, workRecorder.getInFlight());
+
+		WorkRecord workRecord = workMonitor.rollRecords().getWorkRecord("workName");
+		Assert.assertEquals(1, workRecord.getInFlight());
+		Assert.assertEquals(3, workRecord.getPeakInFlight());
+
+		// peak for the next interval starts from work still in flight
+		workRecorder.endWork();
+		workRecord = workMonitor.rollRecords().getWorkRecord("workName");
+		Assert.assertEquals(0, workRecord.getWorkOkCount());
+		Assert.assertEquals(0, workRecord.getInFlight());
+		Assert.assertEquals(1, workRecord.getPeakInFlight());
+	}
+
+	@Test
+	public void testSlowestWork()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		for (int i=1; i<=10; i++)
+			workMonitor.recordWorkOk("workName", i);
+		workMonitor.recordWorkError("workName", 20);
+
+		List<SlowWork> slowestWork = workMonitor.rollRecords().getWorkRecord("workName").getSlowestWork();
+		Assert.assertEquals(WorkMonitor.DEFAULT_SLOWEST_WORK_CAPACITY, slowestWork.size());
+		Assert.assertEquals(20L, slowestWork.get(0).getDuration());
+		Assert.assertFalse(slowestWork.get(0).isOk());
+		Assert.assertEquals(Thread.currentThread().getName(), slowestWork.get(0).getThreadName());
+		Assert.assertNull(slowestWork.get(0).getArgumentSummary());
+		Assert.assertEquals(7L, slowestWork.get(4).getDuration());
+
+		// capacity change applies from the next roll
+		workMonitor.setSlowestWorkCapacity(0);
+		workMonitor.recordWorkOk("workName", 10);
+		Assert.assertEquals(1, workMonitor.rollRecords().getWorkRecord("workName").getSlowestWork().size());
+		workMonitor.recordWorkOk("workName", 10);
+		Assert.assertTrue(workMonitor.rollRecords().getWorkRecord("workName").getSlowestWork().isEmpty());
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetSlowestWorkCapacityFailNegative()
+	{
+		new WorkMonitor(TEST_NAME).setSlowestWorkCapacity(-1);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testWorkRecorderFailEmptyName()
+	{
+		new WorkMonitor(TEST_NAME).getWorkRecorder("");
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testWorkRecorderFailNullName()
+	{
+		new WorkMonitor(TEST_NAME).getWorkRecorder(null);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testRecordWorkOkFailNullName()
+	{
+		new WorkMonitor(TEST_NAME).recordWorkOk(null, 1L);
+	}
+
+	@Test
+	public void testDurationUnit()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		Assert.assertEquals(TimeUnit.MILLISECONDS, workMonitor.getDurationUnit());
+		Assert.assertEquals(TimeUnit.MILLISECONDS, workMonitor.rollRecords().getDurationUnit());
+
+		workMonitor.setDurationUnit(TimeUnit.NANOSECONDS);
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder("workName");
+		long start = System.nanoTime();
+		workRecorder.recordWorkOkSince(start - 1500L);
+		WorkRecordCollection workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(TimeUnit.NANOSECONDS, workRecordCollection.getDurationUnit());
+		WorkRecord workRecord = workRecordCollection.getWorkRecord("workName");
+		Assert.assertEquals(TimeUnit.NANOSECONDS, workRecord.getDurationUnit());
+		Assert.assertTrue(workRecord.getWorkOkDuration() >= 1500L);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetDurationUnitFailSeconds()
+	{
+		new WorkMonitor(TEST_NAME).setDurationUnit(TimeUnit.SECONDS);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetRecordingModeFailNull()
+	{
+		new WorkMonitor(TEST_NAME).setRecordingMode(null);
+	}
+
+	@Test
+	public void testThreadLocalRecording() throws InterruptedException
+	{
+		final WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		workMonitor.setRecordingMode(RecordingMode.THREAD_LOCAL);
+		Assert.assertEquals(RecordingMode.THREAD_LOCAL, workMonitor.getRecordingMode());
+		
+		Thread threads[] = new Thread[4];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int j=0; j<1000; j++) {
+						workMonitor.recordWorkOk("workName", 10);
+						workMonitor.recordWorkError("workName2", 20);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		workMonitor.recordWorkOk("workName", 1000);
+
+		WorkRecordCollection workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(2, workRecordCollection.size());
+		WorkRecord workRecord = workRecordCollection.getWorkRecord("workName");
+		Assert.assertEquals(4001, workRecord.getWorkOkCount());
+		Assert.assertEquals(41000, workRecord.getWorkOkDuration());
+		Assert.assertEquals(0, workRecord.getWorkErrorCount());
+		Assert.assertEquals(1000, workRecord.getDurationMax());
+		Assert.assertEquals(10, workRecord.getDurationP99());
+		workRecord = workRecordCollection.getWorkRecord("workName2");
+		Assert.assertEquals(4000, workRecord.getWorkErrorCount());
+		Assert.assertEquals(80000, workRecord.getWorkErrorDuration());
+
+		// dead threads' buffers are dropped once harvested, live thread buffer retained
+		Assert.assertEquals(1, ((Collection<?>) ReflectionTestUtils.getField(workMonitor, "threadBuffers")).size());
+
+		// next interval starts empty, and idle buffer contributes nothing
+		workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(0, workRecordCollection.size());
+		
+		workMonitor.recordWorkOk("workName", 5);
+		workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(1, workRecordCollection.getWorkRecord("workName").getWorkOkCount());
+		Assert.assertEquals(5, workRecordCollection.getWorkRecord("workName").getDurationMax());
+	}
+
+	@Test
+	public void testThreadLocalRecordingDetail()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		workMonitor.setRecordingMode(RecordingMode.THREAD_LOCAL);
+		WorkRecorder parent = workMonitor.getWorkRecorder("parent");
+		WorkRecorder child = workMonitor.getWorkRecorder("child");
+
+		parent.recordWorkError(30, 10, 2, null);
+		parent.recordResourceUsage(TimeUnit.MILLISECONDS.toNanos(4), 100, 2);
+		parent.recordChildWork(child, 20, 2);
+		parent.recordErrorType(IllegalStateException.class, 30, 2);
+
+		WorkRecord workRecord = workMonitor.rollRecords().getWorkRecord("parent");
+		Assert.assertEquals(2, workRecord.getWorkErrorCount());
+		Assert.assertEquals(20, workRecord.getWorkSelfDuration());
+		Assert.assertEquals(2, workRecord.getResourceCount());
+		Assert.assertEquals(8, workRecord.getCpuTime());
+		Assert.assertEquals(200, workRecord.getAllocatedBytes());
+		List<ChildWork> childWork = workRecord.getChildWork();
+		Assert.assertEquals(1, childWork.size());
+		Assert.assertEquals("child", childWork.get(0).getWorkName());
+		Assert.assertEquals(2, childWork.get(0).getCount());
+		Assert.assertEquals(40, childWork.get(0).getDuration());
+		List<ErrorWork> errorWork = workRecord.getErrorWork();
+		Assert.assertEquals(1, errorWork.size());
+		Assert.assertEquals(IllegalStateException.class.getName(), errorWork.get(0).getErrorType());
+		Assert.assertEquals(2, errorWork.get(0).getCount());
+		Assert.assertEquals(60, errorWork.get(0).getDuration());
+	}
+
+	@Test
+	public void testLiveTickerRegistration()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		Assert.assertFalse(LiveWorkTicker.isRegistered(workMonitor));
+
+		workMonitor.getWorkRecorder(TEST_NAME);
+		Assert.assertTrue(LiveWorkTicker.isRegistered(workMonitor));
+
+		workMonitor.stopLiveStatistics();
+		Assert.assertFalse(LiveWorkTicker.isRegistered(workMonitor));
+
+		workMonitor.getLiveStatistics(1);
+		Assert.assertTrue(LiveWorkTicker.isRegistered(workMonitor));
+		workMonitor.stopLiveStatistics();
+	}
+
+	@Test
+	public void testSwitchRecordingMode()
+	{
+		WorkMonitor workMonitor = new WorkMonitor(TEST_NAME);
+		workMonitor.recordWorkOk("workName", 100);
+		workMonitor.setRecordingMode(RecordingMode.THREAD_LOCAL);
+		workMonitor.recordWorkOk("workName", 100);
+		workMonitor.setRecordingMode(RecordingMode.SHARED);
+		workMonitor.recordWorkOk("workName", 100);
+		
+		WorkRecordCollection workRecordCollection = workMonitor.rollRecords();
+		Assert.assertEquals(3, workRecordCollection.getWorkRecord("workName").getWorkOkCount());
+	}
 }
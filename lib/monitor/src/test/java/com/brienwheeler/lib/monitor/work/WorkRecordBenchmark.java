@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hand-rolled multi-threaded throughput comparison of MutableWorkRecord's striped
+ * recording against the single shared counters and histogram it replaced.  Not run
+ * by the build; run main() from the test classpath, optionally passing the
+ * measurement time per thread count in milliseconds.
+ */
+public class WorkRecordBenchmark
+{
+	private static final long DEFAULT_RUN_MILLIS = 1000L;
+
+	public static void main(String args[]) throws InterruptedException
+	{
+		long runMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_RUN_MILLIS;
+		int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+		// warm up both paths before measuring
+		measure(new StripedRecorder(), maxThreads, runMillis);
+		measure(new SharedRecorder(), maxThreads, runMillis);
+
+		for (int threads=1; threads<=maxThreads; threads*=2) {
+			double shared = measure(new SharedRecorder(), threads, runMillis);
+			double striped = measure(new StripedRecorder(), threads, runMillis);
+			System.out.println(String.format("%d threads: striped %.0f ops/s, shared %.0f ops/s", threads, striped, shared));
+		}
+	}
+
+	// operations per second recording from the given number of threads for runMillis
+	private static double measure(final Recorder recorder, int threadCount, long runMillis) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong operations = new AtomicLong();
+		final long deadline[] = new long[1];
+		Thread threads[] = new Thread[threadCount];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					long count = 0;
+					long end = deadline[0];
+					// check the clock every 1024 operations to keep it out of the measurement
+					do {
+						for (int j=0; j<1024; j++)
+							recorder.record(count++ & 1023);
+					} while (System.nanoTime() < end);
+					operations.addAndGet(count);
+				}
+			};
+			threads[i].start();
+		}
+		long startNanos = System.nanoTime();
+		deadline[0] = startNanos + runMillis * 1000000L;
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		if (recorder.getCount() != operations.get())
+			throw new IllegalStateException("recorded " + recorder.getCount() + " of " + operations.get() + " operations");
+		return operations.get() * 1e9 / elapsedNanos;
+	}
+
+	private static interface Recorder
+	{
+		void record(long duration);
+
+		long getCount();
+	}
+
+	private static class StripedRecorder implements Recorder
+	{
+		private final MutableWorkRecord mutableWorkRecord = new MutableWorkRecord("workName");
+
+		@Override
+		public void record(long duration)
+		{
+			mutableWorkRecord.recordWorkOk(duration);
+		}
+
+		@Override
+		public long getCount()
+		{
+			// the int ok count can wrap on long runs; the histogram total cannot
+			return mutableWorkRecord.getDurationHistogram().getSnapshot().getTotalCount();
+		}
+	}
+
+	// the same writes as MutableWorkRecord.recordWorkOk, all to shared atomics
+	private static class SharedRecorder implements Recorder
+	{
+		private final AtomicLong okCount = new AtomicLong();
+		private final AtomicLong okDuration = new AtomicLong();
+		private final AtomicLong selfDuration = new AtomicLong();
+		private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+		private final AtomicLong maxValue = new AtomicLong();
+
+		@Override
+		public void record(long duration)
+		{
+			okCount.addAndGet(1);
+			okDuration.addAndGet(duration);
+			selfDuration.addAndGet(duration);
+			counts.addAndGet(LatencyHistogram.bucketIndex(duration), 1);
+			long currentMax = maxValue.get();
+			while (duration > currentMax && !maxValue.compareAndSet(currentMax, duration))
+				currentMax = maxValue.get();
+		}
+
+		@Override
+		public long getCount()
+		{
+			return okCount.get();
+		}
+	}
+}
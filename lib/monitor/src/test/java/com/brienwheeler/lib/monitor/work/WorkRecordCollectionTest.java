@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.lib.monitor.work;
 
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -95,4 +97,36 @@ public class WorkRecordCollectionTest
 		workRecord = workRecordCollection.getWorkRecord("workName3");
 		Assert.assertNull(workRecord);
 	}
+	
+	@Test
+	public void testMerge()
+	{
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(TEST_NAME,
+				System.currentTimeMillis());
+		workRecordCollection.recordWorkOk("workName", 100);
+		workRecordCollection.recordWorkError("workName", 300);
+		WorkRecordCollection other = new WorkRecordCollection(TEST_NAME, System.currentTimeMillis());
+		other.recordWorkOk("workName", 200);
+		other.recordWorkOk("workName2", 400);
+		other.getOrCreateWorkRecord("workName").recordErrorType(IllegalStateException.class, 50, 1, 10);
+
+		workRecordCollection.merge(other, 10);
+		Assert.assertEquals(2, workRecordCollection.size());
+		WorkRecord workRecord = workRecordCollection.getWorkRecord("workName");
+		Assert.assertEquals(2, workRecord.getWorkOkCount());
+		Assert.assertEquals(300L, workRecord.getWorkOkDuration());
+		Assert.assertEquals(1, workRecord.getWorkErrorCount());
+		Assert.assertEquals(3L, workRecord.getDurationHistogram().getTotalCount());
+		Assert.assertEquals(1, workRecord.getErrorWork().size());
+		Assert.assertEquals(1, workRecordCollection.getWorkRecord("workName2").getWorkOkCount());
+	}
+	
+	@Test(expected = ValidationException.class)
+	public void testMergeFailUnit()
+	{
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(TEST_NAME,
+				System.currentTimeMillis());
+		workRecordCollection.merge(new WorkRecordCollection(TEST_NAME, System.currentTimeMillis(),
+				TimeUnit.MICROSECONDS), 10);
+	}
 }
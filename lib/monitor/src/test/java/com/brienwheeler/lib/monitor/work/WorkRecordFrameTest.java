@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkRecordFrameTest
+{
+	private static final String SOURCE_NAME = "source";
+	private static final String WORK_NAME = "workName";
+	private static final String WORK_NAME2 = "workName2";
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(SOURCE_NAME, 1000L,
+				TimeUnit.MICROSECONDS);
+		workRecordCollection.setEndTime(61000L);
+		for (int i=1; i<=1000; i++)
+			workRecordCollection.recordWorkOk(WORK_NAME, i * 100L);
+		workRecordCollection.recordWorkError(WORK_NAME, 5000000L);
+		MutableWorkRecord mutableWorkRecord = workRecordCollection.getOrCreateWorkRecord(WORK_NAME);
+		mutableWorkRecord.recordErrorType(IllegalStateException.class, 5000000L, 1, 10);
+		mutableWorkRecord.recordResourceUsage(12345L, 67890L, 1);
+		mutableWorkRecord.setConcurrency(2, 7);
+		workRecordCollection.recordWorkOk(WORK_NAME2, 0L);
+
+		WorkRecordFrame decoded = WorkRecordFrame.decode(new WorkRecordFrame(60000L, workRecordCollection).encode());
+		Assert.assertEquals(60000L, decoded.getTimestamp());
+		WorkRecordCollection decodedCollection = decoded.getWorkRecordCollection();
+		Assert.assertEquals(SOURCE_NAME, decodedCollection.getSourceName());
+		Assert.assertEquals(1000L, decodedCollection.getStartTime());
+		Assert.assertEquals(61000L, decodedCollection.getEndTime());
+		Assert.assertEquals(TimeUnit.MICROSECONDS, decodedCollection.getDurationUnit());
+		Assert.assertEquals(2, decodedCollection.size());
+
+		WorkRecord expected = workRecordCollection.getWorkRecord(WORK_NAME);
+		WorkRecord actual = decodedCollection.getWorkRecord(WORK_NAME);
+		Assert.assertEquals(expected.getWorkOkCount(), actual.getWorkOkCount());
+		Assert.assertEquals(expected.getWorkOkDuration(), actual.getWorkOkDuration());
+		Assert.assertEquals(expected.getWorkErrorCount(), actual.getWorkErrorCount());
+		Assert.assertEquals(expected.getWorkErrorDuration(), actual.getWorkErrorDuration());
+		Assert.assertEquals(expected.getWorkSelfDuration(), actual.getWorkSelfDuration());
+		Assert.assertEquals(12345L, actual.getCpuTime());
+		Assert.assertEquals(67890L, actual.getAllocatedBytes());
+		Assert.assertEquals(2, actual.getInFlight());
+		Assert.assertEquals(7, actual.getPeakInFlight());
+		Assert.assertEquals(expected.getDurationP50(), actual.getDurationP50());
+		Assert.assertEquals(expected.getDurationP99(), actual.getDurationP99());
+		Assert.assertEquals(expected.getDurationMax(), actual.getDurationMax());
+		List<ErrorWork> errorWork = actual.getErrorWork();
+		Assert.assertEquals(1, errorWork.size());
+		Assert.assertEquals(IllegalStateException.class.getName(), errorWork.get(0).getErrorType());
+		Assert.assertEquals(1L, errorWork.get(0).getCount());
+		Assert.assertEquals(1, decodedCollection.getWorkRecord(WORK_NAME2).getWorkOkCount());
+	}
+
+	@Test
+	public void testEmpty() throws IOException
+	{
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(SOURCE_NAME, 1000L);
+		byte data[] = new WorkRecordFrame(1000L, workRecordCollection).encode();
+		Assert.assertTrue(data.length < 32);
+		Assert.assertEquals(0, WorkRecordFrame.decode(data).getWorkRecordCollection().size());
+	}
+
+	@Test(expected = IOException.class)
+	public void testDecodeFailMagic() throws IOException
+	{
+		WorkRecordFrame.decode(new byte[] { 1, 2, 3, 4, 5 });
+	}
+
+	@Test(expected = IOException.class)
+	public void testDecodeFailTruncated() throws IOException
+	{
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(SOURCE_NAME, 1000L);
+		workRecordCollection.recordWorkOk(WORK_NAME, 100L);
+		byte data[] = new WorkRecordFrame(1000L, workRecordCollection).encode();
+		byte truncated[] = new byte[data.length - 1];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		WorkRecordFrame.decode(truncated);
+	}
+}
@@ -46,5 +46,9 @@ public class WorkRecordTest
 		Assert.assertEquals(3, workRecord.getWorkErrorCount());
 		Assert.assertEquals(1200, workRecord.getWorkErrorDuration());
 		Assert.assertEquals(400F, workRecord.getWorkErrorAvgDuration(), 0.01F);
+		Assert.assertEquals(5, workRecord.getDurationHistogram().getTotalCount());
+		Assert.assertEquals(500, workRecord.getDurationMax());
+		Assert.assertTrue(Math.abs(300 - workRecord.getDurationP50()) <= 300 / 16);
+		Assert.assertEquals(500, workRecord.getDurationP99());
 	}
 }
@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Multi-threaded recording into MutableWorkRecord's striped counters, checked against
+ * the number of calls every thread made.  Throughput is compared by
+ * WorkRecordBenchmark, which the build does not run.
+ */
+public class WorkRecordThroughputTest
+{
+	private static final int OPERATIONS_PER_THREAD = 100000;
+
+	@Test
+	public void testConcurrentCounts() throws InterruptedException
+	{
+		int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+		for (int threads=1; threads<=maxThreads; threads*=2) {
+			MutableWorkRecord mutableWorkRecord = new MutableWorkRecord("workName");
+			record(mutableWorkRecord, threads);
+			long expected = (long) threads * OPERATIONS_PER_THREAD;
+			Assert.assertEquals(expected, mutableWorkRecord.getWorkOkCount());
+			Assert.assertEquals(expected, mutableWorkRecord.getDurationHistogram().getSnapshot().getTotalCount());
+		}
+	}
+
+	private static void record(final MutableWorkRecord mutableWorkRecord, int threadCount) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread threads[] = new Thread[threadCount];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					for (int j=0; j<OPERATIONS_PER_THREAD; j++)
+						mutableWorkRecord.recordWorkOk(j & 1023);
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+	}
+}
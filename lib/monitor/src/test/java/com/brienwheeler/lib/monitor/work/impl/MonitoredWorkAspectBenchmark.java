@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.mocks.MockMonitoredWork;
+
+/**
+ * Hand-rolled comparison of the per-call cost of MonitoredWorkAspect's cached work
+ * handles against recording through WorkMonitor's name lookup, from one thread and
+ * from as many threads as there are processors.  Not run by the build; run main()
+ * from the test classpath, optionally passing the measurement time per case in
+ * milliseconds.
+ */
+public class MonitoredWorkAspectBenchmark
+{
+	private static final long DEFAULT_RUN_MILLIS = 1000L;
+	private static final int MONITOR_COUNT = 4;
+
+	public static void main(String args[]) throws InterruptedException
+	{
+		long runMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_RUN_MILLIS;
+
+		final MockMonitoredWork worker = new MockMonitoredWork();
+		final MockMonitoredWork workers[] = new MockMonitoredWork[MONITOR_COUNT];
+		for (int i=0; i<workers.length; i++)
+			workers[i] = new MockMonitoredWork();
+		final WorkMonitor workMonitor = new WorkMonitor(MonitoredWorkAspectBenchmark.class.getName());
+
+		Operation operations[] = new Operation[] {
+			new Operation("advised, one monitor") {
+				@Override
+				void run(int iteration)
+				{
+					worker.testMethodWorkName(0);
+				}
+			},
+			new Operation("advised, " + MONITOR_COUNT + " monitors alternating") {
+				@Override
+				void run(int iteration)
+				{
+					workers[iteration & (MONITOR_COUNT - 1)].testMethodWorkName(0);
+				}
+			},
+			new Operation("WorkMonitor.recordWorkOk by name") {
+				@Override
+				void run(int iteration)
+				{
+					workMonitor.recordWorkOk(MockMonitoredWork.WORK_NAME, 0L);
+				}
+			},
+		};
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		// warm up every path before measuring
+		for (Operation operation : operations)
+			measure(operation, processors, runMillis);
+
+		int threadCounts[] = processors > 1 ? new int[] { 1, processors } : new int[] { 1 };
+		for (int threads : threadCounts) {
+			for (Operation operation : operations)
+				System.out.println(String.format("%d threads, %s: %.1f ns/call", threads, operation.name,
+						measure(operation, threads, runMillis)));
+		}
+	}
+
+	// average nanoseconds per call across the given number of threads calling for runMillis
+	private static double measure(final Operation operation, int threadCount, long runMillis) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong calls = new AtomicLong();
+		final long deadline[] = new long[1];
+		Thread threads[] = new Thread[threadCount];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					int count = 0;
+					long end = deadline[0];
+					// check the clock every 1024 calls to keep it out of the measurement
+					do {
+						for (int j=0; j<1024; j++)
+							operation.run(count++);
+					} while (System.nanoTime() < end);
+					calls.addAndGet(count);
+				}
+			};
+			threads[i].start();
+		}
+		long startNanos = System.nanoTime();
+		deadline[0] = startNanos + runMillis * 1000000L;
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		long elapsedNanos = System.nanoTime() - startNanos;
+		return (double) elapsedNanos * threadCount / calls.get();
+	}
+
+	private static abstract class Operation
+	{
+		private final String name;
+
+		Operation(String name)
+		{
+			this.name = name;
+		}
+
+		abstract void run(int iteration);
+	}
+}
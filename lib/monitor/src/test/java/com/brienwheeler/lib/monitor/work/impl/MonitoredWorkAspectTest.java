@@ -1,7 +1,13 @@
 package com.brienwheeler.lib.monitor.work.impl;
 
+import java.util.concurrent.TimeUnit;
+
+import com.brienwheeler.lib.monitor.work.ChildWork;
+import com.brienwheeler.lib.monitor.work.ThreadResourceUsage;
 import com.brienwheeler.lib.monitor.work.WorkRecord;
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
 import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
 import com.brienwheeler.lib.monitor.work.mocks.MockMonitoredWork;
 import org.junit.Assert;
 import org.junit.Test;
@@ -36,6 +42,234 @@ public class MonitoredWorkAspectTest
         Assert.assertEquals(1, workRecord.getWorkOkCount());
     }
 
+    @Test
+    public void testWorkNameMicroseconds()
+    {
+        MockMonitoredWork worker = new MockMonitoredWork();
+        worker.getWorkMonitor().setDurationUnit(TimeUnit.MICROSECONDS);
+        worker.testMethodWorkName(2);
+
+        WorkRecordCollection workRecordCollection = worker.getWorkMonitor().rollRecords();
+        Assert.assertEquals(TimeUnit.MICROSECONDS, workRecordCollection.getDurationUnit());
+        WorkRecord workRecord = workRecordCollection.getWorkRecord(MockMonitoredWork.WORK_NAME);
+        Assert.assertEquals(TimeUnit.MICROSECONDS, workRecord.getDurationUnit());
+        Assert.assertEquals(1, workRecord.getWorkOkCount());
+        Assert.assertTrue(workRecord.getWorkOkDuration() >= 2000L);
+    }
+
+    @Test
+    public void testWorkNameInFlight() throws InterruptedException
+    {
+        final MockMonitoredWork worker = new MockMonitoredWork();
+        Thread thread = new Thread() {
+            @Override
+            public void run()
+            {
+                worker.testMethodWorkName(500);
+            }
+        };
+        thread.start();
+        WorkRecorder workRecorder = worker.getWorkMonitor().getWorkRecorder(MockMonitoredWork.WORK_NAME);
+        while (workRecorder.getInFlight() == 0)
+            Thread.sleep(1);
+
+        // stalled work shows up before it completes
+        WorkRecord workRecord = worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.WORK_NAME);
+        Assert.assertNotNull(workRecord);
+        Assert.assertEquals(0, workRecord.getWorkOkCount());
+        Assert.assertEquals(1, workRecord.getInFlight());
+        Assert.assertEquals(1, workRecord.getPeakInFlight());
+
+        thread.join();
+        workRecord = worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.WORK_NAME);
+        Assert.assertEquals(1, workRecord.getWorkOkCount());
+        Assert.assertEquals(0, workRecord.getInFlight());
+        Assert.assertEquals(1, workRecord.getPeakInFlight());
+
+        Assert.assertEquals(0, worker.getWorkMonitor().rollRecords().size());
+    }
+
+    @Test
+    public void testSampled()
+    {
+        MockMonitoredWork worker = new MockMonitoredWork();
+        for (int i=0; i<10000; i++)
+            worker.testMethodSampled();
+
+        WorkRecord workRecord = worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.SAMPLED_WORK_NAME);
+        Assert.assertNotNull(workRecord);
+        Assert.assertEquals(0, workRecord.getWorkOkCount() % MockMonitoredWork.SAMPLE_RATE);
+        // expected 10000, standard deviation 300
+        Assert.assertTrue(workRecord.getWorkOkCount() > 8000 && workRecord.getWorkOkCount() < 12000);
+        Assert.assertEquals(workRecord.getWorkOkCount(), workRecord.getDurationHistogram().getTotalCount());
+        // gauges use the same scale as the counts
+        Assert.assertEquals(MockMonitoredWork.SAMPLE_RATE, workRecord.getPeakInFlight());
+        Assert.assertEquals(0, workRecord.getInFlight());
+    }
+
+    @Test
+    public void testSummarizeArguments()
+    {
+        MockMonitoredWork worker = new MockMonitoredWork();
+        worker.testMethodSummarized(0, "argument");
+
+        WorkRecord workRecord = worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.SUMMARIZED_WORK_NAME);
+        Assert.assertEquals(1, workRecord.getSlowestWork().size());
+        Assert.assertEquals("0, argument", workRecord.getSlowestWork().get(0).getArgumentSummary());
+    }
+
+    @Test
+    public void testSummarizeArgumentsTruncated()
+    {
+        StringBuilder longArgument = new StringBuilder();
+        for (int i=0; i<MonitoredWorkAspect.MAX_ARGUMENT_SUMMARY; i++)
+            longArgument.append('x');
+        String summary = MonitoredWorkAspect.summarizeArguments(new Object[] { 1, longArgument, null });
+        Assert.assertEquals(MonitoredWorkAspect.MAX_ARGUMENT_SUMMARY, summary.length());
+        Assert.assertTrue(summary.startsWith("1, xxx"));
+        Assert.assertTrue(summary.endsWith("..."));
+    }
+
+    @Test
+    public void testSummarizeArgumentsToStringFails()
+    {
+        Object badArgument = new Object() {
+            @Override
+            public String toString()
+            {
+                throw new IllegalStateException("test");
+            }
+        };
+        String summary = MonitoredWorkAspect.summarizeArguments(new Object[] { 1, badArgument, "last" });
+        Assert.assertTrue(summary.startsWith("1, <"));
+        Assert.assertTrue(summary.contains("IllegalStateException"));
+        Assert.assertTrue(summary.endsWith(", last"));
+    }
+
+    @Test
+    public void testNestedWork()
+    {
+        MockMonitoredWork outer = new MockMonitoredWork();
+        MockMonitoredWork inner = new MockMonitoredWork();
+        outer.getWorkMonitor().setDurationUnit(TimeUnit.MICROSECONDS);
+        inner.getWorkMonitor().setDurationUnit(TimeUnit.MICROSECONDS);
+        outer.testMethodOuter(10, inner);
+
+        WorkRecord outerRecord = outer.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.OUTER_WORK_NAME);
+        WorkRecord innerRecord = inner.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.WORK_NAME);
+        Assert.assertEquals(2, innerRecord.getWorkOkCount());
+        Assert.assertEquals(innerRecord.getWorkOkDuration(), innerRecord.getWorkSelfDuration());
+        Assert.assertTrue(innerRecord.getChildWork().isEmpty());
+
+        // outer self time excludes the two nested calls
+        Assert.assertTrue(outerRecord.getWorkOkDuration() >= innerRecord.getWorkOkDuration());
+        Assert.assertTrue(outerRecord.getWorkSelfDuration() < 10000L);
+        Assert.assertEquals(1, outerRecord.getChildWork().size());
+        ChildWork childWork = outerRecord.getChildWork().get(0);
+        Assert.assertEquals(inner.getWorkMonitor().getSourceName(), childWork.getSourceName());
+        Assert.assertEquals(MockMonitoredWork.WORK_NAME, childWork.getWorkName());
+        Assert.assertEquals(2L, childWork.getCount());
+        Assert.assertEquals(innerRecord.getWorkOkDuration(), childWork.getDuration());
+        Assert.assertEquals(TimeUnit.MICROSECONDS, childWork.getDurationUnit());
+    }
+
+    @Test
+    public void testResourceAccounting()
+    {
+        MockMonitoredWork worker = new MockMonitoredWork();
+        worker.testMethodWorkName(0);
+        Assert.assertEquals(0L, worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.WORK_NAME).getResourceCount());
+
+        worker.getWorkMonitor().setResourceAccounting(true);
+        worker.getWorkMonitor().setDurationUnit(TimeUnit.NANOSECONDS);
+        worker.testMethodBusy(100000);
+        WorkRecord workRecord = worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.BUSY_WORK_NAME);
+        Assert.assertEquals(1L, workRecord.getResourceCount());
+        if (ThreadResourceUsage.getCpuTime() >= 0)
+            Assert.assertTrue(workRecord.getCpuTime() > 0L);
+        if (ThreadResourceUsage.getAllocatedBytes() >= 0)
+            Assert.assertTrue(workRecord.getAllocatedBytes() >= 100000L * 64L);
+    }
+
+    @Test
+    public void testRecordingFailure()
+    {
+        WorkMonitor workMonitor = new WorkMonitor(getClass().getName()) {
+            @Override
+            public TimeUnit getDurationUnit()
+            {
+                throw new IllegalStateException("recording failure");
+            }
+        };
+        MockMonitoredWork worker = new MockMonitoredWork(workMonitor);
+
+        worker.testMethodWorkName(0);
+        try {
+            worker.testMethodWorkNameRuntimeException(0);
+            Assert.fail();
+        }
+        catch (RuntimeException e) {
+            Assert.assertEquals("test", e.getMessage());
+        }
+        Assert.assertEquals(0, workMonitor.getWorkRecorder(MockMonitoredWork.WORK_NAME).getInFlight());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        MockMonitoredWork worker = new MockMonitoredWork();
+        worker.getWorkMonitor().getWorkRecorder(MockMonitoredWork.WORK_NAME).setEnabled(false);
+        worker.testMethodWorkName(0);
+        try {
+            worker.testMethodWorkNameThrowable(0);
+            Assert.fail();
+        }
+        catch (RuntimeException e) {
+            Assert.assertEquals(Throwable.class, e.getCause().getClass());
+        }
+        catch (Throwable e) {
+            Assert.fail(); // aspect turns this into RuntimeException whether or not recording
+        }
+        Assert.assertEquals(0, worker.getWorkMonitor().rollRecords().size());
+
+        worker.getWorkMonitor().getWorkRecorder(MockMonitoredWork.WORK_NAME).setEnabled(true);
+        worker.testMethodWorkName(0);
+        Assert.assertEquals(1, worker.getWorkMonitor().rollRecords().getWorkRecord(MockMonitoredWork.WORK_NAME).getWorkOkCount());
+    }
+
+    @Test
+    public void testWorkNameSeparateMonitors()
+    {
+        MockMonitoredWork worker1 = new MockMonitoredWork();
+        MockMonitoredWork worker2 = new MockMonitoredWork();
+        worker1.testMethodWorkName(0);
+        worker2.testMethodWorkName(0);
+        worker1.testMethodWorkName(0);
+
+        WorkRecordCollection workRecordCollection = worker1.getWorkMonitor().rollRecords();
+        Assert.assertEquals(2, workRecordCollection.getWorkRecord(MockMonitoredWork.WORK_NAME).getWorkOkCount());
+        workRecordCollection = worker2.getWorkMonitor().rollRecords();
+        Assert.assertEquals(1, workRecordCollection.getWorkRecord(MockMonitoredWork.WORK_NAME).getWorkOkCount());
+    }
+
+    @Test
+    public void testWorkNameManyMonitors()
+    {
+        // more monitors than the handle caches, called alternately
+        MockMonitoredWork workers[] = new MockMonitoredWork[12];
+        for (int i=0; i<workers.length; i++)
+            workers[i] = new MockMonitoredWork();
+        for (int j=0; j<3; j++) {
+            for (MockMonitoredWork worker : workers)
+                worker.testMethodWorkName(0);
+        }
+
+        for (MockMonitoredWork worker : workers) {
+            WorkRecordCollection workRecordCollection = worker.getWorkMonitor().rollRecords();
+            Assert.assertEquals(3, workRecordCollection.getWorkRecord(MockMonitoredWork.WORK_NAME).getWorkOkCount());
+        }
+    }
+
     @Test
     public void testWorkNameInterruptedException()
     {
@@ -75,6 +309,9 @@ public class MonitoredWorkAspectTest
         Assert.assertNotNull(workRecord);
         Assert.assertEquals(1, workRecord.getWorkErrorCount());
         Assert.assertEquals(0, workRecord.getWorkOkCount());
+        Assert.assertEquals(1, workRecord.getErrorWork().size());
+        Assert.assertEquals(RuntimeException.class.getName(), workRecord.getErrorWork().get(0).getErrorType());
+        Assert.assertEquals(1L, workRecord.getErrorWork().get(0).getCount());
     }
 
     @Test
@@ -119,5 +356,7 @@ public class MonitoredWorkAspectTest
         Assert.assertNotNull(workRecord);
         Assert.assertEquals(1, workRecord.getWorkErrorCount());
         Assert.assertEquals(0, workRecord.getWorkOkCount());
+        // recorded as thrown, not as the wrapping RuntimeException
+        Assert.assertEquals(Throwable.class.getName(), workRecord.getErrorWork().get(0).getErrorType());
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.lib.monitor.work.impl;
+
+import com.brienwheeler.lib.monitor.work.ThreadResourceUsage;
+import com.brienwheeler.lib.monitor.work.mocks.MockMonitoredWork;
+
+/**
+ * Hand-rolled measurement of what resource accounting adds to a monitored call: the
+ * same advised method with accounting off and on, and the two ThreadMXBean reads it
+ * makes at each end of a call.  Not run by the build; run main() from the test
+ * classpath, optionally passing the measurement time per case in milliseconds.
+ */
+public class ResourceAccountingBenchmark
+{
+	private static final long DEFAULT_RUN_MILLIS = 1000L;
+
+	// keeps the JIT from discarding the measured reads
+	private static long sink;
+
+	public static void main(String args[])
+	{
+		long runMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_RUN_MILLIS;
+
+		final MockMonitoredWork plainWorker = new MockMonitoredWork();
+		final MockMonitoredWork accountedWorker = new MockMonitoredWork();
+		accountedWorker.getWorkMonitor().setResourceAccounting(true);
+
+		Operation operations[] = new Operation[] {
+			new Operation("advised, accounting off") {
+				@Override
+				void run()
+				{
+					plainWorker.testMethodWorkName(0);
+				}
+			},
+			new Operation("advised, accounting on") {
+				@Override
+				void run()
+				{
+					accountedWorker.testMethodWorkName(0);
+				}
+			},
+			new Operation("ThreadResourceUsage.getCpuTime") {
+				@Override
+				void run()
+				{
+					sink += ThreadResourceUsage.getCpuTime();
+				}
+			},
+			new Operation("ThreadResourceUsage.getAllocatedBytes") {
+				@Override
+				void run()
+				{
+					sink += ThreadResourceUsage.getAllocatedBytes();
+				}
+			},
+		};
+
+		System.out.println("cpu time " + (ThreadResourceUsage.getCpuTime() >= 0 ? "supported" : "unsupported")
+				+ ", allocated bytes " + (ThreadResourceUsage.getAllocatedBytes() >= 0 ? "supported" : "unsupported"));
+
+		// warm up every path before measuring
+		for (Operation operation : operations)
+			measure(operation, runMillis);
+
+		for (Operation operation : operations)
+			System.out.println(String.format("%s: %.1f ns/call", operation.name, measure(operation, runMillis)));
+	}
+
+	// average nanoseconds per call calling for runMillis
+	private static double measure(Operation operation, long runMillis)
+	{
+		long calls = 0;
+		long startNanos = System.nanoTime();
+		long end = startNanos + runMillis * 1000000L;
+		long now;
+		// check the clock every 1024 calls to keep it out of the measurement
+		do {
+			for (int j=0; j<1024; j++)
+				operation.run();
+			calls += 1024;
+		} while ((now = System.nanoTime()) < end);
+		return (double) (now - startNanos) / calls;
+	}
+
+	private static abstract class Operation
+	{
+		private final String name;
+
+		Operation(String name)
+		{
+			this.name = name;
+		}
+
+		abstract void run();
+	}
+}
@@ -7,8 +7,23 @@ import com.brienwheeler.lib.monitor.work.WorkMonitor;
 public class MockMonitoredWork implements IWorkMonitorProvider
 {
     public static final String WORK_NAME = "testWork";
+    public static final String SAMPLED_WORK_NAME = "testSampledWork";
+    public static final int SAMPLE_RATE = 10;
+    public static final String SUMMARIZED_WORK_NAME = "testSummarizedWork";
+    public static final String OUTER_WORK_NAME = "testOuterWork";
+    public static final String BUSY_WORK_NAME = "testBusyWork";
 
-    private final WorkMonitor workMonitor = new WorkMonitor(getClass().getName());
+    private final WorkMonitor workMonitor;
+
+    public MockMonitoredWork()
+    {
+        this(null);
+    }
+
+    public MockMonitoredWork(WorkMonitor workMonitor)
+    {
+        this.workMonitor = workMonitor != null ? workMonitor : new WorkMonitor(getClass().getName());
+    }
 
     @Override
     public WorkMonitor getWorkMonitor()
@@ -109,4 +124,30 @@ public class MockMonitoredWork implements IWorkMonitorProvider
         }
         throw new Throwable("test");
     }
+
+    @MonitoredWork(value=SAMPLED_WORK_NAME, sampleRate=SAMPLE_RATE)
+    public void testMethodSampled()
+    {
+    }
+
+    @MonitoredWork(value=SUMMARIZED_WORK_NAME, summarizeArguments=true)
+    public void testMethodSummarized(long sleep, String argument)
+    {
+    }
+
+    @MonitoredWork(value=OUTER_WORK_NAME)
+    public void testMethodOuter(long sleep, MockMonitoredWork inner)
+    {
+        inner.testMethodWorkName(sleep);
+        inner.testMethodWorkName(sleep);
+    }
+
+    @MonitoredWork(value=BUSY_WORK_NAME)
+    public long testMethodBusy(int iterations)
+    {
+        long sum = 0L;
+        for (int i=0; i<iterations; i++)
+            sum += new byte[64].length + Long.toString(sum).length();
+        return sum;
+    }
 }
@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -184,6 +185,31 @@ public abstract class StartableServiceBase implements IStartableService, IWorkMo
         return workMonitor;
     }
 
+	public void setWorkRecordingMode(WorkMonitor.RecordingMode workRecordingMode)
+	{
+		workMonitor.setRecordingMode(workRecordingMode);
+	}
+
+	public void setWorkDurationUnit(TimeUnit workDurationUnit)
+	{
+		workMonitor.setDurationUnit(workDurationUnit);
+	}
+
+	public void setWorkSlowestCapacity(int workSlowestCapacity)
+	{
+		workMonitor.setSlowestWorkCapacity(workSlowestCapacity);
+	}
+
+	public void setWorkResourceAccounting(boolean workResourceAccounting)
+	{
+		workMonitor.setResourceAccounting(workResourceAccounting);
+	}
+
+	public void setWorkErrorTypeCapacity(int workErrorTypeCapacity)
+	{
+		workMonitor.setErrorTypeCapacity(workErrorTypeCapacity);
+	}
+
     protected void onStart() throws InterruptedException
 	{
 	}
@@ -35,7 +35,7 @@ import com.brienwheeler.lib.monitor.intervene.IInterventionListener;
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryPublishService;
 import com.brienwheeler.lib.monitor.work.IWorkPublishService;
 import com.brienwheeler.lib.monitor.work.WorkMonitor;
-import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
 import com.brienwheeler.lib.svc.IStartableService;
 import com.brienwheeler.lib.svc.ServiceState;
 import com.brienwheeler.lib.test.spring.aop.AopTestUtils;
@@ -72,19 +72,14 @@ public class ServiceBaseTestUtil
 		getWorkMonitor(service).rollRecords();
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static void verifyWorkRecord(IStartableService service, String workName, int okCount, int errorCount)
 	{
-		WorkMonitor workMonitor = getWorkMonitor(service);
-		AtomicReference<WorkRecordCollection> workRecordCollectionRef = (AtomicReference<WorkRecordCollection>) ReflectionTestUtils.getField(workMonitor,
-				"workRecords");
-		WorkRecordCollection workRecordCollection = workRecordCollectionRef.get();
-		Assert.assertNotNull("no work record for " + workName,
-				workRecordCollection.getWorkRecord(workName));
-		Assert.assertEquals("work record " + workName + " expected OK=" + okCount + ", actual OK=" + workRecordCollection.getWorkRecord(workName).getWorkOkCount(),
-				okCount, workRecordCollection.getWorkRecord(workName).getWorkOkCount());
-		Assert.assertEquals("work record " + workName + " expected ERROR=" + errorCount + ", actual ERROR=" + workRecordCollection.getWorkRecord(workName).getWorkErrorCount(),
-				errorCount, workRecordCollection.getWorkRecord(workName).getWorkErrorCount());
+		WorkRecorder workRecorder = getWorkMonitor(service).findWorkRecorder(workName);
+		Assert.assertNotNull("no work record for " + workName, workRecorder);
+		Assert.assertEquals("work record " + workName + " expected OK=" + okCount + ", actual OK=" + workRecorder.getWorkOkCount(),
+				okCount, workRecorder.getWorkOkCount());
+		Assert.assertEquals("work record " + workName + " expected ERROR=" + errorCount + ", actual ERROR=" + workRecorder.getWorkErrorCount(),
+				errorCount, workRecorder.getWorkErrorCount());
 	}
 	
 	@SuppressWarnings("unchecked")
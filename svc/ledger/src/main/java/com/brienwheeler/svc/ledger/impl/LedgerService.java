@@ -57,7 +57,7 @@ public class LedgerService extends SpringStoppableServiceBase implements ILedger
 	
 	@Override
 	@Transactional(readOnly=true, propagation=Propagation.SUPPORTS)
-	@MonitoredWork
+	@MonitoredWork(summarizeArguments=true)
     @GracefulShutdown
 	public List<LedgerEntry> getLedger(DbId<User> userId)
 	{
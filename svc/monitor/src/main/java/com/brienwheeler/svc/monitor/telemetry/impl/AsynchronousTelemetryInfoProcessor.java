@@ -23,13 +23,18 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.brienwheeler.lib.concurrent.RingBuffer;
 import com.brienwheeler.lib.concurrent.StoppableThread;
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
@@ -37,12 +42,80 @@ import com.brienwheeler.lib.svc.GracefulShutdown;
 import com.brienwheeler.lib.svc.ServiceState;
 import com.brienwheeler.lib.util.ValidationUtils;
 
+/**
+ * Hands published TelemetryInfo off to background threads that call the configured
+ * processors.  Work is split across shardCount consumer shards, each with its own
+ * lock-free RingBuffer and its own thread; TelemetryInfo is routed to a shard by a hash
+ * of its name so TelemetryInfo of the same name is always processed in the order
+ * published.  Each shard thread drains its ring in batches of up to maxBatchSize, hands
+ * each batch to the processors' processBatch(), and waits for more using the configured
+ * WaitStrategy.
+ * <p>
+ * maxCapacity bounds the processor as a whole and is shared out evenly between the
+ * shards, each of which gets a ring of maxCapacity / shardCount entries (rounded up).
+ * Rings are preallocated, so unlike the unbounded queue this processor used to default
+ * to, maxCapacity defaults to DEFAULT_MAX_CAPACITY and cannot exceed
+ * RingBuffer.MAX_CAPACITY.  Each ring entry costs a reference and a long sequence.
+ * 
+ * When metricsPeriodicity is set, the counters, depth and lag of every shard are
+ * published back through this processor as TelemetryInfo named metricsName.shardN.
+ * Counters are exact and published as the change since the previous report.
+ * <p>
+ * When spillDirectory is set, each shard also gets a TelemetrySpillQueue in its own
+ * subdirectory.  Once a shard's queue holds spillThreshold entries, and for as long as
+ * anything remains spilled, TelemetryInfo is appended to disk instead, and the shard
+ * thread replays it in order whenever its in-memory queue runs empty.  QueueFullPolicy
+ * only applies once the spill queue is full too.  Spilled TelemetryInfo survives a
+ * stop or process crash and is replayed after the next start with the same shardCount,
+ * at most once (see TelemetrySpillQueue).
+ * 
+ * @author bwheeler
+ */
 public class AsynchronousTelemetryInfoProcessor extends TelemetryServiceBase
 		implements ITelemetryInfoProcessor
 {
+	public static final int DEFAULT_MAX_CAPACITY = 65536;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+	public static final long DEFAULT_BLOCK_TIMEOUT = 1000L;
+	public static final int DEFAULT_SPILL_SEGMENT_BYTES = 16 * 1024 * 1024;
+	public static final int DEFAULT_SPILL_MAX_SEGMENTS = 64;
+	public static final String DEFAULT_METRICS_NAME = AsynchronousTelemetryInfoProcessor.class.getSimpleName();
+	public static final String SHARD_SEPARATOR = ".shard";
+	
+	// shard metrics attribute names
+	public static final String DEPTH = "depth";
+	public static final String CAPACITY = "capacity";
+	public static final String HIGH_WATER_MARK = "highWaterMark";
+	public static final String ENQUEUED = "enqueued";
+	public static final String DROPPED_OLDEST = "droppedOldest";
+	public static final String DROPPED_OFFERED = "droppedOffered";
+	public static final String PROCESSED = "processed";
+	public static final String SPILLED = "spilled";
+	public static final String SPILL_DEPTH = "spillDepth";
+	public static final String AVG_LAG = "avgLag";
+	public static final String MAX_LAG = "maxLag";
+	public static final String HEAD_LAG = "headLag";
+	
+	/**
+	 * What to do with TelemetryInfo offered to a full queue.  Also used by the fan-out
+	 * workers of TelemetryServiceBase, which never block and so only accept DISCARD_OLDEST
+	 * and DISCARD_OFFERED.
+	 */
 	public static enum QueueFullPolicy {
 		DISCARD_OLDEST,
 		DISCARD_OFFERED,
+		/**
+		 * wait for space, only discarding if the shard shuts down or the caller is interrupted.
+		 * TelemetryInfo offered by this processor's own shard or metrics threads (e.g. a
+		 * downstream processor that republishes) is handled as DISCARD_OFFERED instead, since
+		 * a shard thread waiting on its own queue would never drain it.
+		 */
+		BLOCK,
+		/**
+		 * wait up to blockTimeout for space, then discard the offered TelemetryInfo.  Falls
+		 * back to DISCARD_OFFERED on this processor's own threads, as for BLOCK.
+		 */
+		BLOCK_WITH_TIMEOUT,
 	}
 	
 	public static enum ShutdownBehavior {
@@ -50,17 +123,29 @@ public class AsynchronousTelemetryInfoProcessor extends TelemetryServiceBase
 		PROCESS,
 	}
 	
+	private static final long BLOCK_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+	
 	protected final Log log = LogFactory.getLog(getClass());
 	
-	private final AtomicReference<StoppableThread> backgroundThread =
+	private final AtomicReference<Shard[]> shards = new AtomicReference<Shard[]>();
+	private final AtomicReference<StoppableThread> metricsThread =
 			new AtomicReference<StoppableThread>();
-	private final AtomicReference<BlockingQueue<TelemetryInfo>> queue =
-			new AtomicReference<BlockingQueue<TelemetryInfo>>();
 	private final AtomicReference<QueueFullPolicy> queueFullPolicy =
 			new AtomicReference<QueueFullPolicy>(QueueFullPolicy.DISCARD_OLDEST);
 	private final AtomicReference<ShutdownBehavior> shutdownBehavior =
 			new AtomicReference<ShutdownBehavior>(ShutdownBehavior.PROCESS);
-	private int maxCapacity = Integer.MAX_VALUE;
+	private final AtomicReference<RingBuffer.WaitStrategy> waitStrategy =
+			new AtomicReference<RingBuffer.WaitStrategy>(RingBuffer.WaitStrategy.PARK);
+	private int maxCapacity = DEFAULT_MAX_CAPACITY;
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+	private File spillDirectory = null;
+	private int spillThreshold = 0;
+	private int spillSegmentBytes = DEFAULT_SPILL_SEGMENT_BYTES;
+	private int spillMaxSegments = DEFAULT_SPILL_MAX_SEGMENTS;
+	private int shardCount = 1;
+	private int metricsPeriodicity = 0;
+	private String metricsName = DEFAULT_METRICS_NAME;
 	
 	public void setQueueFullPolicy(QueueFullPolicy queueFullPolicy)
 	{
@@ -76,61 +161,296 @@ public class AsynchronousTelemetryInfoProcessor extends TelemetryServiceBase
 		this.shutdownBehavior.set(shutdownBehavior);
 	}
 
+	public void setWaitStrategy(RingBuffer.WaitStrategy waitStrategy)
+	{
+		ValidationUtils.assertNotNull(waitStrategy, "waitStrategy cannot be null");
+		ensureState(ServiceState.STOPPED, "can't change WaitStrategy when not STOPPED");
+		this.waitStrategy.set(waitStrategy);
+	}
+
+	/**
+	 * Set the total capacity of the shards' queues, divided evenly between them.
+	 * 
+	 * @param maxCapacity entries across all shards, at most RingBuffer.MAX_CAPACITY
+	 */
 	public void setMaxCapacity(int maxCapacity)
 	{
 		ValidationUtils.assertTrue(maxCapacity > 0, "maxCapacity must be greater than zero");
+		ValidationUtils.assertTrue(maxCapacity <= RingBuffer.MAX_CAPACITY, "maxCapacity must not be greater than " + RingBuffer.MAX_CAPACITY);
 		ensureState(ServiceState.STOPPED, "can't change MaxCapacity when not STOPPED");
 		this.maxCapacity = maxCapacity;
 	}
 	
+	public void setMaxBatchSize(int maxBatchSize)
+	{
+		ValidationUtils.assertTrue(maxBatchSize > 0, "maxBatchSize must be greater than zero");
+		ensureState(ServiceState.STOPPED, "can't change MaxBatchSize when not STOPPED");
+		this.maxBatchSize = maxBatchSize;
+	}
+	
+	/**
+	 * Set how long, in milliseconds, process() waits for space under BLOCK_WITH_TIMEOUT.
+	 * 
+	 * @param blockTimeout milliseconds, greater than zero
+	 */
+	public void setBlockTimeout(long blockTimeout)
+	{
+		ValidationUtils.assertTrue(blockTimeout > 0L, "blockTimeout must be greater than zero");
+		ensureState(ServiceState.STOPPED, "can't change BlockTimeout when not STOPPED");
+		this.blockTimeout = blockTimeout;
+	}
+	
+	/**
+	 * Set the directory TelemetryInfo overflows to.  Empty or null disables spilling.
+	 * 
+	 * @param spillDirectory directory path, each shard spills to its own subdirectory
+	 */
+	public void setSpillDirectory(String spillDirectory)
+	{
+		ensureState(ServiceState.STOPPED, "can't change SpillDirectory when not STOPPED");
+		this.spillDirectory = spillDirectory == null || spillDirectory.isEmpty() ? null : new File(spillDirectory);
+	}
+	
+	/**
+	 * Set the queue depth at which a shard starts spilling.  Zero spills only when the
+	 * queue is full.
+	 * 
+	 * @param spillThreshold queue depth, 0 or more
+	 */
+	public void setSpillThreshold(int spillThreshold)
+	{
+		ValidationUtils.assertTrue(spillThreshold >= 0, "spillThreshold cannot be negative");
+		ensureState(ServiceState.STOPPED, "can't change SpillThreshold when not STOPPED");
+		this.spillThreshold = spillThreshold;
+	}
+	
+	public void setSpillSegmentBytes(int spillSegmentBytes)
+	{
+		ValidationUtils.assertTrue(spillSegmentBytes >= TelemetrySpillQueue.MIN_SEGMENT_BYTES,
+				"spillSegmentBytes must be at least " + TelemetrySpillQueue.MIN_SEGMENT_BYTES);
+		ensureState(ServiceState.STOPPED, "can't change SpillSegmentBytes when not STOPPED");
+		this.spillSegmentBytes = spillSegmentBytes;
+	}
+	
+	/**
+	 * Set the number of segment files each shard may use, bounding its disk use at
+	 * spillMaxSegments * spillSegmentBytes.
+	 * 
+	 * @param spillMaxSegments segment files per shard, greater than zero
+	 */
+	public void setSpillMaxSegments(int spillMaxSegments)
+	{
+		ValidationUtils.assertTrue(spillMaxSegments > 0, "spillMaxSegments must be greater than zero");
+		ensureState(ServiceState.STOPPED, "can't change SpillMaxSegments when not STOPPED");
+		this.spillMaxSegments = spillMaxSegments;
+	}
+	
+	public void setShardCount(int shardCount)
+	{
+		ValidationUtils.assertTrue(shardCount > 0, "shardCount must be greater than zero");
+		ensureState(ServiceState.STOPPED, "can't change ShardCount when not STOPPED");
+		this.shardCount = shardCount;
+	}
+	
+	/**
+	 * Set how often, in seconds, shard metrics are published.  Zero disables shard metrics.
+	 * 
+	 * @param metricsPeriodicity seconds between reports, 0 to disable
+	 */
+	public void setMetricsPeriodicity(int metricsPeriodicity)
+	{
+		ValidationUtils.assertTrue(metricsPeriodicity >= 0, "metricsPeriodicity cannot be negative");
+		ensureState(ServiceState.STOPPED, "can't change MetricsPeriodicity when not STOPPED");
+		this.metricsPeriodicity = metricsPeriodicity;
+	}
+	
+	public void setMetricsName(String metricsName)
+	{
+		metricsName = ValidationUtils.assertNotEmpty(metricsName, "metricsName cannot be empty");
+		ensureState(ServiceState.STOPPED, "can't change MetricsName when not STOPPED");
+		this.metricsName = metricsName;
+	}
+	
 	@Override
 	protected void onStart() throws InterruptedException
 	{
 		super.onStart();
 		
-		LinkedBlockingQueue<TelemetryInfo> queue = new LinkedBlockingQueue<TelemetryInfo>(maxCapacity);
-		this.queue.set(queue);
+		Shard shards[] = new Shard[shardCount];
+		int shardCapacity = (int) ((maxCapacity + (long) shardCount - 1) / shardCount);
+		for (int i=0; i<shards.length; i++)
+		{
+			shards[i] = new Shard(i, new RingBuffer<TelemetryInfo>(shardCapacity), openSpillQueue(i));
+			shards[i].backgroundThread = new TelemetryInfoProcessThread(shards[i]);
+		}
+		this.shards.set(shards);
 		
-		TelemetryInfoProcessThread backgroundThread = new TelemetryInfoProcessThread(queue);
-		this.backgroundThread.set(backgroundThread);
-		backgroundThread.start();
+		for (Shard shard : shards)
+			shard.backgroundThread.start();
+		
+		if (metricsPeriodicity > 0)
+		{
+			ShardMetricsThread metricsThread = new ShardMetricsThread(
+					TimeUnit.SECONDS.toMillis(metricsPeriodicity));
+			this.metricsThread.set(metricsThread);
+			metricsThread.start();
+		}
 	}
 
 
 	@Override
 	protected void onStop() throws InterruptedException
 	{
-		backgroundThread.get().shutdown();
+		StoppableThread metricsThread = this.metricsThread.getAndSet(null);
+		if (metricsThread != null)
+			metricsThread.shutdown();
+		
+		for (Shard shard : shards.get())
+		{
+			shard.backgroundThread.shutdown();
+			if (shard.spill != null)
+				shard.spill.close();
+		}
 		super.onStop();
 	}
 
+	private TelemetrySpillQueue openSpillQueue(int index)
+	{
+		if (spillDirectory == null)
+			return null;
+		
+		File directory = new File(spillDirectory, "shard" + index);
+		try {
+			return new TelemetrySpillQueue(directory, spillSegmentBytes, spillMaxSegments);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("unable to open spill directory " + directory, e);
+		}
+	}
+
 
 	@Override
 	@GracefulShutdown
 	public void process(TelemetryInfo telemetryInfo)
 	{
 		telemetryInfo.checkPublished();
+		enqueue(telemetryInfo);
+	}
 
-		BlockingQueue<TelemetryInfo> queue = this.queue.get();
+	@Override
+	@GracefulShutdown
+	public void processBatch(List<TelemetryInfo> telemetryInfos)
+	{
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			telemetryInfo.checkPublished();
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			enqueue(telemetryInfo);
+	}
+
+	private void enqueue(TelemetryInfo telemetryInfo)
+	{
+		Shard shards[] = this.shards.get();
+		Shard shard = shards.length == 1 ? shards[0] :
+			shards[getShardIndex(telemetryInfo.getName(), shards.length)];
+		RingBuffer<TelemetryInfo> queue = shard.queue;
 		
-		switch (queueFullPolicy.get())
+		// once spilling, keep spilling until the shard has replayed it all to preserve order
+		TelemetrySpillQueue spill = shard.spill;
+		if (spill != null && (!spill.isEmpty() || queue.size() >= shard.spillThreshold))
 		{
-			case DISCARD_OFFERED :
-				queue.offer(telemetryInfo);
-				// return regardless of success
+			if (spill.append(telemetryInfo))
+			{
+				shard.spilled.incrementAndGet();
 				return;
+			}
+			// spill queue full, fall back to the in-memory QueueFullPolicy
+		}
+		
+		QueueFullPolicy policy = queueFullPolicy.get();
+		if ((policy == QueueFullPolicy.BLOCK || policy == QueueFullPolicy.BLOCK_WITH_TIMEOUT) &&
+				isOwnThread())
+			policy = QueueFullPolicy.DISCARD_OFFERED;
+		
+		boolean enqueued = false;
+		switch (policy)
+		{
+			case DISCARD_OFFERED :
+				enqueued = queue.offer(telemetryInfo);
+				break;
 				
 			case DISCARD_OLDEST :
 				while (!queue.offer(telemetryInfo))
 				{
 					// if offer failed, remove and discard one element from queue and try
 					// again
-					queue.poll();
+					if (queue.poll() != null)
+						shard.droppedOldest.incrementAndGet();
 				}
-				return;
+				enqueued = true;
+				break;
+				
+			case BLOCK :
+				enqueued = offerBlocking(shard, telemetryInfo, Long.MAX_VALUE);
+				break;
+				
+			case BLOCK_WITH_TIMEOUT :
+				enqueued = offerBlocking(shard, telemetryInfo, TimeUnit.MILLISECONDS.toNanos(blockTimeout));
+				break;
 		}
+		
+		if (enqueued)
+			shard.recordEnqueued();
+		else
+			shard.droppedOffered.incrementAndGet();
 	}
 
+	private boolean offerBlocking(Shard shard, TelemetryInfo telemetryInfo, long timeoutNanos)
+	{
+		long start = System.nanoTime();
+		try {
+			while (true)
+			{
+				// wait in slices so a producer is not stranded if the shard stops under it
+				long remaining = timeoutNanos - (System.nanoTime() - start);
+				if (shard.queue.offer(telemetryInfo, Math.min(remaining, BLOCK_SLICE_NANOS), TimeUnit.NANOSECONDS))
+					return true;
+				if (remaining <= BLOCK_SLICE_NANOS || shard.backgroundThread.isShutdown())
+					return false;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	static int getShardIndex(String name, int shardCount)
+	{
+		// spread the high bits since String hashes of similar names differ mostly in the low bits
+		int hash = name.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % shardCount;
+	}
+	
+	/**
+	 * Publish the current depth and lag of each shard back through this processor.
+	 */
+	protected void publishShardMetrics()
+	{
+		Shard shards[] = this.shards.get();
+		if (shards == null)
+			return;
+		
+		long now = System.currentTimeMillis();
+		for (Shard shard : shards)
+		{
+			TelemetryInfo telemetryInfo = new TelemetryInfo(metricsName + SHARD_SEPARATOR + shard.index, log, now);
+			shard.collectMetrics(telemetryInfo, now);
+			telemetryInfo.publish();
+			process(telemetryInfo);
+		}
+	}
+	
 	// testability
 	protected void beforeTake()
 	{
@@ -141,31 +461,161 @@ public class AsynchronousTelemetryInfoProcessor extends TelemetryServiceBase
 	{
 	}
 	
-	class TelemetryInfoProcessThread extends StoppableThread
+	class Shard
 	{
-		private final BlockingQueue<TelemetryInfo> queue;
+		final int index;
+		final RingBuffer<TelemetryInfo> queue;
+		final TelemetrySpillQueue spill;
+		final int spillThreshold;
+		volatile StoppableThread backgroundThread;
+		
+		// written by producers
+		private final AtomicLong enqueued = new AtomicLong();
+		private final AtomicLong droppedOldest = new AtomicLong();
+		private final AtomicLong droppedOffered = new AtomicLong();
+		private final AtomicLong highWaterMark = new AtomicLong();
+		private final AtomicLong spilled = new AtomicLong();
+		
+		// written only by the shard's background thread
+		private final AtomicLong processed = new AtomicLong();
+		private final AtomicLong totalLag = new AtomicLong();
+		private final AtomicLong maxLag = new AtomicLong();
+		
+		// cumulative counter values at the previous report
+		private long lastEnqueued = 0L;
+		private long lastDroppedOldest = 0L;
+		private long lastDroppedOffered = 0L;
+		private long lastSpilled = 0L;
+		private long lastProcessed = 0L;
+		private long lastTotalLag = 0L;
 		
-		TelemetryInfoProcessThread(BlockingQueue<TelemetryInfo> queue)
+		Shard(int index, RingBuffer<TelemetryInfo> queue, TelemetrySpillQueue spill)
 		{
-			super(AsynchronousTelemetryInfoProcessor.class.getSimpleName(), log);
+			this.index = index;
 			this.queue = queue;
+			this.spill = spill;
+			int threshold = AsynchronousTelemetryInfoProcessor.this.spillThreshold;
+			this.spillThreshold = threshold == 0 ? queue.capacity() : Math.min(threshold, queue.capacity());
+		}
+		
+		void recordEnqueued()
+		{
+			enqueued.incrementAndGet();
+			setMax(highWaterMark, queue.size());
+		}
+		
+		void recordProcessed(long lag)
+		{
+			processed.lazySet(processed.get() + 1);
+			totalLag.lazySet(totalLag.get() + lag);
+			setMax(maxLag, lag);
+		}
+		
+		synchronized void collectMetrics(TelemetryInfo telemetryInfo, long now)
+		{
+			long enqueued = this.enqueued.get();
+			long droppedOldest = this.droppedOldest.get();
+			long droppedOffered = this.droppedOffered.get();
+			long processed = this.processed.get();
+			long totalLag = this.totalLag.get();
+			long count = processed - lastProcessed;
+			long lag = totalLag - lastTotalLag;
+			
+			TelemetryInfo head = queue.peek();
+			int depth = queue.size();
+			telemetryInfo.setLong(DEPTH, depth);
+			telemetryInfo.setLong(CAPACITY, queue.capacity());
+			// restart the high-water mark from the current depth for the next interval
+			telemetryInfo.setLong(HIGH_WATER_MARK, Math.max(depth, highWaterMark.getAndSet(depth)));
+			telemetryInfo.setLong(ENQUEUED, enqueued - lastEnqueued);
+			telemetryInfo.setLong(DROPPED_OLDEST, droppedOldest - lastDroppedOldest);
+			telemetryInfo.setLong(DROPPED_OFFERED, droppedOffered - lastDroppedOffered);
+			telemetryInfo.setLong(PROCESSED, count);
+			if (spill != null)
+			{
+				long spilled = this.spilled.get();
+				telemetryInfo.setLong(SPILLED, spilled - lastSpilled);
+				telemetryInfo.setLong(SPILL_DEPTH, spill.size());
+				lastSpilled = spilled;
+			}
+			telemetryInfo.setDouble(AVG_LAG, count == 0L ? 0.0 : (double) lag / count);
+			telemetryInfo.setLong(MAX_LAG, maxLag.getAndSet(0L));
+			telemetryInfo.setLong(HEAD_LAG, head == null ? 0L : Math.max(0L, now - head.getCreatedAt()));
+			
+			lastEnqueued = enqueued;
+			lastDroppedOldest = droppedOldest;
+			lastDroppedOffered = droppedOffered;
+			lastProcessed = processed;
+			lastTotalLag = totalLag;
+		}
+		
+		private void setMax(AtomicLong max, long value)
+		{
+			long current = max.get();
+			while (value > current && !max.compareAndSet(current, value))
+				current = max.get();
+		}
+	}
+	
+	/**
+	 * Whether the calling thread is one of this processor's shard or metrics threads, which
+	 * must never wait for queue space they are themselves responsible for freeing.
+	 */
+	private boolean isOwnThread()
+	{
+		Thread current = Thread.currentThread();
+		if (current instanceof TelemetryInfoProcessThread)
+			return ((TelemetryInfoProcessThread) current).getProcessor() == this;
+		if (current instanceof ShardMetricsThread)
+			return ((ShardMetricsThread) current).getProcessor() == this;
+		return false;
+	}
+	
+	class TelemetryInfoProcessThread extends StoppableThread
+	{
+		private final Shard shard;
+		private final RingBuffer<TelemetryInfo> queue;
+		private final TelemetrySpillQueue spill;
+		private final TelemetryInfo batch[];
+		
+		TelemetryInfoProcessThread(Shard shard)
+		{
+			super(shardCount == 1 ? AsynchronousTelemetryInfoProcessor.class.getSimpleName() :
+				AsynchronousTelemetryInfoProcessor.class.getSimpleName() + "-" + shard.index, log);
+			this.shard = shard;
+			this.queue = shard.queue;
+			this.spill = shard.spill;
+			this.batch = new TelemetryInfo[Math.min(maxBatchSize, queue.capacity())];
+		}
+		
+		AsynchronousTelemetryInfoProcessor getProcessor()
+		{
+			return AsynchronousTelemetryInfoProcessor.this;
 		}
 		
 		@Override
 		public void onRun()
 		{
+			RingBuffer.WaitStrategy waitStrategy = AsynchronousTelemetryInfoProcessor.this.waitStrategy.get();
+			
 			while (!isShutdown())
 			{
-				try {
-					beforeTake();
-					TelemetryInfo telemetryInfo = queue.take();
-					callProcessors(telemetryInfo);
-					afterProcess();
-				}
-				catch (InterruptedException e) {
-					// probably isShutdown(), continue and check
-					Thread.currentThread().interrupt();
+				beforeTake();
+				int batchSize = 0;
+				// anything in memory is older than what is spilled, replay only once it is done
+				if (spill != null && queue.isEmpty() && !spill.isEmpty())
+					batchSize = spill.drainTo(batch);
+				if (batchSize == 0)
+				{
+					// probably isShutdown() if interrupted, continue and check
+					if (!queue.awaitNotEmpty(waitStrategy))
+						continue;
+					batchSize = queue.drainTo(batch);
+					if (batchSize == 0)
+						continue;
 				}
+				processBatch(batchSize);
+				afterProcess();
 			}
 			
 			switch (shutdownBehavior.get())
@@ -175,14 +625,62 @@ public class AsynchronousTelemetryInfoProcessor extends TelemetryServiceBase
 					break;
 					
 				case PROCESS :
-					log.info("processing " + queue.size() + " queued TelemetryInfo at shutdown");
-					for (TelemetryInfo telemetryInfo : queue)
-						callProcessors(telemetryInfo);
+					// bound the work by what was queued at shutdown in case producers are still publishing
+					int queued = queue.size();
+					log.info("processing " + queued + " queued TelemetryInfo at shutdown");
+					int batchSize;
+					while (queued > 0 && (batchSize = queue.drainTo(batch)) > 0)
+					{
+						processBatch(batchSize);
+						queued -= batchSize;
+					}
 					break;
 			}
 			
 			queue.clear();
 			return;
 		}
+		
+		private void processBatch(int batchSize)
+		{
+			long now = System.currentTimeMillis();
+			for (int i=0; i<batchSize; i++)
+				shard.recordProcessed(now - batch[i].getCreatedAt());
+			callProcessors(Arrays.asList(batch).subList(0, batchSize));
+			// release the slots so the batch array does not pin processed TelemetryInfo
+			Arrays.fill(batch, 0, batchSize, null);
+		}
+	}
+	
+	class ShardMetricsThread extends StoppableThread
+	{
+		private final long periodMillis;
+		
+		ShardMetricsThread(long periodMillis)
+		{
+			super(AsynchronousTelemetryInfoProcessor.class.getSimpleName() + "-metrics", log);
+			this.periodMillis = periodMillis;
+		}
+		
+		AsynchronousTelemetryInfoProcessor getProcessor()
+		{
+			return AsynchronousTelemetryInfoProcessor.this;
+		}
+		
+		@Override
+		protected void onRun()
+		{
+			while (!isShutdown())
+			{
+				try {
+					Thread.sleep(periodMillis);
+				}
+				catch (InterruptedException e) {
+					// probably isShutdown(), continue and check
+					continue;
+				}
+				publishShardMetrics();
+			}
+		}
 	}
 }
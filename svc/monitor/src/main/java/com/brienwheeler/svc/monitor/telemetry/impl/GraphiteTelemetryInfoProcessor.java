@@ -23,6 +23,7 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
@@ -106,6 +107,36 @@ public class GraphiteTelemetryInfoProcessor extends StoppableTelemetryInfoProces
 		if (socket == null || !socket.isConnected())
 			return;
 
+		StringBuilder data = new StringBuilder(256);
+		appendData(data, telemetryInfo);
+		write(socket, data);
+	}
+
+	@Override
+	public void processBatch(List<TelemetryInfo> telemetryInfos)
+	{
+		ReconnectingSocket socket = reconnectingSocket.get();
+		if (socket == null || !socket.isConnected())
+			return;
+
+		// one write for the whole batch rather than one per statistic
+		StringBuilder data = new StringBuilder(256 * telemetryInfos.size());
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			appendData(data, telemetryInfo);
+		write(socket, data);
+	}
+
+	private void write(ReconnectingSocket socket, StringBuilder data)
+	{
+		if (data.length() == 0)
+			return;
+		String dataStr = data.toString();
+		socket.write(dataStr);
+		log.debug(dataStr);
+	}
+
+	private void appendData(StringBuilder data, TelemetryInfo telemetryInfo)
+	{
         String name = telemetryInfo.getName();
         if (globalRedact != null) {
             name = name.replace(globalRedact, "");
@@ -116,7 +147,6 @@ public class GraphiteTelemetryInfoProcessor extends StoppableTelemetryInfoProces
 
 		long createdAt = telemetryInfo.getCreatedAt() / 1000; // Graphite uses UNIX epoch
 
-		StringBuffer data = new StringBuffer(256);
 		for (String attrName : telemetryInfo.getAttributeNames()) {
             // we never care about NAME or CREATED_AT
 			if (attrName.equals(TelemetryInfo.ATTR_NAME) || attrName.equals(TelemetryInfo.ATTR_CREATED_AT))
@@ -128,17 +158,25 @@ public class GraphiteTelemetryInfoProcessor extends StoppableTelemetryInfoProces
             if (!telemetryNameFilter.process(statisticName))
                 continue;
 
-			Object attrValue = telemetryInfo.get(attrName);
-			if (attrValue instanceof Double || attrValue instanceof Float || 
-					attrValue instanceof Integer || attrValue instanceof Long) {
-				data.setLength(0);
-				data.append(statisticName);
-				data.append(" ").append(attrValue.toString());
-				data.append(" ").append(createdAt).append("\n");
-				String dataStr = data.toString();
-				socket.write(dataStr);
-				log.debug(dataStr);
+			int lineStart = data.length();
+			data.append(statisticName).append(" ");
+			switch (telemetryInfo.getType(attrName)) {
+				case LONG :
+					data.append(telemetryInfo.getLong(attrName));
+					break;
+				case DOUBLE :
+					data.append(telemetryInfo.getDouble(attrName));
+					break;
+				default :
+					Object attrValue = telemetryInfo.get(attrName);
+					if (!(attrValue instanceof Double || attrValue instanceof Float || 
+							attrValue instanceof Integer || attrValue instanceof Long)) {
+						data.setLength(lineStart);
+						continue;
+					}
+					data.append(attrValue.toString());
 			}
+			data.append(" ").append(createdAt).append("\n");
 		}
 	}
 
@@ -0,0 +1,264 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.telemetry.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.brienwheeler.lib.concurrent.RingBuffer;
+import com.brienwheeler.lib.concurrent.StoppableThread;
+import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.util.ValidationUtils;
+import com.brienwheeler.svc.monitor.telemetry.impl.AsynchronousTelemetryInfoProcessor.QueueFullPolicy;
+
+/**
+ * Feeds one ITelemetryInfoProcessor from its own bounded queue on its own thread, for
+ * TelemetryServiceBase in fan-out mode.  offer() never blocks: when the queue is full
+ * the configured QueueFullPolicy (DISCARD_OLDEST or DISCARD_OFFERED) drops telemetry for
+ * this processor alone, and anything thrown by the processor is counted and logged
+ * rather than propagated, so a slow or failing processor cannot hold up the publisher or
+ * the other processors.
+ */
+public class TelemetryFanOutWorker
+{
+	// fan-out metrics attribute names
+	public static final String DEPTH = "depth";
+	public static final String CAPACITY = "capacity";
+	public static final String PROCESSED = "processed";
+	public static final String DROPPED = "dropped";
+	public static final String FAILED = "failed";
+	public static final String HEALTH = "health";
+	
+	// most TelemetryInfo handed to the processor's processBatch() at once
+	public static final int MAX_BATCH_SIZE = 256;
+	
+	public static enum Health {
+		/** keeping up */
+		HEALTHY,
+		/** queue at least half full */
+		BACKLOGGED,
+		/** the most recent process() threw */
+		FAILING,
+	}
+	
+	private static final Log log = LogFactory.getLog(TelemetryFanOutWorker.class);
+	
+	private final ITelemetryInfoProcessor processor;
+	private final RingBuffer<TelemetryInfo> queue;
+	private final QueueFullPolicy queueFullPolicy;
+	private final WorkerThread thread;
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private volatile boolean failing = false;
+	
+	// cumulative counter values at the previous report
+	private long lastProcessed = 0L;
+	private long lastDropped = 0L;
+	private long lastFailed = 0L;
+	
+	TelemetryFanOutWorker(String name, ITelemetryInfoProcessor processor, int capacity,
+			QueueFullPolicy queueFullPolicy)
+	{
+		ValidationUtils.assertNotNull(processor, "processor cannot be null");
+		ValidationUtils.assertTrue(queueFullPolicy == QueueFullPolicy.DISCARD_OLDEST ||
+				queueFullPolicy == QueueFullPolicy.DISCARD_OFFERED,
+				"fan-out queueFullPolicy must be DISCARD_OLDEST or DISCARD_OFFERED");
+		
+		this.processor = processor;
+		this.queue = new RingBuffer<TelemetryInfo>(capacity);
+		this.queueFullPolicy = queueFullPolicy;
+		this.thread = new WorkerThread(name);
+	}
+	
+	public ITelemetryInfoProcessor getProcessor()
+	{
+		return processor;
+	}
+	
+	public QueueFullPolicy getQueueFullPolicy()
+	{
+		return queueFullPolicy;
+	}
+	
+	public int getCapacity()
+	{
+		return queue.capacity();
+	}
+	
+	public int getDepth()
+	{
+		return queue.size();
+	}
+	
+	public long getProcessed()
+	{
+		return processed.get();
+	}
+	
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+	
+	public long getFailed()
+	{
+		return failed.get();
+	}
+	
+	public Health getHealth()
+	{
+		if (failing)
+			return Health.FAILING;
+		if (queue.size() >= (queue.capacity() + 1) / 2)
+			return Health.BACKLOGGED;
+		return Health.HEALTHY;
+	}
+	
+	/**
+	 * Fill telemetryInfo with the current depth, capacity and health (as its ordinal) of
+	 * this worker, and how many TelemetryInfo it processed, dropped and failed since the
+	 * previous call.
+	 */
+	synchronized void collectMetrics(TelemetryInfo telemetryInfo)
+	{
+		long processed = this.processed.get();
+		long dropped = this.dropped.get();
+		long failed = this.failed.get();
+		
+		telemetryInfo.setLong(DEPTH, queue.size());
+		telemetryInfo.setLong(CAPACITY, queue.capacity());
+		telemetryInfo.setLong(PROCESSED, processed - lastProcessed);
+		telemetryInfo.setLong(DROPPED, dropped - lastDropped);
+		telemetryInfo.setLong(FAILED, failed - lastFailed);
+		telemetryInfo.setLong(HEALTH, getHealth().ordinal());
+		
+		lastProcessed = processed;
+		lastDropped = dropped;
+		lastFailed = failed;
+	}
+	
+	void start()
+	{
+		thread.start();
+	}
+	
+	/**
+	 * Stop the worker, giving it up to maxTimeout milliseconds to process what is queued.
+	 */
+	void shutdown(long maxTimeout) throws InterruptedException
+	{
+		thread.shutdown(maxTimeout);
+		if (thread.isAlive())
+			log.warn(thread.getName() + " still busy " + maxTimeout + "ms after shutdown, abandoning " +
+					queue.size() + " queued TelemetryInfo");
+	}
+	
+	void offer(TelemetryInfo telemetryInfo)
+	{
+		switch (queueFullPolicy)
+		{
+			case DISCARD_OFFERED :
+				if (!queue.offer(telemetryInfo))
+					dropped.incrementAndGet();
+				return;
+				
+			default :
+				while (!queue.offer(telemetryInfo))
+				{
+					if (queue.poll() != null)
+						dropped.incrementAndGet();
+				}
+				return;
+		}
+	}
+	
+	private void process(List<TelemetryInfo> telemetryInfos)
+	{
+		try {
+			processor.processBatch(telemetryInfos);
+			processed.addAndGet(telemetryInfos.size());
+			if (failing) {
+				failing = false;
+				log.info(thread.getName() + " recovered after " + failed.get() + " total failures");
+			}
+		}
+		catch (Throwable t) {
+			// Errors included: one escaping would end the worker thread, leaving offer() to
+			// fill a queue nothing drains.  A batch succeeds or fails as a whole.
+			failed.addAndGet(telemetryInfos.size());
+			// log the transition rather than every failure of a processor that is down
+			if (!failing) {
+				failing = true;
+				log.error(thread.getName() + " failed processing " + telemetryInfos.size() + " TelemetryInfo", t);
+			}
+		}
+	}
+	
+	private class WorkerThread extends StoppableThread
+	{
+		private final TelemetryInfo batch[];
+		
+		WorkerThread(String name)
+		{
+			super(name, log);
+			this.batch = new TelemetryInfo[Math.min(MAX_BATCH_SIZE, queue.capacity())];
+		}
+		
+		@Override
+		protected void onRun()
+		{
+			while (!isShutdown())
+			{
+				// probably isShutdown() if interrupted, continue and check
+				if (!queue.awaitNotEmpty(RingBuffer.WaitStrategy.PARK))
+					continue;
+				processBatch();
+			}
+			
+			// finish what was queued at shutdown, bounded in case publishing continues
+			int queued = queue.size();
+			int count;
+			while (queued > 0 && (count = processBatch()) > 0)
+				queued -= count;
+		}
+		
+		private int processBatch()
+		{
+			int count = queue.drainTo(batch);
+			if (count > 0)
+			{
+				process(Arrays.asList(batch).subList(0, count));
+				// release the slots so the batch array does not pin processed TelemetryInfo
+				Arrays.fill(batch, 0, count, null);
+			}
+			return count;
+		}
+	}
+}
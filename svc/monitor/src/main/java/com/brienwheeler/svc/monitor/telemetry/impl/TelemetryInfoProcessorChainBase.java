@@ -23,6 +23,9 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Required;
 
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
@@ -47,6 +50,28 @@ public abstract class TelemetryInfoProcessorChainBase implements IStoppableTelem
 		if (onProcess(telemetryInfo))
 			nextProcessor.process(telemetryInfo);
 	}
+
+	@Override
+	public void processBatch(List<TelemetryInfo> telemetryInfos)
+	{
+		// only copy once something is filtered out, the common case passes the batch through
+		List<TelemetryInfo> accepted = null;
+		for (int i = 0; i < telemetryInfos.size(); i++) {
+			TelemetryInfo telemetryInfo = telemetryInfos.get(i);
+			if (onProcess(telemetryInfo)) {
+				if (accepted != null)
+					accepted.add(telemetryInfo);
+			}
+			else if (accepted == null) {
+				accepted = new ArrayList<TelemetryInfo>(telemetryInfos.size());
+				accepted.addAll(telemetryInfos.subList(0, i));
+			}
+		}
+		if (accepted == null)
+			nextProcessor.processBatch(telemetryInfos);
+		else if (!accepted.isEmpty())
+			nextProcessor.processBatch(accepted);
+	}
 	
 	protected void onStart()
 	{
@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.List;
+
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryPublishService;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 import com.brienwheeler.lib.svc.GracefulShutdown;
@@ -47,4 +49,16 @@ public class TelemetryPublishService extends TelemetryServiceBase
 		if (enabled)
 			callProcessors(telemetryInfo);
 	}
+
+	@Override
+	@GracefulShutdown
+	public void publishBatch(final List<TelemetryInfo> telemetryInfos)
+	{
+		ValidationUtils.assertNotNull(telemetryInfos, "telemetryInfos cannot be null");
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			ValidationUtils.assertNotNull(telemetryInfo, "telemetryInfo cannot be null");
+		
+		if (enabled && !telemetryInfos.isEmpty())
+			callProcessors(telemetryInfos);
+	}
 }
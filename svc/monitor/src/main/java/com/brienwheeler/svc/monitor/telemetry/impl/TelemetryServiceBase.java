@@ -23,20 +23,54 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.factory.annotation.Required;
 
+import com.brienwheeler.lib.concurrent.StoppableThread;
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 import com.brienwheeler.lib.svc.ServiceState;
 import com.brienwheeler.lib.svc.impl.SpringStoppableServiceBase;
+import com.brienwheeler.lib.util.ValidationUtils;
+import com.brienwheeler.svc.monitor.telemetry.impl.AsynchronousTelemetryInfoProcessor.QueueFullPolicy;
 
+/**
+ * Base class for services that pass TelemetryInfo on to a list of processors.  By default
+ * callProcessors() calls each processor in turn on the calling thread.  In fan-out mode
+ * each processor instead gets a TelemetryFanOutWorker with its own bounded queue, thread,
+ * drop policy and health, and callProcessors() only enqueues, so a slow or failing
+ * processor delays neither the caller nor the other processors.  When
+ * fanOutMetricsPeriodicity is set, the depth, counters and health of every worker are
+ * published through callProcessors() as TelemetryInfo named fanOutMetricsName.fanOutN.
+ */
 public abstract class TelemetryServiceBase extends SpringStoppableServiceBase
 {
+	public static final int DEFAULT_FAN_OUT_CAPACITY = 4096;
+	// how long stopping waits for each fan-out worker to drain when stopGracePeriod is not set
+	public static final long DEFAULT_FAN_OUT_STOP_TIMEOUT = 5000L;
+	public static final String FAN_OUT_SEPARATOR = ".fanOut";
+	
     protected final CopyOnWriteArrayList<ITelemetryInfoProcessor> processors =
             new CopyOnWriteArrayList<ITelemetryInfoProcessor>();
+    
+    private volatile boolean fanOut = false;
+    private int fanOutCapacity = DEFAULT_FAN_OUT_CAPACITY;
+    private QueueFullPolicy fanOutQueueFullPolicy = QueueFullPolicy.DISCARD_OLDEST;
+    private final Map<ITelemetryInfoProcessor, QueueFullPolicy> fanOutQueueFullPolicies =
+            new HashMap<ITelemetryInfoProcessor, QueueFullPolicy>();
+    private volatile List<TelemetryFanOutWorker> fanOutWorkers = Collections.emptyList();
+    private int fanOutMetricsPeriodicity = 0;
+    private String fanOutMetricsName = getClass().getSimpleName();
+    private final AtomicReference<StoppableThread> fanOutMetricsThread =
+            new AtomicReference<StoppableThread>();
 
     public TelemetryServiceBase()
 	{
@@ -57,20 +91,102 @@ public abstract class TelemetryServiceBase extends SpringStoppableServiceBase
 		// prevent any state changes while doing this since this interacts
 		// with onStart and onStop
 		synchronized (state) {
-			// only stop/start the processors if we're running
-			if (getState() == ServiceState.RUNNING)
-				stopProcessors();
+			List<ITelemetryInfoProcessor> oldProcessors = new ArrayList<ITelemetryInfoProcessor>(this.processors);
 
             this.processors.clear();
             if (processors != null)
                 this.processors.addAll(processors);
 
             // only stop/start the processors if we're running
-            if (getState() == ServiceState.RUNNING)
-                startProcessors();
+            if (getState() != ServiceState.RUNNING)
+                return;
+
+            // bring up the new processors and swap in their fan-out workers before retiring
+            // the old ones, so telemetry keeps flowing throughout.  Processors in both lists
+            // keep running, briefly fed by both their old and new worker.
+            for (ITelemetryInfoProcessor processor : this.processors)
+                if (!oldProcessors.contains(processor))
+                    TelemetryProcessorUtils.tryToStart(processor);
+            List<TelemetryFanOutWorker> oldWorkers = fanOutWorkers;
+            if (fanOut)
+                fanOutWorkers = startFanOutWorkers();
+            stopFanOutWorkers(oldWorkers);
+            for (ITelemetryInfoProcessor processor : oldProcessors)
+                if (!this.processors.contains(processor))
+                    TelemetryProcessorUtils.tryToStop(processor, stopGracePeriod);
 		}
 	}
 
+	public void setFanOut(boolean fanOut)
+	{
+		ensureState(ServiceState.STOPPED, "can't change FanOut when not STOPPED");
+		this.fanOut = fanOut;
+	}
+
+	public void setFanOutCapacity(int fanOutCapacity)
+	{
+		ValidationUtils.assertTrue(fanOutCapacity > 0, "fanOutCapacity must be greater than zero");
+		ensureState(ServiceState.STOPPED, "can't change FanOutCapacity when not STOPPED");
+		this.fanOutCapacity = fanOutCapacity;
+	}
+
+	/**
+	 * Set the policy for processors without one in fanOutQueueFullPolicies.
+	 * 
+	 * @param fanOutQueueFullPolicy DISCARD_OLDEST or DISCARD_OFFERED
+	 */
+	public void setFanOutQueueFullPolicy(QueueFullPolicy fanOutQueueFullPolicy)
+	{
+		validateFanOutQueueFullPolicy(fanOutQueueFullPolicy);
+		ensureState(ServiceState.STOPPED, "can't change FanOutQueueFullPolicy when not STOPPED");
+		this.fanOutQueueFullPolicy = fanOutQueueFullPolicy;
+	}
+
+	public void setFanOutQueueFullPolicies(Map<ITelemetryInfoProcessor, QueueFullPolicy> fanOutQueueFullPolicies)
+	{
+		ValidationUtils.assertNotNull(fanOutQueueFullPolicies, "fanOutQueueFullPolicies cannot be null");
+		for (QueueFullPolicy queueFullPolicy : fanOutQueueFullPolicies.values())
+			validateFanOutQueueFullPolicy(queueFullPolicy);
+		ensureState(ServiceState.STOPPED, "can't change FanOutQueueFullPolicies when not STOPPED");
+		this.fanOutQueueFullPolicies.clear();
+		this.fanOutQueueFullPolicies.putAll(fanOutQueueFullPolicies);
+	}
+
+	/**
+	 * Set how often, in seconds, fan-out worker metrics are published.  Zero disables them.
+	 * 
+	 * @param fanOutMetricsPeriodicity seconds between reports, 0 to disable
+	 */
+	public void setFanOutMetricsPeriodicity(int fanOutMetricsPeriodicity)
+	{
+		ValidationUtils.assertTrue(fanOutMetricsPeriodicity >= 0, "fanOutMetricsPeriodicity cannot be negative");
+		ensureState(ServiceState.STOPPED, "can't change FanOutMetricsPeriodicity when not STOPPED");
+		this.fanOutMetricsPeriodicity = fanOutMetricsPeriodicity;
+	}
+
+	public void setFanOutMetricsName(String fanOutMetricsName)
+	{
+		fanOutMetricsName = ValidationUtils.assertNotEmpty(fanOutMetricsName, "fanOutMetricsName cannot be empty");
+		ensureState(ServiceState.STOPPED, "can't change FanOutMetricsName when not STOPPED");
+		this.fanOutMetricsName = fanOutMetricsName;
+	}
+
+	/**
+	 * @return the fan-out workers, in processor order, empty unless running in fan-out mode
+	 */
+	public List<TelemetryFanOutWorker> getFanOutWorkers()
+	{
+		return fanOutWorkers;
+	}
+
+	private static void validateFanOutQueueFullPolicy(QueueFullPolicy queueFullPolicy)
+	{
+		// blocking would let a slow processor stall the publisher again
+		ValidationUtils.assertTrue(queueFullPolicy == QueueFullPolicy.DISCARD_OLDEST ||
+				queueFullPolicy == QueueFullPolicy.DISCARD_OFFERED,
+				"fan-out queueFullPolicy must be DISCARD_OLDEST or DISCARD_OFFERED");
+	}
+
     @Override
 	protected void onStart() throws InterruptedException
 	{
@@ -78,11 +194,23 @@ public abstract class TelemetryServiceBase extends SpringStoppableServiceBase
 		
 		// start any processors that are services
         startProcessors();
+
+        if (fanOut && fanOutMetricsPeriodicity > 0)
+        {
+            FanOutMetricsThread metricsThread = new FanOutMetricsThread(
+                    TimeUnit.SECONDS.toMillis(fanOutMetricsPeriodicity));
+            fanOutMetricsThread.set(metricsThread);
+            metricsThread.start();
+        }
 	}
 
 	@Override
 	protected void onStop() throws InterruptedException
 	{
+        StoppableThread metricsThread = fanOutMetricsThread.getAndSet(null);
+        if (metricsThread != null)
+            metricsThread.shutdown();
+
 		// stop any processors that are services
         stopProcessors();
 
@@ -94,19 +222,118 @@ public abstract class TelemetryServiceBase extends SpringStoppableServiceBase
     protected void callProcessors(TelemetryInfo telemetryInfo)
     {
         telemetryInfo.publish();
+        if (fanOut) {
+            for (TelemetryFanOutWorker worker : fanOutWorkers)
+                worker.offer(telemetryInfo);
+            return;
+        }
         for (ITelemetryInfoProcessor processor : processors)
             processor.process(telemetryInfo);
     }
 
+    // as callProcessors(TelemetryInfo), handing the whole list to each processor at once
+    protected void callProcessors(List<TelemetryInfo> telemetryInfos)
+    {
+        for (TelemetryInfo telemetryInfo : telemetryInfos)
+            telemetryInfo.publish();
+        if (fanOut) {
+            for (TelemetryFanOutWorker worker : fanOutWorkers)
+                for (TelemetryInfo telemetryInfo : telemetryInfos)
+                    worker.offer(telemetryInfo);
+            return;
+        }
+        for (ITelemetryInfoProcessor processor : processors)
+            processor.processBatch(telemetryInfos);
+    }
+
+    /**
+     * Publish the current depth, counters and health of each fan-out worker through the
+     * processors.
+     */
+    protected void publishFanOutMetrics()
+    {
+        List<TelemetryFanOutWorker> workers = fanOutWorkers;
+        long now = System.currentTimeMillis();
+        for (int i=0; i<workers.size(); i++)
+        {
+            TelemetryInfo telemetryInfo = new TelemetryInfo(fanOutMetricsName + FAN_OUT_SEPARATOR + i, log, now);
+            workers.get(i).collectMetrics(telemetryInfo);
+            callProcessors(telemetryInfo);
+        }
+    }
+
     private void startProcessors()
     {
         for (ITelemetryInfoProcessor processor : processors)
             TelemetryProcessorUtils.tryToStart(processor);
+
+        if (fanOut)
+            fanOutWorkers = startFanOutWorkers();
     }
 
     private void stopProcessors()
     {
+        // let the fan-out workers drain into the processors before stopping them
+        List<TelemetryFanOutWorker> workers = fanOutWorkers;
+        fanOutWorkers = Collections.emptyList();
+        stopFanOutWorkers(workers);
+
         for (ITelemetryInfoProcessor processor : processors)
             TelemetryProcessorUtils.tryToStop(processor, stopGracePeriod);
     }
+
+    private List<TelemetryFanOutWorker> startFanOutWorkers()
+    {
+        List<TelemetryFanOutWorker> workers = new ArrayList<TelemetryFanOutWorker>(processors.size());
+        for (ITelemetryInfoProcessor processor : processors) {
+            QueueFullPolicy queueFullPolicy = fanOutQueueFullPolicies.get(processor);
+            TelemetryFanOutWorker worker = new TelemetryFanOutWorker(
+                    getClass().getSimpleName() + "-" + processor.getClass().getSimpleName(), processor,
+                    fanOutCapacity, queueFullPolicy != null ? queueFullPolicy : fanOutQueueFullPolicy);
+            worker.start();
+            workers.add(worker);
+        }
+        return Collections.unmodifiableList(workers);
+    }
+
+    private void stopFanOutWorkers(List<TelemetryFanOutWorker> workers)
+    {
+        long timeout = stopGracePeriod > 0L ? stopGracePeriod : DEFAULT_FAN_OUT_STOP_TIMEOUT;
+        for (TelemetryFanOutWorker worker : workers) {
+            try {
+                worker.shutdown(timeout);
+            }
+            catch (InterruptedException e) {
+                // keep signalling the rest to stop, they will not be waited for
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    class FanOutMetricsThread extends StoppableThread
+    {
+        private final long periodMillis;
+
+        FanOutMetricsThread(long periodMillis)
+        {
+            super(TelemetryServiceBase.this.getClass().getSimpleName() + "-fanOutMetrics", log);
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        protected void onRun()
+        {
+            while (!isShutdown())
+            {
+                try {
+                    Thread.sleep(periodMillis);
+                }
+                catch (InterruptedException e) {
+                    // probably isShutdown(), continue and check
+                    continue;
+                }
+                publishFanOutMetrics();
+            }
+        }
+    }
 }
@@ -0,0 +1,474 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.telemetry.impl;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.telemetry.impl.TelemetryInfoCodec;
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Disk overflow tier for AsynchronousTelemetryInfoProcessor: a FIFO of encoded
+ * TelemetryInfo appended to fixed-size memory-mapped segment files in a directory.
+ * Disk use is bounded by maxSegments files of segmentBytes each; once every segment is
+ * full append() fails.  Fully read segments are recycled for new data rather than
+ * deleted and recreated.
+ * <p>
+ * Each segment starts with a header holding its read position, updated as records are
+ * drained, and each record is written payload first and length last, so after a
+ * process crash a new TelemetrySpillQueue on the same directory resumes with exactly
+ * the records that were appended and not yet drained.  Delivery is at-most-once: the
+ * read position advances before a record is decoded and processed, so TelemetryInfo in
+ * flight at a crash is lost rather than replayed.
+ * <p>
+ * Mapped writes are only forced to disk when the queue rolls over to a new segment and
+ * on close(), so the guarantees above hold for process crashes.  After an operating
+ * system crash or power loss, records appended or drained since the last force may be
+ * lost or replayed.
+ * <p>
+ * Segments are unmapped before their files are deleted and on close().  Where the JVM
+ * does not allow releasing a mapping directly (Java 9 and later), it stays in place
+ * until the buffer is garbage collected: the deleted file's disk space is not freed
+ * until then, and on Windows the delete itself may fail and leave the file for the
+ * next recovery to clean up.
+ * <p>
+ * All methods are thread safe.
+ */
+public class TelemetrySpillQueue
+{
+	public static final int MIN_SEGMENT_BYTES = 4096;
+	
+	static final int MAGIC = 0x54535051; // "TSPQ"
+	static final int VERSION = 1;
+	static final String SUFFIX = ".spill";
+	
+	// header: magic, version, read offset, reserved
+	private static final int VERSION_POS = 4;
+	private static final int READ_OFFSET_POS = 8;
+	static final int DATA_START = 16;
+	// keep one consumed segment around for reuse, delete the rest
+	private static final int MAX_FREE_SEGMENTS = 1;
+	
+	private static final Log log = LogFactory.getLog(TelemetrySpillQueue.class);
+	
+	private final File directory;
+	private final int segmentBytes;
+	private final int maxSegments;
+	// oldest first, the last is the one being appended to
+	private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+	private final ArrayDeque<Segment> freeSegments = new ArrayDeque<Segment>();
+	private long nextSequence = 0L;
+	// records appended and not yet drained, volatile so isEmpty() does not lock
+	private volatile long size = 0L;
+	private boolean closed = false;
+	
+	/**
+	 * Open the spill queue in directory, creating it if needed and recovering any records
+	 * left by a previous instance.
+	 * 
+	 * @param directory directory holding the segment files
+	 * @param segmentBytes size of each segment file, at least MIN_SEGMENT_BYTES
+	 * @param maxSegments most segment files used at once
+	 * @throws IOException if the directory cannot be created or an existing segment cannot be mapped
+	 */
+	public TelemetrySpillQueue(File directory, int segmentBytes, int maxSegments) throws IOException
+	{
+		ValidationUtils.assertNotNull(directory, "directory cannot be null");
+		ValidationUtils.assertTrue(segmentBytes >= MIN_SEGMENT_BYTES, "segmentBytes must be at least " + MIN_SEGMENT_BYTES);
+		ValidationUtils.assertTrue(maxSegments > 0, "maxSegments must be greater than zero");
+		
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("unable to create spill directory " + directory);
+		
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxSegments = maxSegments;
+		recover();
+	}
+	
+	public File getDirectory()
+	{
+		return directory;
+	}
+	
+	public long size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0L;
+	}
+	
+	/**
+	 * @param telemetryInfo the TelemetryInfo to spill
+	 * @return false if the TelemetryInfo could not be encoded, is larger than a segment,
+	 * all segments are full, or the queue is closed
+	 */
+	public synchronized boolean append(TelemetryInfo telemetryInfo)
+	{
+		if (closed)
+			return false;
+		
+		byte record[];
+		try {
+			record = TelemetryInfoCodec.encode(telemetryInfo);
+		}
+		catch (IOException e) {
+			log.warn("unable to spill " + telemetryInfo.getName(), e);
+			return false;
+		}
+		
+		Segment tail = segments.peekLast();
+		if (tail == null || !tail.append(record))
+		{
+			// nothing more is appended to the full segment, persist it before moving on
+			if (tail != null)
+				tail.buffer.force();
+			tail = nextSegment();
+			if (tail == null || !tail.append(record))
+				return false;
+		}
+		size++;
+		return true;
+	}
+	
+	/**
+	 * Remove up to batch.length TelemetryInfo into batch, starting at index 0, in the
+	 * order they were appended.
+	 * 
+	 * @param batch array to fill
+	 * @return the number removed
+	 */
+	public synchronized int drainTo(TelemetryInfo batch[])
+	{
+		if (closed)
+			return 0;
+		
+		int count = 0;
+		while (count < batch.length && size > 0L)
+		{
+			Segment head = segments.peekFirst();
+			if (head.unread == 0)
+			{
+				// never the segment being appended to while records remain
+				recycle(segments.pollFirst());
+				continue;
+			}
+			
+			byte record[] = head.read();
+			size--;
+			try {
+				batch[count++] = TelemetryInfoCodec.decode(record);
+			}
+			catch (IOException e) {
+				count--;
+				log.error("discarding unreadable spilled TelemetryInfo in " + head.file, e);
+			}
+		}
+		
+		compact();
+		return count;
+	}
+	
+	/**
+	 * Force mapped segments, including their read positions, to disk and unmap them.
+	 * Undrained records stay on disk for the next TelemetrySpillQueue on the same directory.
+	 */
+	public synchronized void close()
+	{
+		if (closed)
+			return;
+		closed = true;
+		
+		for (Segment segment : segments)
+		{
+			segment.buffer.force();
+			segment.unmap();
+		}
+		for (Segment segment : freeSegments)
+			segment.unmap();
+		segments.clear();
+		freeSegments.clear();
+		if (size > 0L)
+			log.info("leaving " + size + " spilled TelemetryInfo in " + directory);
+	}
+	
+	private void recover() throws IOException
+	{
+		File files[] = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file)
+			{
+				return file.isFile() && getSequence(file) >= 0L;
+			}
+		});
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2)
+			{
+				long sequence1 = getSequence(file1);
+				long sequence2 = getSequence(file2);
+				return sequence1 < sequence2 ? -1 : (sequence1 == sequence2 ? 0 : 1);
+			}
+		});
+		
+		for (File file : files)
+		{
+			nextSequence = Math.max(nextSequence, getSequence(file) + 1);
+			Segment segment = file.length() >= MIN_SEGMENT_BYTES && file.length() <= Integer.MAX_VALUE ?
+				Segment.map(file, (int) file.length()) : null;
+			if (segment == null || !segment.recover())
+			{
+				log.warn("deleting unrecognized spill segment " + file);
+				if (segment != null)
+					segment.unmap();
+				delete(file);
+				continue;
+			}
+			segments.add(segment);
+			size += segment.unread;
+		}
+		
+		compact();
+		if (size > 0L)
+			log.info("recovered " + size + " spilled TelemetryInfo from " + directory);
+	}
+	
+	private void compact()
+	{
+		while (segments.size() > 1 && segments.peekFirst().unread == 0)
+			recycle(segments.pollFirst());
+		// once everything is drained start over at the front of the remaining segment
+		if (size == 0L && !segments.isEmpty())
+			segments.peekFirst().format();
+	}
+	
+	private Segment nextSegment()
+	{
+		Segment segment = freeSegments.poll();
+		if (segment == null && segments.size() >= maxSegments)
+			return null;
+		
+		File file = new File(directory, String.format("%016x", nextSequence++) + SUFFIX);
+		try {
+			if (segment != null && !segment.file.renameTo(file))
+			{
+				segment.unmap();
+				delete(segment.file);
+				segment = null;
+			}
+			if (segment != null)
+				segment.file = file;
+			else
+				segment = Segment.create(file, segmentBytes);
+		}
+		catch (IOException e) {
+			log.error("unable to create spill segment " + file, e);
+			return null;
+		}
+		segment.format();
+		// a reused segment must not recover its old records after a system crash
+		segment.buffer.force();
+		segments.add(segment);
+		return segment;
+	}
+	
+	private void recycle(Segment segment)
+	{
+		if (freeSegments.size() < MAX_FREE_SEGMENTS && segment.buffer.capacity() == segmentBytes)
+			freeSegments.add(segment);
+		else
+		{
+			segment.unmap();
+			delete(segment.file);
+		}
+	}
+	
+	private void delete(File file)
+	{
+		if (!file.delete())
+			log.warn("unable to delete spill segment " + file);
+	}
+	
+	private static long getSequence(File file)
+	{
+		String name = file.getName();
+		if (!name.endsWith(SUFFIX))
+			return -1L;
+		try {
+			return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()), 16);
+		}
+		catch (NumberFormatException e) {
+			return -1L;
+		}
+	}
+	
+	/**
+	 * One mapped segment file.  Records are an int length followed by that many bytes,
+	 * and the data always ends with a zero length (or the end of the file).
+	 */
+	private static class Segment
+	{
+		private final MappedByteBuffer buffer;
+		private File file;
+		private int readOffset;
+		private int writeOffset;
+		private int unread;
+		
+		private Segment(File file, MappedByteBuffer buffer)
+		{
+			this.file = file;
+			this.buffer = buffer;
+		}
+		
+		static Segment create(File file, int length) throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(length);
+				return new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length));
+			}
+			finally {
+				raf.close();
+			}
+		}
+		
+		static Segment map(File file, int length) throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				return new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length));
+			}
+			finally {
+				raf.close();
+			}
+		}
+		
+		/**
+		 * Release the mapping now rather than when the buffer is garbage collected.  Only
+		 * possible through the JDK internal cleaner, so on JVMs that do not expose it this
+		 * does nothing.  The buffer must not be touched afterwards.
+		 */
+		void unmap()
+		{
+			try {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null)
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+			catch (Exception e) {
+				log.debug("unable to unmap spill segment " + file + ", left to garbage collection", e);
+			}
+		}
+		
+		void format()
+		{
+			// terminate the data before exposing the new read offset
+			buffer.putInt(DATA_START, 0);
+			buffer.putInt(READ_OFFSET_POS, DATA_START);
+			buffer.putInt(VERSION_POS, VERSION);
+			buffer.putInt(0, MAGIC);
+			readOffset = DATA_START;
+			writeOffset = DATA_START;
+			unread = 0;
+		}
+		
+		boolean recover()
+		{
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(VERSION_POS) != VERSION)
+				return false;
+			
+			int savedReadOffset = buffer.getInt(READ_OFFSET_POS);
+			int capacity = buffer.capacity();
+			int offset = DATA_START;
+			readOffset = -1;
+			unread = 0;
+			while (offset <= capacity - 4)
+			{
+				int length = buffer.getInt(offset);
+				if (length <= 0 || length > capacity - offset - 4)
+					break;
+				if (offset >= savedReadOffset)
+				{
+					if (readOffset < 0)
+						readOffset = offset;
+					unread++;
+				}
+				offset += 4 + length;
+			}
+			writeOffset = offset;
+			if (readOffset < 0)
+				readOffset = writeOffset;
+			return true;
+		}
+		
+		boolean append(byte record[])
+		{
+			int end = writeOffset + 4 + record.length;
+			if (end > buffer.capacity())
+				return false;
+			
+			// payload and the new terminator first, then the length that makes them visible
+			buffer.position(writeOffset + 4);
+			buffer.put(record);
+			if (end <= buffer.capacity() - 4)
+				buffer.putInt(end, 0);
+			buffer.putInt(writeOffset, record.length);
+			writeOffset = end;
+			unread++;
+			return true;
+		}
+		
+		byte[] read()
+		{
+			int length = buffer.getInt(readOffset);
+			byte record[] = new byte[length];
+			buffer.position(readOffset + 4);
+			buffer.get(record);
+			readOffset += 4 + length;
+			unread--;
+			// committed before the caller decodes and processes the record: at-most-once,
+			// and only forced to disk on rollover and close
+			buffer.putInt(READ_OFFSET_POS, readOffset);
+			return record;
+		}
+	}
+}
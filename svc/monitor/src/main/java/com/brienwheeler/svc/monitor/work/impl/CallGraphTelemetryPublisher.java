@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.LogFactory;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.work.ChildWork;
+import com.brienwheeler.lib.monitor.work.WorkRecord;
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+
+/**
+ * Publishes the monitored work call graph: for each work record that called into
+ * other monitored work, one TelemetryInfo named &lt;work telemetry name&gt;.callGraph
+ * with count and duration attributes for each child, named
+ * &lt;child source name&gt;.&lt;child work name&gt;.count and so on.
+ */
+public class CallGraphTelemetryPublisher extends WorkRecordCollectionTelemetryPublisherBase
+{
+	public static final String CALL_GRAPH = "callGraph";
+	public static final String CALL_COUNT = "count";
+	public static final String CALL_DURATION = "duration";
+
+	@Override
+	public void process(long timestamp, WorkRecordCollection workRecordCollection)
+	{
+		String sourceName = workRecordCollection.getSourceName();
+
+		List<TelemetryInfo> telemetryInfos = new ArrayList<TelemetryInfo>();
+		for (String workRecordName : workRecordCollection.getWorkRecordNames()) {
+			WorkRecord workRecord = workRecordCollection.getWorkRecord(workRecordName);
+			if (workRecord.getChildWork().isEmpty())
+				continue;
+
+			String telemetryName = getTelemetryName(sourceName, workRecordName) + SEPARATOR + CALL_GRAPH;
+			TelemetryInfo telemetryInfo = new TelemetryInfo(telemetryName, LogFactory.getLog(sourceName), timestamp);
+			for (ChildWork childWork : workRecord.getChildWork()) {
+				String childName = getTelemetryName(childWork.getSourceName(), childWork.getWorkName()) + SEPARATOR;
+				telemetryInfo.setLong(childName + CALL_COUNT, childWork.getCount());
+				telemetryInfo.setLong(childName + CALL_DURATION + getUnitSuffix(childWork.getDurationUnit()),
+						childWork.getDuration());
+			}
+
+			telemetryInfos.add(telemetryInfo);
+		}
+		publish(telemetryInfos);
+	}
+}
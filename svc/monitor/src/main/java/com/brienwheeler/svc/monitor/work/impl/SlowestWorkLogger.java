@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
+import com.brienwheeler.lib.monitor.work.SlowWork;
+import com.brienwheeler.lib.monitor.work.WorkRecord;
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+
+/**
+ * Logs the slowest invocations of each work name kept in rolled WorkRecordCollections,
+ * to the log of the collection's source.
+ */
+public class SlowestWorkLogger implements IWorkRecordCollectionProcessor
+{
+	private volatile boolean enabled = true;
+
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	@Override
+	public void process(long timestamp, WorkRecordCollection workRecordCollection)
+	{
+		if (!enabled)
+			return;
+
+		Log log = LogFactory.getLog(workRecordCollection.getSourceName());
+		if (!log.isInfoEnabled())
+			return;
+
+		String unit = workRecordCollection.getDurationUnit().name().toLowerCase();
+		for (String workRecordName : workRecordCollection.getWorkRecordNames()) {
+			WorkRecord workRecord = workRecordCollection.getWorkRecord(workRecordName);
+			int rank = 1;
+			for (SlowWork slowWork : workRecord.getSlowestWork()) {
+				StringBuilder message = new StringBuilder();
+				message.append("slowest work ").append(workRecordName).append(" #").append(rank++)
+					.append(": ").append(slowWork.getDuration()).append(' ').append(unit)
+					.append(slowWork.isOk() ? " ok" : " error")
+					.append(" at ").append(slowWork.getTimestamp())
+					.append(" on ").append(slowWork.getThreadName());
+				if (slowWork.getArgumentSummary() != null)
+					message.append(" (").append(slowWork.getArgumentSummary()).append(")");
+				log.info(message);
+			}
+		}
+	}
+}
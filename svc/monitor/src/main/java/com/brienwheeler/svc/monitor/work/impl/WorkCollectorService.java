@@ -0,0 +1,391 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Required;
+
+import com.brienwheeler.lib.concurrent.NamedThreadFactory;
+import com.brienwheeler.lib.concurrent.StoppableThread;
+import com.brienwheeler.lib.concurrent.ThreadPoolExecutor;
+import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.monitor.work.WorkRecordFrame;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
+import com.brienwheeler.lib.svc.impl.SpringStoppableServiceBase;
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Accepts WorkRecordFrames from WorkRecordCollectionForwarders in other processes and
+ * merges the collections published for the same interval and source, so that counts
+ * and duration percentiles cover every node.  Each interval is held for collectDelay
+ * milliseconds after its publish time and then passed to each processor (e.g. a
+ * WorkRecordCollectionTelemetryPublisher), with sourcePrefix prepended to its source
+ * name.  Frames arriving after their interval has been passed on are dropped.
+ * <p>
+ * Each connection is read on its own thread, at most maxConnections at once.  The time
+ * to decode and merge each frame is recorded in this service's own WorkMonitor as work
+ * named FRAME_WORK_NAME.
+ */
+public class WorkCollectorService extends SpringStoppableServiceBase
+{
+	public static final int DEFAULT_PORT = 2010;
+	public static final String FRAME_WORK_NAME = "frame";
+
+	private volatile int port = DEFAULT_PORT;
+	private volatile String sourcePrefix = "";
+	private volatile long collectDelay = 10000L;
+	private volatile int maxConnections = 64;
+	private volatile int maxFrameBytes = 4 * 1024 * 1024;
+	private volatile int errorTypeCapacity = WorkMonitor.DEFAULT_ERROR_TYPE_CAPACITY;
+	private final CopyOnWriteArraySet<IWorkRecordCollectionProcessor> processors =
+			new CopyOnWriteArraySet<IWorkRecordCollectionProcessor>();
+
+	// publish time -> source name and duration unit -> merged collection
+	private final TreeMap<Long, Map<String, WorkRecordCollection>> intervals =
+			new TreeMap<Long, Map<String, WorkRecordCollection>>();
+	private long lastFlushed = Long.MIN_VALUE;
+
+	private final AtomicReference<ServerSocket> serverSocket = new AtomicReference<ServerSocket>();
+	private final AtomicReference<ExecutorService> connectionExecutor = new AtomicReference<ExecutorService>();
+	private final AtomicReference<AcceptThread> acceptThread = new AtomicReference<AcceptThread>();
+	private final AtomicReference<FlushThread> flushThread = new AtomicReference<FlushThread>();
+	private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+	// 0 to listen on an ephemeral port, see getLocalPort()
+	public void setPort(int port)
+	{
+		ValidationUtils.assertTrue(port >= 0, "port cannot be negative");
+		ValidationUtils.assertTrue(port < 65536, "port must be less than 65536");
+		this.port = port;
+	}
+
+	// the port actually listened on, or -1 if not running
+	public int getLocalPort()
+	{
+		ServerSocket socket = serverSocket.get();
+		return socket == null ? -1 : socket.getLocalPort();
+	}
+
+	@Required
+	public void setProcessors(Collection<IWorkRecordCollectionProcessor> processors)
+	{
+		this.processors.retainAll(processors);
+		this.processors.addAll(processors);
+	}
+
+	public void setSourcePrefix(String sourcePrefix)
+	{
+		this.sourcePrefix = sourcePrefix == null ? "" : sourcePrefix.trim();
+	}
+
+	// milliseconds after an interval's publish time to wait for frames from all nodes
+	public void setCollectDelay(long collectDelay)
+	{
+		ValidationUtils.assertTrue(collectDelay > 0, "collectDelay must be greater than 0");
+		this.collectDelay = collectDelay;
+	}
+
+	// takes effect when the service is next started
+	public void setMaxConnections(int maxConnections)
+	{
+		ValidationUtils.assertTrue(maxConnections > 0, "maxConnections must be greater than 0");
+		this.maxConnections = maxConnections;
+	}
+
+	// connections sending a larger frame are closed
+	public void setMaxFrameBytes(int maxFrameBytes)
+	{
+		ValidationUtils.assertTrue(maxFrameBytes > 0, "maxFrameBytes must be greater than 0");
+		this.maxFrameBytes = maxFrameBytes;
+	}
+
+	public void setErrorTypeCapacity(int errorTypeCapacity)
+	{
+		ValidationUtils.assertTrue(errorTypeCapacity >= 0, "errorTypeCapacity cannot be negative");
+		this.errorTypeCapacity = errorTypeCapacity;
+	}
+
+	@Override
+	protected void onStart() throws InterruptedException
+	{
+		super.onStart();
+
+		ServerSocket socket;
+		try {
+			socket = new ServerSocket(port);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("unable to listen on port " + port, e);
+		}
+		serverSocket.set(socket);
+		connectionExecutor.set(new ThreadPoolExecutor(0, maxConnections, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new NamedThreadFactory(WorkCollectorService.class.getSimpleName() + "-connection")));
+
+		AcceptThread accept = new AcceptThread(socket);
+		accept.start();
+		acceptThread.set(accept);
+		FlushThread flush = new FlushThread();
+		flush.start();
+		flushThread.set(flush);
+	}
+
+	@Override
+	protected void onStop() throws InterruptedException
+	{
+		ServerSocket socket = serverSocket.getAndSet(null);
+		if (socket != null)
+			closeQuietly(socket);
+		AcceptThread accept = acceptThread.getAndSet(null);
+		if (accept != null)
+			accept.shutdown(stopGracePeriod);
+		for (Socket connection : connections)
+			closeQuietly(connection);
+		ExecutorService executor = connectionExecutor.getAndSet(null);
+		if (executor != null)
+			executor.shutdownNow();
+		FlushThread flush = flushThread.getAndSet(null);
+		if (flush != null)
+			flush.shutdown(stopGracePeriod);
+
+		// pass on whatever has been collected rather than lose it
+		flush(Long.MAX_VALUE);
+
+		super.onStop();
+	}
+
+	void merge(WorkRecordFrame frame)
+	{
+		long timestamp = frame.getTimestamp();
+		WorkRecordCollection received = frame.getWorkRecordCollection();
+		String key = received.getSourceName() + ":" + received.getDurationUnit();
+		synchronized (intervals) {
+			if (timestamp <= lastFlushed) {
+				log.warn("dropping late work records from " + received.getSourceName() + " for " + timestamp);
+				return;
+			}
+			Map<String, WorkRecordCollection> interval = intervals.get(timestamp);
+			if (interval == null) {
+				interval = new HashMap<String, WorkRecordCollection>();
+				intervals.put(timestamp, interval);
+			}
+			WorkRecordCollection merged = interval.get(key);
+			if (merged == null) {
+				merged = new WorkRecordCollection(sourcePrefix + received.getSourceName(), received.getStartTime(),
+						received.getDurationUnit());
+				interval.put(key, merged);
+			}
+			merged.merge(received, errorTypeCapacity);
+			merged.setEndTime(Math.max(merged.getEndTime(), received.getEndTime()));
+		}
+	}
+
+	// pass every interval published at or before cutoff to the processors
+	void flush(long cutoff)
+	{
+		List<Map.Entry<Long, Map<String, WorkRecordCollection>>> ready =
+				new ArrayList<Map.Entry<Long, Map<String, WorkRecordCollection>>>();
+		synchronized (intervals) {
+			while (!intervals.isEmpty() && intervals.firstKey() <= cutoff) {
+				Map.Entry<Long, Map<String, WorkRecordCollection>> interval = intervals.pollFirstEntry();
+				lastFlushed = Math.max(lastFlushed, interval.getKey());
+				ready.add(interval);
+			}
+		}
+
+		for (Map.Entry<Long, Map<String, WorkRecordCollection>> interval : ready) {
+			for (IWorkRecordCollectionProcessor processor : processors) {
+				try {
+					for (WorkRecordCollection workRecordCollection : interval.getValue().values())
+						processor.process(interval.getKey(), workRecordCollection);
+				}
+				catch (RuntimeException e) {
+					log.error("error in " + processor.getClass().getSimpleName(), e);
+				}
+			}
+		}
+	}
+
+	private static void closeQuietly(ServerSocket socket)
+	{
+		try {
+			socket.close();
+		}
+		catch (IOException e) {
+			// silent
+		}
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try {
+			socket.close();
+		}
+		catch (IOException e) {
+			// silent
+		}
+	}
+
+	private class AcceptThread extends StoppableThread
+	{
+		private final ServerSocket socket;
+
+		public AcceptThread(ServerSocket socket)
+		{
+			super(WorkCollectorService.class.getSimpleName() + "-accept", log);
+			this.socket = socket;
+		}
+
+		@Override
+		protected void onRun()
+		{
+			while (!isShutdown()) {
+				Socket connection;
+				try {
+					connection = socket.accept();
+				}
+				catch (IOException e) {
+					if (!isShutdown())
+						log.error("error accepting connection", e);
+					return;
+				}
+
+				ExecutorService executor = connectionExecutor.get();
+				try {
+					if (executor == null)
+						throw new RejectedExecutionException();
+					connections.add(connection);
+					executor.execute(new ConnectionTask(connection));
+				}
+				catch (RejectedExecutionException e) {
+					log.warn("rejecting connection from " + connection.getRemoteSocketAddress() +
+							", maxConnections of " + maxConnections + " reached");
+					connections.remove(connection);
+					closeQuietly(connection);
+				}
+			}
+		}
+	}
+
+	private class ConnectionTask implements Runnable
+	{
+		private final Socket connection;
+
+		public ConnectionTask(Socket connection)
+		{
+			this.connection = connection;
+		}
+
+		@Override
+		public void run()
+		{
+			WorkRecorder workRecorder = workMonitor.getWorkRecorder(FRAME_WORK_NAME);
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				while (!Thread.currentThread().isInterrupted()) {
+					int length = in.readInt();
+					if (length <= 0 || length > maxFrameBytes) {
+						log.warn("closing connection from " + connection.getRemoteSocketAddress() +
+								", frame length " + length + " outside 1.." + maxFrameBytes);
+						return;
+					}
+					byte data[] = new byte[length];
+					in.readFully(data);
+
+					long start = System.nanoTime();
+					try {
+						merge(WorkRecordFrame.decode(data));
+						workRecorder.recordWorkOkSince(start);
+					}
+					catch (IOException e) {
+						// framing is intact, only this frame is lost
+						workRecorder.recordWorkErrorSince(start);
+						log.warn("dropping malformed work record frame from " + connection.getRemoteSocketAddress(), e);
+					}
+				}
+			}
+			catch (EOFException e) {
+				// forwarder disconnected
+			}
+			catch (SocketException e) {
+				// closed by onStop() or the forwarder
+			}
+			catch (IOException e) {
+				log.error("error reading from " + connection.getRemoteSocketAddress(), e);
+			}
+			finally {
+				connections.remove(connection);
+				closeQuietly(connection);
+			}
+		}
+	}
+
+	private class FlushThread extends StoppableThread
+	{
+		public FlushThread()
+		{
+			super(WorkCollectorService.class.getSimpleName() + "-flush", log);
+		}
+
+		@Override
+		protected void onRun()
+		{
+			while (!isShutdown()) {
+				try {
+					Thread.sleep(Math.min(1000L, collectDelay));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					// probably isShutdown(), check
+					continue;
+				}
+				flush(System.currentTimeMillis() - collectDelay);
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate of the intervals retained by {@link WorkRecordHistory} for one work name
+ * over a time range.  Counts and durations are summed; maximum, p99 and peak in-flight
+ * values are the highest of any interval in the range.
+ */
+public class WorkHistoryAggregate
+{
+	private final String sourceName;
+	private final String workName;
+	private final TimeUnit durationUnit;
+	private final long startTime;
+	private final long endTime;
+	private final int intervals;
+	private final long okCount;
+	private final long okDuration;
+	private final long errorCount;
+	private final long errorDuration;
+	private final long maxDuration;
+	private final long maxP99Duration;
+	private final long maxPeakInFlight;
+
+	WorkHistoryAggregate(String sourceName, String workName, TimeUnit durationUnit, long startTime, long endTime,
+			int intervals, long values[])
+	{
+		this.sourceName = sourceName;
+		this.workName = workName;
+		this.durationUnit = durationUnit;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.intervals = intervals;
+		this.okCount = values[WorkRecordHistory.OK_COUNT];
+		this.okDuration = values[WorkRecordHistory.OK_DURATION];
+		this.errorCount = values[WorkRecordHistory.ERROR_COUNT];
+		this.errorDuration = values[WorkRecordHistory.ERROR_DURATION];
+		this.maxDuration = values[WorkRecordHistory.MAX_DURATION];
+		this.maxP99Duration = values[WorkRecordHistory.P99_DURATION];
+		this.maxPeakInFlight = values[WorkRecordHistory.PEAK_IN_FLIGHT];
+	}
+
+	public String getSourceName()
+	{
+		return sourceName;
+	}
+
+	public String getWorkName()
+	{
+		return workName;
+	}
+
+	public TimeUnit getDurationUnit()
+	{
+		return durationUnit;
+	}
+
+	// publish time of the first interval in the range, 0 if none
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	// publish time of the last interval in the range, 0 if none
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	public int getIntervals()
+	{
+		return intervals;
+	}
+
+	public long getOkCount()
+	{
+		return okCount;
+	}
+
+	public long getOkDuration()
+	{
+		return okDuration;
+	}
+
+	public float getOkAvgDuration()
+	{
+		return okCount == 0 ? 0f : ((float) okDuration) / okCount;
+	}
+
+	public long getErrorCount()
+	{
+		return errorCount;
+	}
+
+	public long getErrorDuration()
+	{
+		return errorDuration;
+	}
+
+	public float getErrorAvgDuration()
+	{
+		return errorCount == 0 ? 0f : ((float) errorDuration) / errorCount;
+	}
+
+	public long getMaxDuration()
+	{
+		return maxDuration;
+	}
+
+	public long getMaxP99Duration()
+	{
+		return maxP99Duration;
+	}
+
+	public long getMaxPeakInFlight()
+	{
+		return maxPeakInFlight;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.brienwheeler.lib.jmx.AutoRegisterMBeanBase;
+import com.brienwheeler.lib.monitor.work.LatencyHistogramSnapshot;
+import com.brienwheeler.lib.monitor.work.LiveWorkStatistics;
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
+import com.brienwheeler.lib.util.ValidationException;
+
+/**
+ * JMX control over the WorkMonitors registered with a WorkPublishService.  Work is
+ * identified by the WorkMonitor source name (normally the service class name) and
+ * the work name.
+ * <p>
+ * The WorkStatistics attribute reports all work of all monitors since the last reset
+ * in a single table.  It is read from the live statistics of each WorkRecorder (see
+ * {@link WorkRecorder#getLiveStatistics()}), which never blocks recording threads and
+ * is independent of the publish interval.  Instances of a service class that share a
+ * source name are combined into one row.
+ */
+@ManagedResource
+public class WorkMonitorManager extends AutoRegisterMBeanBase
+{
+	public static final String SEPARATOR = ":";
+
+	private static final String[] STATISTICS_ITEMS = { "sourceName", "workName", "durationUnit", "okCount",
+		"errorCount", "errorRatio", "rate", "avgDuration", "p50Duration", "p90Duration", "p99Duration",
+		"inFlight", "startTime" };
+	private static final OpenType<?>[] STATISTICS_TYPES = { SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
+		SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG,
+		SimpleType.LONG, SimpleType.LONG, SimpleType.INTEGER, SimpleType.LONG };
+	private static final String[] STATISTICS_INDEX = { "sourceName", "workName", "durationUnit" };
+	private static final CompositeType STATISTICS_ROW_TYPE;
+	private static final TabularType STATISTICS_TYPE;
+	static {
+		try {
+			STATISTICS_ROW_TYPE = new CompositeType("WorkStatistics", "work statistics since last reset",
+					STATISTICS_ITEMS, STATISTICS_ITEMS, STATISTICS_TYPES);
+			STATISTICS_TYPE = new TabularType("WorkStatisticsTable", "work statistics by source and work name",
+					STATISTICS_ROW_TYPE, STATISTICS_INDEX);
+		}
+		catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private WorkPublishService workPublishService;
+
+	@Required
+	public void setWorkPublishService(WorkPublishService workPublishService)
+	{
+		this.workPublishService = workPublishService;
+	}
+
+	@ManagedOperation
+	public void enableWork(String sourceName, String workName)
+	{
+		for (WorkRecorder workRecorder : getWorkRecorders(sourceName, workName))
+			workRecorder.setEnabled(true);
+	}
+
+	@ManagedOperation
+	public void disableWork(String sourceName, String workName)
+	{
+		for (WorkRecorder workRecorder : getWorkRecorders(sourceName, workName))
+			workRecorder.setEnabled(false);
+	}
+
+	@ManagedOperation
+	public boolean isWorkEnabled(String sourceName, String workName)
+	{
+		for (WorkRecorder workRecorder : getWorkRecorders(sourceName, workName)) {
+			if (!workRecorder.isEnabled())
+				return false;
+		}
+		return true;
+	}
+
+	@ManagedAttribute
+	public String[] getDisabledWork()
+	{
+		List<String> disabledWork = new ArrayList<String>();
+		for (WorkMonitor workMonitor : workPublishService.getWorkMonitors()) {
+			for (WorkRecorder workRecorder : workMonitor.getWorkRecorders()) {
+				if (!workRecorder.isEnabled())
+					disabledWork.add(workMonitor.getSourceName() + SEPARATOR + workRecorder.getWorkName());
+			}
+		}
+		return disabledWork.toArray(new String[disabledWork.size()]);
+	}
+
+	/**
+	 * Counts, rate (calls per second), average and percentile durations of all work since
+	 * the last reset, one row per source name, work name and duration unit.  Percentiles
+	 * come from the same {@link LatencyHistogramSnapshot} buckets as those of published
+	 * work records, so both agree for the same calls (except that a percentile falling in
+	 * the bucket of the slowest call is not capped at that call's duration).
+	 * 
+	 * @return one row per source name, work name and duration unit
+	 */
+	@ManagedAttribute
+	public TabularData getWorkStatistics()
+	{
+		Map<String, LiveWorkStatistics> statistics = new LinkedHashMap<String, LiveWorkStatistics>();
+		Map<String, Integer> inFlight = new LinkedHashMap<String, Integer>();
+		Map<String, String> sourceNames = new LinkedHashMap<String, String>();
+		for (WorkMonitor workMonitor : workPublishService.getWorkMonitors()) {
+			for (WorkRecorder workRecorder : workMonitor.getWorkRecorders()) {
+				LiveWorkStatistics workStatistics = workRecorder.getLiveStatistics();
+				String key = workMonitor.getSourceName() + SEPARATOR + workRecorder.getWorkName() + SEPARATOR +
+						workStatistics.getDurationUnit();
+				LiveWorkStatistics existing = statistics.get(key);
+				statistics.put(key, existing == null ? workStatistics : existing.add(workStatistics));
+				Integer existingInFlight = inFlight.get(key);
+				inFlight.put(key, workRecorder.getInFlight() + (existingInFlight == null ? 0 : existingInFlight));
+				sourceNames.put(key, workMonitor.getSourceName());
+			}
+		}
+
+		TabularData tabularData = new TabularDataSupport(STATISTICS_TYPE);
+		for (Map.Entry<String, LiveWorkStatistics> entry : statistics.entrySet()) {
+			LiveWorkStatistics workStatistics = entry.getValue();
+			LatencyHistogramSnapshot durationHistogram = workStatistics.getDurationHistogram();
+			Object[] values = { sourceNames.get(entry.getKey()), workStatistics.getWorkName(),
+				workStatistics.getDurationUnit().name(), workStatistics.getOkCount(), workStatistics.getErrorCount(),
+				workStatistics.getErrorRatio(), workStatistics.getRate(), workStatistics.getAvgDuration(),
+				durationHistogram.getValueAtPercentile(50.0), durationHistogram.getValueAtPercentile(90.0),
+				durationHistogram.getValueAtPercentile(99.0), inFlight.get(entry.getKey()),
+				workStatistics.getStartTime() };
+			try {
+				tabularData.put(new CompositeDataSupport(STATISTICS_ROW_TYPE, STATISTICS_ITEMS, values));
+			}
+			catch (OpenDataException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return tabularData;
+	}
+
+	@ManagedOperation
+	public void resetWorkStatistics()
+	{
+		for (WorkMonitor workMonitor : workPublishService.getWorkMonitors())
+			workMonitor.resetLiveStatistics();
+	}
+
+	/**
+	 * Several instances of a service class share a source name, so there may be more than
+	 * one.  Only existing recorders are returned, so that a mistyped name fails instead of
+	 * registering an empty series; work becomes known once it has been recorded.
+	 */
+	private List<WorkRecorder> getWorkRecorders(String sourceName, String workName)
+	{
+		boolean sourceFound = false;
+		List<WorkRecorder> workRecorders = new ArrayList<WorkRecorder>();
+		for (WorkMonitor workMonitor : workPublishService.getWorkMonitors()) {
+			if (workMonitor.getSourceName().equals(sourceName)) {
+				sourceFound = true;
+				WorkRecorder workRecorder = workMonitor.findWorkRecorder(workName);
+				if (workRecorder != null)
+					workRecorders.add(workRecorder);
+			}
+		}
+		if (!sourceFound)
+			throw new ValidationException("no WorkMonitor registered for " + sourceName);
+		if (workRecorders.isEmpty())
+			throw new ValidationException("no work " + workName + " recorded for " + sourceName);
+		return workRecorders;
+	}
+}
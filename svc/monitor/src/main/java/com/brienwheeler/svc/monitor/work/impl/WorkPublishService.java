@@ -25,24 +25,53 @@ package com.brienwheeler.svc.monitor.work.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.factory.annotation.Required;
 
+import com.brienwheeler.lib.concurrent.NamedThreadFactory;
 import com.brienwheeler.lib.concurrent.StoppableThread;
+import com.brienwheeler.lib.concurrent.ThreadPoolExecutor;
 import com.brienwheeler.lib.monitor.work.IWorkPublishService;
 import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
 import com.brienwheeler.lib.monitor.work.WorkMonitor;
 import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
 import com.brienwheeler.lib.svc.impl.SpringStoppableServiceBase;
 import com.brienwheeler.lib.util.ValidationUtils;
 
+/**
+ * Periodically rolls the records of all registered WorkMonitors and passes them to each
+ * processor.  By default processors run one after another on the publishing thread.
+ * With processorThreads greater than 0 each processor is instead dispatched to a pool of
+ * that many threads and given processorTimeout milliseconds from when it starts running
+ * to finish, after which it is interrupted.  A processor still waiting for a thread
+ * processorTimeout after the processors ahead of it finished is cancelled, and one still
+ * running from a previous interval is skipped.  In either mode an exception from one
+ * processor does not affect the others.
+ * <p>
+ * The duration of each processor's run is recorded in this service's own WorkMonitor as
+ * work named PROCESSOR_WORK_PREFIX plus the processor class name and, with
+ * publishProcessorWork set, published along with all other work in the next interval.
+ */
 public class WorkPublishService extends SpringStoppableServiceBase 
 		implements IWorkPublishService
 {
+	public static final String PROCESSOR_WORK_PREFIX = "process.";
+
 	private final AtomicInteger publishPeriodicity = new AtomicInteger(60); // default one minute
 	private final AtomicReference<WorkPublishThread> workPublishThread =
 			new AtomicReference<WorkPublishService.WorkPublishThread>();
@@ -51,6 +80,12 @@ public class WorkPublishService extends SpringStoppableServiceBase
 	private final CopyOnWriteArraySet<WorkMonitor> workMonitors =
 			new CopyOnWriteArraySet<WorkMonitor>();
 	private volatile boolean enabled = true;
+	private volatile int processorThreads = 0;
+	private volatile long processorTimeout = 30000L;
+	private volatile boolean publishProcessorWork = false;
+	private final AtomicReference<ExecutorService> processorExecutor = new AtomicReference<ExecutorService>();
+	private final Set<IWorkRecordCollectionProcessor> runningProcessors =
+			Collections.newSetFromMap(new ConcurrentHashMap<IWorkRecordCollectionProcessor, Boolean>());
 	
 	public WorkPublishService()
 	{
@@ -83,6 +118,37 @@ public class WorkPublishService extends SpringStoppableServiceBase
 		this.publishPeriodicity.set(publishPeriodicity);
 	}
 
+	/**
+	 * Set the number of threads processors are dispatched to, or 0 (the default) to run
+	 * processors serially on the publishing thread.  Takes effect when the service is
+	 * next started.
+	 * 
+	 * @param processorThreads dispatch threads, 0 for serial
+	 */
+	public void setProcessorThreads(int processorThreads)
+	{
+		ValidationUtils.assertTrue(processorThreads >= 0, "processorThreads cannot be negative");
+		this.processorThreads = processorThreads;
+	}
+
+	// milliseconds each dispatched processor may run, not enforced for serial processing
+	public void setProcessorTimeout(long processorTimeout)
+	{
+		ValidationUtils.assertTrue(processorTimeout > 0, "processorTimeout must be greater than 0");
+		this.processorTimeout = processorTimeout;
+	}
+
+	// takes effect when the service is next started
+	public void setPublishProcessorWork(boolean publishProcessorWork)
+	{
+		this.publishProcessorWork = publishProcessorWork;
+	}
+
+	public Collection<WorkMonitor> getWorkMonitors()
+	{
+		return Collections.unmodifiableCollection(workMonitors);
+	}
+
 	@Override
 	public void registerWorkMonitor(WorkMonitor workMonitor)
 	{
@@ -102,6 +168,14 @@ public class WorkPublishService extends SpringStoppableServiceBase
 	{
 		super.onStart();
 
+		if (publishProcessorWork)
+			workMonitors.add(workMonitor);
+		if (processorThreads > 0) {
+			processorExecutor.set(new ThreadPoolExecutor(processorThreads, processorThreads, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new NamedThreadFactory(WorkPublishService.class.getSimpleName() + "-processor")));
+		}
+
 		WorkPublishThread thread = new WorkPublishThread();
 		thread.start();
 		workPublishThread.set(thread);
@@ -113,6 +187,10 @@ public class WorkPublishService extends SpringStoppableServiceBase
 		WorkPublishThread thread = workPublishThread.getAndSet(null);
 		if (thread != null)
 			thread.shutdown(stopGracePeriod);
+		ExecutorService executor = processorExecutor.getAndSet(null);
+		if (executor != null)
+			executor.shutdownNow();
+		workMonitors.remove(workMonitor);
 
 		super.onStop();
 	}
@@ -129,14 +207,118 @@ public class WorkPublishService extends SpringStoppableServiceBase
 		for (WorkMonitor workMonitor : workMonitors)
 			workRecordCollections.add(workMonitor.rollRecords());
 		
-		for (IWorkRecordCollectionProcessor processor : processors) {
-			for (WorkRecordCollection workRecordCollection : workRecordCollections)
-				processor.process(timestamp, workRecordCollection);
+		ExecutorService executor = processorExecutor.get();
+		if (executor == null) {
+			for (IWorkRecordCollectionProcessor processor : processors)
+				new ProcessorTask(processor, timestamp, workRecordCollections).run();
+		}
+		else {
+			dispatchProcessors(executor, timestamp, workRecordCollections);
 		}
 		
 		afterProcess();
 	}
 
+	private void dispatchProcessors(ExecutorService executor, long timestamp,
+			List<WorkRecordCollection> workRecordCollections)
+	{
+		List<ProcessorTask> tasks = new ArrayList<ProcessorTask>();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (IWorkRecordCollectionProcessor processor : processors) {
+			if (!runningProcessors.add(processor)) {
+				log.warn(processor.getClass().getSimpleName() + " still running from previous interval, skipped");
+				continue;
+			}
+			ProcessorTask task = new ProcessorTask(processor, timestamp, workRecordCollections);
+			tasks.add(task);
+			futures.add(executor.submit(task));
+		}
+
+		// processors may queue for a thread, so each one's timeout runs from its own start;
+		// by the time a task is waited on, every task ahead of it has finished or been
+		// cancelled, so one that has not started after a further processorTimeout is stuck
+		// behind a processor ignoring its interrupt
+		for (int i=0; i<futures.size(); i++) {
+			ProcessorTask task = tasks.get(i);
+			long waitStart = System.currentTimeMillis();
+			while (true) {
+				long startedAt = task.startedAt.get();
+				long deadline = (startedAt == 0L ? waitStart : startedAt) + processorTimeout;
+				try {
+					futures.get(i).get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					break;
+				}
+				catch (InterruptedException e) {
+					// shutting down, leave the remaining processors to finish or be interrupted
+					Thread.currentThread().interrupt();
+					return;
+				}
+				catch (ExecutionException e) {
+					// ProcessorTask handles its own exceptions
+					log.error("error dispatching " + task.processor.getClass().getSimpleName(), e);
+					break;
+				}
+				catch (TimeoutException e) {
+					// started while waiting for it to, give it its full timeout
+					if (startedAt == 0L && task.startedAt.get() != 0L)
+						continue;
+					if (startedAt == 0L)
+						log.warn(task.processor.getClass().getSimpleName() + " did not start within processorTimeout of " +
+								processorTimeout + "ms, cancelling");
+					else
+						log.warn(task.processor.getClass().getSimpleName() + " exceeded processorTimeout of " +
+								processorTimeout + "ms, interrupting");
+					// a task cancelled before it starts never releases its processor itself
+					if (futures.get(i).cancel(true) && task.startedAt.get() == 0L)
+						runningProcessors.remove(task.processor);
+					break;
+				}
+			}
+		}
+	}
+
+	private class ProcessorTask implements Runnable
+	{
+		private final IWorkRecordCollectionProcessor processor;
+		private final long timestamp;
+		private final List<WorkRecordCollection> workRecordCollections;
+		// wall-clock millis when run() began, 0 until then
+		private final AtomicLong startedAt = new AtomicLong();
+
+		public ProcessorTask(IWorkRecordCollectionProcessor processor, long timestamp,
+				List<WorkRecordCollection> workRecordCollections)
+		{
+			this.processor = processor;
+			this.timestamp = timestamp;
+			this.workRecordCollections = workRecordCollections;
+		}
+
+		@Override
+		public void run()
+		{
+			startedAt.set(System.currentTimeMillis());
+			WorkRecorder workRecorder = workMonitor.getWorkRecorder(PROCESSOR_WORK_PREFIX +
+					processor.getClass().getSimpleName());
+			long start = System.nanoTime();
+			boolean ok = false;
+			try {
+				for (WorkRecordCollection workRecordCollection : workRecordCollections)
+					processor.process(timestamp, workRecordCollection);
+				ok = true;
+			}
+			catch (RuntimeException e) {
+				log.error("error in " + processor.getClass().getSimpleName(), e);
+			}
+			finally {
+				if (ok)
+					workRecorder.recordWorkOkSince(start);
+				else
+					workRecorder.recordWorkErrorSince(start);
+				runningProcessors.remove(processor);
+			}
+		}
+	}
+
 	private class WorkPublishThread extends StoppableThread
 	{
 		public WorkPublishThread()
@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.brienwheeler.lib.io.ReconnectingSocket;
+import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.monitor.work.WorkRecordFrame;
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Forwards each rolled WorkRecordCollection to a WorkCollectorService as a
+ * length-prefixed WorkRecordFrame.  Collections rolled while the collector is
+ * unreachable are dropped.
+ */
+public class WorkRecordCollectionForwarder implements IWorkRecordCollectionProcessor, InitializingBean, DisposableBean
+{
+	private static final Log log = LogFactory.getLog(WorkRecordCollectionForwarder.class);
+
+	private String hostname = "";
+	private int port = WorkCollectorService.DEFAULT_PORT;
+	private final AtomicReference<ReconnectingSocket> reconnectingSocket = new AtomicReference<ReconnectingSocket>();
+
+	@Required
+	public void setHostname(String hostname)
+	{
+		// allowed to be empty string to disable forwarding
+		ValidationUtils.assertNotNull(hostname, "hostname cannot be null");
+		this.hostname = hostname.trim();
+	}
+
+	public void setPort(int port)
+	{
+		ValidationUtils.assertTrue(port > 0, "port must be greater than 0");
+		ValidationUtils.assertTrue(port < 65536, "port must be less than 65536");
+		this.port = port;
+	}
+
+	@Override
+	public void afterPropertiesSet()
+	{
+		if (!hostname.isEmpty()) {
+			ReconnectingSocket reconnectingSocket = new ReconnectingSocket(hostname, port, log);
+			reconnectingSocket.start();
+			this.reconnectingSocket.set(reconnectingSocket);
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+		ReconnectingSocket socket = reconnectingSocket.getAndSet(null);
+		if (socket != null)
+			socket.stop();
+	}
+
+	public boolean isConnected()
+	{
+		ReconnectingSocket socket = reconnectingSocket.get();
+		return socket != null && socket.isConnected();
+	}
+
+	@Override
+	public void process(long timestamp, WorkRecordCollection workRecordCollection)
+	{
+		ReconnectingSocket socket = reconnectingSocket.get();
+		if (socket == null || !socket.isConnected())
+			return;
+
+		byte payload[] = new WorkRecordFrame(timestamp, workRecordCollection).encode();
+		// length prefix and payload in one write
+		byte data[] = new byte[4 + payload.length];
+		data[0] = (byte) (payload.length >>> 24);
+		data[1] = (byte) (payload.length >>> 16);
+		data[2] = (byte) (payload.length >>> 8);
+		data[3] = (byte) payload.length;
+		System.arraycopy(payload, 0, data, 4, payload.length);
+		socket.write(data);
+	}
+}
@@ -23,79 +23,116 @@
  */
 package com.brienwheeler.svc.monitor.work.impl;
 
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import com.brienwheeler.lib.monitor.work.MonitoredWork;
-import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.beans.factory.InitializingBean;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
 
-import com.brienwheeler.lib.monitor.telemetry.ITelemetryPublishService;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
-import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
+import com.brienwheeler.lib.monitor.work.ErrorWork;
 import com.brienwheeler.lib.monitor.work.WorkRecord;
 import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
-import com.brienwheeler.lib.spring.beans.AutowireUtils;
 
-public class WorkRecordCollectionTelemetryPublisher
-		implements IWorkRecordCollectionProcessor, ApplicationContextAware, InitializingBean
+public class WorkRecordCollectionTelemetryPublisher extends WorkRecordCollectionTelemetryPublisherBase
 {
-	private static final Log log = LogFactory.getLog(WorkRecordCollectionTelemetryPublisher.class);
-	
-	public static final String SEPARATOR = ".";
 	public static final String OK_COUNT = "okCount";
 	public static final String OK_DURATION = "okDuration";
 	public static final String OK_AVG_DURATION = "okAvgDuration";
 	public static final String ERROR_COUNT = "errorCount";
 	public static final String ERROR_DURATION = "errorDuration";
 	public static final String ERROR_AVG_DURATION = "errorAvgDuration";
-	
-	private ApplicationContext applicationContext;
-	private boolean autowireTelemetryPublishers = true;
-	private final CopyOnWriteArraySet<ITelemetryPublishService> telemetryPublishers =
-			new CopyOnWriteArraySet<ITelemetryPublishService>();
-	
-	public void setApplicationContext(ApplicationContext applicationContext)
-	{
-		this.applicationContext = applicationContext;
-	}
-
-	public void setAutowireTelemetryPublishers(boolean autowireTelemetryPublishers)
-	{
-		this.autowireTelemetryPublishers = autowireTelemetryPublishers;
-	}
-
-	@Override
-	public void afterPropertiesSet() throws Exception
-	{
-		if (telemetryPublishers.isEmpty() && autowireTelemetryPublishers) {
-			telemetryPublishers.addAll(AutowireUtils.getAutowireBeans(applicationContext,
-					ITelemetryPublishService.class, log));
-		}
-	}
+	public static final String SELF_DURATION = "selfDuration";
+	public static final String P50_DURATION = "p50Duration";
+	public static final String P90_DURATION = "p90Duration";
+	public static final String P99_DURATION = "p99Duration";
+	public static final String P999_DURATION = "p999Duration";
+	public static final String MAX_DURATION = "maxDuration";
+	public static final String IN_FLIGHT = "inFlight";
+	public static final String PEAK_IN_FLIGHT = "peakInFlight";
+	public static final String CPU_TIME = "cpuTime";
+	public static final String ALLOCATED_BYTES = "allocatedBytes";
+	public static final String ERROR_TYPE_PREFIX = "error";
+	public static final String ERROR_TYPE_COUNT = "count";
+	public static final String ERROR_TYPE_DURATION = "duration";
 
 	@Override
 	public void process(long timestamp, WorkRecordCollection workRecordCollection)
 	{
 		String sourceName = workRecordCollection.getSourceName();
 		
+		List<TelemetryInfo> telemetryInfos = new ArrayList<TelemetryInfo>(workRecordCollection.getWorkRecordNames().size());
 		for (String workRecordName : workRecordCollection.getWorkRecordNames()) {
 			WorkRecord workRecord = workRecordCollection.getWorkRecord(workRecordName);
-			String telemetryName = workRecordName.equals(MonitoredWork.NO_NAME) ?
-					sourceName : sourceName + SEPARATOR + workRecordName;
+			String telemetryName = getTelemetryName(sourceName, workRecordName);
+			String unitSuffix = getUnitSuffix(workRecord.getDurationUnit());
 			TelemetryInfo telemetryInfo = new TelemetryInfo(telemetryName, LogFactory.getLog(sourceName), timestamp);
-			telemetryInfo.set(OK_COUNT, workRecord.getWorkOkCount());
-			telemetryInfo.set(OK_DURATION, workRecord.getWorkOkDuration());
-			telemetryInfo.set(OK_AVG_DURATION, workRecord.getWorkOkAvgDuration());
-			telemetryInfo.set(ERROR_COUNT, workRecord.getWorkErrorCount());
-			telemetryInfo.set(ERROR_DURATION, workRecord.getWorkErrorDuration());
-			telemetryInfo.set(ERROR_AVG_DURATION, workRecord.getWorkErrorAvgDuration());
+			telemetryInfo.setLong(OK_COUNT, workRecord.getWorkOkCount());
+			telemetryInfo.setLong(OK_DURATION + unitSuffix, workRecord.getWorkOkDuration());
+			telemetryInfo.setDouble(OK_AVG_DURATION + unitSuffix,
+					average(workRecord.getWorkOkDuration(), workRecord.getWorkOkCount()));
+			telemetryInfo.setLong(ERROR_COUNT, workRecord.getWorkErrorCount());
+			telemetryInfo.setLong(ERROR_DURATION + unitSuffix, workRecord.getWorkErrorDuration());
+			telemetryInfo.setDouble(ERROR_AVG_DURATION + unitSuffix,
+					average(workRecord.getWorkErrorDuration(), workRecord.getWorkErrorCount()));
+			telemetryInfo.setLong(SELF_DURATION + unitSuffix, workRecord.getWorkSelfDuration());
+			telemetryInfo.setLong(P50_DURATION + unitSuffix, workRecord.getDurationP50());
+			telemetryInfo.setLong(P90_DURATION + unitSuffix, workRecord.getDurationP90());
+			telemetryInfo.setLong(P99_DURATION + unitSuffix, workRecord.getDurationP99());
+			telemetryInfo.setLong(P999_DURATION + unitSuffix, workRecord.getDurationP999());
+			telemetryInfo.setLong(MAX_DURATION + unitSuffix, workRecord.getDurationMax());
+			telemetryInfo.setLong(IN_FLIGHT, workRecord.getInFlight());
+			telemetryInfo.setLong(PEAK_IN_FLIGHT, workRecord.getPeakInFlight());
+			// only present when resource accounting is on
+			if (workRecord.getResourceCount() > 0) {
+				telemetryInfo.setLong(CPU_TIME + unitSuffix, workRecord.getCpuTime());
+				telemetryInfo.setLong(ALLOCATED_BYTES, workRecord.getAllocatedBytes());
+			}
+			setErrorTypes(telemetryInfo, workRecord, unitSuffix);
 			
-			for (ITelemetryPublishService telemetryPublisher : telemetryPublishers)
-				telemetryPublisher.publish(telemetryInfo);
+			telemetryInfos.add(telemetryInfo);
 		}
+		publish(telemetryInfos);
+	}
+
+	/**
+	 * Set error.&lt;type&gt;.count and error.&lt;type&gt;.duration for each exception class,
+	 * where type is the simple class name, or the fully qualified name for classes that
+	 * share a simple name with another class in the same record.
+	 */
+	private void setErrorTypes(TelemetryInfo telemetryInfo, WorkRecord workRecord, String unitSuffix)
+	{
+		List<ErrorWork> errorWorks = workRecord.getErrorWork();
+		if (errorWorks.isEmpty())
+			return;
+
+		Map<String, Integer> simpleNames = new HashMap<String, Integer>();
+		for (ErrorWork errorWork : errorWorks) {
+			String simpleName = getSimpleName(errorWork.getErrorType());
+			Integer count = simpleNames.get(simpleName);
+			simpleNames.put(simpleName, count == null ? 1 : count + 1);
+		}
+		for (ErrorWork errorWork : errorWorks) {
+			String errorType = getSimpleName(errorWork.getErrorType());
+			if (simpleNames.get(errorType) > 1)
+				errorType = errorWork.getErrorType();
+			String prefix = ERROR_TYPE_PREFIX + SEPARATOR + errorType + SEPARATOR;
+			telemetryInfo.setLong(prefix + ERROR_TYPE_COUNT, errorWork.getCount());
+			telemetryInfo.setLong(prefix + ERROR_TYPE_DURATION + unitSuffix, errorWork.getDuration());
+		}
+	}
+
+	// computed in double rather than widening WorkRecord's float average, which would
+	// publish float rounding noise (1.1f as 1.100000023841858)
+	private static double average(long duration, int count)
+	{
+		return count == 0 ? 0d : (double) duration / count;
+	}
+
+	private static String getSimpleName(String className)
+	{
+		return className.substring(className.lastIndexOf('.') + 1);
 	}
 	
 }
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+
+import com.brienwheeler.lib.monitor.telemetry.ITelemetryPublishService;
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
+import com.brienwheeler.lib.monitor.work.MonitoredWork;
+import com.brienwheeler.lib.spring.beans.AutowireUtils;
+
+/**
+ * Base class for work record collection processors that publish TelemetryInfo to the
+ * ITelemetryPublishServices in the context.
+ */
+public abstract class WorkRecordCollectionTelemetryPublisherBase
+		implements IWorkRecordCollectionProcessor, ApplicationContextAware, InitializingBean
+{
+	private static final Log log = LogFactory.getLog(WorkRecordCollectionTelemetryPublisherBase.class);
+	
+	public static final String SEPARATOR = ".";
+	// duration attribute suffixes for non-millisecond units, millisecond attributes keep the bare names
+	public static final String MICROS_SUFFIX = "Micros";
+	public static final String NANOS_SUFFIX = "Nanos";
+	
+	private ApplicationContext applicationContext;
+	private boolean autowireTelemetryPublishers = true;
+	private final CopyOnWriteArraySet<ITelemetryPublishService> telemetryPublishers =
+			new CopyOnWriteArraySet<ITelemetryPublishService>();
+	
+	public void setApplicationContext(ApplicationContext applicationContext)
+	{
+		this.applicationContext = applicationContext;
+	}
+
+	public void setAutowireTelemetryPublishers(boolean autowireTelemetryPublishers)
+	{
+		this.autowireTelemetryPublishers = autowireTelemetryPublishers;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		if (telemetryPublishers.isEmpty() && autowireTelemetryPublishers) {
+			telemetryPublishers.addAll(AutowireUtils.getAutowireBeans(applicationContext,
+					ITelemetryPublishService.class, log));
+		}
+	}
+
+	protected void publish(TelemetryInfo telemetryInfo)
+	{
+		for (ITelemetryPublishService telemetryPublisher : telemetryPublishers)
+			telemetryPublisher.publish(telemetryInfo);
+	}
+
+	protected void publish(List<TelemetryInfo> telemetryInfos)
+	{
+		if (telemetryInfos.isEmpty())
+			return;
+		for (ITelemetryPublishService telemetryPublisher : telemetryPublishers)
+			telemetryPublisher.publishBatch(telemetryInfos);
+	}
+
+	public static String getTelemetryName(String sourceName, String workRecordName)
+	{
+		return workRecordName.equals(MonitoredWork.NO_NAME) ? sourceName : sourceName + SEPARATOR + workRecordName;
+	}
+
+	public static String getUnitSuffix(TimeUnit durationUnit)
+	{
+		switch (durationUnit) {
+			case MICROSECONDS:
+				return MICROS_SUFFIX;
+			case NANOSECONDS:
+				return NANOS_SUFFIX;
+			default:
+				return "";
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.brienwheeler.lib.jmx.AutoRegisterMBeanBase;
+import com.brienwheeler.lib.monitor.work.IWorkRecordCollectionProcessor;
+import com.brienwheeler.lib.monitor.work.WorkRecord;
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.util.ValidationUtils;
+
+/**
+ * Processor that retains the last retainedIntervals publish intervals of every work name
+ * for later query, over JMX or through {@link #getAggregate(String, String, long, long)}.
+ * <p>
+ * Each interval occupies one slot of a ring shared by all work names, and each work name
+ * keeps COLUMN_COUNT primitive long columns of retainedIntervals slots.  At most
+ * maxSeries work names are tracked; once that many have been seen, further work names
+ * are merged into a single OVERFLOW_NAME series.  Memory use is therefore fixed at
+ * about maxSeries * retainedIntervals * COLUMN_COUNT * 8 bytes (see
+ * {@link #getHistoryBytes()}) no matter how many work names exist.  Durations are kept
+ * in the unit each work name was first seen with.
+ */
+@ManagedResource
+public class WorkRecordHistory extends AutoRegisterMBeanBase implements IWorkRecordCollectionProcessor
+{
+	private static final Log log = LogFactory.getLog(WorkRecordHistory.class);
+
+	public static final String OVERFLOW_NAME = "(other)";
+	public static final int DEFAULT_RETAINED_INTERVALS = 1440; // one day of one minute intervals
+	public static final int DEFAULT_MAX_SERIES = 256;
+
+	static final int OK_COUNT = 0;
+	static final int OK_DURATION = 1;
+	static final int ERROR_COUNT = 2;
+	static final int ERROR_DURATION = 3;
+	static final int MAX_DURATION = 4;
+	static final int P99_DURATION = 5;
+	static final int PEAK_IN_FLIGHT = 6;
+	static final int COLUMN_COUNT = 7;
+
+	private static final String[] AGGREGATE_ITEMS = { "sourceName", "workName", "durationUnit", "startTime",
+		"endTime", "intervals", "okCount", "okDuration", "okAvgDuration", "errorCount", "errorDuration",
+		"errorAvgDuration", "maxDuration", "maxP99Duration", "maxPeakInFlight" };
+	private static final OpenType<?>[] AGGREGATE_TYPES = { SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
+		SimpleType.LONG, SimpleType.LONG, SimpleType.INTEGER, SimpleType.LONG, SimpleType.LONG, SimpleType.FLOAT,
+		SimpleType.LONG, SimpleType.LONG, SimpleType.FLOAT, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG };
+	private static final CompositeType AGGREGATE_TYPE;
+	static {
+		try {
+			AGGREGATE_TYPE = new CompositeType("WorkHistoryAggregate", "work history over a time range",
+					AGGREGATE_ITEMS, AGGREGATE_ITEMS, AGGREGATE_TYPES);
+		}
+		catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private int retainedIntervals = DEFAULT_RETAINED_INTERVALS;
+	private int maxSeries = DEFAULT_MAX_SERIES;
+
+	// all guarded by this
+	private long intervalTimes[];
+	private long intervals;
+	private int currentSlot;
+	private final Map<String, Series> series = new HashMap<String, Series>();
+
+	/**
+	 * Set the number of intervals retained, e.g. 1440 for a day at the default publish
+	 * periodicity of one minute.  Discards any history.
+	 * 
+	 * @param retainedIntervals intervals kept, greater than zero
+	 */
+	public synchronized void setRetainedIntervals(int retainedIntervals)
+	{
+		ValidationUtils.assertTrue(retainedIntervals > 0, "retainedIntervals must be greater than 0");
+		this.retainedIntervals = retainedIntervals;
+		clear();
+	}
+
+	@ManagedAttribute
+	public synchronized int getRetainedIntervals()
+	{
+		return retainedIntervals;
+	}
+
+	// maximum number of work names tracked, including the overflow series; discards any history
+	public synchronized void setMaxSeries(int maxSeries)
+	{
+		ValidationUtils.assertTrue(maxSeries > 1, "maxSeries must be greater than 1");
+		this.maxSeries = maxSeries;
+		clear();
+	}
+
+	@ManagedAttribute
+	public synchronized int getMaxSeries()
+	{
+		return maxSeries;
+	}
+
+	// upper bound of memory used for history columns
+	@ManagedAttribute
+	public synchronized long getHistoryBytes()
+	{
+		return ((long) maxSeries * COLUMN_COUNT + 1) * retainedIntervals * 8L;
+	}
+
+	@ManagedAttribute
+	public synchronized String[] getSeriesNames()
+	{
+		List<String> seriesNames = new ArrayList<String>(series.keySet());
+		return seriesNames.toArray(new String[seriesNames.size()]);
+	}
+
+	@Override
+	public synchronized void process(long timestamp, WorkRecordCollection workRecordCollection)
+	{
+		if (intervalTimes == null)
+			intervalTimes = new long[retainedIntervals];
+		if (intervals == 0 || timestamp > intervalTimes[currentSlot]) {
+			advance(timestamp);
+		}
+		else if (timestamp < intervalTimes[currentSlot]) {
+			log.warn("discarding " + workRecordCollection.getSourceName() + " work for " + timestamp +
+					", older than latest interval " + intervalTimes[currentSlot]);
+			return;
+		}
+
+		TimeUnit durationUnit = workRecordCollection.getDurationUnit();
+		for (String workName : workRecordCollection.getWorkRecordNames()) {
+			WorkRecord workRecord = workRecordCollection.getWorkRecord(workName);
+			Series workSeries = getSeries(workRecordCollection.getSourceName(), workName, durationUnit);
+			TimeUnit seriesUnit = workSeries.durationUnit;
+			long columns[] = workSeries.columns;
+			add(columns, OK_COUNT, workRecord.getWorkOkCount());
+			add(columns, OK_DURATION, seriesUnit.convert(workRecord.getWorkOkDuration(), durationUnit));
+			add(columns, ERROR_COUNT, workRecord.getWorkErrorCount());
+			add(columns, ERROR_DURATION, seriesUnit.convert(workRecord.getWorkErrorDuration(), durationUnit));
+			max(columns, MAX_DURATION, seriesUnit.convert(workRecord.getDurationMax(), durationUnit));
+			max(columns, P99_DURATION, seriesUnit.convert(workRecord.getDurationP99(), durationUnit));
+			max(columns, PEAK_IN_FLIGHT, workRecord.getPeakInFlight());
+		}
+	}
+
+	/**
+	 * Aggregate the retained intervals of the given work published between fromTime and
+	 * toTime inclusive.  Work merged into the overflow series is queried with
+	 * OVERFLOW_NAME for both names.
+	 * 
+	 * @param sourceName source the work was recorded by
+	 * @param workName name of the work
+	 * @param fromTime earliest publish time, in milliseconds
+	 * @param toTime latest publish time, in milliseconds
+	 * @return aggregate, or null if the work has not been seen
+	 */
+	public synchronized WorkHistoryAggregate getAggregate(String sourceName, String workName, long fromTime, long toTime)
+	{
+		Series workSeries = series.get(getSeriesKey(sourceName, workName));
+		if (workSeries == null)
+			return null;
+
+		long values[] = new long[COLUMN_COUNT];
+		long startTime = 0L;
+		long endTime = 0L;
+		int matched = 0;
+		int retained = (int) Math.min(intervals, retainedIntervals);
+		// oldest to newest
+		for (int i=retained - 1; i>=0; i--) {
+			int slot = (currentSlot - i + retainedIntervals) % retainedIntervals;
+			long intervalTime = intervalTimes[slot];
+			if (intervalTime < fromTime || intervalTime > toTime)
+				continue;
+			if (matched++ == 0)
+				startTime = intervalTime;
+			endTime = intervalTime;
+			for (int column=OK_COUNT; column<=ERROR_DURATION; column++)
+				values[column] += workSeries.columns[column * retainedIntervals + slot];
+			for (int column=MAX_DURATION; column<COLUMN_COUNT; column++)
+				values[column] = Math.max(values[column], workSeries.columns[column * retainedIntervals + slot]);
+		}
+		return new WorkHistoryAggregate(workSeries.sourceName, workSeries.workName, workSeries.durationUnit,
+				startTime, endTime, matched, values);
+	}
+
+	@ManagedOperation
+	public CompositeData getAggregateData(String sourceName, String workName, long fromTime, long toTime)
+	{
+		WorkHistoryAggregate aggregate = getAggregate(sourceName, workName, fromTime, toTime);
+		if (aggregate == null)
+			return null;
+		Object[] values = { aggregate.getSourceName(), aggregate.getWorkName(), aggregate.getDurationUnit().name(),
+			aggregate.getStartTime(), aggregate.getEndTime(), aggregate.getIntervals(), aggregate.getOkCount(),
+			aggregate.getOkDuration(), aggregate.getOkAvgDuration(), aggregate.getErrorCount(),
+			aggregate.getErrorDuration(), aggregate.getErrorAvgDuration(), aggregate.getMaxDuration(),
+			aggregate.getMaxP99Duration(), aggregate.getMaxPeakInFlight() };
+		try {
+			return new CompositeDataSupport(AGGREGATE_TYPE, AGGREGATE_ITEMS, values);
+		}
+		catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// the given number of most recent minutes
+	@ManagedOperation
+	public CompositeData getRecentAggregateData(String sourceName, String workName, int minutes)
+	{
+		ValidationUtils.assertTrue(minutes > 0, "minutes must be greater than 0");
+		long now = System.currentTimeMillis();
+		return getAggregateData(sourceName, workName, now - minutes * 60000L, now);
+	}
+
+	private void advance(long timestamp)
+	{
+		currentSlot = (int) (intervals % retainedIntervals);
+		intervals++;
+		intervalTimes[currentSlot] = timestamp;
+		for (Series workSeries : series.values()) {
+			for (int column=0; column<COLUMN_COUNT; column++)
+				workSeries.columns[column * retainedIntervals + currentSlot] = 0L;
+		}
+	}
+
+	private Series getSeries(String sourceName, String workName, TimeUnit durationUnit)
+	{
+		String key = getSeriesKey(sourceName, workName);
+		Series workSeries = series.get(key);
+		if (workSeries != null)
+			return workSeries;
+
+		// keep one series free for overflow
+		if (series.size() >= maxSeries - 1) {
+			key = getSeriesKey(OVERFLOW_NAME, OVERFLOW_NAME);
+			workSeries = series.get(key);
+			if (workSeries != null)
+				return workSeries;
+			sourceName = OVERFLOW_NAME;
+			workName = OVERFLOW_NAME;
+		}
+		workSeries = new Series(sourceName, workName, durationUnit, new long[COLUMN_COUNT * retainedIntervals]);
+		series.put(key, workSeries);
+		return workSeries;
+	}
+
+	private void add(long columns[], int column, long value)
+	{
+		columns[column * retainedIntervals + currentSlot] += value;
+	}
+
+	private void max(long columns[], int column, long value)
+	{
+		int index = column * retainedIntervals + currentSlot;
+		columns[index] = Math.max(columns[index], value);
+	}
+
+	private void clear()
+	{
+		intervalTimes = null;
+		intervals = 0;
+		currentSlot = 0;
+		series.clear();
+	}
+
+	private static String getSeriesKey(String sourceName, String workName)
+	{
+		return sourceName + WorkMonitorManager.SEPARATOR + workName;
+	}
+
+	private static class Series
+	{
+		private final String sourceName;
+		private final String workName;
+		private final TimeUnit durationUnit;
+		// column-major: column c of slot s at c * retainedIntervals + s
+		private final long columns[];
+
+		private Series(String sourceName, String workName, TimeUnit durationUnit, long columns[])
+		{
+			this.sourceName = sourceName;
+			this.workName = workName;
+			this.durationUnit = durationUnit;
+			this.columns = columns;
+		}
+	}
+}
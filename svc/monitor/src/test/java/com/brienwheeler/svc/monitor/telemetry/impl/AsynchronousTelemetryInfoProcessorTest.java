@@ -23,17 +23,30 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Assert;
 import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
 
+import com.brienwheeler.lib.concurrent.RingBuffer;
+import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.telemetry.impl.TelemetryInfoProcessorBase;
 import com.brienwheeler.lib.svc.ServiceState;
 import com.brienwheeler.lib.svc.ServiceStateException;
 import com.brienwheeler.lib.svc.impl.mocks.NullSpringStoppableService;
@@ -49,6 +62,9 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 	private static final Log log = LogFactory.getLog(AsynchronousTelemetryInfoProcessorTest.class);
 	private static final long TEST_SHUTDOWN_DELAY = 30000L;
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	private static SteppedAsynchronousTelemetryInfoProcessor processor;
 	private static NullSpringStoppableService service;
 	private static TelemetryRecordingProcessor recordingProcessor;
@@ -98,7 +114,7 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		
 		proc.start();		
 		try {
-			Assert.assertEquals(Integer.MAX_VALUE, proc.getQueue().remainingCapacity());
+			Assert.assertEquals(AsynchronousTelemetryInfoProcessor.DEFAULT_MAX_CAPACITY, proc.getQueue().remainingCapacity());
 			Assert.assertTrue(proc.getThread().isAlive());
 		}
 		finally {
@@ -187,6 +203,46 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		}
 	}
 	
+	@Test(expected = ValidationException.class)
+	public void testSetMaxBatchSizeLessThanOne() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.setMaxBatchSize(0);
+	}
+
+	@Test(expected = ServiceStateException.class)
+	public void testSetMaxBatchSizeFailRunning() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.start();
+		try {
+			proc.setMaxBatchSize(1);
+		}
+		finally {
+			stopSteppedProcessor(proc);
+		}
+	}
+	
+	@Test(expected = ValidationException.class)
+	public void testSetWaitStrategyFailNull() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.setWaitStrategy(null);
+	}
+
+	@Test(expected = ServiceStateException.class)
+	public void testSetWaitStrategyFailRunning() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.start();
+		try {
+			proc.setWaitStrategy(RingBuffer.WaitStrategy.YIELD);
+		}
+		finally {
+			stopSteppedProcessor(proc);
+		}
+	}
+	
 	@Test
 	public void testProcess() throws InterruptedException
 	{
@@ -238,6 +294,11 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		service.publishTelemetry(new TelemetryInfo("telemetryInfoOlder", log));
 		service.publishTelemetry(new TelemetryInfo("telemetryInfoNewer", log));
 		Assert.assertEquals("telemetryInfoNewer", processor.getQueue().peek().getName());
+		TelemetryInfo metrics = processor.collectShardMetrics(0);
+		Assert.assertEquals(2L, metrics.getLong(AsynchronousTelemetryInfoProcessor.ENQUEUED));
+		Assert.assertEquals(1L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OLDEST));
+		Assert.assertEquals(0L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OFFERED));
+		Assert.assertEquals(1L, metrics.getLong(AsynchronousTelemetryInfoProcessor.HIGH_WATER_MARK));
 
 		int startCount = recordingProcessor.getCount();
 		// let the thread in the AsyncProcessor pick up published event and wait
@@ -259,6 +320,10 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		service.publishTelemetry(new TelemetryInfo("telemetryInfoOlder", log));
 		service.publishTelemetry(new TelemetryInfo("telemetryInfoNewer", log));
 		Assert.assertEquals("telemetryInfoOlder", processor.getQueue().peek().getName());
+		TelemetryInfo metrics = processor.collectShardMetrics(0);
+		Assert.assertEquals(1L, metrics.getLong(AsynchronousTelemetryInfoProcessor.ENQUEUED));
+		Assert.assertEquals(0L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OLDEST));
+		Assert.assertEquals(1L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OFFERED));
 
 		int startCount = recordingProcessor.getCount();
 		// let the thread in the AsyncProcessor pick up published event and wait
@@ -269,6 +334,135 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		Assert.assertEquals(1, endCount - startCount);
 	}
 	
+	@Test
+	public void testBlockWithTimeout() throws InterruptedException
+	{
+		int stopCount = stopContextProcessor();
+		processor.setMaxCapacity(1);
+		processor.setQueueFullPolicy(QueueFullPolicy.BLOCK_WITH_TIMEOUT);
+		processor.setBlockTimeout(20L);
+		startContextProcessor(stopCount);
+		
+		try {
+			service.publishTelemetry(new TelemetryInfo("telemetryInfoOlder", log));
+			long start = System.currentTimeMillis();
+			service.publishTelemetry(new TelemetryInfo("telemetryInfoNewer", log));
+			Assert.assertTrue(System.currentTimeMillis() - start >= 20L);
+			Assert.assertEquals("telemetryInfoOlder", processor.getQueue().peek().getName());
+			TelemetryInfo metrics = processor.collectShardMetrics(0);
+			Assert.assertEquals(1L, metrics.getLong(AsynchronousTelemetryInfoProcessor.ENQUEUED));
+			Assert.assertEquals(1L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OFFERED));
+
+			int startCount = recordingProcessor.getCount();
+			processor.releaseThreadInBeforeTake();
+			processor.waitForThreadToGetToAfterProcess();
+			Assert.assertEquals(1, recordingProcessor.getCount() - startCount);
+		}
+		finally {
+			restoreQueueFullPolicy();
+		}
+	}
+	
+	@Test
+	public void testBlock() throws InterruptedException
+	{
+		int stopCount = stopContextProcessor();
+		processor.setMaxCapacity(1);
+		processor.setQueueFullPolicy(QueueFullPolicy.BLOCK);
+		startContextProcessor(stopCount);
+		
+		try {
+			service.publishTelemetry(new TelemetryInfo("telemetryInfoOlder", log));
+			Thread publisher = new Thread() {
+				@Override
+				public void run()
+				{
+					service.publishTelemetry(new TelemetryInfo("telemetryInfoNewer", log));
+				}
+			};
+			publisher.start();
+			publisher.join(50L);
+			Assert.assertTrue(publisher.isAlive());
+			Assert.assertEquals("telemetryInfoOlder", processor.getQueue().peek().getName());
+			
+			int startCount = recordingProcessor.getCount();
+			// processing the older TelemetryInfo makes room for the blocked publisher
+			processor.releaseThreadInBeforeTake();
+			processor.waitForThreadToGetToAfterProcess();
+			publisher.join(TEST_SHUTDOWN_DELAY);
+			Assert.assertFalse(publisher.isAlive());
+			Assert.assertEquals("telemetryInfoNewer", processor.getQueue().peek().getName());
+			
+			processor.releaseThreadInBeforeTake();
+			processor.waitForThreadToGetToAfterProcess();
+			Assert.assertEquals(2, recordingProcessor.getCount() - startCount);
+			
+			TelemetryInfo metrics = processor.collectShardMetrics(0);
+			Assert.assertEquals(2L, metrics.getLong(AsynchronousTelemetryInfoProcessor.ENQUEUED));
+			Assert.assertEquals(0L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OFFERED));
+			Assert.assertEquals(2L, metrics.getLong(AsynchronousTelemetryInfoProcessor.PROCESSED));
+		}
+		finally {
+			restoreQueueFullPolicy();
+		}
+	}
+	
+	@Test
+	public void testBlockRepublishFromShardThread() throws InterruptedException
+	{
+		final SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		final CountDownLatch republished = new CountDownLatch(1);
+		TelemetryRecordingProcessor recorder = new TelemetryRecordingProcessor();
+		// republishes into its own (full) upstream processor, as a shard metrics publisher would
+		ITelemetryInfoProcessor republisher = new TelemetryInfoProcessorBase() {
+			@Override
+			protected void onProcess(TelemetryInfo telemetryInfo)
+			{
+				if (!telemetryInfo.getName().equals("root"))
+					return;
+				for (int i=0; i<3; i++) {
+					TelemetryInfo child = new TelemetryInfo("child", log);
+					child.publish();
+					proc.process(child);
+				}
+				republished.countDown();
+			}
+		};
+		proc.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(republisher, recorder));
+		proc.setMaxCapacity(1);
+		proc.setQueueFullPolicy(QueueFullPolicy.BLOCK);
+		
+		proc.start();
+		try {
+			TelemetryInfo root = new TelemetryInfo("root", log);
+			root.publish();
+			proc.process(root);
+			
+			// the first child fills the queue, the shard thread must not wait on itself for the rest
+			proc.releaseThreadInBeforeTake();
+			Assert.assertTrue(republished.await(TEST_SHUTDOWN_DELAY, TimeUnit.MILLISECONDS));
+			proc.waitForThreadToGetToAfterProcess();
+			
+			proc.releaseThreadInBeforeTake();
+			proc.waitForThreadToGetToAfterProcess();
+			Assert.assertEquals(2, recorder.getCount());
+			
+			TelemetryInfo metrics = proc.collectShardMetrics(0);
+			Assert.assertEquals(2L, metrics.getLong(AsynchronousTelemetryInfoProcessor.ENQUEUED));
+			Assert.assertEquals(2L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OFFERED));
+		}
+		finally {
+			stopSteppedProcessor(proc);
+		}
+	}
+	
+	@Test(expected = ValidationException.class)
+	public void testSetBlockTimeoutLessThanOne() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.setBlockTimeout(0L);
+	}
+
 	@Test
 	public void testShutdownBehaviorDiscard() throws InterruptedException
 	{
@@ -311,6 +505,208 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		processor.startNewBackgroundThread();
 	}
 	
+	@Test(expected = ValidationException.class)
+	public void testSetShardCountLessThanOne() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.setShardCount(0);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetMetricsPeriodicityNegative() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.setMetricsPeriodicity(-1);
+	}
+
+	@Test
+	public void testShardedOrdering() throws InterruptedException
+	{
+		AsynchronousTelemetryInfoProcessor proc = new AsynchronousTelemetryInfoProcessor();
+		TelemetryRecordingProcessor recorder = new TelemetryRecordingProcessor();
+		proc.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(recorder));
+		proc.setShardCount(4);
+		
+		// make sure the names actually spread across shards
+		Set<Integer> shardsUsed = new HashSet<Integer>();
+		for (int i=0; i<10; i++)
+			shardsUsed.add(AsynchronousTelemetryInfoProcessor.getShardIndex("name" + i, 4));
+		Assert.assertTrue(shardsUsed.size() > 1);
+		
+		proc.start();
+		try {
+			for (int i=0; i<1000; i++) {
+				TelemetryInfo telemetryInfo = new TelemetryInfo("name" + (i % 10), log);
+				telemetryInfo.setLong("sequence", i);
+				telemetryInfo.publish();
+				proc.process(telemetryInfo);
+			}
+		}
+		finally {
+			// ShutdownBehavior.PROCESS drains every shard
+			proc.stop(TEST_SHUTDOWN_DELAY);
+		}
+		
+		TelemetryInfo recorded[] = recorder.getRecordedTelemetry();
+		Assert.assertEquals(1000, recorded.length);
+		Map<String, Long> lastSequence = new HashMap<String, Long>();
+		for (TelemetryInfo telemetryInfo : recorded) {
+			long sequence = telemetryInfo.getLong("sequence");
+			Long last = lastSequence.put(telemetryInfo.getName(), sequence);
+			Assert.assertTrue(last == null || sequence > last);
+		}
+	}
+	
+	@Test
+	public void testBatchDelivery() throws InterruptedException
+	{
+		AsynchronousTelemetryInfoProcessor proc = new AsynchronousTelemetryInfoProcessor();
+		TelemetryRecordingProcessor recorder = new TelemetryRecordingProcessor();
+		// while the first TelemetryInfo is being processed the rest pile up for the next batch
+		recorder.setDelay(20);
+		proc.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(recorder));
+		
+		proc.start();
+		try {
+			for (int i=0; i<20; i++) {
+				TelemetryInfo telemetryInfo = new TelemetryInfo("name", log);
+				telemetryInfo.publish();
+				proc.process(telemetryInfo);
+			}
+			long deadline = System.currentTimeMillis() + TEST_SHUTDOWN_DELAY;
+			while (recorder.getCount() < 20 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+		}
+		finally {
+			proc.stop(TEST_SHUTDOWN_DELAY);
+		}
+		
+		Assert.assertEquals(20, recorder.getCount());
+		Assert.assertTrue(recorder.getBatchCount() < 20);
+	}
+	
+	@Test
+	public void testShardMetrics() throws InterruptedException
+	{
+		AsynchronousTelemetryInfoProcessor proc = new AsynchronousTelemetryInfoProcessor();
+		TelemetryRecordingProcessor recorder = new TelemetryRecordingProcessor();
+		proc.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(recorder));
+		proc.setShardCount(2);
+		proc.setMaxCapacity(16);
+		proc.setMetricsName("testMetrics");
+		
+		proc.start();
+		try {
+			proc.publishShardMetrics();
+		}
+		finally {
+			proc.stop(TEST_SHUTDOWN_DELAY);
+		}
+		
+		Map<String, TelemetryInfo> recorded = new HashMap<String, TelemetryInfo>();
+		for (TelemetryInfo telemetryInfo : recorder.getRecordedTelemetry())
+			recorded.put(telemetryInfo.getName(), telemetryInfo);
+		Assert.assertEquals(2, recorded.size());
+		for (int i=0; i<2; i++) {
+			TelemetryInfo telemetryInfo = recorded.get("testMetrics" + AsynchronousTelemetryInfoProcessor.SHARD_SEPARATOR + i);
+			Assert.assertNotNull(telemetryInfo);
+			// maxCapacity is shared between the shards
+			Assert.assertEquals(8L, telemetryInfo.getLong(AsynchronousTelemetryInfoProcessor.CAPACITY));
+			Assert.assertTrue(telemetryInfo.getLong(AsynchronousTelemetryInfoProcessor.DEPTH) <= 2L);
+			Assert.assertEquals(TelemetryInfo.AttributeType.LONG, telemetryInfo.getType(AsynchronousTelemetryInfoProcessor.MAX_LAG));
+			Assert.assertEquals(TelemetryInfo.AttributeType.LONG, telemetryInfo.getType(AsynchronousTelemetryInfoProcessor.HEAD_LAG));
+			Assert.assertEquals(TelemetryInfo.AttributeType.DOUBLE, telemetryInfo.getType(AsynchronousTelemetryInfoProcessor.AVG_LAG));
+		}
+	}
+	
+	@Test
+	public void testSpill() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		TelemetryRecordingProcessor recorder = new TelemetryRecordingProcessor();
+		proc.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(recorder));
+		proc.setMaxCapacity(2);
+		proc.setSpillDirectory(folder.getRoot().getPath());
+		proc.setSpillSegmentBytes(TelemetrySpillQueue.MIN_SEGMENT_BYTES);
+		
+		proc.start();
+		try {
+			for (int i=0; i<5; i++)
+				proc.process(createSequenced(i));
+			
+			// two fill the queue, the rest go to disk
+			Assert.assertEquals(2, proc.getQueue().size());
+			TelemetryInfo metrics = proc.collectShardMetrics(0);
+			Assert.assertEquals(2L, metrics.getLong(AsynchronousTelemetryInfoProcessor.ENQUEUED));
+			Assert.assertEquals(3L, metrics.getLong(AsynchronousTelemetryInfoProcessor.SPILLED));
+			Assert.assertEquals(3L, metrics.getLong(AsynchronousTelemetryInfoProcessor.SPILL_DEPTH));
+			Assert.assertEquals(0L, metrics.getLong(AsynchronousTelemetryInfoProcessor.DROPPED_OFFERED));
+			
+			for (int i=0; i<5; i++) {
+				proc.releaseThreadInBeforeTake();
+				proc.waitForThreadToGetToAfterProcess();
+			}
+		}
+		finally {
+			stopSteppedProcessor(proc);
+		}
+		
+		TelemetryInfo recorded[] = recorder.getRecordedTelemetry();
+		Assert.assertEquals(5, recorded.length);
+		for (int i=0; i<5; i++)
+			Assert.assertEquals(i, recorded[i].getLong("sequence"));
+	}
+	
+	@Test
+	public void testSpillSurvivesRestart() throws InterruptedException
+	{
+		SteppedAsynchronousTelemetryInfoProcessor proc = new SteppedAsynchronousTelemetryInfoProcessor();
+		proc.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(new TelemetryRecordingProcessor()));
+		proc.setMaxCapacity(1);
+		proc.setShutdownBehavior(ShutdownBehavior.DISCARD);
+		proc.setSpillDirectory(folder.getRoot().getPath());
+		proc.setSpillSegmentBytes(TelemetrySpillQueue.MIN_SEGMENT_BYTES);
+		proc.start();
+		try {
+			for (int i=0; i<4; i++)
+				proc.process(createSequenced(i));
+		}
+		finally {
+			// stop without letting the thread take anything
+			proc.stopBackgroundThread();
+			proc.stop(TEST_SHUTDOWN_DELAY);
+		}
+		
+		// the first was queued in memory and discarded, the rest were spilled
+		AsynchronousTelemetryInfoProcessor restarted = new AsynchronousTelemetryInfoProcessor();
+		TelemetryRecordingProcessor recorder = new TelemetryRecordingProcessor();
+		restarted.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(recorder));
+		restarted.setSpillDirectory(folder.getRoot().getPath());
+		restarted.setSpillSegmentBytes(TelemetrySpillQueue.MIN_SEGMENT_BYTES);
+		restarted.start();
+		try {
+			long deadline = System.currentTimeMillis() + TEST_SHUTDOWN_DELAY;
+			while (recorder.getCount() < 3 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10L);
+		}
+		finally {
+			restarted.stop(TEST_SHUTDOWN_DELAY);
+		}
+		
+		TelemetryInfo recorded[] = recorder.getRecordedTelemetry();
+		Assert.assertEquals(3, recorded.length);
+		for (int i=0; i<3; i++)
+			Assert.assertEquals(i + 1, recorded[i].getLong("sequence"));
+	}
+	
+	private static TelemetryInfo createSequenced(int sequence)
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo("sequenced", log);
+		telemetryInfo.setLong("sequence", sequence);
+		telemetryInfo.publish();
+		return telemetryInfo;
+	}
+	
 	private int stopSteppedProcessor(SteppedAsynchronousTelemetryInfoProcessor processor) throws InterruptedException
 	{
 		// let processor go into take() before shutdown()
@@ -330,6 +726,14 @@ public class AsynchronousTelemetryInfoProcessorTest extends AbstractJUnit4Spring
 		return stopSteppedProcessor(processor);
 	}
 	
+	private void restoreQueueFullPolicy() throws InterruptedException
+	{
+		// blocking policies would hang later tests that overfill the queue
+		int stopCount = stopContextProcessor();
+		processor.setQueueFullPolicy(QueueFullPolicy.DISCARD_OLDEST);
+		startContextProcessor(stopCount);
+	}
+	
 	private void startContextProcessor(int stopCount)
 	{
 		for (int i=0; i<stopCount; i++)
@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.Arrays;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -124,4 +126,31 @@ public class FilteringTelemetryInfoProcessorTest
 		doProcess();
 		Assert.assertEquals(1, sink.getCount());
 	}
+
+	@Test
+	public void testProcessBatch()
+	{
+		processor.setFilterRecords("EXCLUDE" + TelemetryNameFilter.FIELD_SEPARATOR + NOT_A_MATCH);
+		TelemetryInfo telemetryInfos[] = new TelemetryInfo[] { new TelemetryInfo(INFO_NAME),
+				new TelemetryInfo(NOT_A_MATCH), new TelemetryInfo(INFO_NAME), new TelemetryInfo(NOT_A_MATCH) };
+		for (TelemetryInfo telemetryInfo : telemetryInfos)
+			telemetryInfo.publish();
+		processor.processBatch(Arrays.asList(telemetryInfos));
+
+		Assert.assertEquals(1, sink.getBatchCount());
+		Assert.assertArrayEquals(new TelemetryInfo[] { telemetryInfos[0], telemetryInfos[2] },
+				sink.getRecordedTelemetry());
+	}
+
+	@Test
+	public void testProcessBatchAllFiltered()
+	{
+		processor.setFilterRecords("EXCLUDE" + TelemetryNameFilter.FIELD_SEPARATOR + INFO_NAME);
+		TelemetryInfo telemetryInfo = new TelemetryInfo(INFO_NAME);
+		telemetryInfo.publish();
+		processor.processBatch(Arrays.asList(telemetryInfo, telemetryInfo));
+
+		Assert.assertEquals(0, sink.getBatchCount());
+		Assert.assertEquals(0, sink.getCount());
+	}
 }
@@ -24,12 +24,12 @@
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
 import java.util.concurrent.CyclicBarrier;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.brienwheeler.lib.concurrent.RingBuffer;
 import com.brienwheeler.lib.concurrent.StoppableThread;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
 
@@ -40,6 +40,12 @@ public class SteppedAsynchronousTelemetryInfoProcessor
 	public final CyclicBarrier afterProcessBarrier = new CyclicBarrier(2);
 	public final AtomicBoolean interruptExpected = new AtomicBoolean(false);
 	
+	public SteppedAsynchronousTelemetryInfoProcessor()
+	{
+		// one TelemetryInfo per batch, so each step processes exactly one
+		setMaxBatchSize(1);
+	}
+	
 	@Override
 	protected void beforeTake()
 	{
@@ -113,24 +119,38 @@ public class SteppedAsynchronousTelemetryInfoProcessor
 		backgroundThread.join();
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void startNewBackgroundThread() throws InterruptedException
 	{
-		TelemetryInfoProcessThread backgroundThread = new TelemetryInfoProcessThread(getQueue());
-		((AtomicReference<StoppableThread>) ReflectionTestUtils.getField(this, "backgroundThread")).set(backgroundThread);
+		Shard shard = getShard(0);
+		TelemetryInfoProcessThread backgroundThread = new TelemetryInfoProcessThread(shard);
+		shard.backgroundThread = backgroundThread;
 		backgroundThread.start();
 	}
 	
 	@SuppressWarnings("unchecked")
-	public LinkedBlockingQueue<TelemetryInfo> getQueue()
+	public Shard getShard(int index)
 	{
-		return ((AtomicReference<LinkedBlockingQueue<TelemetryInfo>>) ReflectionTestUtils.getField(this, "queue")).get();
+		Shard shards[] = ((AtomicReference<Shard[]>) ReflectionTestUtils.getField(this, "shards")).get();
+		return shards == null ? null : shards[index];
+	}
+	
+	public TelemetryInfo collectShardMetrics(int index)
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo("shardMetrics", log);
+		getShard(index).collectMetrics(telemetryInfo, System.currentTimeMillis());
+		return telemetryInfo;
+	}
+	
+	public RingBuffer<TelemetryInfo> getQueue()
+	{
+		Shard shard = getShard(0);
+		return shard == null ? null : shard.queue;
 	}
 
-	@SuppressWarnings("unchecked")
 	public StoppableThread getThread()
 	{
-		return ((AtomicReference<StoppableThread>) ReflectionTestUtils.getField(this, "backgroundThread")).get();
+		Shard shard = getShard(0);
+		return shard == null ? null : shard.backgroundThread;
 	}
 
 	@SuppressWarnings("unchecked")
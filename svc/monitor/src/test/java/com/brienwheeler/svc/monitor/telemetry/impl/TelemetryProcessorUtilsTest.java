@@ -23,6 +23,8 @@
  */
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
@@ -112,6 +114,11 @@ public class TelemetryProcessorUtilsTest extends UtilsTestBase<TelemetryProcesso
 		public void process(TelemetryInfo telemetryInfo)
 		{
 		}
+
+		@Override
+		public void processBatch(List<TelemetryInfo> telemetryInfos)
+		{
+		}
 	}
 
 	static class StoppableProcessor implements IStoppableTelemetryInfoProcessor
@@ -144,6 +151,11 @@ public class TelemetryProcessorUtilsTest extends UtilsTestBase<TelemetryProcesso
 		public void process(TelemetryInfo telemetryInfo)
 		{
 		}
+
+		@Override
+		public void processBatch(List<TelemetryInfo> telemetryInfos)
+		{
+		}
 	}
 	
 	static class GenericProcessor implements ITelemetryInfoProcessor
@@ -164,6 +176,11 @@ public class TelemetryProcessorUtilsTest extends UtilsTestBase<TelemetryProcesso
 		public void process(TelemetryInfo telemetryInfo)
 		{
 		}
+
+		@Override
+		public void processBatch(List<TelemetryInfo> telemetryInfos)
+		{
+		}
 	}
 
 }
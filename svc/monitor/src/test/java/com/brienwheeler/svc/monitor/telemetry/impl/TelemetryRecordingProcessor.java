@@ -39,6 +39,7 @@ public class TelemetryRecordingProcessor extends TelemetryInfoProcessorBase
 	
 	private final List<TelemetryInfo> recordedTelemetry = new ArrayList<TelemetryInfo>();
 	private AtomicInteger delay = new AtomicInteger(0);
+	private AtomicInteger batchCount = new AtomicInteger(0);
 	
 	@Override
 	public void onProcess(TelemetryInfo telemetryInfo)
@@ -60,6 +61,18 @@ public class TelemetryRecordingProcessor extends TelemetryInfoProcessorBase
 		}
 	}
 
+	@Override
+	protected void onProcessBatch(List<TelemetryInfo> telemetryInfos)
+	{
+		batchCount.incrementAndGet();
+		super.onProcessBatch(telemetryInfos);
+	}
+
+	public int getBatchCount()
+	{
+		return batchCount.get();
+	}
+
 	public int getCount()
 	{
 		synchronized (recordedTelemetry) {
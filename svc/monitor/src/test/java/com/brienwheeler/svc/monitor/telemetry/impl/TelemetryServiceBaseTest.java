@@ -24,7 +24,11 @@
 package com.brienwheeler.svc.monitor.telemetry.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.brienwheeler.svc.monitor.telemetry.mocks.MockTelemetryService;
 import org.junit.Assert;
@@ -32,6 +36,9 @@ import org.junit.Test;
 
 import com.brienwheeler.lib.monitor.telemetry.ITelemetryInfoProcessor;
 import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.telemetry.impl.TelemetryInfoProcessorBase;
+import com.brienwheeler.lib.util.ValidationException;
+import com.brienwheeler.svc.monitor.telemetry.impl.AsynchronousTelemetryInfoProcessor.QueueFullPolicy;
 import org.springframework.test.util.ReflectionTestUtils;
 
 public class TelemetryServiceBaseTest
@@ -69,4 +76,218 @@ public class TelemetryServiceBaseTest
 		Assert.assertEquals(1, subProcessor1.getCount());
 		Assert.assertEquals(1, subProcessor2.getCount());
 	}
+
+	@Test
+	public void testFanOutSlowProcessor() throws InterruptedException
+	{
+		MockTelemetryService service = new MockTelemetryService();
+
+		TelemetryRecordingProcessor slowProcessor = new TelemetryRecordingProcessor();
+		slowProcessor.setDelay(100);
+		TelemetryRecordingProcessor fastProcessor = new TelemetryRecordingProcessor();
+
+		List<ITelemetryInfoProcessor> processors = new ArrayList<ITelemetryInfoProcessor>();
+		processors.add(slowProcessor);
+		processors.add(fastProcessor);
+		service.setProcessors(processors);
+		service.setFanOut(true);
+		service.setFanOutCapacity(4);
+		service.setFanOutQueueFullPolicies(
+				Collections.<ITelemetryInfoProcessor, QueueFullPolicy>singletonMap(
+						slowProcessor, QueueFullPolicy.DISCARD_OFFERED));
+
+		service.start();
+		List<TelemetryFanOutWorker> workers = service.getFanOutWorkers();
+		Assert.assertEquals(2, workers.size());
+		Assert.assertSame(slowProcessor, workers.get(0).getProcessor());
+		Assert.assertEquals(QueueFullPolicy.DISCARD_OFFERED, workers.get(0).getQueueFullPolicy());
+		Assert.assertEquals(QueueFullPolicy.DISCARD_OLDEST, workers.get(1).getQueueFullPolicy());
+
+		long start = System.currentTimeMillis();
+		for (int i=0; i<10; i++)
+		{
+			service.callProcessors(new TelemetryInfo("InfoName"));
+			Thread.sleep(10);
+		}
+		// caller was never held up by the slow processor
+		Assert.assertTrue(System.currentTimeMillis() - start < 500L);
+
+		// the fast processor keeps up while the slow one is still on its first few
+		for (int i=0; i<100 && fastProcessor.getCount() < 10; i++)
+			Thread.sleep(10);
+		Assert.assertEquals(10, fastProcessor.getCount());
+		Assert.assertTrue(slowProcessor.getCount() < 10);
+		Assert.assertTrue(workers.get(0).getDropped() > 0);
+		Assert.assertEquals(0L, workers.get(1).getDropped());
+		Assert.assertEquals(TelemetryFanOutWorker.Health.HEALTHY, workers.get(1).getHealth());
+
+		service.stop(1000L);
+		Assert.assertTrue(service.getFanOutWorkers().isEmpty());
+		Assert.assertEquals(10, slowProcessor.getCount() + workers.get(0).getDropped());
+	}
+
+	@Test
+	public void testFanOutFailingProcessor() throws InterruptedException
+	{
+		MockTelemetryService service = new MockTelemetryService();
+
+		final boolean fail[] = new boolean[] { true };
+		ITelemetryInfoProcessor failingProcessor = new TelemetryInfoProcessorBase() {
+			@Override
+			protected void onProcess(TelemetryInfo telemetryInfo)
+			{
+				if (fail[0])
+					throw new IllegalStateException("sink down");
+			}
+		};
+		TelemetryRecordingProcessor recordingProcessor = new TelemetryRecordingProcessor();
+
+		List<ITelemetryInfoProcessor> processors = new ArrayList<ITelemetryInfoProcessor>();
+		processors.add(failingProcessor);
+		processors.add(recordingProcessor);
+		service.setProcessors(processors);
+		service.setFanOut(true);
+
+		service.start();
+		TelemetryFanOutWorker failingWorker = service.getFanOutWorkers().get(0);
+		service.callProcessors(new TelemetryInfo("InfoName"));
+		service.callProcessors(new TelemetryInfo("InfoName"));
+
+		for (int i=0; i<100 && failingWorker.getFailed() < 2; i++)
+			Thread.sleep(10);
+		Assert.assertEquals(2L, failingWorker.getFailed());
+		Assert.assertEquals(TelemetryFanOutWorker.Health.FAILING, failingWorker.getHealth());
+
+		fail[0] = false;
+		service.callProcessors(new TelemetryInfo("InfoName"));
+		service.stop(1000L);
+
+		Assert.assertEquals(1L, failingWorker.getProcessed());
+		Assert.assertEquals(TelemetryFanOutWorker.Health.HEALTHY, failingWorker.getHealth());
+		Assert.assertEquals(3, recordingProcessor.getCount());
+	}
+
+	@Test
+	public void testFanOutProcessorError() throws InterruptedException
+	{
+		MockTelemetryService service = new MockTelemetryService();
+
+		final boolean fail[] = new boolean[] { true };
+		ITelemetryInfoProcessor erroringProcessor = new TelemetryInfoProcessorBase() {
+			@Override
+			protected void onProcess(TelemetryInfo telemetryInfo)
+			{
+				if (fail[0])
+					throw new NoClassDefFoundError("sink missing");
+			}
+		};
+		service.setProcessors(Collections.singletonList(erroringProcessor));
+		service.setFanOut(true);
+
+		service.start();
+		TelemetryFanOutWorker worker = service.getFanOutWorkers().get(0);
+		service.callProcessors(new TelemetryInfo("InfoName"));
+		for (int i=0; i<100 && worker.getFailed() < 1; i++)
+			Thread.sleep(10);
+		Assert.assertEquals(1L, worker.getFailed());
+		Assert.assertEquals(TelemetryFanOutWorker.Health.FAILING, worker.getHealth());
+
+		// the worker survived the Error and keeps processing
+		fail[0] = false;
+		service.callProcessors(new TelemetryInfo("InfoName"));
+		service.stop(1000L);
+		Assert.assertEquals(1L, worker.getProcessed());
+	}
+
+	@Test
+	public void testFanOutSetProcessorsRunning()
+	{
+		final MockTelemetryService service = new MockTelemetryService();
+
+		final List<List<TelemetryFanOutWorker>> workersAtStop = new ArrayList<List<TelemetryFanOutWorker>>();
+		ITelemetryInfoProcessor oldProcessor = new TelemetryProcessorUtilsTest.StoppableProcessor() {
+			@Override
+			public void stop(long stopGracePeriod)
+			{
+				workersAtStop.add(service.getFanOutWorkers());
+				super.stop(stopGracePeriod);
+			}
+		};
+		TelemetryRecordingProcessor keptProcessor = new TelemetryRecordingProcessor();
+		TelemetryRecordingProcessor newProcessor = new TelemetryRecordingProcessor();
+		service.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(oldProcessor, keptProcessor));
+		service.setFanOut(true);
+
+		service.start();
+		try {
+			service.setProcessors(Arrays.<ITelemetryInfoProcessor>asList(keptProcessor, newProcessor));
+
+			// the new workers were already in place when the old processor was stopped
+			Assert.assertEquals(1, workersAtStop.size());
+			List<TelemetryFanOutWorker> workers = workersAtStop.get(0);
+			Assert.assertSame(service.getFanOutWorkers(), workers);
+			Assert.assertEquals(2, workers.size());
+			Assert.assertSame(keptProcessor, workers.get(0).getProcessor());
+			Assert.assertSame(newProcessor, workers.get(1).getProcessor());
+		}
+		finally {
+			service.stop(1000L);
+		}
+	}
+
+	@Test
+	public void testFanOutMetrics()
+	{
+		MockTelemetryService service = new MockTelemetryService();
+
+		TelemetryRecordingProcessor recordingProcessor = new TelemetryRecordingProcessor();
+		service.setProcessors(Collections.<ITelemetryInfoProcessor>singletonList(recordingProcessor));
+		service.setFanOut(true);
+		service.setFanOutCapacity(8);
+		service.setFanOutMetricsName("testFanOut");
+
+		service.start();
+		try {
+			service.callProcessors(new TelemetryInfo("InfoName"));
+			service.publishFanOutMetrics();
+		}
+		finally {
+			service.stop(1000L);
+		}
+
+		TelemetryInfo metrics = null;
+		for (TelemetryInfo telemetryInfo : recordingProcessor.getRecordedTelemetry())
+			if (telemetryInfo.getName().equals("testFanOut" + TelemetryServiceBase.FAN_OUT_SEPARATOR + 0))
+				metrics = telemetryInfo;
+		Assert.assertNotNull(metrics);
+		Assert.assertEquals(8L, metrics.getLong(TelemetryFanOutWorker.CAPACITY));
+		Assert.assertTrue(metrics.getLong(TelemetryFanOutWorker.DEPTH) <= 1L);
+		Assert.assertTrue(metrics.getLong(TelemetryFanOutWorker.PROCESSED) <= 1L);
+		Assert.assertEquals(0L, metrics.getLong(TelemetryFanOutWorker.DROPPED));
+		Assert.assertEquals(0L, metrics.getLong(TelemetryFanOutWorker.FAILED));
+		Assert.assertEquals(TelemetryFanOutWorker.Health.HEALTHY.ordinal(), metrics.getLong(TelemetryFanOutWorker.HEALTH));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetFanOutMetricsPeriodicityNegative()
+	{
+		MockTelemetryService service = new MockTelemetryService();
+		service.setFanOutMetricsPeriodicity(-1);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testFanOutBlockingPolicy()
+	{
+		MockTelemetryService service = new MockTelemetryService();
+		service.setFanOutQueueFullPolicy(QueueFullPolicy.BLOCK);
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testFanOutBlockingPolicies()
+	{
+		MockTelemetryService service = new MockTelemetryService();
+		Map<ITelemetryInfoProcessor, QueueFullPolicy> policies = new HashMap<ITelemetryInfoProcessor, QueueFullPolicy>();
+		policies.put(new TelemetryRecordingProcessor(), QueueFullPolicy.BLOCK_WITH_TIMEOUT);
+		service.setFanOutQueueFullPolicies(policies);
+	}
 }
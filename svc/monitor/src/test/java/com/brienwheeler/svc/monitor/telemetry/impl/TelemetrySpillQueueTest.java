@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.telemetry.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.util.ValidationException;
+
+public class TelemetrySpillQueueTest
+{
+	private static final String SEQUENCE = "sequence";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test(expected = ValidationException.class)
+	public void testConstructSegmentTooSmall() throws IOException
+	{
+		new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES - 1, 1);
+	}
+	
+	@Test
+	public void testAppendDrainOrder() throws IOException
+	{
+		TelemetrySpillQueue spill = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 64);
+		Assert.assertTrue(spill.isEmpty());
+		
+		// enough to span several segments
+		for (int i=0; i<500; i++)
+			Assert.assertTrue(spill.append(createTelemetryInfo(i)));
+		Assert.assertEquals(500L, spill.size());
+		Assert.assertTrue(countSegments() > 1);
+		
+		Assert.assertEquals(500, drainAndCheck(spill, 0));
+		Assert.assertTrue(spill.isEmpty());
+		Assert.assertEquals(0, spill.drainTo(new TelemetryInfo[8]));
+		spill.close();
+	}
+	
+	@Test
+	public void testBoundedAndRecycled() throws IOException
+	{
+		TelemetrySpillQueue spill = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 2);
+		int appended = 0;
+		while (spill.append(createTelemetryInfo(appended)))
+			appended++;
+		Assert.assertTrue(appended > 0);
+		Assert.assertEquals(2, countSegments());
+		
+		Assert.assertEquals(appended, drainAndCheck(spill, 0));
+		
+		// consumed segments are reused, disk use stays bounded
+		for (int i=0; i<appended; i++)
+			Assert.assertTrue(spill.append(createTelemetryInfo(i)));
+		Assert.assertFalse(spill.append(createTelemetryInfo(appended)));
+		Assert.assertEquals(2, countSegments());
+		Assert.assertEquals(appended, drainAndCheck(spill, 0));
+		spill.close();
+	}
+	
+	@Test
+	public void testRecordLargerThanSegment() throws IOException
+	{
+		TelemetrySpillQueue spill = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 4);
+		TelemetryInfo telemetryInfo = new TelemetryInfo("large");
+		for (int i=0; i<500; i++)
+			telemetryInfo.setLong("attribute" + i, i);
+		Assert.assertFalse(spill.append(telemetryInfo));
+		Assert.assertTrue(spill.isEmpty());
+		spill.close();
+	}
+	
+	@Test
+	public void testRecovery() throws IOException
+	{
+		TelemetrySpillQueue spill = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 64);
+		for (int i=0; i<300; i++)
+			spill.append(createTelemetryInfo(i));
+		TelemetryInfo batch[] = new TelemetryInfo[100];
+		Assert.assertEquals(100, spill.drainTo(batch));
+		
+		// no close(), as if the process had died
+		TelemetrySpillQueue recovered = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 64);
+		Assert.assertEquals(200L, recovered.size());
+		Assert.assertEquals(200, drainAndCheck(recovered, 100));
+		recovered.close();
+		
+		// everything drained, nothing left to recover
+		recovered = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 64);
+		Assert.assertTrue(recovered.isEmpty());
+		Assert.assertTrue(recovered.append(createTelemetryInfo(0)));
+		Assert.assertEquals(1, drainAndCheck(recovered, 0));
+		recovered.close();
+	}
+	
+	@Test
+	public void testRecoveryDeletesUnrecognizedSegment() throws IOException
+	{
+		File junk = new File(folder.getRoot(), "0000000000000007" + TelemetrySpillQueue.SUFFIX);
+		FileOutputStream out = new FileOutputStream(junk);
+		try {
+			out.write(new byte[TelemetrySpillQueue.MIN_SEGMENT_BYTES]);
+		}
+		finally {
+			out.close();
+		}
+		File other = folder.newFile("other.txt");
+		
+		TelemetrySpillQueue spill = new TelemetrySpillQueue(folder.getRoot(), TelemetrySpillQueue.MIN_SEGMENT_BYTES, 4);
+		Assert.assertFalse(junk.exists());
+		Assert.assertTrue(other.exists());
+		Assert.assertTrue(spill.isEmpty());
+		
+		// new segments are numbered after the one deleted
+		spill.append(createTelemetryInfo(0));
+		Assert.assertTrue(new File(folder.getRoot(), "0000000000000008" + TelemetrySpillQueue.SUFFIX).exists());
+		spill.close();
+	}
+	
+	private int drainAndCheck(TelemetrySpillQueue spill, int firstSequence)
+	{
+		TelemetryInfo batch[] = new TelemetryInfo[64];
+		int expected = firstSequence;
+		int count;
+		while ((count = spill.drainTo(batch)) > 0) {
+			for (int i=0; i<count; i++) {
+				Assert.assertEquals("name" + (expected % 10), batch[i].getName());
+				Assert.assertEquals(expected, batch[i].getLong(SEQUENCE));
+				expected++;
+			}
+		}
+		return expected - firstSequence;
+	}
+	
+	private int countSegments()
+	{
+		return folder.getRoot().list().length;
+	}
+	
+	private static TelemetryInfo createTelemetryInfo(int sequence)
+	{
+		TelemetryInfo telemetryInfo = new TelemetryInfo("name" + (sequence % 10), null, 1000L + sequence);
+		telemetryInfo.setLong(SEQUENCE, sequence);
+		telemetryInfo.setDouble("value", sequence / 2.0d);
+		telemetryInfo.publish();
+		return telemetryInfo;
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.svc.monitor.telemetry.impl.TelemetryPublishService;
+import com.brienwheeler.svc.monitor.telemetry.impl.TelemetryRecordingProcessor;
+import com.brienwheeler.svc.monitor.telemetry.impl.TelemetryServiceBaseTestUtils;
+
+@ContextConfiguration({
+    "classpath:com/brienwheeler/lib/spring/beans/contextBeanDumper.xml",
+    "classpath:com/brienwheeler/svc/monitor/work/WorkCollectorService-test1Context.xml" })
+public class WorkCollectorServiceTest extends AbstractJUnit4SpringContextTests
+{
+	private static final String SOURCE_NAME = "testSource";
+	private static final String WORK_NAME = "testWork";
+	private static final int NODES = 3;
+
+	@Autowired
+	private WorkCollectorService collectorService;
+
+	@Autowired
+	private TelemetryPublishService telemetryPublishService;
+
+	@Test
+	public void testCollect() throws Exception
+	{
+		TelemetryRecordingProcessor recordingProcessor =
+				TelemetryServiceBaseTestUtils.findProcessor(telemetryPublishService, TelemetryRecordingProcessor.class);
+		recordingProcessor.initialize();
+
+		// one forwarder (and connection) per simulated node
+		List<WorkRecordCollectionForwarder> forwarders = new ArrayList<WorkRecordCollectionForwarder>();
+		try {
+			for (int i=0; i<NODES; i++) {
+				WorkRecordCollectionForwarder forwarder = new WorkRecordCollectionForwarder();
+				forwarder.setHostname("localhost");
+				forwarder.setPort(collectorService.getLocalPort());
+				forwarder.afterPropertiesSet();
+				forwarders.add(forwarder);
+			}
+			for (WorkRecordCollectionForwarder forwarder : forwarders)
+				waitFor(forwarder);
+
+			long timestamp = System.currentTimeMillis();
+			for (int i=0; i<NODES; i++) {
+				WorkRecordCollection workRecordCollection = new WorkRecordCollection(SOURCE_NAME, timestamp - 1000L,
+						TimeUnit.MICROSECONDS);
+				// node i sees durations of (i+1) * 1000 micros, plus one error on the last node
+				for (int j=0; j<100; j++)
+					workRecordCollection.recordWorkOk(WORK_NAME, (i + 1) * 1000L);
+				if (i == NODES - 1)
+					workRecordCollection.recordWorkError(WORK_NAME, 50000L);
+				workRecordCollection.setEndTime(timestamp);
+				forwarders.get(i).process(timestamp, workRecordCollection);
+			}
+
+			TelemetryInfo telemetryInfo = waitForTelemetry(recordingProcessor);
+			Assert.assertEquals("fleet." + SOURCE_NAME + "." + WORK_NAME, telemetryInfo.getName());
+			Assert.assertEquals(timestamp, telemetryInfo.getCreatedAt());
+			Assert.assertEquals(300L, telemetryInfo.get(WorkRecordCollectionTelemetryPublisher.OK_COUNT));
+			Assert.assertEquals(1L, telemetryInfo.get(WorkRecordCollectionTelemetryPublisher.ERROR_COUNT));
+			// percentiles are computed over the merged histogram, not averaged per node
+			long p50 = (Long) telemetryInfo.get(WorkRecordCollectionTelemetryPublisher.P50_DURATION +
+					WorkRecordCollectionTelemetryPublisher.MICROS_SUFFIX);
+			Assert.assertTrue(p50 >= 1900L && p50 <= 2100L);
+			Assert.assertEquals(50000L, telemetryInfo.get(WorkRecordCollectionTelemetryPublisher.MAX_DURATION +
+					WorkRecordCollectionTelemetryPublisher.MICROS_SUFFIX));
+
+			// the interval has been passed on, a late frame for it is dropped
+			forwarders.get(0).process(timestamp, new WorkRecordCollection(SOURCE_NAME, timestamp));
+			Thread.sleep(500L);
+			Assert.assertEquals(1, recordingProcessor.getCount());
+		}
+		finally {
+			for (WorkRecordCollectionForwarder forwarder : forwarders)
+				forwarder.destroy();
+		}
+	}
+
+	private static void waitFor(WorkRecordCollectionForwarder forwarder) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (!forwarder.isConnected() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10L);
+		Assert.assertTrue(forwarder.isConnected());
+	}
+
+	private static TelemetryInfo waitForTelemetry(TelemetryRecordingProcessor recordingProcessor)
+			throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (recordingProcessor.getCount() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10L);
+		TelemetryInfo recordedTelemetry[] = recordingProcessor.getRecordedTelemetry();
+		Assert.assertEquals(1, recordedTelemetry.length);
+		return recordedTelemetry[0];
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.Arrays;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
+
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.WorkRecord;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
+import com.brienwheeler.lib.svc.impl.mocks.AnnotatedSpringStoppableService;
+import com.brienwheeler.lib.util.ValidationException;
+
+@ContextConfiguration({
+    "classpath:com/brienwheeler/lib/spring/beans/contextBeanDumper.xml",
+    "classpath:com/brienwheeler/svc/monitor/work/WorkMonitorManager-test1Context.xml" })
+public class WorkMonitorManagerTest extends AbstractJUnit4SpringContextTests
+{
+	private static final String SOURCE_NAME = AnnotatedSpringStoppableService.class.getName();
+
+	@Autowired
+	private AnnotatedSpringStoppableService workService;
+
+	@Autowired
+	private WorkMonitorManager workMonitorManager;
+
+	@Test
+	public void testDisableWork()
+	{
+		WorkMonitor workMonitor = workService.getWorkMonitor();
+		workService.testMethodWorkName(0);
+		workMonitor.rollRecords();
+
+		workMonitorManager.disableWork(SOURCE_NAME, AnnotatedSpringStoppableService.WORK_NAME);
+		Assert.assertFalse(workMonitorManager.isWorkEnabled(SOURCE_NAME, AnnotatedSpringStoppableService.WORK_NAME));
+		Assert.assertTrue(Arrays.asList(workMonitorManager.getDisabledWork()).contains(
+				SOURCE_NAME + WorkMonitorManager.SEPARATOR + AnnotatedSpringStoppableService.WORK_NAME));
+		workService.testMethodWorkName(0);
+		Assert.assertNull(workMonitor.rollRecords().getWorkRecord(AnnotatedSpringStoppableService.WORK_NAME));
+
+		workMonitorManager.enableWork(SOURCE_NAME, AnnotatedSpringStoppableService.WORK_NAME);
+		Assert.assertTrue(workMonitorManager.isWorkEnabled(SOURCE_NAME, AnnotatedSpringStoppableService.WORK_NAME));
+		Assert.assertEquals(0, workMonitorManager.getDisabledWork().length);
+		workService.testMethodWorkName(0);
+		Assert.assertEquals(1, workMonitor.rollRecords().getWorkRecord(AnnotatedSpringStoppableService.WORK_NAME).getWorkOkCount());
+	}
+
+	@Test
+	public void testWorkStatistics()
+	{
+		WorkMonitor workMonitor = workService.getWorkMonitor();
+		Object[] key = { SOURCE_NAME, AnnotatedSpringStoppableService.WORK_NAME, workMonitor.getDurationUnit().name() };
+
+		workMonitorManager.resetWorkStatistics();
+		workService.testMethodWorkName(0);
+		workService.testMethodWorkName(0);
+		TabularData workStatistics = workMonitorManager.getWorkStatistics();
+		CompositeData row = workStatistics.get(key);
+		Assert.assertEquals(2L, row.get("okCount"));
+		Assert.assertEquals(0L, row.get("errorCount"));
+		Assert.assertEquals(0, row.get("inFlight"));
+
+		workMonitorManager.resetWorkStatistics();
+		row = workMonitorManager.getWorkStatistics().get(key);
+		Assert.assertEquals(0L, row.get("okCount"));
+	}
+
+	@Test
+	public void testWorkStatisticsPercentiles()
+	{
+		WorkMonitor workMonitor = workService.getWorkMonitor();
+		Object[] key = { SOURCE_NAME, AnnotatedSpringStoppableService.WORK_NAME, workMonitor.getDurationUnit().name() };
+
+		workMonitor.rollRecords();
+		workMonitorManager.resetWorkStatistics();
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder(AnnotatedSpringStoppableService.WORK_NAME);
+		for (int i=1; i<=1000; i++)
+			workRecorder.recordWorkOk(i * 37L);
+		// slowest calls well clear of the percentiles compared
+		workRecorder.recordWorkOk(1000000L, 5);
+
+		// JMX and the published record of the same calls report the same percentiles
+		CompositeData row = workMonitorManager.getWorkStatistics().get(key);
+		WorkRecord workRecord = workMonitor.rollRecords().getWorkRecord(AnnotatedSpringStoppableService.WORK_NAME);
+		Assert.assertEquals(1005L, row.get("okCount"));
+		Assert.assertEquals(workRecord.getDurationP50(), row.get("p50Duration"));
+		Assert.assertEquals(workRecord.getDurationP90(), row.get("p90Duration"));
+		Assert.assertEquals(workRecord.getDurationP99(), row.get("p99Duration"));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testDisableWorkFailUnknownSource()
+	{
+		workMonitorManager.disableWork("unknownSource", AnnotatedSpringStoppableService.WORK_NAME);
+	}
+
+	@Test
+	public void testDisableWorkFailUnknownWork()
+	{
+		int workRecorders = workService.getWorkMonitor().getWorkRecorders().size();
+		try {
+			workMonitorManager.disableWork(SOURCE_NAME, "unknownWork");
+			Assert.fail();
+		}
+		catch (ValidationException e) {
+			// expected
+		}
+		// an unknown name does not register an empty recorder
+		Assert.assertNull(workService.getWorkMonitor().findWorkRecorder("unknownWork"));
+		Assert.assertEquals(workRecorders, workService.getWorkMonitor().getWorkRecorders().size());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
+
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.work.LiveWorkStatistics;
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.svc.impl.mocks.AnnotatedSpringStoppableService;
+import com.brienwheeler.svc.monitor.telemetry.impl.TelemetryPublishService;
+import com.brienwheeler.svc.monitor.telemetry.impl.TelemetryRecordingProcessor;
+import com.brienwheeler.svc.monitor.telemetry.impl.TelemetryServiceBaseTestUtils;
+
+@ContextConfiguration({
+    "classpath:com/brienwheeler/lib/spring/beans/contextBeanDumper.xml",
+    "classpath:com/brienwheeler/svc/monitor/work/WorkPublishService-test2Context.xml" })
+public class WorkPublishServiceParallelTest extends AbstractJUnit4SpringContextTests
+{
+	@Autowired
+	private AnnotatedSpringStoppableService workService;
+
+	@Autowired
+	private NotifyingWorkPublishService publishService;
+
+	@Autowired
+	private TelemetryPublishService telemetryPublishService;
+
+	@Test
+	public void testIsolatedProcessors() throws Exception
+	{
+		TelemetryRecordingProcessor recordingProcessor =
+				TelemetryServiceBaseTestUtils.findProcessor(telemetryPublishService, TelemetryRecordingProcessor.class);
+
+		// wait for background thread to wake up and process 0 monitors
+		publishService.getBarrier().await();
+
+		workService.testMethodWorkName(0);
+		// blocking processor is interrupted after the timeout instead of holding up publishing
+		publishService.getBarrier().await(5, TimeUnit.SECONDS);
+
+		// failing and blocking processors did not stop the telemetry publisher
+		TelemetryInfo recordedTelemetry[] = recordingProcessor.getRecordedTelemetry();
+		Assert.assertEquals(1, recordedTelemetry.length);
+		Assert.assertEquals(1L, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.OK_COUNT));
+
+		WorkMonitor workMonitor = publishService.getWorkMonitor();
+		LiveWorkStatistics failing = workMonitor.getLiveStatistics(WorkPublishService.PROCESSOR_WORK_PREFIX +
+				FailingWorkRecordCollectionProcessor.class.getSimpleName(), WorkMonitor.MAX_LIVE_WINDOW_SECONDS);
+		Assert.assertTrue(failing.getErrorCount() > 0);
+		LiveWorkStatistics publisher = workMonitor.getLiveStatistics(WorkPublishService.PROCESSOR_WORK_PREFIX +
+				WorkRecordCollectionTelemetryPublisher.class.getSimpleName(), WorkMonitor.MAX_LIVE_WINDOW_SECONDS);
+		Assert.assertEquals(0L, publisher.getErrorCount());
+		Assert.assertTrue(publisher.getOkCount() > 0);
+	}
+}
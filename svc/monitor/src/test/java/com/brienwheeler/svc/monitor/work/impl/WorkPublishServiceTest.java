@@ -124,6 +124,8 @@ public class WorkPublishServiceTest extends AbstractJUnit4SpringContextTests
 		
 		TelemetryInfo recordedTelemetry[] = recordingProcessor.getRecordedTelemetry();
 		Assert.assertEquals(2, recordedTelemetry.length);
+		// both work records came from one collection and were published as one batch
+		Assert.assertEquals(1, recordingProcessor.getBatchCount());
 		
 		// make sure WORK_NAME is first and NO_NAME is second
 		if (recordedTelemetry[1].getName().endsWith(AnnotatedSpringStoppableService.WORK_NAME)) {
@@ -133,34 +135,53 @@ public class WorkPublishServiceTest extends AbstractJUnit4SpringContextTests
 		}
 		
 		// check successful named work
-		Assert.assertEquals(4, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.OK_COUNT));
+		Assert.assertEquals(4L, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.OK_COUNT));
 		Assert.assertTrue(Math.abs(NAME_OK_1 + NAME_OK_2 + NAME_OK_3 + NAME_OK_4 -
 				(Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.OK_DURATION)) < measureSlop * 4l);
 		Assert.assertEquals(((float) NAME_OK_1 + NAME_OK_2 + NAME_OK_3 + NAME_OK_4) / 4,
-				((Float) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.OK_AVG_DURATION)).floatValue(),
+				(float) recordedTelemetry[0].getDouble(WorkRecordCollectionTelemetryPublisher.OK_AVG_DURATION),
 				averageSlop);
 
 		// check unsuccessful named work
-		Assert.assertEquals(3, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.ERROR_COUNT));
+		Assert.assertEquals(3L, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.ERROR_COUNT));
 		Assert.assertTrue(Math.abs(NAME_ERR_1 + NAME_ERR_2 + NAME_ERR_3 -
 				(Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.ERROR_DURATION)) < measureSlop * 3l);
 		Assert.assertEquals(((float) NAME_ERR_1 + NAME_ERR_2 + NAME_ERR_3) / 3,
-				((Float) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.ERROR_AVG_DURATION)).floatValue(),
+				(float) recordedTelemetry[0].getDouble(WorkRecordCollectionTelemetryPublisher.ERROR_AVG_DURATION),
 				averageSlop);
+		Assert.assertEquals(3L, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.ERROR_TYPE_PREFIX +
+				WorkRecordCollectionTelemetryPublisher.SEPARATOR + RuntimeException.class.getSimpleName() +
+				WorkRecordCollectionTelemetryPublisher.SEPARATOR + WorkRecordCollectionTelemetryPublisher.ERROR_TYPE_COUNT));
+
+		// no nested monitored work, so self time is all of the time
+		Assert.assertEquals((Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.OK_DURATION) +
+				(Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.ERROR_DURATION),
+				recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.SELF_DURATION));
+
+		// duration distribution covers both successful and unsuccessful named work
+		Assert.assertTrue(Math.abs(NAME_ERR_3 -
+				(Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.MAX_DURATION)) < measureSlop);
+		Assert.assertTrue((Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.P50_DURATION) >= NAME_OK_4);
+		Assert.assertTrue((Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.P50_DURATION) <=
+				(Long) recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.P99_DURATION));
+
+		// all named work completed before publishing, one call at a time
+		Assert.assertEquals(0L, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.IN_FLIGHT));
+		Assert.assertEquals(1L, recordedTelemetry[0].get(WorkRecordCollectionTelemetryPublisher.PEAK_IN_FLIGHT));
 
 		// check successful unnamed work
-		Assert.assertEquals(2, recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.OK_COUNT));
+		Assert.assertEquals(2L, recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.OK_COUNT));
 		Assert.assertTrue(Math.abs(NONAME_OK_1 + NONAME_OK_2 -
 				(Long) recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.OK_DURATION)) < measureSlop * 2l);
 		Assert.assertEquals(((float) NONAME_OK_1 + NONAME_OK_2) / 2,
-				((Float) recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.OK_AVG_DURATION)).floatValue(),
+				(float) recordedTelemetry[1].getDouble(WorkRecordCollectionTelemetryPublisher.OK_AVG_DURATION),
 				averageSlop);
 
 		// check unsuccessful unnamed work
-		Assert.assertEquals(0, recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.ERROR_COUNT));
+		Assert.assertEquals(0L, recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.ERROR_COUNT));
 		Assert.assertTrue(Math.abs((Long) recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.ERROR_DURATION)) < 1);
 		Assert.assertEquals(0f,
-				((Float) recordedTelemetry[1].get(WorkRecordCollectionTelemetryPublisher.ERROR_AVG_DURATION)).floatValue(),
+				(float) recordedTelemetry[1].getDouble(WorkRecordCollectionTelemetryPublisher.ERROR_AVG_DURATION),
 				averageSlop);
 	}
 }
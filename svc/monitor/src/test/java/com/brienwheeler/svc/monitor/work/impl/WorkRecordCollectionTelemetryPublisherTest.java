@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.InvalidAttributeValueException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.brienwheeler.lib.monitor.telemetry.ITelemetryPublishService;
+import com.brienwheeler.lib.monitor.telemetry.TelemetryInfo;
+import com.brienwheeler.lib.monitor.work.WorkMonitor;
+import com.brienwheeler.lib.monitor.work.WorkRecorder;
+
+public class WorkRecordCollectionTelemetryPublisherTest
+{
+	private static final String SOURCE_NAME = "testSource";
+	private static final String WORK_NAME = "testWork";
+
+	@Test
+	public void testErrorTypeNames() throws Exception
+	{
+		final List<TelemetryInfo> published = new ArrayList<TelemetryInfo>();
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("telemetryPublishService", new ITelemetryPublishService() {
+			@Override
+			public void publish(TelemetryInfo telemetryInfo)
+			{
+				published.add(telemetryInfo);
+			}
+
+			@Override
+			public void publishBatch(List<TelemetryInfo> telemetryInfos)
+			{
+				published.addAll(telemetryInfos);
+			}
+		});
+		applicationContext.refresh();
+		WorkRecordCollectionTelemetryPublisher publisher = new WorkRecordCollectionTelemetryPublisher();
+		publisher.setApplicationContext(applicationContext);
+		publisher.afterPropertiesSet();
+
+		WorkMonitor workMonitor = new WorkMonitor(SOURCE_NAME);
+		WorkRecorder workRecorder = workMonitor.getWorkRecorder(WORK_NAME);
+		recordError(workRecorder, IllegalStateException.class, 10L);
+		recordError(workRecorder, InvalidAttributeValueException.class, 20L);
+		recordError(workRecorder, javax.naming.directory.InvalidAttributeValueException.class, 30L);
+		publisher.process(0L, workMonitor.rollRecords());
+		
+		Assert.assertEquals(1, published.size());
+		TelemetryInfo telemetryInfo = published.get(0);
+		Assert.assertEquals(1L, telemetryInfo.get(getErrorTypeCount(IllegalStateException.class.getSimpleName())));
+		// classes sharing a simple name are told apart by their full names
+		Assert.assertNull(telemetryInfo.get(getErrorTypeCount(InvalidAttributeValueException.class.getSimpleName())));
+		Assert.assertEquals(1L, telemetryInfo.get(getErrorTypeCount(InvalidAttributeValueException.class.getName())));
+		Assert.assertEquals(20L, telemetryInfo.get(getErrorTypePrefix(InvalidAttributeValueException.class.getName()) +
+				WorkRecordCollectionTelemetryPublisher.ERROR_TYPE_DURATION));
+		Assert.assertEquals(1L, telemetryInfo.get(getErrorTypeCount(
+				javax.naming.directory.InvalidAttributeValueException.class.getName())));
+	}
+
+	private static void recordError(WorkRecorder workRecorder, Class<?> errorType, long duration)
+	{
+		workRecorder.recordWorkError(duration);
+		workRecorder.recordErrorType(errorType, duration, 1);
+	}
+
+	private static String getErrorTypePrefix(String errorType)
+	{
+		return WorkRecordCollectionTelemetryPublisher.ERROR_TYPE_PREFIX + WorkRecordCollectionTelemetryPublisher.SEPARATOR +
+				errorType + WorkRecordCollectionTelemetryPublisher.SEPARATOR;
+	}
+
+	private static String getErrorTypeCount(String errorType)
+	{
+		return getErrorTypePrefix(errorType) + WorkRecordCollectionTelemetryPublisher.ERROR_TYPE_COUNT;
+	}
+}
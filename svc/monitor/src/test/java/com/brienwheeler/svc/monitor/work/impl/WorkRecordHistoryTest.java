@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2018 Brien L. Wheeler (brienwheeler@yahoo.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brienwheeler.svc.monitor.work.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brienwheeler.lib.monitor.work.WorkRecordCollection;
+import com.brienwheeler.lib.util.ValidationException;
+
+public class WorkRecordHistoryTest
+{
+	private static final String SOURCE_NAME = "testSource";
+	private static final String WORK_NAME = "testWork";
+
+	@Test
+	public void testAggregate()
+	{
+		WorkRecordHistory history = new WorkRecordHistory();
+		Assert.assertNull(history.getAggregate(SOURCE_NAME, WORK_NAME, 0L, Long.MAX_VALUE));
+
+		history.process(1000L, createCollection(TimeUnit.MILLISECONDS, 10L, 20L));
+		history.process(2000L, createCollection(TimeUnit.MILLISECONDS, 30L));
+		// second collection in the same interval
+		history.process(2000L, createCollection(TimeUnit.MICROSECONDS, 5000L));
+		history.process(3000L, createCollection(TimeUnit.MILLISECONDS, 40L));
+
+		WorkHistoryAggregate aggregate = history.getAggregate(SOURCE_NAME, WORK_NAME, 0L, Long.MAX_VALUE);
+		Assert.assertEquals(3, aggregate.getIntervals());
+		Assert.assertEquals(1000L, aggregate.getStartTime());
+		Assert.assertEquals(3000L, aggregate.getEndTime());
+		Assert.assertEquals(5L, aggregate.getOkCount());
+		Assert.assertEquals(105L, aggregate.getOkDuration());
+		Assert.assertEquals(TimeUnit.MILLISECONDS, aggregate.getDurationUnit());
+		Assert.assertEquals(40L, aggregate.getMaxDuration());
+
+		aggregate = history.getAggregate(SOURCE_NAME, WORK_NAME, 2000L, 2000L);
+		Assert.assertEquals(1, aggregate.getIntervals());
+		Assert.assertEquals(2L, aggregate.getOkCount());
+		Assert.assertEquals(17.5f, aggregate.getOkAvgDuration(), 0.01f);
+
+		// older than the latest interval
+		history.process(2500L, createCollection(TimeUnit.MILLISECONDS, 50L));
+		Assert.assertEquals(5L, history.getAggregate(SOURCE_NAME, WORK_NAME, 0L, Long.MAX_VALUE).getOkCount());
+	}
+
+	@Test
+	public void testRingWraps()
+	{
+		WorkRecordHistory history = new WorkRecordHistory();
+		history.setRetainedIntervals(3);
+		for (int i=1; i<=5; i++)
+			history.process(i * 1000L, createCollection(TimeUnit.MILLISECONDS, i));
+
+		WorkHistoryAggregate aggregate = history.getAggregate(SOURCE_NAME, WORK_NAME, 0L, Long.MAX_VALUE);
+		Assert.assertEquals(3, aggregate.getIntervals());
+		Assert.assertEquals(3000L, aggregate.getStartTime());
+		Assert.assertEquals(3L, aggregate.getOkCount());
+		Assert.assertEquals(12L, aggregate.getOkDuration());
+
+		// work absent from an interval reads as zero, not as the slot's previous contents
+		history.process(6000L, new WorkRecordCollection(SOURCE_NAME, 0L));
+		Assert.assertEquals(2L, history.getAggregate(SOURCE_NAME, WORK_NAME, 0L, Long.MAX_VALUE).getOkCount());
+	}
+
+	@Test
+	public void testOverflow()
+	{
+		WorkRecordHistory history = new WorkRecordHistory();
+		history.setRetainedIntervals(10);
+		history.setMaxSeries(2);
+		long historyBytes = history.getHistoryBytes();
+
+		history.process(1000L, createCollection(TimeUnit.MILLISECONDS, 1L));
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(SOURCE_NAME, 0L);
+		workRecordCollection.recordWorkOk("otherWork1", 1L);
+		workRecordCollection.recordWorkError("otherWork2", 1L);
+		history.process(1000L, workRecordCollection);
+
+		Assert.assertEquals(2, history.getSeriesNames().length);
+		Assert.assertEquals(historyBytes, history.getHistoryBytes());
+		Assert.assertEquals(1L, history.getAggregate(SOURCE_NAME, WORK_NAME, 0L, Long.MAX_VALUE).getOkCount());
+		Assert.assertNull(history.getAggregate(SOURCE_NAME, "otherWork1", 0L, Long.MAX_VALUE));
+		WorkHistoryAggregate overflow = history.getAggregate(WorkRecordHistory.OVERFLOW_NAME,
+				WorkRecordHistory.OVERFLOW_NAME, 0L, Long.MAX_VALUE);
+		Assert.assertEquals(1L, overflow.getOkCount());
+		Assert.assertEquals(1L, overflow.getErrorCount());
+	}
+
+	@Test
+	public void testAggregateData()
+	{
+		WorkRecordHistory history = new WorkRecordHistory();
+		Assert.assertNull(history.getRecentAggregateData(SOURCE_NAME, WORK_NAME, 1));
+		history.process(System.currentTimeMillis(), createCollection(TimeUnit.MILLISECONDS, 10L));
+		CompositeData data = history.getRecentAggregateData(SOURCE_NAME, WORK_NAME, 1);
+		Assert.assertEquals(1L, data.get("okCount"));
+		Assert.assertEquals(TimeUnit.MILLISECONDS.name(), data.get("durationUnit"));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testSetMaxSeriesFail()
+	{
+		new WorkRecordHistory().setMaxSeries(1);
+	}
+
+	private WorkRecordCollection createCollection(TimeUnit durationUnit, long... durations)
+	{
+		WorkRecordCollection workRecordCollection = new WorkRecordCollection(SOURCE_NAME, 0L, durationUnit);
+		for (long duration : durations)
+			workRecordCollection.recordWorkOk(WORK_NAME, duration);
+		return workRecordCollection;
+	}
+}